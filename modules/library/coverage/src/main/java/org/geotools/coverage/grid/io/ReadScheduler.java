@@ -0,0 +1,498 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.coverage.grid.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.factory.Hints;
+
+/**
+ * A bounded scheduler for the reads performed by the coverage readers, such as the loading of
+ * the granules of a mosaic, meant to be shared among all the readers of an application so that
+ * the amount of concurrent I/O stays under control no matter how many requests are running.
+ * <p>
+ * Reads are grouped in {@link Request requests}, each with a {@link Priority}: interactive reads
+ * always run before the batch ones waiting in the queue, reads with the same priority run in
+ * submission order. Each read is associated to a resource, typically the disk or the database
+ * holding the data, and no more than a configurable number of reads run concurrently against the
+ * same resource. A request can be cancelled as a whole once its results are no longer needed,
+ * dropping the reads still in the queue.
+ * <p>
+ * The readers find the scheduler to be used in the {@link #READ_SCHEDULER} hint, a default shared
+ * instance is available as well, sized after the
+ * <code>org.geotools.coverage.io.readThreads</code> and
+ * <code>org.geotools.coverage.io.readsPerResource</code> system properties, defaulting to the
+ * number of available processors.
+ *
+ * @source $URL$
+ */
+public class ReadScheduler {
+
+    /**
+     * The priority of the reads
+     */
+    public enum Priority {
+        /** Reads someone is waiting for, such as the ones needed to paint a map */
+        INTERACTIVE,
+        /** Reads that can wait, such as the ones performed by data processing */
+        BATCH
+    }
+
+    /**
+     * The hint used to provide the scheduler to the coverage readers
+     */
+    public static final Hints.Key READ_SCHEDULER = new Hints.Key(ReadScheduler.class);
+
+    /**
+     * The hint used to set the priority of the reads performed by a coverage reader, defaults to
+     * {@link Priority#INTERACTIVE}
+     */
+    public static final Hints.Key READ_PRIORITY = new Hints.Key(Priority.class);
+
+    /**
+     * The hint used to specify the resource the reads of a coverage reader hit, so that readers
+     * sharing the same disk can be limited as a whole. When missing each reader picks its own,
+     * usually its source.
+     */
+    public static final Hints.Key READ_RESOURCE = new Hints.Key(Object.class);
+
+    static ReadScheduler defaultScheduler;
+
+    /**
+     * Returns the default scheduler, shared by all the readers that have not been given a
+     * specific one
+     */
+    public static synchronized ReadScheduler getDefault() {
+        if (defaultScheduler == null) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            int threads = Integer.getInteger("org.geotools.coverage.io.readThreads", processors);
+            int perResource = Integer.getInteger("org.geotools.coverage.io.readsPerResource",
+                    threads);
+            defaultScheduler = new ReadScheduler(threads, perResource);
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * Replaces the default scheduler. The previous one, if any, is shut down.
+     */
+    public static synchronized void setDefault(ReadScheduler scheduler) {
+        if (defaultScheduler != null && defaultScheduler != scheduler) {
+            defaultScheduler.shutdown();
+        }
+        defaultScheduler = scheduler;
+    }
+
+    final int maxThreads;
+
+    final int maxPerResource;
+
+    final ThreadPoolExecutor executor;
+
+    /** The queued reads, one queue per priority. Guarded by this. */
+    final List<LinkedList<ScheduledRead<?>>> queues;
+
+    /** The number of running reads per resource. Guarded by this. */
+    final Map<Object, AtomicInteger> running = new HashMap<Object, AtomicInteger>();
+
+    boolean shutdown;
+
+    int active;
+
+    int queued;
+
+    long submitted;
+
+    long completed;
+
+    long cancelled;
+
+    long started;
+
+    long totalWaitTime;
+
+    long maxWaitTime;
+
+    long totalRunTime;
+
+    /**
+     * Builds a new scheduler
+     *
+     * @param maxThreads The maximum number of reads running at the same time
+     * @param maxPerResource The maximum number of reads running at the same time against the same
+     *        resource
+     */
+    public ReadScheduler(int maxThreads, int maxPerResource) {
+        if (maxThreads <= 0 || maxPerResource <= 0) {
+            throw new IllegalArgumentException(
+                    "The number of threads and reads per resource must be positive");
+        }
+        this.maxThreads = maxThreads;
+        this.maxPerResource = maxPerResource;
+        this.queues = new ArrayList<LinkedList<ScheduledRead<?>>>();
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new LinkedList<ScheduledRead<?>>());
+        }
+        // the scheduler never hands over more tasks than threads, the queue stays empty
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ReadThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts a new group of reads with the specified priority
+     */
+    public Request newRequest(Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("The read priority must be specified");
+        }
+        return new Request(priority);
+    }
+
+    /**
+     * Stops the scheduler, the queued reads are cancelled and the running ones will complete
+     */
+    public void shutdown() {
+        List<ScheduledRead<?>> pending = new ArrayList<ScheduledRead<?>>();
+        synchronized (this) {
+            shutdown = true;
+            for (LinkedList<ScheduledRead<?>> queue : queues) {
+                pending.addAll(queue);
+            }
+        }
+        for (ScheduledRead<?> read : pending) {
+            read.cancel(false);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * The number of reads waiting to be run
+     */
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    /**
+     * The number of reads with the specified priority waiting to be run
+     */
+    public synchronized int getQueueDepth(Priority priority) {
+        return queues.get(priority.ordinal()).size();
+    }
+
+    /**
+     * The number of reads currently running
+     */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    /**
+     * The number of reads submitted so far
+     */
+    public synchronized long getSubmittedCount() {
+        return submitted;
+    }
+
+    /**
+     * The number of reads run so far
+     */
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * The number of reads cancelled before they could run
+     */
+    public synchronized long getCancelledCount() {
+        return cancelled;
+    }
+
+    /**
+     * The average time the reads waited in the queue, in nanoseconds
+     */
+    public synchronized long getAverageWaitTime() {
+        return started > 0 ? totalWaitTime / started : 0;
+    }
+
+    /**
+     * The longest time a read waited in the queue, in nanoseconds
+     */
+    public synchronized long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * The average time taken by the reads, in nanoseconds
+     */
+    public synchronized long getAverageRunTime() {
+        return completed > 0 ? totalRunTime / completed : 0;
+    }
+
+    /**
+     * The maximum number of reads running at the same time
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * The maximum number of reads running at the same time against the same resource
+     */
+    public int getMaxPerResource() {
+        return maxPerResource;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadScheduler [queued=" + getQueueDepth() + ", active=" + getActiveCount()
+                + ", submitted=" + getSubmittedCount() + ", completed=" + getCompletedCount()
+                + ", cancelled=" + getCancelledCount() + ", averageWait="
+                + getAverageWaitTime() / 1000000 + "ms, maxWait=" + getMaxWaitTime() / 1000000
+                + "ms, averageRun=" + getAverageRunTime() / 1000000 + "ms]";
+    }
+
+    synchronized void enqueue(ScheduledRead<?> read) {
+        if (shutdown) {
+            throw new IllegalStateException("The read scheduler has been shut down");
+        }
+        queues.get(read.priority.ordinal()).add(read);
+        queued++;
+        submitted++;
+        dispatch();
+    }
+
+    /**
+     * Hands over to the executor the first queued reads whose resource is not busy, until all
+     * the threads are in use. Must be called while holding the lock.
+     */
+    private void dispatch() {
+        while (!shutdown && active < maxThreads && queued > 0) {
+            ScheduledRead<?> next = null;
+            for (LinkedList<ScheduledRead<?>> queue : queues) {
+                for (Iterator<ScheduledRead<?>> it = queue.iterator(); it.hasNext();) {
+                    ScheduledRead<?> read = it.next();
+                    AtomicInteger count = read.resource == null ? null : running
+                            .get(read.resource);
+                    if (count == null || count.get() < maxPerResource) {
+                        it.remove();
+                        next = read;
+                        break;
+                    }
+                }
+                if (next != null) {
+                    break;
+                }
+            }
+            if (next == null) {
+                // all the queued reads hit busy resources
+                return;
+            }
+
+            queued--;
+            active++;
+            if (next.resource != null) {
+                AtomicInteger count = running.get(next.resource);
+                if (count == null) {
+                    running.put(next.resource, new AtomicInteger(1));
+                } else {
+                    count.incrementAndGet();
+                }
+            }
+            next.startTime = System.nanoTime();
+            long waitTime = next.startTime - next.queueTime;
+            totalWaitTime += waitTime;
+            maxWaitTime = Math.max(maxWaitTime, waitTime);
+            started++;
+            executor.execute(next);
+        }
+    }
+
+    synchronized void done(ScheduledRead<?> read) {
+        active--;
+        completed++;
+        totalRunTime += System.nanoTime() - read.startTime;
+        if (read.resource != null) {
+            AtomicInteger count = running.get(read.resource);
+            if (count.decrementAndGet() == 0) {
+                running.remove(read.resource);
+            }
+        }
+        dispatch();
+    }
+
+    synchronized void cancelled(ScheduledRead<?> read) {
+        if (queues.get(read.priority.ordinal()).remove(read)) {
+            queued--;
+            cancelled++;
+        }
+    }
+
+    /**
+     * A group of reads sharing the same priority, that can be waited for and cancelled as a whole
+     */
+    public class Request {
+
+        final Priority priority;
+
+        final List<ScheduledRead<?>> reads = new ArrayList<ScheduledRead<?>>();
+
+        Request(Priority priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Queues a read
+         *
+         * @param resource The resource the read hits, or null if it does not need to be limited
+         * @param task The read
+         * @return The future result of the read
+         */
+        public <T> Future<T> submit(Object resource, Callable<T> task) {
+            ScheduledRead<T> read = new ScheduledRead<T>(ReadScheduler.this, priority, resource,
+                    task);
+            synchronized (reads) {
+                reads.add(read);
+            }
+            enqueue(read);
+            return read;
+        }
+
+        /**
+         * Cancels the reads of the request, dropping the queued ones. The running ones are not
+         * interrupted, as that would close the channels they are reading from, but their results
+         * are discarded.
+         */
+        public void cancel() {
+            for (ScheduledRead<?> read : getReads()) {
+                read.cancel(false);
+            }
+        }
+
+        /**
+         * Waits for all the reads of the request to be either completed or cancelled
+         *
+         * @return true if all the reads are done, false if the timeout elapsed
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (ScheduledRead<?> read : getReads()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 && !read.isDone()) {
+                    return false;
+                }
+                try {
+                    read.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    // the failure is reported to whoever looks at the result
+                } catch (CancellationException e) {
+                    // fine as well
+                } catch (TimeoutException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The priority of the reads in this request
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        private List<ScheduledRead<?>> getReads() {
+            synchronized (reads) {
+                return new ArrayList<ScheduledRead<?>>(reads);
+            }
+        }
+    }
+
+    /**
+     * A read along with its scheduling information
+     */
+    static class ScheduledRead<T> extends FutureTask<T> {
+
+        final ReadScheduler scheduler;
+
+        final Priority priority;
+
+        final Object resource;
+
+        final long queueTime = System.nanoTime();
+
+        long startTime;
+
+        ScheduledRead(ReadScheduler scheduler, Priority priority, Object resource,
+                Callable<T> task) {
+            super(task);
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.resource = resource;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                scheduler.done(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean result = super.cancel(mayInterruptIfRunning);
+            if (result) {
+                scheduler.cancelled(this);
+            }
+            return result;
+        }
+    }
+
+    static class ReadThreadFactory implements ThreadFactory {
+
+        static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+        final int pool = POOL_COUNTER.incrementAndGet();
+
+        final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ReadScheduler-" + pool + "-thread-"
+                    + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.coverage.grid.io;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.coverage.grid.io.ReadScheduler.Priority;
+import org.geotools.coverage.grid.io.ReadScheduler.Request;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks the ordering, resource limits and cancellation of the {@link ReadScheduler}
+ *
+ * @source $URL$
+ */
+public class ReadSchedulerTest {
+
+    ReadScheduler scheduler;
+
+    @After
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testPriorities() throws Exception {
+        scheduler = new ReadScheduler(1, 1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        // block the only thread so that the other reads queue up
+        Request blocker = scheduler.newRequest(Priority.INTERACTIVE);
+        blocker.submit(null, new Callable<Object>() {
+            public Object call() throws Exception {
+                latch.await();
+                return null;
+            }
+        });
+        Request batch = scheduler.newRequest(Priority.BATCH);
+        Request interactive = scheduler.newRequest(Priority.INTERACTIVE);
+        batch.submit(null, new Recorder(order, "batch1"));
+        batch.submit(null, new Recorder(order, "batch2"));
+        interactive.submit(null, new Recorder(order, "interactive1"));
+        interactive.submit(null, new Recorder(order, "interactive2"));
+        assertEquals(4, scheduler.getQueueDepth());
+        assertEquals(2, scheduler.getQueueDepth(Priority.BATCH));
+
+        latch.countDown();
+        assertTrue(batch.await(10, TimeUnit.SECONDS));
+        assertTrue(interactive.await(10, TimeUnit.SECONDS));
+        assertEquals(4, order.size());
+        assertEquals("interactive1", order.get(0));
+        assertEquals("interactive2", order.get(1));
+        assertEquals("batch1", order.get(2));
+        assertEquals("batch2", order.get(3));
+        assertEquals(5, scheduler.getSubmittedCount());
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testResourceLimit() throws Exception {
+        scheduler = new ReadScheduler(4, 2);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        Request request = scheduler.newRequest(Priority.INTERACTIVE);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(request.submit("disk", new Callable<Object>() {
+                public Object call() throws Exception {
+                    int current = concurrent.incrementAndGet();
+                    synchronized (maxConcurrent) {
+                        maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+                    }
+                    Thread.sleep(5);
+                    concurrent.decrementAndGet();
+                    return null;
+                }
+            }));
+        }
+        assertTrue(request.await(10, TimeUnit.SECONDS));
+        for (Future<Object> future : futures) {
+            assertTrue(future.isDone());
+        }
+        assertTrue(maxConcurrent.get() <= 2);
+        // the statistics are updated right after the results are made available
+        for (int i = 0; i < 100 && scheduler.getActiveCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, scheduler.getCompletedCount());
+        assertEquals(0, scheduler.getActiveCount());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        scheduler = new ReadScheduler(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Request request = scheduler.newRequest(Priority.INTERACTIVE);
+        Future<Object> running = request.submit(null, new Callable<Object>() {
+            public Object call() throws Exception {
+                started.countDown();
+                latch.await();
+                finished.countDown();
+                return "done";
+            }
+        });
+        Future<Object> queued = request.submit(null, new Recorder(order, "queued"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        request.cancel();
+        latch.countDown();
+
+        assertTrue(request.await(10, TimeUnit.SECONDS));
+        assertTrue(queued.isCancelled());
+        // the running read is not interrupted, it runs to completion and releases its thread
+        assertTrue(running.isCancelled());
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && scheduler.getActiveCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getActiveCount());
+        assertEquals(1, scheduler.getCompletedCount());
+        assertTrue(order.isEmpty());
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getCancelledCount());
+    }
+
+    static class Recorder implements Callable<Object> {
+        final List<String> order;
+
+        final String name;
+
+        Recorder(List<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        public Object call() throws Exception {
+            order.add(name);
+            return null;
+        }
+    }
+}
@@ -254,6 +254,11 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected int fetchSize;
     
+    /**
+     * The number of features inserted in a single batch, defaulting to 1 (no batching).
+     */
+    protected int batchInsertSize = 1;
+    
     /**
      * flag controlling whether primary key columns of a table are exposed via the 
      * feature type.
@@ -358,6 +363,24 @@ public final class JDBCDataStore extends ContentDataStore
         this.fetchSize = fetchSize;
     }
 
+    /**
+     * The current batch insert size. When greater than one, features are sent to the dbms
+     * in batches of this size, provided their primary key values can be determined before
+     * the insert. The feature ids of batched features are assigned when the batch is flushed.
+     * @return
+     */
+    public int getBatchInsertSize() {
+        return batchInsertSize;
+    }
+
+    /**
+     * Changes the batch insert size. Set to a value less or equal to 1 to disable batching.
+     * @param batchInsertSize
+     */
+    public void setBatchInsertSize(int batchInsertSize) {
+        this.batchInsertSize = batchInsertSize;
+    }
+
     /**
      * Determines if the datastore creates feature types which include those columns / attributes
      * which compose the primary key.
@@ -1387,66 +1410,150 @@ public final class JDBCDataStore extends ContentDataStore
         throws IOException {
         PrimaryKey key = getPrimaryKey(featureType);
 
-        // we do this in a synchronized block because we need to do two queries,
-        // first to figure out what the id will be, then the insert statement
-        synchronized (this) {
-            Statement st = null;
+        // figure out if we should determine what the fid is pre or post insert
+        boolean postInsert = dialect.lookupGeneratedValuesPostInsert() && isGenerated(key);
+        
+        if (isInsertLockRequired(key, postInsert)) {
+            // we do this in a synchronized block because we need to do two queries,
+            // first to figure out what the id will be, then the insert statement
+            synchronized (this) {
+                insertInternal(features, featureType, key, postInsert, cx);
+            }
+        } else {
+            insertInternal(features, featureType, key, postInsert, cx);
+        }
+    }
+    
+    /**
+     * Determines if inserts into a table with the specified primary key have to be 
+     * serialized. This is the case when the key values are computed from the table contents
+     * or looked up after the insert, since two concurrent inserts could otherwise end up 
+     * with the same key. Sequences and random string keys are safe to use concurrently.
+     */
+    protected boolean isInsertLockRequired(PrimaryKey key, boolean postInsert) {
+        if (postInsert) {
+            return true;
+        }
+        
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            if (col instanceof SequencedPrimaryKeyColumn) {
+                continue;
+            }
+            if (col instanceof AutoGeneratedPrimaryKeyColumn
+                    || Number.class.isAssignableFrom(col.getType())) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    void insertInternal(Collection features, SimpleFeatureType featureType, PrimaryKey key,
+            boolean postInsert, Connection cx) throws IOException {
+        // statements can be batched only if we know the key values before the insert, and
+        // they are not looked up in the table as the batched rows are not there yet
+        int batchSize = postInsert || !isBatchable(key) ? 1 : Math.max(1, batchInsertSize);
+        int batched = 0;
+        // the last values computed for the key columns, MAX + 1 is looked up once and
+        // then incremented locally
+        Object[] computed = new Object[key.getColumns().size()];
+        
+        Statement st = null;
+        PreparedStatement ps = null;
+        String psSQL = null;
 
-            try {
-                if ( !(dialect instanceof PreparedStatementSQLDialect) ) {
-                    st = cx.createStatement();    
-                }
+        try {
+            if ( !(dialect instanceof PreparedStatementSQLDialect) ) {
+                st = cx.createStatement();    
+            }
+            
+            for (Iterator f = features.iterator(); f.hasNext();) {
+                SimpleFeature feature = (SimpleFeature) f.next();
                 
-                // figure out if we should determine what the fid is pre or post insert
-                boolean postInsert = dialect.lookupGeneratedValuesPostInsert() && isGenerated(key);
+                List<Object> keyValues = null;
+                boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
+                if(useExisting) {
+                    keyValues = decodeFID(key, feature.getID(), true);
+                    updateComputedValues(key, keyValues, computed);
+                } else if (!postInsert) {
+                    keyValues = getNextValues( key, cx, computed );
+                }
                 
-                for (Iterator f = features.iterator(); f.hasNext();) {
-                    SimpleFeature feature = (SimpleFeature) f.next();
-                    
-                    List<Object> keyValues = null;
-                    boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
-                    if(useExisting) {
-                        keyValues = decodeFID(key, feature.getID(), true);
-                    } else if (!postInsert) {
-                        keyValues = getNextValues( key, cx );
+
+                if ( dialect instanceof PreparedStatementSQLDialect ) {
+                    String sql = insertSQLPS(featureType, feature, key, useExisting);
+                    if (ps != null && !sql.equals(psSQL)) {
+                        // the statement changed (e.g. null geometry), flush the pending rows
+                        if (batched > 0) {
+                            ps.executeBatch();
+                            batched = 0;
+                        }
+                        closeSafe(ps);
+                        ps = null;
+                    }
+                    if (ps == null) {
+                        LOGGER.log(Level.FINE, "Inserting new feature with ps: {0}", sql);
+                        ps = cx.prepareStatement(sql);
+                        psSQL = sql;
+                        ((PreparedStatementSQLDialect)dialect).onInsert(ps, cx, featureType);
                     }
+                    setInsertValuesPS(ps, featureType, feature, key, keyValues, useExisting, cx);
                     
-
-                    if ( dialect instanceof PreparedStatementSQLDialect ) {
-                        PreparedStatement ps = insertSQLPS( featureType, feature, keyValues, cx );
+                    if (batchSize > 1) {
+                        ps.addBatch();
+                        if (++batched >= batchSize) {
+                            ps.executeBatch();
+                            batched = 0;
+                        }
+                    } else {
                         try {
-                            ((PreparedStatementSQLDialect)dialect).onInsert(ps, cx, featureType);
                             ps.execute();
                         } finally {
                             closeSafe( ps );
+                            ps = null;
                         }
-                    } else {
-                        String sql = insertSQL(featureType, feature, keyValues, cx);
-                        
-                        //TODO: execute in batch to improve performance?
-                        ((BasicSQLDialect)dialect).onInsert(st, cx, featureType);
-                        
-                        LOGGER.log(Level.FINE, "Inserting new feature: {0}", sql);
-                        st.execute(sql);
                     }
+                } else {
+                    String sql = insertSQL(featureType, feature, keyValues, cx);
                     
-                    if ( keyValues == null ) {
-                        //grab the key values post insert
-                        keyValues = getLastValues(key,cx);
-                    }
+                    ((BasicSQLDialect)dialect).onInsert(st, cx, featureType);
                     
-                    //report the feature id as user data since we cant set the fid
-                    String fid = featureType.getTypeName() + "." + encodeFID(keyValues);
-                    feature.getUserData().put("fid", fid);
+                    LOGGER.log(Level.FINE, "Inserting new feature: {0}", sql);
+                    if (batchSize > 1) {
+                        st.addBatch(sql);
+                        if (++batched >= batchSize) {
+                            st.executeBatch();
+                            batched = 0;
+                        }
+                    } else {
+                        st.execute(sql);
+                    }
+                }
+                
+                if ( keyValues == null ) {
+                    //grab the key values post insert
+                    keyValues = getLastValues(key,cx);
                 }
+                
+                //report the feature id as user data since we cant set the fid
+                String fid = featureType.getTypeName() + "." + encodeFID(keyValues);
+                feature.getUserData().put("fid", fid);
+            }
 
-                //st.executeBatch();
-            } catch (SQLException e) {
-                String msg = "Error inserting features";
-                throw (IOException) new IOException(msg).initCause(e);
-            } finally {
-                closeSafe(st);
+            // flush the last, partial batch
+            if (batched > 0) {
+                if (ps != null) {
+                    ps.executeBatch();
+                } else {
+                    st.executeBatch();
+                }
             }
+        } catch (SQLException e) {
+            String msg = "Error inserting features";
+            throw (IOException) new IOException(msg).initCause(e);
+        } finally {
+            closeSafe(ps);
+            closeSafe(st);
         }
     }
 
@@ -1777,6 +1884,88 @@ public final class JDBCDataStore extends ContentDataStore
         return next;
     }
     
+    /**
+     * Gets the next values of a primary key, incrementing the values previously computed
+     * from the table contents instead of querying the table again.
+     * 
+     * @param computed the last values computed for each column, updated by this method
+     */
+    List<Object> getNextValues(PrimaryKey pkey, Connection cx, Object[] computed)
+            throws SQLException, IOException {
+        ArrayList<Object> next = new ArrayList<Object>();
+        List<PrimaryKeyColumn> columns = pkey.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            PrimaryKeyColumn col = columns.get(i);
+            Object value;
+            if (isComputed(col) && computed[i] != null) {
+                value = increment(computed[i]);
+            } else {
+                value = getNextValue(col, pkey, cx);
+            }
+            if (isComputed(col)) {
+                computed[i] = value;
+            }
+            next.add(value);
+        }
+        return next;
+    }
+
+    /**
+     * Makes sure the values computed for the key columns stay ahead of a provided key
+     */
+    void updateComputedValues(PrimaryKey pkey, List<Object> keyValues, Object[] computed) {
+        List<PrimaryKeyColumn> columns = pkey.getColumns();
+        for (int i = 0; i < columns.size() && i < keyValues.size(); i++) {
+            if (computed[i] != null && keyValues.get(i) != null) {
+                BigDecimal provided = new BigDecimal(keyValues.get(i).toString());
+                if (provided.compareTo(new BigDecimal(computed[i].toString())) > 0) {
+                    computed[i] = keyValues.get(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the next value of the column is computed as MAX + 1 from the table
+     */
+    boolean isComputed(PrimaryKeyColumn col) {
+        if (col instanceof AutoGeneratedPrimaryKeyColumn || col instanceof SequencedPrimaryKeyColumn) {
+            return false;
+        }
+        Class t = col.getType();
+        return t == Short.class || t == Integer.class || t == Long.class
+                || BigInteger.class.isAssignableFrom(t) || BigDecimal.class.isAssignableFrom(t);
+    }
+
+    /**
+     * Returns true if rows can be batched, that is, the key values are not looked up from
+     * the database in a way that would miss the rows not yet flushed. Auto generated values
+     * looked up before the insert are not safe to batch, computed values are incremented
+     * locally.
+     */
+    boolean isBatchable(PrimaryKey pkey) {
+        for (PrimaryKeyColumn col : pkey.getColumns()) {
+            if (col instanceof AutoGeneratedPrimaryKeyColumn) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Object increment(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).add(BigDecimal.ONE);
+        } else if (value instanceof BigInteger) {
+            return ((BigInteger) value).add(BigInteger.ONE);
+        } else if (value instanceof Long) {
+            return ((Long) value) + 1;
+        } else if (value instanceof Short) {
+            return (short) (((Short) value) + 1);
+        } else {
+            return ((Number) value).intValue() + 1;
+        }
+    }
+
     /**
      * Gets the next value for the column of a primary key.
      */
@@ -3602,15 +3791,35 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected PreparedStatement insertSQLPS(SimpleFeatureType featureType, SimpleFeature feature, List keyValues, Connection cx) 
         throws IOException, SQLException {
-        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
-        
-        // grab the primary key and collect the pk column names 
+        // grab the primary key
         PrimaryKey key = null; 
         try {
             key = getPrimaryKey(featureType);
         } catch (IOException e) {
             throw new RuntimeException( e );
         }
+        boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
+        
+        String sql = insertSQLPS(featureType, feature, key, useExisting);
+        LOGGER.log(Level.FINE, "Inserting new feature with ps: {0}", sql);
+        
+        //create the prepared statement
+        PreparedStatement ps = cx.prepareStatement(sql);
+        setInsertValuesPS(ps, featureType, feature, key, keyValues, useExisting, cx);
+        
+        return ps;
+    }
+    
+    /**
+     * Generates the sql of a 'INSERT INFO' prepared statement. The sql depends on the
+     * feature only for the way geometries are prepared, so consecutive features sharing 
+     * the same sql can be inserted with the same prepared statement. 
+     */
+    protected String insertSQLPS(SimpleFeatureType featureType, SimpleFeature feature, PrimaryKey key, 
+            boolean useExisting) throws IOException, SQLException {
+        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
+        
+        // collect the pk column names 
         Set<String> pkColumnNames = getColumnNames(key);
         
         StringBuffer sql = new StringBuffer();
@@ -3632,7 +3841,6 @@ public final class JDBCDataStore extends ContentDataStore
         }
 
         // primary key values
-        boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
         for (PrimaryKeyColumn col : key.getColumns() ) {
             //only include if its non auto generating
             if ( !(col instanceof AutoGeneratedPrimaryKeyColumn ) || useExisting ) {
@@ -3670,10 +3878,19 @@ public final class JDBCDataStore extends ContentDataStore
         
         sql.setLength(sql.length()-1);
         sql.append(")");
-        LOGGER.log(Level.FINE, "Inserting new feature with ps: {0}", sql);
         
-        //create the prepared statement
-        PreparedStatement ps = cx.prepareStatement(sql.toString());
+        return sql.toString();
+    }
+    
+    /**
+     * Sets the feature and key values into a prepared statement generated by 
+     * {@link #insertSQLPS(SimpleFeatureType, SimpleFeature, PrimaryKey, boolean)}
+     */
+    protected void setInsertValuesPS(PreparedStatement ps, SimpleFeatureType featureType, 
+            SimpleFeature feature, PrimaryKey key, List keyValues, boolean useExisting, Connection cx) 
+        throws IOException, SQLException {
+        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
+        Set<String> pkColumnNames = getColumnNames(key);
         
         //set the attribute values
         int i = 1;
@@ -3723,8 +3940,6 @@ public final class JDBCDataStore extends ContentDataStore
                 }
             }
         }
-        
-        return ps;
     }
     
     /**
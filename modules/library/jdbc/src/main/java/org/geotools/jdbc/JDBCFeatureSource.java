@@ -58,6 +58,10 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -107,6 +111,9 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         // mark the features as detached, that is, the user can directly alter them
         // without altering the state of the datastore
         hints.add(Hints.FEATURE_DETACHED);
+        // queries on tables with an integral primary key can be split and read in parallel
+        hints.add(Hints.PARALLEL_READ_PARTITIONS);
+        hints.add(Hints.PARALLEL_READ_ORDERED);
         getDataStore().getSQLDialect().addSupportedHints(hints);
     }
 
@@ -553,64 +560,66 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         SimpleFeatureType querySchema = types[0];
         SimpleFeatureType returnedSchema = types[1];
 
-        //grab connection
-        Connection cx = getDataStore().getConnection(getState());
+        //create the reader, splitting the query in partitions read in parallel if so requested
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = 
+            getParallelReader(query, preQuery, querySchema);
         
-        //create the reader
-        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+        if (reader == null) {
+            //grab connection
+            Connection cx = getDataStore().getConnection(getState());
         
-        try {            
-            SQLDialect dialect = getDataStore().getSQLDialect();
-
-            // allow dialect to override this if needed
-            if(getState().getTransaction() == Transaction.AUTO_COMMIT) {
-                cx.setAutoCommit(dialect.isAutoCommitQuery());
-            }
+            try {            
+                SQLDialect dialect = getDataStore().getSQLDialect();
 
-            if (query.getJoins().isEmpty()) {
-                //regular query
-                if ( dialect instanceof PreparedStatementSQLDialect ) {
-                    PreparedStatement ps = getDataStore().selectSQLPS(querySchema, preQuery, cx);
-                    reader = new JDBCFeatureReader( ps, cx, this, querySchema, query.getHints() );
-                } else {
-                    //build up a statement for the content
-                    String sql = getDataStore().selectSQL(querySchema, preQuery);
-                    getDataStore().getLogger().fine(sql);
-        
-                    reader = new JDBCFeatureReader( sql, cx, this, querySchema, query.getHints() );
+                // allow dialect to override this if needed
+                if(getState().getTransaction() == Transaction.AUTO_COMMIT) {
+                    cx.setAutoCommit(dialect.isAutoCommitQuery());
                 }
-            }
-            else {
-                JoinInfo join = JoinInfo.create(preQuery, this);
 
-                if ( dialect instanceof PreparedStatementSQLDialect ) {
-                    PreparedStatement ps =getDataStore().selectJoinSQLPS(querySchema, join, preQuery, cx);
-                    reader = new JDBCJoiningFeatureReader(ps, cx, this, querySchema, join, query.getHints());
-                } else {
-                    //build up a statement for the content
-                    String sql = getDataStore().selectJoinSQL(querySchema, join, preQuery);
-                    getDataStore().getLogger().fine(sql);
+                if (query.getJoins().isEmpty()) {
+                    //regular query
+                    if ( dialect instanceof PreparedStatementSQLDialect ) {
+                        PreparedStatement ps = getDataStore().selectSQLPS(querySchema, preQuery, cx);
+                        reader = new JDBCFeatureReader( ps, cx, this, querySchema, query.getHints() );
+                    } else {
+                        //build up a statement for the content
+                        String sql = getDataStore().selectSQL(querySchema, preQuery);
+                        getDataStore().getLogger().fine(sql);
         
-                    reader = new JDBCJoiningFeatureReader(sql, cx, this, querySchema, join, query.getHints());
+                        reader = new JDBCFeatureReader( sql, cx, this, querySchema, query.getHints() );
+                    }
                 }
+                else {
+                    JoinInfo join = JoinInfo.create(preQuery, this);
+
+                    if ( dialect instanceof PreparedStatementSQLDialect ) {
+                        PreparedStatement ps =getDataStore().selectJoinSQLPS(querySchema, join, preQuery, cx);
+                        reader = new JDBCJoiningFeatureReader(ps, cx, this, querySchema, join, query.getHints());
+                    } else {
+                        //build up a statement for the content
+                        String sql = getDataStore().selectJoinSQL(querySchema, join, preQuery);
+                        getDataStore().getLogger().fine(sql);
+        
+                        reader = new JDBCJoiningFeatureReader(sql, cx, this, querySchema, join, query.getHints());
+                    }
                 
-                //check for post filters
-                if (join.hasPostFilters()) {
-                    reader = new JDBCJoiningFilteringFeatureReader(reader, join);
-                    //TODO: retyping 
+                    //check for post filters
+                    if (join.hasPostFilters()) {
+                        reader = new JDBCJoiningFilteringFeatureReader(reader, join);
+                        //TODO: retyping 
+                    }
+                }
+            } catch (Throwable e) { // NOSONAR
+                // close the connection
+                getDataStore().closeSafe(cx);
+                // safely rethrow
+                if (e instanceof Error) {
+                    throw (Error) e;
+                } else {
+                    throw (IOException) new IOException().initCause(e);
                 }
-            }
-        } catch (Throwable e) { // NOSONAR
-            // close the connection
-            getDataStore().closeSafe(cx);
-            // safely rethrow
-            if (e instanceof Error) {
-                throw (Error) e;
-            } else {
-                throw (IOException) new IOException().initCause(e);
             }
         }
-        
 
         // if post filter, wrap it
         if (postFilter != null && postFilter != Filter.INCLUDE) {
@@ -622,6 +631,137 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         return reader;
     }
 
+    /**
+     * Builds a reader splitting the query in ranges of the primary key and reading them in
+     * parallel, as requested by the {@link Hints#PARALLEL_READ_PARTITIONS} hint.
+     * <p>
+     * Partitioning requires a single column integral primary key, no joins, no paging, and
+     * no sorting other than the natural one (which is preserved only if
+     * {@link Hints#PARALLEL_READ_ORDERED} is set). Since every partition is read with its own
+     * connection, the source must also be working against the auto commit transaction.
+     * </p>
+     * 
+     * @return the parallel reader, or null if the query cannot be read in parallel 
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getParallelReader(Query query,
+            Query preQuery, SimpleFeatureType querySchema) throws IOException {
+        Hints hints = query.getHints();
+        Integer partitions = hints != null ? (Integer) hints.get(Hints.PARALLEL_READ_PARTITIONS) : null;
+        if (partitions == null || partitions < 2) {
+            return null;
+        }
+        boolean ordered = Boolean.TRUE.equals(hints.get(Hints.PARALLEL_READ_ORDERED));
+
+        if (getState().getTransaction() != Transaction.AUTO_COMMIT
+                || !query.getJoins().isEmpty() || !query.isMaxFeaturesUnlimited()
+                || (query.getStartIndex() != null && query.getStartIndex() > 0)) {
+            return null;
+        }
+
+        PrimaryKey key = getDataStore().getPrimaryKey(querySchema);
+        if (key instanceof NullPrimaryKey || key.getColumns().size() != 1) {
+            return null;
+        }
+        PrimaryKeyColumn column = key.getColumns().get(0);
+        Class binding = column.getType();
+        if (binding != Long.class && binding != Integer.class && binding != Short.class
+                && binding != Byte.class) {
+            return null;
+        }
+
+        // the partitions are key ranges, sorting on the key can be preserved by returning
+        // them in order, any other sort would require a merge
+        SortBy[] sortBy = query.getSortBy();
+        if (sortBy != null && sortBy.length > 0) {
+            boolean keySort = sortBy.length == 1
+                    && (SortBy.NATURAL_ORDER.equals(sortBy[0]) || (sortBy[0].getPropertyName() != null
+                            && column.getName().equals(sortBy[0].getPropertyName().getPropertyName())
+                            && sortBy[0].getSortOrder() == SortOrder.ASCENDING));
+            if (!ordered || !keySort) {
+                return null;
+            }
+        }
+
+        long[] range = getKeyRange(column, preQuery);
+        if (range == null) {
+            return null;
+        }
+
+        // split the key range in even intervals. The first and last partitions are left open
+        // so that keys outside of the range are not lost
+        long min = range[0];
+        long max = range[1];
+        long span = max - min + 1;
+        if (span <= 0) {
+            // overflow
+            return null;
+        }
+        long step = span / partitions + (span % partitions == 0 ? 0 : 1);
+        int count = (int) Math.min(partitions, (span + step - 1) / step);
+        if (count < 2) {
+            return null;
+        }
+
+        FilterFactory ff = getDataStore().getFilterFactory();
+        PropertyName property = ff.property(column.getName());
+        List<Query> queries = new ArrayList<Query>();
+        for (int i = 0; i < count; i++) {
+            List<Filter> filters = new ArrayList<Filter>();
+            if (preQuery.getFilter() != null && preQuery.getFilter() != Filter.INCLUDE) {
+                filters.add(preQuery.getFilter());
+            }
+            if (i > 0) {
+                filters.add(ff.greaterOrEqual(property, ff.literal(min + i * step)));
+            }
+            if (i < count - 1) {
+                filters.add(ff.less(property, ff.literal(min + (i + 1) * step)));
+            }
+
+            DefaultQuery partition = new DefaultQuery(preQuery);
+            partition.setFilter(filters.size() == 1 ? filters.get(0) : ff.and(filters));
+            queries.add(partition);
+        }
+
+        return new JDBCParallelFeatureReader(this, querySchema, queries, ordered);
+    }
+
+    /**
+     * Returns the minimum and maximum value of the key column over the whole table, or null 
+     * if the table is empty
+     */
+    long[] getKeyRange(PrimaryKeyColumn column, Query query) throws IOException {
+        JDBCDataStore dataStore = getDataStore();
+        SQLDialect dialect = dataStore.getSQLDialect();
+        Connection cx = dataStore.getConnection(getState());
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            StringBuffer sql = new StringBuffer("SELECT MIN(");
+            dialect.encodeColumnName(null, column.getName(), sql);
+            sql.append("), MAX(");
+            dialect.encodeColumnName(null, column.getName(), sql);
+            sql.append(") FROM ");
+            dataStore.encodeTableName(getSchema().getTypeName(), sql, query.getHints());
+            dataStore.getLogger().fine(sql.toString());
+
+            st = cx.createStatement();
+            rs = st.executeQuery(sql.toString());
+            rs.next();
+            Number min = (Number) rs.getObject(1);
+            Number max = (Number) rs.getObject(2);
+            if (min == null || max == null) {
+                return null;
+            }
+            return new long[] { min.longValue(), max.longValue() };
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        } finally {
+            dataStore.closeSafe(rs);
+            dataStore.closeSafe(st);
+            dataStore.releaseConnection(cx, getState());
+        }
+    }
+
     SimpleFeatureType[] buildQueryAndReturnFeatureTypes(SimpleFeatureType featureType, 
         String[] propertyNames, Filter filter) {
 
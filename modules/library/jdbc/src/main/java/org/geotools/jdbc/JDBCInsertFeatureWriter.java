@@ -20,13 +20,18 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentState;
 import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.identity.FeatureIdImpl;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.identity.FeatureId;
 
 /**
  * 
@@ -38,6 +43,17 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
     
     ResultSetFeature last;
     
+    /**
+     * Copies of the features waiting to be inserted with the next batch
+     */
+    List<SimpleFeature> batch = new ArrayList<SimpleFeature>();
+    
+    /**
+     * The identifiers handed out for the features in the batch, updated once the batch
+     * has been inserted
+     */
+    List<FeatureId> batchIds = new ArrayList<FeatureId>();
+    
     public JDBCInsertFeatureWriter(String sql, Connection cx,
             JDBCFeatureSource featureSource, Hints hints) throws SQLException, IOException {
         super(sql, cx, featureSource, featureSource.getSchema(), hints);
@@ -71,6 +87,24 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
     }
 
     public void write() throws IOException {
+        int batchSize = dataStore.getBatchInsertSize();
+        if (batchSize > 1) {
+            // last gets reused, keep a copy of it around until the batch is flushed
+            // (attribute by attribute, the result set feature does not support getAttributes())
+            Object[] values = new Object[last.getAttributeCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = last.getAttribute(i);
+            }
+            SimpleFeature copy = SimpleFeatureBuilder.build(featureType, values, last.getID());
+            copy.getUserData().putAll(last.getUserData());
+            batch.add(copy);
+            batchIds.add(last.getIdentifier());
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+            return;
+        }
+        
         try {
             //do the insert
             dataStore.insert(last, featureType, st.getConnection());
@@ -86,13 +120,47 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
             throw (IOException) new IOException().initCause(e);
         }
     }
+    
+    /**
+     * Inserts the features accumulated in the current batch
+     */
+    void flush() throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        
+        try {
+            dataStore.insert(batch, featureType, st.getConnection());
+            
+            ContentEntry entry = featureSource.getEntry();
+            ContentState state = entry.getState( this.tx );
+            for (int i = 0; i < batch.size(); i++) {
+                //the datastore sets as userData, grab it and update the fids
+                SimpleFeature feature = batch.get(i);
+                String fid = (String) feature.getUserData().get( "fid" );
+                ((FeatureIdImpl) feature.getIdentifier()).setID( fid );
+                ((FeatureIdImpl) batchIds.get(i)).setID( fid );
+                
+                state.fireFeatureAdded( featureSource, feature );
+            }
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        } finally {
+            batch.clear();
+            batchIds.clear();
+        }
+    }
 
     public void close() throws IOException {
-        super.close();
-        
-        if ( last != null ) {
-            last.close();
-            last = null;
+        try {
+            flush();
+        } finally {
+            super.close();
+            
+            if ( last != null ) {
+                last.close();
+                last = null;
+            }
         }
     }
 }
@@ -158,6 +158,7 @@ public abstract class JDBCJNDIDataStoreFactory extends JDBCDataStoreFactory {
         parameters.put(NAMESPACE.key, NAMESPACE);
         parameters.put(EXPOSE_PK.key, EXPOSE_PK);
         parameters.put(PK_METADATA_TABLE.key, PK_METADATA_TABLE);
+        parameters.put(BATCH_INSERT_SIZE.key, BATCH_INSERT_SIZE);
 
     }
 
@@ -0,0 +1,293 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Feature reader running a set of partition queries in parallel, each one on its own
+ * connection and thread, and merging the results.
+ * <p>
+ * The features decoded by each partition are handed over to the reader thread through a
+ * bounded queue. In unordered mode all partitions share the same queue and features are
+ * returned as soon as they are available, in ordered mode the partitions are returned one
+ * after the other, following the order of the queries provided.
+ * </p>
+ * <p>
+ * The partitions are read using the {@link Transaction#AUTO_COMMIT} transaction, the reader
+ * cannot be used to read the uncommitted state of a transaction.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class JDBCParallelFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    /**
+     * Marks the end of a partition in the queues
+     */
+    static final Object END = new Object();
+
+    /**
+     * Number of features each partition can decode ahead of the reader
+     */
+    static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    /**
+     * How long close() waits for the partition threads to release their connections
+     */
+    static final long CLOSE_TIMEOUT = 30;
+
+    static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    JDBCFeatureSource featureSource;
+
+    SimpleFeatureType featureType;
+
+    boolean ordered;
+
+    int partitions;
+
+    List<BlockingQueue<Object>> queues;
+
+    ExecutorService executor;
+
+    /**
+     * Number of partitions the reader already consumed
+     */
+    int finished;
+
+    SimpleFeature next;
+
+    volatile boolean closed;
+
+    volatile Throwable failure;
+
+    /**
+     * Builds the reader and starts reading the partitions in background
+     *
+     * @param featureSource The source the partitions are read from
+     * @param featureType The type of the features returned by each query
+     * @param queries The partition queries, they should not overlap
+     * @param ordered If true the partitions will be returned in the same order as the queries
+     */
+    public JDBCParallelFeatureReader(JDBCFeatureSource featureSource,
+            SimpleFeatureType featureType, List<Query> queries, boolean ordered) {
+        this.featureSource = featureSource;
+        this.featureType = featureType;
+        this.ordered = ordered;
+        this.partitions = queries.size();
+
+        int bufferSize = featureSource.getDataStore().getFetchSize();
+        if (bufferSize <= 0) {
+            bufferSize = DEFAULT_BUFFER_SIZE;
+        }
+        queues = new ArrayList<BlockingQueue<Object>>();
+        if (ordered) {
+            for (int i = 0; i < partitions; i++) {
+                queues.add(new ArrayBlockingQueue<Object>(bufferSize));
+            }
+        } else {
+            queues.add(new ArrayBlockingQueue<Object>(bufferSize * partitions));
+        }
+
+        final int id = SEQUENCE.incrementAndGet();
+        executor = Executors.newFixedThreadPool(partitions, new ThreadFactory() {
+            int count = 0;
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "JDBCParallelFeatureReader-" + id + "-" + (count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (int i = 0; i < partitions; i++) {
+            BlockingQueue<Object> queue = queues.get(ordered ? i : 0);
+            executor.execute(new PartitionReader(queries.get(i), queue));
+        }
+    }
+
+    /**
+     * The number of partitions, that is, of queries run in parallel
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        ensureOpen();
+
+        while (next == null && finished < partitions) {
+            checkFailure();
+
+            Object item;
+            try {
+                item = queues.get(ordered ? finished : 0).take();
+            } catch (InterruptedException e) {
+                throw (IOException) new IOException(
+                        "Interrupted while waiting for the next feature").initCause(e);
+            }
+            if (item == END) {
+                finished++;
+            } else {
+                next = (SimpleFeature) item;
+            }
+        }
+        checkFailure();
+
+        return next != null;
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features in this reader, you should call "
+                    + "hasNext() to check for feature availability");
+        }
+        SimpleFeature result = next;
+        next = null;
+        return result;
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // stop the partition threads, the ones waiting on a full queue will be interrupted
+        executor.shutdownNow();
+        for (BlockingQueue<Object> queue : queues) {
+            queue.clear();
+        }
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                featureSource.getDataStore().getLogger().warning(
+                        "Some parallel read threads did not terminate in " + CLOSE_TIMEOUT
+                                + " seconds, their connections are still in use");
+            }
+        } catch (InterruptedException e) {
+            throw (IOException) new IOException(
+                    "Interrupted while waiting for the partition readers to close").initCause(e);
+        }
+        next = null;
+    }
+
+    void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("reader already closed");
+        }
+    }
+
+    void checkFailure() throws IOException {
+        if (failure != null) {
+            throw (IOException) new IOException("Failed to read a partition of "
+                    + featureType.getTypeName()).initCause(failure);
+        }
+    }
+
+    /**
+     * Reads a single partition and pushes the features in a queue
+     */
+    class PartitionReader implements Runnable {
+
+        Query query;
+
+        BlockingQueue<Object> queue;
+
+        PartitionReader(Query query, BlockingQueue<Object> queue) {
+            this.query = query;
+            this.queue = queue;
+        }
+
+        public void run() {
+            JDBCDataStore dataStore = featureSource.getDataStore();
+            SQLDialect dialect = dataStore.getSQLDialect();
+            Connection cx = null;
+            JDBCFeatureReader reader = null;
+            try {
+                cx = dataStore.getConnection(Transaction.AUTO_COMMIT);
+                cx.setAutoCommit(dialect.isAutoCommitQuery());
+
+                if (dialect instanceof PreparedStatementSQLDialect) {
+                    PreparedStatement ps = dataStore.selectSQLPS(featureType, query, cx);
+                    reader = new JDBCFeatureReader(ps, cx, featureSource, featureType, query.getHints());
+                } else {
+                    String sql = dataStore.selectSQL(featureType, query);
+                    dataStore.getLogger().fine(sql);
+
+                    reader = new JDBCFeatureReader(sql, cx, featureSource, featureType, query.getHints());
+                }
+
+                while (!closed && reader.hasNext()) {
+                    SimpleFeature feature = reader.next();
+                    if (feature != null) {
+                        queue.put(feature);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the reader got closed
+            } catch (Throwable t) { // NOSONAR
+                if (failure == null) {
+                    failure = t;
+                }
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (Exception e) {
+                        dataStore.getLogger().log(Level.FINE, "Error closing partition reader", e);
+                    }
+                } else if (cx != null) {
+                    dataStore.closeSafe(cx);
+                }
+            }
+
+            // tell the consumer the partition is over, unless nobody is listening anymore
+            if (!closed) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    // the reader got closed
+                }
+            }
+        }
+    }
+
+}
@@ -90,16 +90,23 @@ public class JDBCUpdateInsertFeatureWriter extends JDBCUpdateFeatureWriter {
     }
     
     public void close() throws IOException {
-        if ( inserter != null ) {
-            //JD: do not call close because the inserter borrowed all of its state
-            // from this reader... super will deal with it.
-            // AA: yet, make it throw away all references so that we won't get
-            // false positive information about connection leaks
-            inserter.cleanup();
-            inserter = null;
+        try {
+            if ( inserter != null ) {
+                // insert whatever is still pending in the current batch
+                inserter.flush();
+            }
+        } finally {
+            if ( inserter != null ) {
+                //JD: do not call close because the inserter borrowed all of its state
+                // from this reader... super will deal with it.
+                // AA: yet, make it throw away all references so that we won't get
+                // false positive information about connection leaks
+                inserter.cleanup();
+                inserter = null;
+            }
+            
+            super.close();
         }
-        
-        super.close();
     }
     
 }
@@ -0,0 +1,219 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.geotools.data.Base64;
+import org.geotools.data.DataSourceException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ByteArrayInStream;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Shared WKB geometry codec that dialects moving geometries as Well Known Binary can use
+ * to decode the values found in a result set, and encode the ones sent to the database.
+ * <p>
+ * The codec keeps its reader, writers and input stream around between calls, and
+ * is not thread safe: use {@link #get(GeometryFactory)} to grab the instance bound to the
+ * current thread. The WKB can be provided as raw bytes, as hexadecimal text or as base64
+ * text (the latter is more compact than the bytea text encoding some drivers use).
+ * </p>
+ *
+ * @source $URL$
+ */
+public class WKBGeometryCodec {
+
+    /**
+     * The way the WKB bytes are encoded in the result set
+     */
+    public enum Encoding {
+        /** Raw binary */
+        BINARY,
+        /** Hexadecimal text, as in "0101000000..." */
+        HEX,
+        /** Base64 text */
+        BASE64
+    }
+
+    static final ThreadLocal<WKBGeometryCodec> CODEC = new ThreadLocal<WKBGeometryCodec>();
+
+    /**
+     * Returns the codec bound to the current thread, set up to build geometries
+     * with the specified factory
+     * @param factory
+     */
+    public static WKBGeometryCodec get(GeometryFactory factory) {
+        WKBGeometryCodec codec = CODEC.get();
+        if(codec == null) {
+            codec = new WKBGeometryCodec(factory);
+            CODEC.set(codec);
+        } else {
+            codec.setGeometryFactory(factory);
+        }
+        return codec;
+    }
+
+    /**
+     * Returns the codec bound to the current thread, for encoding purposes: the factory
+     * used to decode geometries is left untouched
+     */
+    public static WKBGeometryCodec get() {
+        WKBGeometryCodec codec = CODEC.get();
+        if(codec == null) {
+            codec = new WKBGeometryCodec();
+            CODEC.set(codec);
+        }
+        return codec;
+    }
+
+    GeometryFactory factory;
+
+    WKBReader reader;
+
+    ByteArrayInStream inStream = new ByteArrayInStream(new byte[0]);
+
+    WKBWriter writer2D;
+
+    WKBWriter writer3D;
+
+    public WKBGeometryCodec() {
+        this(new GeometryFactory());
+    }
+
+    public WKBGeometryCodec(GeometryFactory factory) {
+        setGeometryFactory(factory);
+    }
+
+    /**
+     * Sets the factory used to build the decoded geometries
+     * @param factory
+     */
+    public void setGeometryFactory(GeometryFactory factory) {
+        if(factory == null) {
+            factory = new GeometryFactory();
+        }
+        if(factory != this.factory) {
+            this.factory = factory;
+            this.reader = new WKBReader(factory);
+        }
+    }
+
+    /**
+     * Reads and decodes a geometry from the specified column of the result set
+     * @return The geometry, or null if the column value is null
+     */
+    public Geometry read(ResultSet rs, int column, Encoding encoding) throws IOException, SQLException {
+        return decode(rs.getBytes(column), encoding);
+    }
+
+    /**
+     * Reads and decodes a geometry from the specified column of the result set
+     * @return The geometry, or null if the column value is null
+     */
+    public Geometry read(ResultSet rs, String column, Encoding encoding) throws IOException, SQLException {
+        return decode(rs.getBytes(column), encoding);
+    }
+
+    /**
+     * Decodes a geometry from its encoded WKB representation
+     * @return The geometry, or null if the bytes are null
+     */
+    public Geometry decode(byte[] bytes, Encoding encoding) throws IOException {
+        if(bytes == null) {
+            return null;
+        }
+
+        byte[] wkb;
+        if(encoding == Encoding.BASE64) {
+            wkb = Base64.decode(bytes);
+        } else if(encoding == Encoding.HEX) {
+            wkb = hexToBytes(bytes);
+        } else {
+            wkb = bytes;
+        }
+
+        try {
+            inStream.setBytes(wkb);
+            return reader.read(inStream);
+        } catch (Exception e) {
+            throw new DataSourceException("An exception occurred while parsing WKB data", e);
+        }
+    }
+
+    /**
+     * Encodes a geometry as WKB, using three dimensions only if the geometry has them
+     * @return The WKB, or null if the geometry is null
+     */
+    public byte[] encode(Geometry geometry) {
+        if(geometry == null) {
+            return null;
+        }
+
+        Coordinate c = geometry.getCoordinate();
+        return encode(geometry, c != null && !Double.isNaN(c.z) ? 3 : 2);
+    }
+
+    /**
+     * Encodes a geometry as WKB with the specified number of dimensions, 2 or 3
+     * @return The WKB, or null if the geometry is null
+     */
+    public byte[] encode(Geometry geometry, int dimension) {
+        if(geometry == null) {
+            return null;
+        }
+
+        if(dimension == 3) {
+            if(writer3D == null) {
+                writer3D = new WKBWriter(3);
+            }
+            return writer3D.write(geometry);
+        } else {
+            if(writer2D == null) {
+                writer2D = new WKBWriter(2);
+            }
+            return writer2D.write(geometry);
+        }
+    }
+
+    /**
+     * Turns the ASCII bytes of an hexadecimal string into the bytes it represents
+     */
+    static byte[] hexToBytes(byte[] hex) {
+        byte[] result = new byte[hex.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) ((hexValue(hex[i * 2]) << 4) | hexValue(hex[i * 2 + 1]));
+        }
+        return result;
+    }
+
+    static int hexValue(byte c) {
+        if (c <= '9') {
+            return c - '0';
+        } else if (c <= 'F') {
+            return c - 'A' + 10;
+        } else {
+            return c - 'a' + 10;
+        }
+    }
+}
@@ -16,10 +16,14 @@
  */
 package org.geotools.jdbc;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.geotools.data.DefaultQuery;
+import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -474,6 +478,75 @@ public abstract class JDBCFeatureSourceTest extends JDBCTestSupport {
 
     }
     
+    public void testParallelRead() throws Exception {
+        Query query = new Query(featureSource.getSchema().getTypeName());
+        List<String> expected = readIds(query);
+        Collections.sort(expected);
+        
+        query.setHints(new Hints(Hints.PARALLEL_READ_PARTITIONS, 2));
+        List<String> ids = readIds(query);
+        Collections.sort(ids);
+        assertEquals(expected, ids);
+        
+        // more partitions than features
+        query.setHints(new Hints(Hints.PARALLEL_READ_PARTITIONS, 10));
+        ids = readIds(query);
+        Collections.sort(ids);
+        assertEquals(expected, ids);
+    }
+    
+    public void testParallelReadFiltered() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        Filter filter = ff.greater(ff.property(aname("intProperty")), ff.literal(0));
+        Query query = new Query(featureSource.getSchema().getTypeName(), filter);
+        List<String> expected = readIds(query);
+        Collections.sort(expected);
+        assertEquals(2, expected.size());
+        
+        query.setHints(new Hints(Hints.PARALLEL_READ_PARTITIONS, 3));
+        List<String> ids = readIds(query);
+        Collections.sort(ids);
+        assertEquals(expected, ids);
+    }
+    
+    public void testParallelReadOrdered() throws Exception {
+        Query query = new Query(featureSource.getSchema().getTypeName());
+        query.setSortBy(new SortBy[] {SortBy.NATURAL_ORDER});
+        List<String> expected = readIds(query);
+        
+        Hints hints = new Hints(Hints.PARALLEL_READ_PARTITIONS, 2);
+        hints.put(Hints.PARALLEL_READ_ORDERED, Boolean.TRUE);
+        query.setHints(hints);
+        assertEquals(expected, readIds(query));
+    }
+    
+    public void testParallelReadFallback() throws Exception {
+        // paging cannot be split among partitions
+        Query query = new Query(featureSource.getSchema().getTypeName());
+        query.setStartIndex(1);
+        query.setHints(new Hints(Hints.PARALLEL_READ_PARTITIONS, 2));
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = featureSource.getReader(query);
+        try {
+            assertFalse(reader instanceof JDBCParallelFeatureReader);
+        } finally {
+            reader.close();
+        }
+        assertEquals(2, readIds(query).size());
+    }
+    
+    List<String> readIds(Query query) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = featureSource.getReader(query);
+        try {
+            while(reader.hasNext()) {
+                ids.add(reader.next().getID());
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+    
     SimpleFeature getFirstFeature(SimpleFeatureCollection fc) {
         SimpleFeatureIterator fi = null;
         try {
@@ -108,6 +108,36 @@ public abstract class JDBCFeatureStoreTest extends JDBCTestSupport {
         }
     }
     
+    public void testAddFeaturesBatched() throws IOException {
+        // 5 features in batches of 2, the last one gets inserted on close
+        dataStore.setBatchInsertSize(2);
+        
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder(featureStore.getSchema());
+        DefaultFeatureCollection collection = new DefaultFeatureCollection(null,
+                featureStore.getSchema());
+        
+        FeatureEventWatcher watcher = new FeatureEventWatcher();
+        
+        for (int i = 3; i < 8; i++) {
+            b.set(aname("intProperty"), new Integer(i));
+            b.set(aname("geometry"), new GeometryFactory().createPoint(new Coordinate(i, i)));
+            collection.add(b.buildFeature(null));
+        }
+        featureStore.addFeatureListener( watcher );
+        List<FeatureId> fids = featureStore.addFeatures(collection);
+        assertEquals( watcher.bounds, collection.getBounds() );
+        
+        assertEquals(5, fids.size());
+        assertEquals(5, new HashSet<FeatureId>(fids).size());
+        assertEquals(8, featureStore.getFeatures().size());
+
+        FilterFactory ff = dataStore.getFilterFactory();
+        for (FeatureId identifier : fids) {
+            SimpleFeatureCollection features = featureStore.getFeatures(ff.id(Collections.singleton(identifier)));
+            assertEquals(1, features.size());
+        }
+    }
+    
     public void testAddFeaturesUseProvidedFid() throws IOException {
         // check we advertise the ability to reuse feature ids
         assertTrue(featureStore.getQueryCapabilities().isUseProvidedFIDSupported());
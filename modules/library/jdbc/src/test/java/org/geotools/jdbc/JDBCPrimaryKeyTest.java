@@ -17,8 +17,11 @@
 package org.geotools.jdbc;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import org.geotools.data.FeatureStore;
+import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -27,6 +30,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.Id;
+import org.opengis.filter.identity.FeatureId;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -84,6 +88,25 @@ public abstract class JDBCPrimaryKeyTest extends JDBCTestSupport {
         assertPrimaryKeyValues(features,4);
     }
     
+    public void testNonIncrementingPrimaryKeyBatched() throws Exception {
+        // 5 features in batches of 2, the keys of the rows not yet flushed must not clash
+        dataStore.setBatchInsertSize(2);
+        JDBCFeatureStore fs = (JDBCFeatureStore) dataStore.getFeatureSource(tname("noninc"));
+        
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder( fs.getSchema() );
+        DefaultFeatureCollection collection = new DefaultFeatureCollection(null, fs.getSchema());
+        for (int i = 4; i < 9; i++) {
+            b.add("feature" + i);
+            b.add( new GeometryFactory().createPoint( new Coordinate(i,i) ) );
+            collection.add(b.buildFeature(null));
+        }
+        List<FeatureId> fids = fs.addFeatures(collection);
+        assertEquals(5, fids.size());
+        assertEquals(5, new HashSet<FeatureId>(fids).size());
+        
+        assertPrimaryKeyValues(fs.getFeatures(), 8);
+    }
+    
     protected void addFeature( SimpleFeatureType featureType, FeatureCollection features ) throws Exception {
         SimpleFeatureBuilder b = new SimpleFeatureBuilder( featureType );
         b.add("four");
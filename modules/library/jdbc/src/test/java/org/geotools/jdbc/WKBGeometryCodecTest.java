@@ -0,0 +1,111 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.Base64;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * 
+ * @source $URL$
+ */
+public class WKBGeometryCodecTest extends TestCase {
+
+    WKTReader reader = new WKTReader();
+
+    public void testBinary() throws Exception {
+        Geometry g = reader.read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))");
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        byte[] wkb = codec.encode(g);
+        assertTrue(g.equalsExact(codec.decode(wkb, WKBGeometryCodec.Encoding.BINARY)));
+    }
+
+    public void testHex() throws Exception {
+        Geometry g = reader.read("LINESTRING(0 0, 1.5 2.5, -3 4)");
+        String hex = WKBWriter.toHex(new WKBWriter().write(g));
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        assertTrue(g.equalsExact(codec.decode(hex.getBytes("ASCII"), WKBGeometryCodec.Encoding.HEX)));
+        assertTrue(g.equalsExact(codec.decode(hex.toLowerCase().getBytes("ASCII"),
+                WKBGeometryCodec.Encoding.HEX)));
+    }
+
+    public void testBase64() throws Exception {
+        Geometry g = reader.read("MULTIPOINT((0 0), (1 1))");
+        String base64 = Base64.encodeBytes(new WKBWriter().write(g));
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        assertTrue(g.equalsExact(codec.decode(base64.getBytes("ASCII"),
+                WKBGeometryCodec.Encoding.BASE64)));
+    }
+
+    public void testEncode3D() throws Exception {
+        Geometry g = reader.read("POINT(1 2 3)");
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        Geometry decoded = codec.decode(codec.encode(g), WKBGeometryCodec.Encoding.BINARY);
+        assertEquals(3.0, decoded.getCoordinate().z);
+    }
+
+    public void testEncode2D() throws Exception {
+        Geometry g = reader.read("POINT(1 2 3)");
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        Geometry decoded = codec.decode(codec.encode(g, 2), WKBGeometryCodec.Encoding.BINARY);
+        assertTrue(Double.isNaN(decoded.getCoordinate().z));
+        assertEquals(2.0, decoded.getCoordinate().y);
+    }
+
+    public void testNull() throws Exception {
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        assertNull(codec.encode(null));
+        assertNull(codec.decode(null, WKBGeometryCodec.Encoding.BINARY));
+    }
+
+    public void testInvalid() throws Exception {
+        WKBGeometryCodec codec = new WKBGeometryCodec();
+        try {
+            // little endian, unknown geometry type
+            codec.decode(new byte[] { 1, 99, 0, 0, 0 }, WKBGeometryCodec.Encoding.BINARY);
+            fail("Should have failed to decode invalid WKB");
+        } catch (IOException e) {
+            // fine
+        }
+    }
+
+    public void testThreadBound() throws Exception {
+        GeometryFactory factory = new GeometryFactory();
+        WKBGeometryCodec codec = WKBGeometryCodec.get(factory);
+        assertSame(codec, WKBGeometryCodec.get(factory));
+        Geometry g = codec.decode(codec.encode(reader.read("POINT(1 2)")),
+                WKBGeometryCodec.Encoding.BINARY);
+        assertSame(factory, g.getFactory());
+
+        GeometryFactory other = new GeometryFactory();
+        g = WKBGeometryCodec.get(other).decode(codec.encode(g), WKBGeometryCodec.Encoding.BINARY);
+        assertSame(other, g.getFactory());
+
+        // grabbing the codec for encoding leaves the decoding factory alone
+        assertSame(codec, WKBGeometryCodec.get());
+        g = codec.decode(codec.encode(g), WKBGeometryCodec.Encoding.BINARY);
+        assertSame(other, g.getFactory());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.cache;
+
+/**
+ * A snapshot of the activity of a {@link TileCachingFeatureSource}
+ *
+ * @source $URL$
+ */
+public class CacheStatistics {
+
+    long hits;
+
+    long partialHits;
+
+    long misses;
+
+    long bypassed;
+
+    long tileHits;
+
+    long tileMisses;
+
+    long evictions;
+
+    long invalidations;
+
+    int tileCount;
+
+    long size;
+
+    long maxSize;
+
+    /**
+     * The number of queries answered from the cache alone
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of queries answered partly from the cache, partly loading the missing tiles from
+     * the source
+     */
+    public long getPartialHits() {
+        return partialHits;
+    }
+
+    /**
+     * The number of cacheable queries for which no tile was found in the cache
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The number of queries that could not be handled by the cache and have been sent straight to
+     * the source
+     */
+    public long getBypassed() {
+        return bypassed;
+    }
+
+    /**
+     * The number of tiles found in the cache
+     */
+    public long getTileHits() {
+        return tileHits;
+    }
+
+    /**
+     * The number of tiles that had to be loaded from the source
+     */
+    public long getTileMisses() {
+        return tileMisses;
+    }
+
+    /**
+     * The number of tiles removed from the cache to respect its size limit
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The number of tiles removed from the cache because the data they contained changed
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * The number of tiles currently in the cache
+     */
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * The estimated size in bytes of the cached features
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * The maximum size in bytes of the cached features
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The ratio of tiles served from the cache over the total tiles requested, or 0 if no tile has
+     * been requested yet
+     */
+    public double getHitRatio() {
+        long total = tileHits + tileMisses;
+        return total == 0 ? 0 : ((double) tileHits) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics [hits=" + hits + ", partialHits=" + partialHits + ", misses="
+                + misses + ", bypassed=" + bypassed + ", tileHits=" + tileHits + ", tileMisses="
+                + tileMisses + ", evictions=" + evictions + ", invalidations=" + invalidations
+                + ", tileCount=" + tileCount + ", size=" + size + ", maxSize=" + maxSize
+                + ", hitRatio=" + getHitRatio() + "]";
+    }
+}
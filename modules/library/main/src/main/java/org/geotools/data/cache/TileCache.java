@@ -0,0 +1,191 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The tiles of a {@link TileCachingFeatureSource}, kept in least recently used order and evicted
+ * once their estimated size exceeds the maximum.
+ * <p>
+ * Each invalidation bumps a generation counter: tiles loaded while an invalidation was taking
+ * place might hold stale data, so {@link #put(long, Tile, long)} refuses them.
+ *
+ * @source $URL$
+ */
+class TileCache {
+
+    /**
+     * The features of a tile, along with their estimated size
+     */
+    static class Tile {
+        final SimpleFeature[] features;
+
+        final long size;
+
+        Tile(SimpleFeature[] features, long size) {
+            this.features = features;
+            this.size = size;
+        }
+    }
+
+    final long maxSize;
+
+    LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true);
+
+    TileGrid grid;
+
+    long size;
+
+    long generation;
+
+    CacheStatistics counters = new CacheStatistics();
+
+    TileCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the current generation, or -1 if the grid has been replaced in the meantime, so
+     * that tiles computed on an old grid are never cached
+     */
+    synchronized long getGeneration(TileGrid grid) {
+        return this.grid == grid ? generation : -1;
+    }
+
+    synchronized TileGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Sets a new grid, dropping all the tiles built on the old one
+     */
+    synchronized void setGrid(TileGrid grid) {
+        clear();
+        this.grid = grid;
+    }
+
+    /**
+     * Returns the tile, or null if not cached, updating the tile statistics
+     */
+    synchronized Tile get(long key) {
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            counters.tileMisses++;
+        } else {
+            counters.tileHits++;
+        }
+        return tile;
+    }
+
+    /**
+     * Caches a tile, unless an invalidation happened after the specified generation or the tile
+     * alone is larger than the cache
+     *
+     * @return true if the tile has been cached
+     */
+    synchronized boolean put(long key, Tile tile, long generation) {
+        if (generation != this.generation || tile.size > maxSize) {
+            return false;
+        }
+        Tile old = tiles.put(key, tile);
+        if (old != null) {
+            size -= old.size;
+        }
+        size += tile.size;
+
+        // evict the least recently used tiles
+        Iterator<Map.Entry<Long, Tile>> it = tiles.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<Long, Tile> entry = it.next();
+            if (entry.getKey() != key) {
+                size -= entry.getValue().size;
+                it.remove();
+                counters.evictions++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the tiles intersecting the specified envelope
+     */
+    synchronized void invalidate(Envelope envelope) {
+        generation++;
+        if (grid == null) {
+            return;
+        }
+        // iterate over the entries, a lookup would change the access order
+        Iterator<Map.Entry<Long, Tile>> it = tiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Tile> entry = it.next();
+            if (grid.envelope(entry.getKey()).intersects(envelope)) {
+                size -= entry.getValue().size;
+                it.remove();
+                counters.invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Removes all the tiles
+     */
+    synchronized void clear() {
+        generation++;
+        counters.invalidations += tiles.size();
+        tiles.clear();
+        size = 0;
+    }
+
+    synchronized void hit() {
+        counters.hits++;
+    }
+
+    synchronized void partialHit() {
+        counters.partialHits++;
+    }
+
+    synchronized void miss() {
+        counters.misses++;
+    }
+
+    synchronized void bypass() {
+        counters.bypassed++;
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        CacheStatistics result = new CacheStatistics();
+        result.hits = counters.hits;
+        result.partialHits = counters.partialHits;
+        result.misses = counters.misses;
+        result.bypassed = counters.bypassed;
+        result.tileHits = counters.tileHits;
+        result.tileMisses = counters.tileMisses;
+        result.evictions = counters.evictions;
+        result.invalidations = counters.invalidations;
+        result.tileCount = tiles.size();
+        result.size = size;
+        result.maxSize = maxSize;
+        return result;
+    }
+}
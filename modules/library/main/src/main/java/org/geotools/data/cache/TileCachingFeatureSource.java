@@ -0,0 +1,461 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataAccess;
+import org.geotools.data.DataSourceException;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureListener;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.ResourceInfo;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.store.EmptyFeatureCollection;
+import org.geotools.data.store.ReTypingFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.collection.MaxSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.FilterAttributeExtractor;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A feature source decorator caching the features of the wrapped source in memory, meant to
+ * speed up the repeated spatial queries against slow sources, such as the ones issued by a map
+ * server against a database.
+ * <p>
+ * The bounds of the source are split in a grid of tiles, the tiles are loaded from the wrapped
+ * source on demand and kept in least recently used order, the oldest ones being evicted once the
+ * estimated size of the cached features exceeds the maximum. A query is answered by collecting
+ * the features of the tiles touched by its bounding box, and the missing ones are loaded from the
+ * source with a single query covering them. The full query filter, the max features and the
+ * property selection are then applied in memory.
+ * <p>
+ * The cache listens to the wrapped source {@link FeatureEvent}s, including the transaction
+ * commits, removing the tiles touched by the modified features, or all of them if the event does
+ * not provide any bounds. Changes not notified by the source, such as the ones made by other
+ * applications to a shared database, are not detected.
+ * <p>
+ * Queries asking for sorting, paging, reprojection, versions or joins are passed straight to the
+ * wrapped source, and so are the ones not restricting the default geometry to a finite area, or
+ * filtering on other geometry attributes: features without a geometry are not cached. The
+ * features returned are shared with the cache and should not be modified. Call
+ * {@link #dispose()} once the source is no longer needed to stop listening to the wrapped source
+ * events.
+ *
+ * @source $URL$
+ */
+public class TileCachingFeatureSource implements SimpleFeatureSource {
+
+    static final Logger LOGGER = Logging.getLogger(TileCachingFeatureSource.class);
+
+    /**
+     * The default number of tiles along each axis
+     */
+    public static final int DEFAULT_TILES = 16;
+
+    /**
+     * The default maximum size of the cached features, 64MB
+     */
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    SimpleFeatureSource wrapped;
+
+    int tilesPerSide;
+
+    TileCache cache;
+
+    FeatureListener listener = new FeatureListener() {
+        public void changed(FeatureEvent event) {
+            invalidate(event.getBounds());
+        }
+    };
+
+    /**
+     * Builds a cache with the default number of tiles and maximum size
+     *
+     * @param wrapped The feature source to be cached
+     */
+    public TileCachingFeatureSource(SimpleFeatureSource wrapped) {
+        this(wrapped, DEFAULT_TILES, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Builds a new cache
+     *
+     * @param wrapped The feature source to be cached
+     * @param tilesPerSide The number of tiles along each axis of the source bounds
+     * @param maxSize The maximum size, in bytes, of the cached features. The size of each feature
+     *        is estimated from its attribute values
+     */
+    public TileCachingFeatureSource(SimpleFeatureSource wrapped, int tilesPerSide, long maxSize) {
+        if (tilesPerSide < 1) {
+            throw new IllegalArgumentException("The tiles per side must be positive");
+        }
+        this.wrapped = wrapped;
+        this.tilesPerSide = tilesPerSide;
+        this.cache = new TileCache(maxSize);
+        wrapped.addFeatureListener(listener);
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics
+     */
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
+    }
+
+    /**
+     * Removes all the cached features
+     */
+    public void clear() {
+        cache.setGrid(null);
+    }
+
+    /**
+     * Stops listening to the wrapped source events and removes all the cached features
+     */
+    public void dispose() {
+        wrapped.removeFeatureListener(listener);
+        clear();
+    }
+
+    /**
+     * Removes the tiles touched by the specified bounds, or all of them if the bounds are not
+     * available or not contained in the grid (the grid bounds will be recomputed in this case)
+     */
+    void invalidate(ReferencedEnvelope bounds) {
+        TileGrid grid = cache.getGrid();
+        if (grid == null) {
+            cache.clear();
+        } else if (bounds == null || bounds.isNull() || !grid.bounds.contains(bounds)) {
+            cache.setGrid(null);
+        } else {
+            cache.invalidate(bounds);
+        }
+    }
+
+    public SimpleFeatureCollection getFeatures(Query query) throws IOException {
+        String typeName = getSchema().getName().getLocalPart();
+        if (query.getTypeName() != null && !typeName.equals(query.getTypeName())) {
+            throw new DataSourceException("Typename mismatch, query asks for '"
+                    + query.getTypeName() + " but this feature source provides '" + typeName
+                    + "'");
+        }
+
+        TileGrid grid = isCacheable(query) ? getGrid() : null;
+        if (grid == null) {
+            cache.bypass();
+            return wrapped.getFeatures(query);
+        }
+        long generation = cache.getGeneration(grid);
+
+        query = DataUtilities.resolvePropertyNames(query, getSchema());
+        Filter filter = query.getFilter();
+        Envelope extent = getExtent(filter).intersection(grid.bounds);
+        if (extent.isNull() || Filter.EXCLUDE.equals(filter)) {
+            cache.hit();
+            return new EmptyFeatureCollection(getSchema());
+        }
+
+        // collect the cached tiles, and the missing ones
+        List<TileCache.Tile> tiles = new ArrayList<TileCache.Tile>();
+        List<Long> missing = new ArrayList<Long>();
+        int minCol = grid.column(extent.getMinX());
+        int maxCol = grid.column(extent.getMaxX());
+        for (int row = grid.row(extent.getMinY()); row <= grid.row(extent.getMaxY()); row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                long key = grid.key(col, row);
+                TileCache.Tile tile = cache.get(key);
+                if (tile == null) {
+                    missing.add(key);
+                } else {
+                    tiles.add(tile);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            cache.hit();
+        } else {
+            if (tiles.isEmpty()) {
+                cache.miss();
+            } else {
+                cache.partialHit();
+            }
+            tiles.addAll(loadTiles(grid, missing, generation));
+        }
+
+        // features crossing the tile borders are found in more than one tile
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        Set<String> ids = new HashSet<String>();
+        for (TileCache.Tile tile : tiles) {
+            for (SimpleFeature feature : tile.features) {
+                if (ids.add(feature.getID()) && filter.evaluate(feature)) {
+                    features.add(feature);
+                }
+            }
+        }
+        SimpleFeatureCollection result = new ListFeatureCollection(getSchema(), features);
+
+        if (!query.isMaxFeaturesUnlimited()) {
+            result = new MaxSimpleFeatureCollection(result, 0, query.getMaxFeatures());
+        }
+        if (query.getPropertyNames() != Query.ALL_NAMES) {
+            SimpleFeatureType target = SimpleFeatureTypeBuilder.retype(getSchema(), query
+                    .getPropertyNames());
+            if (!target.equals(getSchema())) {
+                result = new ReTypingFeatureCollection(result, target);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the query can be answered with the cached features
+     */
+    boolean isCacheable(Query query) {
+        return (query.getSortBy() == null || query.getSortBy().length == 0)
+                && (query.getStartIndex() == null || query.getStartIndex() == 0)
+                && query.getCoordinateSystem() == null
+                && query.getCoordinateSystemReproject() == null && query.getVersion() == null
+                && (query.getJoins() == null || query.getJoins().isEmpty())
+                && getExtent(query.getFilter()) != null;
+    }
+
+    /**
+     * Returns the area the filter restricts the default geometry to, or null if the filter does
+     * not restrict it to a finite area or uses other geometry attributes. The tiles are selected
+     * and loaded by the default geometry only, and do not hold the features without a geometry,
+     * so the other filters cannot be answered from the cache.
+     */
+    Envelope getExtent(Filter filter) {
+        GeometryDescriptor geometry = getSchema().getGeometryDescriptor();
+        if (filter == null || geometry == null) {
+            return null;
+        }
+        FilterAttributeExtractor extractor = new FilterAttributeExtractor(getSchema());
+        filter.accept(extractor, null);
+        for (String name : extractor.getAttributeNameSet()) {
+            if (getSchema().getDescriptor(name) instanceof GeometryDescriptor
+                    && !name.equals(geometry.getLocalName())) {
+                return null;
+            }
+        }
+        Envelope extent = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR,
+                null);
+        if (extent == null || Double.isInfinite(extent.getMinX())
+                || Double.isInfinite(extent.getMinY()) || Double.isInfinite(extent.getMaxX())
+                || Double.isInfinite(extent.getMaxY())) {
+            return null;
+        }
+        return extent;
+    }
+
+    /**
+     * Returns the current grid, building it from the source bounds if necessary, or null if the
+     * source has no geometry or its bounds are not available
+     */
+    TileGrid getGrid() throws IOException {
+        TileGrid grid = cache.getGrid();
+        if (grid == null && getSchema().getGeometryDescriptor() != null) {
+            ReferencedEnvelope bounds = wrapped.getBounds();
+            if (bounds == null || bounds.isNull()) {
+                return null;
+            }
+            grid = new TileGrid(bounds, tilesPerSide);
+            cache.setGrid(grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Loads the missing tiles with a single query covering all of them, and caches them
+     */
+    List<TileCache.Tile> loadTiles(TileGrid grid, List<Long> keys, long generation)
+            throws IOException {
+        Envelope area = new Envelope();
+        Map<Long, List<SimpleFeature>> contents = new LinkedHashMap<Long, List<SimpleFeature>>();
+        Map<Long, Long> sizes = new HashMap<Long, Long>();
+        for (Long key : keys) {
+            area.expandToInclude(grid.envelope(key));
+            contents.put(key, new ArrayList<SimpleFeature>());
+            sizes.put(key, 0l);
+        }
+
+        String geometry = getSchema().getGeometryDescriptor().getLocalName();
+        Filter bbox = ff.bbox(geometry, area.getMinX(), area.getMinY(), area.getMaxX(), area
+                .getMaxY(), null);
+        Query query = new Query(getSchema().getName().getLocalPart(), bbox);
+        SimpleFeatureIterator fi = wrapped.getFeatures(query).features();
+        try {
+            while (fi.hasNext()) {
+                SimpleFeature feature = fi.next();
+                // only the features with a default geometry get here, see getExtent
+                ReferencedEnvelope bounds = ReferencedEnvelope.reference(feature.getBounds());
+                if (bounds == null || bounds.isNull()) {
+                    continue;
+                }
+                // the feature is cached in all the missing tiles it touches
+                long size = sizeOf(feature);
+                int minCol = grid.column(bounds.getMinX());
+                int maxCol = grid.column(bounds.getMaxX());
+                int maxRow = grid.row(bounds.getMaxY());
+                for (int row = grid.row(bounds.getMinY()); row <= maxRow; row++) {
+                    for (int col = minCol; col <= maxCol; col++) {
+                        Long key = grid.key(col, row);
+                        List<SimpleFeature> features = contents.get(key);
+                        if (features != null) {
+                            features.add(feature);
+                            sizes.put(key, sizes.get(key) + size);
+                        }
+                    }
+                }
+            }
+        } finally {
+            fi.close();
+        }
+
+        List<TileCache.Tile> result = new ArrayList<TileCache.Tile>();
+        for (Map.Entry<Long, List<SimpleFeature>> entry : contents.entrySet()) {
+            List<SimpleFeature> features = entry.getValue();
+            TileCache.Tile tile = new TileCache.Tile(features.toArray(new SimpleFeature[features
+                    .size()]), sizes.get(entry.getKey()));
+            if (!cache.put(entry.getKey(), tile, generation) && LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Tile " + entry.getKey() + " of " + getName()
+                        + " not cached, either too big or invalidated while loading");
+            }
+            result.add(tile);
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the memory used by a feature, from the size of its attribute values
+     */
+    static long sizeOf(SimpleFeature feature) {
+        // the feature, its id and the attribute array
+        long size = 64 + sizeOf(feature.getID()) + 8 * feature.getAttributeCount();
+        for (Object value : feature.getAttributes()) {
+            if (value == null) {
+                continue;
+            } else if (value instanceof Geometry) {
+                // each coordinate is an object with three doubles, plus the geometry objects
+                Geometry geometry = (Geometry) value;
+                size += 40 * geometry.getNumPoints() + 80 * geometry.getNumGeometries();
+            } else if (value instanceof String) {
+                size += sizeOf((String) value);
+            } else {
+                size += 24;
+            }
+        }
+        return size;
+    }
+
+    static long sizeOf(String value) {
+        return value == null ? 0 : 40 + 2 * value.length();
+    }
+
+    public SimpleFeatureCollection getFeatures(Filter filter) throws IOException {
+        return getFeatures(new Query(getSchema().getName().getLocalPart(), filter));
+    }
+
+    public SimpleFeatureCollection getFeatures() throws IOException {
+        return getFeatures(Filter.INCLUDE);
+    }
+
+    public ReferencedEnvelope getBounds() throws IOException {
+        return wrapped.getBounds();
+    }
+
+    public ReferencedEnvelope getBounds(Query query) throws IOException {
+        if (isCacheable(query)) {
+            return getFeatures(query).getBounds();
+        }
+        return wrapped.getBounds(query);
+    }
+
+    public int getCount(Query query) throws IOException {
+        if (isCacheable(query)) {
+            return getFeatures(query).size();
+        }
+        return wrapped.getCount(query);
+    }
+
+    public SimpleFeatureType getSchema() {
+        return wrapped.getSchema();
+    }
+
+    public Name getName() {
+        return wrapped.getName();
+    }
+
+    public ResourceInfo getInfo() {
+        return wrapped.getInfo();
+    }
+
+    public DataAccess<SimpleFeatureType, SimpleFeature> getDataStore() {
+        return wrapped.getDataStore();
+    }
+
+    public QueryCapabilities getQueryCapabilities() {
+        return wrapped.getQueryCapabilities();
+    }
+
+    public void addFeatureListener(FeatureListener listener) {
+        wrapped.addFeatureListener(listener);
+    }
+
+    public void removeFeatureListener(FeatureListener listener) {
+        wrapped.removeFeatureListener(listener);
+    }
+
+    public Set getSupportedHints() {
+        // the cached features are shared, not detached
+        Set hints = new HashSet(wrapped.getSupportedHints());
+        hints.remove(Hints.FEATURE_DETACHED);
+        return hints;
+    }
+
+}
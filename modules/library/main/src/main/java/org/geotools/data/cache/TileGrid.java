@@ -0,0 +1,88 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.cache;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A regular grid of tiles splitting the bounds of a feature source. Coordinates out of the
+ * bounds are clamped to the border tiles.
+ *
+ * @source $URL$
+ */
+class TileGrid {
+
+    final Envelope bounds;
+
+    final int tiles;
+
+    final double tileWidth;
+
+    final double tileHeight;
+
+    /**
+     * Builds a grid of tiles x tiles over the specified bounds
+     */
+    TileGrid(Envelope bounds, int tiles) {
+        Envelope grid = new Envelope(bounds);
+        // a single point or a horizontal/vertical line, give the tiles some size
+        if (grid.getWidth() == 0 || grid.getHeight() == 0) {
+            grid.expandBy(grid.getWidth() == 0 ? 1 : 0, grid.getHeight() == 0 ? 1 : 0);
+        }
+        this.bounds = grid;
+        this.tiles = tiles;
+        this.tileWidth = grid.getWidth() / tiles;
+        this.tileHeight = grid.getHeight() / tiles;
+    }
+
+    int column(double x) {
+        return clamp((int) Math.floor((x - bounds.getMinX()) / tileWidth));
+    }
+
+    int row(double y) {
+        return clamp((int) Math.floor((y - bounds.getMinY()) / tileHeight));
+    }
+
+    int clamp(int index) {
+        return index < 0 ? 0 : (index >= tiles ? tiles - 1 : index);
+    }
+
+    long key(int column, int row) {
+        return ((long) row) * tiles + column;
+    }
+
+    int column(long key) {
+        return (int) (key % tiles);
+    }
+
+    int row(long key) {
+        return (int) (key / tiles);
+    }
+
+    /**
+     * The envelope of the tile with the specified key
+     */
+    Envelope envelope(long key) {
+        int column = column(key);
+        int row = row(key);
+        double minx = bounds.getMinX() + column * tileWidth;
+        double miny = bounds.getMinY() + row * tileHeight;
+        double maxx = column == tiles - 1 ? bounds.getMaxX() : minx + tileWidth;
+        double maxy = row == tiles - 1 ? bounds.getMaxY() : miny + tileHeight;
+        return new Envelope(minx, maxx, miny, maxy);
+    }
+}
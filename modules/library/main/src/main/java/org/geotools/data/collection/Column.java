@@ -0,0 +1,529 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Stores the values of a single attribute for all the features of a
+ * {@link ColumnarFeatureCollection}. Numbers and booleans are kept in primitive arrays, strings
+ * are dictionary encoded, geometries are packed in coordinate arrays (see {@link GeometryColumn}),
+ * everything else is kept as is.
+ * <p>
+ * The values are expected to be already converted to the column binding.
+ *
+ * @source $URL$
+ */
+abstract class Column {
+
+    /**
+     * Creates the column best suited to store the values of the specified attribute
+     */
+    static Column create(AttributeDescriptor descriptor, int capacity) {
+        Class<?> binding = descriptor.getType().getBinding();
+        if (Geometry.class.isAssignableFrom(binding)) {
+            return new GeometryColumn(capacity);
+        } else if (binding == Integer.class || binding == Short.class || binding == Byte.class) {
+            return new IntColumn(binding, capacity);
+        } else if (binding == Long.class) {
+            return new LongColumn(capacity);
+        } else if (binding == Double.class) {
+            return new DoubleColumn(capacity);
+        } else if (binding == Float.class) {
+            return new FloatColumn(capacity);
+        } else if (binding == Boolean.class) {
+            return new BooleanColumn();
+        } else if (binding == String.class) {
+            return new StringColumn(capacity);
+        } else {
+            return new ObjectColumn(capacity);
+        }
+    }
+
+    static int grow(int capacity, int required) {
+        return Math.max(required, capacity + (capacity >> 1) + 16);
+    }
+
+    /**
+     * Returns the value stored at the specified row
+     */
+    abstract Object get(int row);
+
+    /**
+     * Sets the value at the specified row, which must be lower than the current capacity
+     */
+    abstract void set(int row, Object value);
+
+    /**
+     * Makes room for at least the specified number of rows
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Returns the minimum among the non null values in the rows range, or null if there are none
+     */
+    @SuppressWarnings("unchecked")
+    Comparable min(int start, int end) {
+        Comparable min = null;
+        for (int row = start; row < end; row++) {
+            Comparable value = (Comparable) get(row);
+            if (value != null && (min == null || value.compareTo(min) < 0)) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Returns the maximum among the non null values in the rows range, or null if there are none
+     */
+    @SuppressWarnings("unchecked")
+    Comparable max(int start, int end) {
+        Comparable max = null;
+        for (int row = start; row < end; row++) {
+            Comparable value = (Comparable) get(row);
+            if (value != null && (max == null || value.compareTo(max) > 0)) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds the distinct non null values found in the rows range to the set, nulls are skipped
+     * as in {@link org.geotools.feature.visitor.UniqueVisitor}
+     */
+    void unique(int start, int end, Set<Object> values) {
+        for (int row = start; row < end; row++) {
+            Object value = get(row);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+    }
+
+    /**
+     * Base class for columns of primitive numbers, tracking null values in a bit set
+     */
+    static abstract class NumericColumn extends Column {
+        BitSet nulls = new BitSet();
+
+        /**
+         * Returns the sum of the non null values in the rows range, using the same type
+         * {@link org.geotools.feature.visitor.SumVisitor} would use, or null if there are no
+         * values to sum
+         */
+        abstract Number sum(int start, int end);
+
+        /**
+         * Counts the non null values in the rows range
+         */
+        int count(int start, int end) {
+            int nullCount = 0;
+            for (int row = nulls.nextSetBit(start); row >= 0 && row < end; row = nulls
+                    .nextSetBit(row + 1)) {
+                nullCount++;
+            }
+            return end - start - nullCount;
+        }
+
+        boolean isNull(int row) {
+            return nulls.get(row);
+        }
+    }
+
+    static class IntColumn extends NumericColumn {
+        Class<?> binding;
+
+        int[] values;
+
+        IntColumn(Class<?> binding, int capacity) {
+            this.binding = binding;
+            this.values = new int[capacity];
+        }
+
+        Object get(int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            int value = values[row];
+            if (binding == Short.class) {
+                return Short.valueOf((short) value);
+            } else if (binding == Byte.class) {
+                return Byte.valueOf((byte) value);
+            }
+            return Integer.valueOf(value);
+        }
+
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values[row] = value == null ? 0 : ((Number) value).intValue();
+        }
+
+        void ensureCapacity(int capacity) {
+            if (values.length < capacity) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        Number sum(int start, int end) {
+            if (count(start, end) == 0) {
+                return null;
+            }
+            if (binding == Integer.class) {
+                int sum = 0;
+                for (int row = start; row < end; row++) {
+                    sum += values[row];
+                }
+                return Integer.valueOf(sum);
+            } else {
+                double sum = 0;
+                for (int row = start; row < end; row++) {
+                    sum += values[row];
+                }
+                return Double.valueOf(sum);
+            }
+        }
+
+        Comparable min(int start, int end) {
+            boolean found = false;
+            int min = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || values[row] < min)) {
+                    min = values[row];
+                    found = true;
+                }
+            }
+            return found ? (Comparable) box(min) : null;
+        }
+
+        Comparable max(int start, int end) {
+            boolean found = false;
+            int max = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || values[row] > max)) {
+                    max = values[row];
+                    found = true;
+                }
+            }
+            return found ? (Comparable) box(max) : null;
+        }
+
+        Object box(int value) {
+            if (binding == Short.class) {
+                return Short.valueOf((short) value);
+            } else if (binding == Byte.class) {
+                return Byte.valueOf((byte) value);
+            }
+            return Integer.valueOf(value);
+        }
+    }
+
+    static class LongColumn extends NumericColumn {
+        long[] values;
+
+        LongColumn(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        Object get(int row) {
+            return nulls.get(row) ? null : Long.valueOf(values[row]);
+        }
+
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values[row] = value == null ? 0 : ((Number) value).longValue();
+        }
+
+        void ensureCapacity(int capacity) {
+            if (values.length < capacity) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        Number sum(int start, int end) {
+            if (count(start, end) == 0) {
+                return null;
+            }
+            long sum = 0;
+            for (int row = start; row < end; row++) {
+                sum += values[row];
+            }
+            return Long.valueOf(sum);
+        }
+
+        Comparable min(int start, int end) {
+            boolean found = false;
+            long min = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || values[row] < min)) {
+                    min = values[row];
+                    found = true;
+                }
+            }
+            return found ? Long.valueOf(min) : null;
+        }
+
+        Comparable max(int start, int end) {
+            boolean found = false;
+            long max = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || values[row] > max)) {
+                    max = values[row];
+                    found = true;
+                }
+            }
+            return found ? Long.valueOf(max) : null;
+        }
+    }
+
+    static class DoubleColumn extends NumericColumn {
+        double[] values;
+
+        DoubleColumn(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        Object get(int row) {
+            return nulls.get(row) ? null : Double.valueOf(values[row]);
+        }
+
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values[row] = value == null ? 0 : ((Number) value).doubleValue();
+        }
+
+        void ensureCapacity(int capacity) {
+            if (values.length < capacity) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        Number sum(int start, int end) {
+            if (count(start, end) == 0) {
+                return null;
+            }
+            double sum = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row)) {
+                    sum += values[row];
+                }
+            }
+            return Double.valueOf(sum);
+        }
+
+        Comparable min(int start, int end) {
+            // same ordering as Double.compareTo, NaN being greater than any other value
+            boolean found = false;
+            double min = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || Double.compare(values[row], min) < 0)) {
+                    min = values[row];
+                    found = true;
+                }
+            }
+            return found ? Double.valueOf(min) : null;
+        }
+
+        Comparable max(int start, int end) {
+            // NaN and infinite values are skipped, as MaxVisitor does
+            boolean found = false;
+            double max = 0;
+            for (int row = start; row < end; row++) {
+                double value = values[row];
+                if (nulls.get(row) || Double.isNaN(value) || Double.isInfinite(value)) {
+                    continue;
+                }
+                if (!found || Double.compare(value, max) > 0) {
+                    max = value;
+                    found = true;
+                }
+            }
+            return found ? Double.valueOf(max) : null;
+        }
+    }
+
+    static class FloatColumn extends NumericColumn {
+        float[] values;
+
+        FloatColumn(int capacity) {
+            this.values = new float[capacity];
+        }
+
+        Object get(int row) {
+            return nulls.get(row) ? null : Float.valueOf(values[row]);
+        }
+
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values[row] = value == null ? 0 : ((Number) value).floatValue();
+        }
+
+        void ensureCapacity(int capacity) {
+            if (values.length < capacity) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        Number sum(int start, int end) {
+            if (count(start, end) == 0) {
+                return null;
+            }
+            float sum = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row)) {
+                    sum += values[row];
+                }
+            }
+            return Float.valueOf(sum);
+        }
+
+        Comparable min(int start, int end) {
+            boolean found = false;
+            float min = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || Float.compare(values[row], min) < 0)) {
+                    min = values[row];
+                    found = true;
+                }
+            }
+            return found ? Float.valueOf(min) : null;
+        }
+
+        Comparable max(int start, int end) {
+            boolean found = false;
+            float max = 0;
+            for (int row = start; row < end; row++) {
+                if (!nulls.get(row) && (!found || Float.compare(values[row], max) > 0)) {
+                    max = values[row];
+                    found = true;
+                }
+            }
+            return found ? Float.valueOf(max) : null;
+        }
+    }
+
+    static class BooleanColumn extends Column {
+        BitSet values = new BitSet();
+
+        BitSet nulls = new BitSet();
+
+        Object get(int row) {
+            return nulls.get(row) ? null : Boolean.valueOf(values.get(row));
+        }
+
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values.set(row, Boolean.TRUE.equals(value));
+        }
+
+        void ensureCapacity(int capacity) {
+            // bit sets grow on their own
+        }
+    }
+
+    /**
+     * Stores each distinct string once, the rows just hold the position of their value in the
+     * dictionary
+     */
+    static class StringColumn extends Column {
+        Map<String, Integer> codes = new HashMap<String, Integer>();
+
+        List<String> dictionary = new ArrayList<String>();
+
+        /**
+         * The dictionary position of each row value, -1 for null
+         */
+        int[] rows;
+
+        StringColumn(int capacity) {
+            this.rows = new int[capacity];
+        }
+
+        Object get(int row) {
+            int code = rows[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        void set(int row, Object value) {
+            if (value == null) {
+                rows[row] = -1;
+            } else {
+                String string = (String) value;
+                Integer code = codes.get(string);
+                if (code == null) {
+                    code = dictionary.size();
+                    dictionary.add(string);
+                    codes.put(string, code);
+                }
+                rows[row] = code;
+            }
+        }
+
+        void ensureCapacity(int capacity) {
+            if (rows.length < capacity) {
+                rows = Arrays.copyOf(rows, grow(rows.length, capacity));
+            }
+        }
+
+        void unique(int start, int end, Set<Object> values) {
+            // collect the codes first, the dictionary may hold values no longer in use
+            BitSet used = new BitSet(dictionary.size());
+            for (int row = start; row < end; row++) {
+                // negative codes are nulls, skipped
+                if (rows[row] >= 0) {
+                    used.set(rows[row]);
+                }
+            }
+            for (int code = used.nextSetBit(0); code >= 0; code = used.nextSetBit(code + 1)) {
+                values.add(dictionary.get(code));
+            }
+        }
+    }
+
+    static class ObjectColumn extends Column {
+        Object[] values;
+
+        ObjectColumn(int capacity) {
+            this.values = new Object[capacity];
+        }
+
+        Object get(int row) {
+            return values[row];
+        }
+
+        void set(int row, Object value) {
+            values[row] = value;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (values.length < capacity) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.feature.AttributeImpl;
+import org.geotools.feature.GeometryAttributeImpl;
+import org.geotools.feature.IllegalAttributeException;
+import org.geotools.feature.type.AttributeDescriptorImpl;
+import org.geotools.feature.type.Types;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * A lightweight {@link SimpleFeature} view over a row of a {@link FeatureColumns}. The values are
+ * read from, and written to, the columns on each call, the view only holds the row number.
+ * <p>
+ * The properties returned by {@link #getProperties()} and {@link #getProperty(String)} are
+ * snapshots of the current values, and the user data map is local to the view.
+ *
+ * @source $URL$
+ */
+class ColumnarFeature implements SimpleFeature {
+
+    final FeatureColumns columns;
+
+    final int row;
+
+    Map<Object, Object> userData;
+
+    ColumnarFeature(FeatureColumns columns, int row) {
+        this.columns = columns;
+        this.row = row;
+    }
+
+    public FeatureId getIdentifier() {
+        return new FeatureIdImpl(getID());
+    }
+
+    public String getID() {
+        return columns.getID(row);
+    }
+
+    public SimpleFeatureType getType() {
+        return columns.schema;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return columns.schema;
+    }
+
+    public int getAttributeCount() {
+        return columns.columns.length;
+    }
+
+    public Object getAttribute(int index) throws IndexOutOfBoundsException {
+        return columns.get(row, index);
+    }
+
+    public Object getAttribute(String name) {
+        int index = columns.schema.indexOf(name);
+        return index < 0 ? null : columns.get(row, index);
+    }
+
+    public Object getAttribute(Name name) {
+        return getAttribute(name.getLocalPart());
+    }
+
+    public List<Object> getAttributes() {
+        List<Object> values = new ArrayList<Object>(columns.columns.length);
+        for (int i = 0; i < columns.columns.length; i++) {
+            values.add(columns.get(row, i));
+        }
+        return values;
+    }
+
+    public void setAttribute(int index, Object value) throws IndexOutOfBoundsException {
+        columns.set(row, index, value);
+    }
+
+    public void setAttribute(String name, Object value) {
+        int index = columns.schema.indexOf(name);
+        if (index < 0) {
+            throw new IllegalAttributeException("Unknown attribute " + name);
+        }
+        columns.set(row, index, value);
+    }
+
+    public void setAttribute(Name name, Object value) {
+        setAttribute(name.getLocalPart(), value);
+    }
+
+    public void setAttributes(List<Object> values) {
+        for (int i = 0; i < columns.columns.length; i++) {
+            columns.set(row, i, values.get(i));
+        }
+    }
+
+    public void setAttributes(Object[] values) {
+        for (int i = 0; i < columns.columns.length; i++) {
+            columns.set(row, i, values[i]);
+        }
+    }
+
+    public Object getDefaultGeometry() {
+        return columns.defaultGeometry < 0 ? null : columns.get(row, columns.defaultGeometry);
+    }
+
+    public void setDefaultGeometry(Object geometry) {
+        if (columns.defaultGeometry >= 0) {
+            columns.set(row, columns.defaultGeometry, geometry);
+        }
+    }
+
+    public BoundingBox getBounds() {
+        // computed from the stored envelopes, without rebuilding the geometries
+        ReferencedEnvelope bounds = new ReferencedEnvelope(columns.schema
+                .getCoordinateReferenceSystem());
+        columns.expandToInclude(row, bounds);
+        return bounds;
+    }
+
+    public GeometryAttribute getDefaultGeometryProperty() {
+        GeometryDescriptor descriptor = columns.schema.getGeometryDescriptor();
+        if (descriptor == null) {
+            return null;
+        }
+        return new GeometryAttributeImpl(getDefaultGeometry(), descriptor, null);
+    }
+
+    public void setDefaultGeometryProperty(GeometryAttribute geometryAttribute) {
+        setDefaultGeometry(geometryAttribute == null ? null : geometryAttribute.getValue());
+    }
+
+    public Collection<Property> getProperties() {
+        return new AbstractList<Property>() {
+            public Property get(int index) {
+                return property(index);
+            }
+
+            public int size() {
+                return columns.columns.length;
+            }
+        };
+    }
+
+    public Collection<Property> getProperties(Name name) {
+        return getProperties(name.getLocalPart());
+    }
+
+    public Collection<Property> getProperties(String name) {
+        int index = columns.schema.indexOf(name);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(property(index));
+    }
+
+    public Property getProperty(Name name) {
+        return getProperty(name.getLocalPart());
+    }
+
+    public Property getProperty(String name) {
+        int index = columns.schema.indexOf(name);
+        return index < 0 ? null : property(index);
+    }
+
+    Property property(int index) {
+        AttributeDescriptor descriptor = columns.schema.getDescriptor(index);
+        Object value = columns.get(row, index);
+        if (descriptor instanceof GeometryDescriptor) {
+            return new GeometryAttributeImpl(value, (GeometryDescriptor) descriptor, null);
+        }
+        return new AttributeImpl(value, descriptor, null);
+    }
+
+    public Collection<? extends Property> getValue() {
+        return getProperties();
+    }
+
+    public void setValue(Collection<Property> values) {
+        Iterator<Property> it = values.iterator();
+        for (int i = 0; i < columns.columns.length && it.hasNext(); i++) {
+            columns.set(row, i, it.next().getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setValue(Object newValue) {
+        setValue((Collection<Property>) newValue);
+    }
+
+    public AttributeDescriptor getDescriptor() {
+        return new AttributeDescriptorImpl(columns.schema, columns.schema.getName(), 0,
+                Integer.MAX_VALUE, true, null);
+    }
+
+    public Name getName() {
+        return columns.schema.getName();
+    }
+
+    public boolean isNillable() {
+        return true;
+    }
+
+    public Map<Object, Object> getUserData() {
+        if (userData == null) {
+            userData = new HashMap<Object, Object>();
+        }
+        return userData;
+    }
+
+    public void validate() {
+        for (int i = 0; i < columns.columns.length; i++) {
+            Types.validate(columns.schema.getDescriptor(i), columns.get(row, i));
+        }
+    }
+
+    public int hashCode() {
+        String id = getID();
+        return (id == null ? 0 : id.hashCode()) * columns.schema.hashCode();
+    }
+
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof ColumnarFeature) {
+            ColumnarFeature other = (ColumnarFeature) obj;
+            if (other.columns == columns && other.row == row) {
+                return true;
+            }
+        }
+        if (!(obj instanceof SimpleFeature)) {
+            return false;
+        }
+        SimpleFeature other = (SimpleFeature) obj;
+        String id = getID();
+        if (id == null ? other.getID() != null : !id.equals(other.getID())) {
+            return false;
+        }
+        if (!columns.schema.equals(other.getFeatureType())) {
+            return false;
+        }
+        for (int i = 0; i < columns.columns.length; i++) {
+            Object value = columns.get(row, i);
+            Object otherValue = other.getAttribute(i);
+            if (value == null ? otherValue != null : !value.equals(otherValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toString() {
+        return "ColumnarFeature:" + columns.schema.getName().getLocalPart() + "=" + getAttributes();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.feature.collection.SplittableFeatureCollection;
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.BoundsVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.util.ProgressListener;
+
+/**
+ * FeatureCollection keeping its contents in memory in columnar form, meant to hold large
+ * amounts of features with a fraction of the memory a {@link ListFeatureCollection} would
+ * need.
+ * <p>
+ * Each attribute is stored in its own column: numbers and booleans in primitive arrays, strings
+ * in a dictionary, geometries as packed coordinate arrays. The features are copied into the
+ * columns when added, and the iterators return lightweight views reading the values back from
+ * the columns, so geometries are rebuilt on each access.
+ * <p>
+ * The {@link CountVisitor}, {@link BoundsVisitor}, {@link SumVisitor}, {@link AverageVisitor},
+ * {@link MinVisitor}, {@link MaxVisitor} and {@link UniqueVisitor} visitors working on a plain
+ * attribute are computed straight on the columns, without creating any feature.
+ * <p>
+ * Usage notes:
+ * <ul>
+ * <li>Features can be appended, or modified via the views, but not removed
+ * <li>Geometry user data and SRID are not preserved
+ * <li>This implementation does not use a spatial index
+ * </ul>
+ *
+ * @source $URL$
+ */
+public class ColumnarFeatureCollection extends AbstractFeatureCollection implements
+        SplittableFeatureCollection {
+
+    /** the column storage, shared with the partitions */
+    FeatureColumns columns;
+
+    /** the first row of this collection */
+    int start;
+
+    /** the last row (exclusive) of this collection, or -1 if the collection is not a partition */
+    int end;
+
+    /**
+     * Creates an empty collection for the provided schema
+     *
+     * @param schema
+     */
+    public ColumnarFeatureCollection(SimpleFeatureType schema) {
+        this(new FeatureColumns(schema), 0, -1);
+    }
+
+    /**
+     * Creates a collection holding a copy of the provided features
+     *
+     * @param copy
+     */
+    public ColumnarFeatureCollection(SimpleFeatureCollection copy) throws IOException {
+        this(copy.getSchema());
+        addAll(copy);
+    }
+
+    ColumnarFeatureCollection(FeatureColumns columns, int start, int end) {
+        super(columns.schema);
+        this.columns = columns;
+        this.start = start;
+        this.end = end;
+    }
+
+    int end() {
+        return end < 0 ? columns.size : end;
+    }
+
+    @Override
+    public int size() {
+        return end() - start;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean add(SimpleFeature f) {
+        if (end >= 0) {
+            throw new UnsupportedOperationException("Cannot add features to a partition");
+        }
+        columns.add(f);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (end >= 0) {
+            throw new UnsupportedOperationException("Cannot clear a partition");
+        }
+        columns.clear();
+    }
+
+    @Override
+    protected Iterator<SimpleFeature> openIterator() {
+        return new RowIterator(start, end());
+    }
+
+    @Override
+    protected void closeIterator(Iterator<SimpleFeature> close) {
+        // nothing to do there
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        final RowIterator it = new RowIterator(start, end());
+        return new SimpleFeatureIterator() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public SimpleFeature next() throws NoSuchElementException {
+                return it.next();
+            }
+
+            public void close() {
+                // nothing to do
+            }
+        };
+    }
+
+    /**
+     * Computes the bounds from the envelopes stored in the geometry columns. The bounds are not
+     * cached, as the geometries can be modified via the features
+     */
+    @Override
+    public ReferencedEnvelope getBounds() {
+        ReferencedEnvelope extent = new ReferencedEnvelope(schema.getCoordinateReferenceSystem());
+        for (int row = start, last = end(); row < last; row++) {
+            columns.expandToInclude(row, extent);
+        }
+        return extent;
+    }
+
+    /**
+     * Splits the rows in contiguous ranges of similar size
+     */
+    public List<SimpleFeatureCollection> split(int partitions) {
+        List<SimpleFeatureCollection> result = new ArrayList<SimpleFeatureCollection>();
+        int size = size();
+        int count = Math.max(1, Math.min(partitions, size));
+        for (int i = 0; i < count; i++) {
+            int first = start + (int) ((long) size * i / count);
+            int last = start + (int) ((long) size * (i + 1) / count);
+            result.add(new ColumnarFeatureCollection(columns, first, last));
+        }
+        return result;
+    }
+
+    @Override
+    public SimpleFeatureCollection subCollection(Filter filter) {
+        CollectionFeatureSource temp = new CollectionFeatureSource(this);
+        return temp.getFeatures(filter);
+    }
+
+    @Override
+    public SimpleFeatureCollection sort(SortBy order) {
+        Query subQuery = new Query(getSchema().getTypeName());
+        subQuery.setSortBy(new SortBy[] { order });
+
+        CollectionFeatureSource temp = new CollectionFeatureSource(this);
+        return temp.getFeatures(subQuery);
+    }
+
+    /**
+     * Computes the well known calculations straight on the columns, falls back on visiting
+     * each feature otherwise
+     */
+    @Override
+    public void accepts(FeatureVisitor visitor, ProgressListener progress) {
+        if (!calculate(visitor)) {
+            super.accepts(visitor, progress);
+        } else if (progress != null) {
+            progress.started();
+            progress.complete();
+        }
+    }
+
+    /**
+     * Tries to run the visitor calculation on the columns
+     *
+     * @return true if the calculation was performed, false otherwise
+     */
+    boolean calculate(FeatureVisitor visitor) {
+        int first = start;
+        int last = end();
+
+        if (visitor instanceof CountVisitor) {
+            CountVisitor partial = new CountVisitor();
+            partial.setValue(last - first);
+            ((CountVisitor) visitor).merge(partial);
+            return true;
+        } else if (visitor instanceof BoundsVisitor) {
+            ReferencedEnvelope extent = getBounds();
+            if (!extent.isNull()) {
+                BoundsVisitor partial = new BoundsVisitor();
+                partial.getBounds().include(extent);
+                ((BoundsVisitor) visitor).merge(partial);
+            }
+            return true;
+        }
+
+        Expression expression = null;
+        if (visitor instanceof SumVisitor) {
+            expression = ((SumVisitor) visitor).getExpression();
+        } else if (visitor instanceof AverageVisitor) {
+            expression = ((AverageVisitor) visitor).getExpression();
+        } else if (visitor instanceof MinVisitor) {
+            expression = ((MinVisitor) visitor).getExpression();
+        } else if (visitor instanceof MaxVisitor) {
+            expression = ((MaxVisitor) visitor).getExpression();
+        } else if (visitor instanceof UniqueVisitor) {
+            expression = ((UniqueVisitor) visitor).getExpression();
+        }
+        if (!(expression instanceof PropertyName)) {
+            return false;
+        }
+        int index = schema.indexOf(((PropertyName) expression).getPropertyName());
+        if (index < 0) {
+            return false;
+        }
+        Column column = columns.columns[index];
+
+        if (visitor instanceof UniqueVisitor) {
+            if (column instanceof GeometryColumn) {
+                return false;
+            }
+            Set<Object> values = new HashSet<Object>();
+            column.unique(first, last, values);
+            UniqueVisitor partial = new UniqueVisitor(expression);
+            partial.setValue(values);
+            ((UniqueVisitor) visitor).merge(partial);
+            return true;
+        } else if (!(column instanceof Column.NumericColumn)) {
+            return false;
+        }
+
+        Column.NumericColumn numbers = (Column.NumericColumn) column;
+        if (visitor instanceof SumVisitor) {
+            Number sum = numbers.sum(first, last);
+            if (sum != null) {
+                SumVisitor partial = new SumVisitor(expression);
+                partial.setValue(sum);
+                ((SumVisitor) visitor).merge(partial);
+            }
+        } else if (visitor instanceof AverageVisitor) {
+            Number sum = numbers.sum(first, last);
+            if (sum != null) {
+                AverageVisitor partial = new AverageVisitor(expression);
+                partial.setValue(numbers.count(first, last), sum);
+                ((AverageVisitor) visitor).merge(partial);
+            }
+        } else if (visitor instanceof MinVisitor) {
+            Comparable min = numbers.min(first, last);
+            if (min != null) {
+                MinVisitor partial = new MinVisitor(expression);
+                partial.setValue(min);
+                ((MinVisitor) visitor).merge(partial);
+            }
+        } else {
+            Comparable max = numbers.max(first, last);
+            if (max != null) {
+                MaxVisitor partial = new MaxVisitor(expression);
+                partial.setValue(max);
+                ((MaxVisitor) visitor).merge(partial);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Iterates over a range of rows, returning a view for each one
+     */
+    class RowIterator implements Iterator<SimpleFeature> {
+        int row;
+
+        int last;
+
+        RowIterator(int first, int last) {
+            this.row = first;
+            this.last = last;
+        }
+
+        public boolean hasNext() {
+            return row < last;
+        }
+
+        public SimpleFeature next() {
+            if (row >= last) {
+                throw new NoSuchElementException();
+            }
+            return new ColumnarFeature(columns, row++);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Features cannot be removed");
+        }
+    }
+}
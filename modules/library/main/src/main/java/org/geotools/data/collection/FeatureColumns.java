@@ -0,0 +1,190 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.feature.IllegalAttributeException;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The storage behind a {@link ColumnarFeatureCollection}: one {@link Column} per attribute, plus
+ * the feature ids.
+ * <p>
+ * Feature ids are usually made of a common prefix followed by a number (e.g.,
+ * <code>roads.1234</code>), so they are split and stored as a dictionary encoded prefix and a
+ * long. Ids not following the pattern are stored whole in the prefix dictionary.
+ *
+ * @source $URL$
+ */
+class FeatureColumns {
+
+    static final int INITIAL_CAPACITY = 16;
+
+    final SimpleFeatureType schema;
+
+    final Column[] columns;
+
+    /**
+     * The positions of the geometry columns
+     */
+    final int[] geometries;
+
+    /**
+     * The position of the default geometry column, or -1
+     */
+    final int defaultGeometry;
+
+    int size;
+
+    Map<String, Integer> prefixCodes = new HashMap<String, Integer>();
+
+    List<String> prefixes = new ArrayList<String>();
+
+    int[] fidPrefixes = new int[INITIAL_CAPACITY];
+
+    /**
+     * The numeric part of the feature ids, -1 if the id has none
+     */
+    long[] fidNumbers = new long[INITIAL_CAPACITY];
+
+    FeatureColumns(SimpleFeatureType schema) {
+        this.schema = schema;
+        this.columns = new Column[schema.getAttributeCount()];
+        int geometryCount = 0;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.create(schema.getDescriptor(i), INITIAL_CAPACITY);
+            if (columns[i] instanceof GeometryColumn) {
+                geometryCount++;
+            }
+        }
+        geometries = new int[geometryCount];
+        for (int i = 0, j = 0; i < columns.length; i++) {
+            if (columns[i] instanceof GeometryColumn) {
+                geometries[j++] = i;
+            }
+        }
+        defaultGeometry = schema.getGeometryDescriptor() == null ? -1 : schema
+                .indexOf(schema.getGeometryDescriptor().getLocalName());
+    }
+
+    /**
+     * Appends a feature, returning its row
+     */
+    int add(SimpleFeature feature) {
+        int row = size;
+        ensureCapacity(row + 1);
+        boolean sameType = schema.equals(feature.getFeatureType());
+        for (int i = 0; i < columns.length; i++) {
+            Object value = sameType ? feature.getAttribute(i) : feature.getAttribute(schema
+                    .getDescriptor(i).getLocalName());
+            set(row, i, value);
+        }
+        setID(row, feature.getID());
+        size++;
+        return row;
+    }
+
+    void ensureCapacity(int capacity) {
+        for (Column column : columns) {
+            column.ensureCapacity(capacity);
+        }
+        if (fidNumbers.length < capacity) {
+            int grown = Column.grow(fidNumbers.length, capacity);
+            fidPrefixes = Arrays.copyOf(fidPrefixes, grown);
+            fidNumbers = Arrays.copyOf(fidNumbers, grown);
+        }
+    }
+
+    void clear() {
+        size = 0;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.create(schema.getDescriptor(i), INITIAL_CAPACITY);
+        }
+        prefixCodes.clear();
+        prefixes.clear();
+        fidPrefixes = new int[INITIAL_CAPACITY];
+        fidNumbers = new long[INITIAL_CAPACITY];
+    }
+
+    Object get(int row, int index) {
+        return columns[index].get(row);
+    }
+
+    /**
+     * Sets a value, converting it to the attribute binding
+     */
+    void set(int row, int index, Object value) {
+        Object converted = value;
+        if (value != null) {
+            AttributeDescriptor descriptor = schema.getDescriptor(index);
+            converted = Converters.convert(value, descriptor.getType().getBinding());
+            if (converted == null) {
+                throw new IllegalAttributeException(descriptor, value);
+            }
+        }
+        columns[index].set(row, converted);
+    }
+
+    String getID(int row) {
+        String prefix = prefixes.get(fidPrefixes[row]);
+        long number = fidNumbers[row];
+        return number < 0 ? prefix : prefix + number;
+    }
+
+    void setID(int row, String id) {
+        // split the trailing number, unless it has leading zeroes or might overflow
+        String prefix = id;
+        long number = -1;
+        int digits = id == null ? 0 : id.length();
+        while (digits > 0 && id.charAt(digits - 1) >= '0' && id.charAt(digits - 1) <= '9') {
+            digits--;
+        }
+        int length = id == null ? 0 : id.length() - digits;
+        if (length > 0 && length <= 18 && (length == 1 || id.charAt(digits) != '0')) {
+            prefix = id.substring(0, digits);
+            number = Long.parseLong(id.substring(digits));
+        }
+
+        Integer code = prefixCodes.get(prefix);
+        if (code == null) {
+            code = prefixes.size();
+            prefixes.add(prefix);
+            prefixCodes.put(prefix, code);
+        }
+        fidPrefixes[row] = code;
+        fidNumbers[row] = number;
+    }
+
+    /**
+     * Expands the envelope to include the bounds of all the geometries of the row
+     */
+    void expandToInclude(int row, Envelope envelope) {
+        for (int i = 0; i < geometries.length; i++) {
+            ((GeometryColumn) columns[geometries[i]]).expandToInclude(row, envelope);
+        }
+    }
+}
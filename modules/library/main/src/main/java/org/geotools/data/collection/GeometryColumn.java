@@ -0,0 +1,288 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * Stores geometries as two packed arrays shared by all rows: one holding the ordinates, the
+ * other one the geometry structure (type, number of parts, number of points and dimension of each
+ * coordinate sequence). The envelope of each row is kept as well, so that bounds can be computed
+ * without rebuilding the geometries.
+ * <p>
+ * Geometries are rebuilt on each access, backed by {@link PackedCoordinateSequence}. Their user
+ * data and SRID are not preserved. Updating a row appends the new geometry to the arrays, the
+ * space used by the old one is not reclaimed.
+ *
+ * @source $URL$
+ */
+class GeometryColumn extends Column {
+
+    static final int POINT = 1;
+
+    static final int LINESTRING = 2;
+
+    static final int LINEARRING = 3;
+
+    static final int POLYGON = 4;
+
+    static final int MULTIPOINT = 5;
+
+    static final int MULTILINESTRING = 6;
+
+    static final int MULTIPOLYGON = 7;
+
+    static final int COLLECTION = 8;
+
+    static final GeometryFactory FACTORY = new GeometryFactory(
+            PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+
+    /**
+     * Start of each row in {@link #structure}, -1 for null geometries
+     */
+    int[] structureStart;
+
+    /**
+     * Start of each row in {@link #ordinates}
+     */
+    int[] ordinateStart;
+
+    /**
+     * The envelope of each row, as minx, miny, maxx, maxy. Empty and null geometries have NaN
+     * values
+     */
+    double[] envelopes;
+
+    int[] structure = new int[64];
+
+    int structureSize;
+
+    double[] ordinates = new double[256];
+
+    int ordinateSize;
+
+    GeometryColumn(int capacity) {
+        structureStart = new int[capacity];
+        ordinateStart = new int[capacity];
+        envelopes = new double[capacity * 4];
+    }
+
+    void ensureCapacity(int capacity) {
+        if (structureStart.length < capacity) {
+            int size = grow(structureStart.length, capacity);
+            structureStart = Arrays.copyOf(structureStart, size);
+            ordinateStart = Arrays.copyOf(ordinateStart, size);
+            envelopes = Arrays.copyOf(envelopes, size * 4);
+        }
+    }
+
+    void set(int row, Object value) {
+        Geometry geometry = (Geometry) value;
+        if (geometry == null) {
+            structureStart[row] = -1;
+            Arrays.fill(envelopes, row * 4, row * 4 + 4, Double.NaN);
+            return;
+        }
+        structureStart[row] = structureSize;
+        ordinateStart[row] = ordinateSize;
+        encode(geometry);
+
+        Envelope envelope = geometry.getEnvelopeInternal();
+        if (envelope.isNull()) {
+            Arrays.fill(envelopes, row * 4, row * 4 + 4, Double.NaN);
+        } else {
+            envelopes[row * 4] = envelope.getMinX();
+            envelopes[row * 4 + 1] = envelope.getMinY();
+            envelopes[row * 4 + 2] = envelope.getMaxX();
+            envelopes[row * 4 + 3] = envelope.getMaxY();
+        }
+    }
+
+    Object get(int row) {
+        if (structureStart[row] < 0) {
+            return null;
+        }
+        return new Decoder(structureStart[row], ordinateStart[row]).decode();
+    }
+
+    /**
+     * Expands the envelope to include the one of the specified row, if not null or empty
+     */
+    void expandToInclude(int row, Envelope envelope) {
+        int base = row * 4;
+        if (!Double.isNaN(envelopes[base])) {
+            envelope.expandToInclude(envelopes[base], envelopes[base + 1]);
+            envelope.expandToInclude(envelopes[base + 2], envelopes[base + 3]);
+        }
+    }
+
+    void encode(Geometry geometry) {
+        if (geometry instanceof Point) {
+            addStructure(POINT);
+            encode(((Point) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LinearRing) {
+            addStructure(LINEARRING);
+            encode(((LinearRing) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LineString) {
+            addStructure(LINESTRING);
+            encode(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            addStructure(POLYGON);
+            if (polygon.isEmpty()) {
+                addStructure(0);
+            } else {
+                addStructure(polygon.getNumInteriorRing() + 1);
+                encode(polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    encode(polygon.getInteriorRingN(i).getCoordinateSequence());
+                }
+            }
+        } else if (geometry instanceof GeometryCollection) {
+            if (geometry instanceof MultiPoint) {
+                addStructure(MULTIPOINT);
+            } else if (geometry instanceof MultiLineString) {
+                addStructure(MULTILINESTRING);
+            } else if (geometry instanceof MultiPolygon) {
+                addStructure(MULTIPOLYGON);
+            } else {
+                addStructure(COLLECTION);
+            }
+            addStructure(geometry.getNumGeometries());
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                encode(geometry.getGeometryN(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type "
+                    + geometry.getGeometryType());
+        }
+    }
+
+    void encode(CoordinateSequence cs) {
+        int size = cs.size();
+        int dimension = 2;
+        for (int i = 0; i < size && dimension == 2 && cs.getDimension() > 2; i++) {
+            if (!Double.isNaN(cs.getOrdinate(i, CoordinateSequence.Z))) {
+                dimension = 3;
+            }
+        }
+        addStructure(size);
+        addStructure(dimension);
+
+        if (ordinates.length < ordinateSize + size * dimension) {
+            ordinates = Arrays.copyOf(ordinates, grow(ordinates.length, ordinateSize + size
+                    * dimension));
+        }
+        for (int i = 0; i < size; i++) {
+            ordinates[ordinateSize++] = cs.getX(i);
+            ordinates[ordinateSize++] = cs.getY(i);
+            if (dimension == 3) {
+                ordinates[ordinateSize++] = cs.getOrdinate(i, CoordinateSequence.Z);
+            }
+        }
+    }
+
+    void addStructure(int value) {
+        if (structureSize == structure.length) {
+            structure = Arrays.copyOf(structure, grow(structure.length, structureSize + 1));
+        }
+        structure[structureSize++] = value;
+    }
+
+    /**
+     * Rebuilds a geometry reading the packed arrays from the given positions
+     */
+    class Decoder {
+        int structurePosition;
+
+        int ordinatePosition;
+
+        Decoder(int structurePosition, int ordinatePosition) {
+            this.structurePosition = structurePosition;
+            this.ordinatePosition = ordinatePosition;
+        }
+
+        Geometry decode() {
+            int type = structure[structurePosition++];
+            switch (type) {
+            case POINT:
+                return FACTORY.createPoint(decodeSequence());
+            case LINESTRING:
+                return FACTORY.createLineString(decodeSequence());
+            case LINEARRING:
+                return FACTORY.createLinearRing(decodeSequence());
+            case POLYGON:
+                return decodePolygon();
+            case MULTIPOINT:
+                return FACTORY.createMultiPoint(decodeParts(new Point[structure[structurePosition++]]));
+            case MULTILINESTRING:
+                return FACTORY.createMultiLineString(decodeParts(new LineString[structure[structurePosition++]]));
+            case MULTIPOLYGON:
+                return FACTORY.createMultiPolygon(decodeParts(new Polygon[structure[structurePosition++]]));
+            case COLLECTION:
+                return FACTORY.createGeometryCollection(decodeParts(new Geometry[structure[structurePosition++]]));
+            default:
+                throw new IllegalStateException("Unknown geometry type code " + type);
+            }
+        }
+
+        <T extends Geometry> T[] decodeParts(T[] parts) {
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = (T) decode();
+            }
+            return parts;
+        }
+
+        Polygon decodePolygon() {
+            int rings = structure[structurePosition++];
+            if (rings == 0) {
+                return FACTORY.createPolygon(null, null);
+            }
+            LinearRing shell = FACTORY.createLinearRing(decodeSequence());
+            LinearRing[] holes = new LinearRing[rings - 1];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = FACTORY.createLinearRing(decodeSequence());
+            }
+            return FACTORY.createPolygon(shell, holes);
+        }
+
+        CoordinateSequence decodeSequence() {
+            int size = structure[structurePosition++];
+            int dimension = structure[structurePosition++];
+            int length = size * dimension;
+            double[] coords = new double[length];
+            System.arraycopy(ordinates, ordinatePosition, coords, 0, length);
+            ordinatePosition += length;
+            return new PackedCoordinateSequence.Double(coords, dimension);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.feature.collection.SplittableFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -57,7 +58,7 @@ import org.opengis.geometry.BoundingBox;
  * @source $URL$
  */
 @SuppressWarnings("unchecked")
-public class ListFeatureCollection extends AbstractFeatureCollection {
+public class ListFeatureCollection extends AbstractFeatureCollection implements SplittableFeatureCollection {
     /** wrapped list of features containing the contents */
      private List<SimpleFeature> list;
      
@@ -208,6 +209,21 @@ public class ListFeatureCollection extends AbstractFeatureCollection {
         }
     }
     
+    /**
+     * Splits the backing list in contiguous ranges of similar size
+     */
+    public List<SimpleFeatureCollection> split(int partitions) {
+        List<SimpleFeatureCollection> result = new ArrayList<SimpleFeatureCollection>();
+        int size = list.size();
+        int count = Math.max(1, Math.min(partitions, size));
+        for (int i = 0; i < count; i++) {
+            int start = (int) ((long) size * i / count);
+            int end = (int) ((long) size * (i + 1) / count);
+            result.add(new ListFeatureCollection(schema, list.subList(start, end)));
+        }
+        return result;
+    }
+    
     @Override
     public SimpleFeatureCollection subCollection(Filter filter) {
         CollectionFeatureSource temp = new CollectionFeatureSource( this );
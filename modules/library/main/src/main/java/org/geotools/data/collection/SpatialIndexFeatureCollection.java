@@ -16,6 +16,7 @@ import org.geotools.feature.CollectionEvent;
 import org.geotools.feature.CollectionListener;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.collection.SplittableFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.util.NullProgressListener;
 import org.geotools.util.logging.Logging;
@@ -30,6 +31,9 @@ import org.opengis.util.ProgressListener;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.strtree.AbstractNode;
+import com.vividsolutions.jts.index.strtree.Boundable;
+import com.vividsolutions.jts.index.strtree.ItemBoundable;
 import com.vividsolutions.jts.index.strtree.STRtree;
 
 /**
@@ -42,7 +46,7 @@ import com.vividsolutions.jts.index.strtree.STRtree;
  *
  * @source $URL$
  */
-public class SpatialIndexFeatureCollection implements SimpleFeatureCollection {
+public class SpatialIndexFeatureCollection implements SplittableFeatureCollection {
 
     static Logger LOGGER = Logging.getLogger(SpatialIndexFeatureCollection.class);
 
@@ -151,6 +155,57 @@ public class SpatialIndexFeatureCollection implements SimpleFeatureCollection {
         progress.complete();
     }
 
+    /**
+     * Splits the collection following the structure of the spatial index, each partition
+     * contains the features of a group of nearby index nodes.
+     * <p>
+     * This will build the STRtree index if required.
+     */
+    @SuppressWarnings("unchecked")
+    public List<SimpleFeatureCollection> split(int partitions) {
+        // go down the tree until we have enough nodes to build the partitions
+        List<Boundable> nodes = new ArrayList<Boundable>(index.getRoot().getChildBoundables());
+        boolean expanded = true;
+        while (nodes.size() < partitions && expanded) {
+            expanded = false;
+            List<Boundable> children = new ArrayList<Boundable>();
+            for (Boundable node : nodes) {
+                if (node instanceof AbstractNode) {
+                    children.addAll(((AbstractNode) node).getChildBoundables());
+                    expanded = true;
+                } else {
+                    children.add(node);
+                }
+            }
+            nodes = children;
+        }
+
+        // the STR packing keeps nearby nodes next to each other, group them in contiguous runs
+        List<SimpleFeatureCollection> result = new ArrayList<SimpleFeatureCollection>();
+        int count = Math.max(1, Math.min(partitions, nodes.size()));
+        for (int i = 0; i < count; i++) {
+            List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+            int start = nodes.size() * i / count;
+            int end = nodes.size() * (i + 1) / count;
+            for (Boundable node : nodes.subList(start, end)) {
+                collectItems(node, features);
+            }
+            result.add(new ListFeatureCollection(schema, features));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    void collectItems(Boundable node, List<SimpleFeature> features) {
+        if (node instanceof AbstractNode) {
+            for (Boundable child : (List<Boundable>) ((AbstractNode) node).getChildBoundables()) {
+                collectItems(child, features);
+            }
+        } else {
+            features.add((SimpleFeature) ((ItemBoundable) node).getItem());
+        }
+    }
+
     public boolean add(SimpleFeature feature) {
         ReferencedEnvelope bounds = ReferencedEnvelope.reference(feature.getBounds());
         index.insert(bounds, feature);
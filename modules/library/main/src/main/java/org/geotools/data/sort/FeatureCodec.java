@@ -0,0 +1,222 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Encodes features in a compact binary form: the feature id, a bitmap of the null attributes,
+ * then the non null values, without any type metadata for the bindings that can be optimized.
+ * <p>
+ * Instances are not thread safe, the WKB reader and writer are reused among calls
+ *
+ * @source $URL$
+ */
+class FeatureCodec {
+
+    static final String CHARSET = "UTF-8";
+
+    SimpleFeatureType schema;
+
+    Class<?>[] bindings;
+
+    WKBWriter wkbWriter = new WKBWriter();
+
+    WKBReader wkbReader = new WKBReader();
+
+    SimpleFeatureBuilder builder;
+
+    byte[] nulls;
+
+    FeatureCodec(SimpleFeatureType schema) {
+        this.schema = schema;
+        this.bindings = new Class<?>[schema.getAttributeCount()];
+        for (int i = 0; i < bindings.length; i++) {
+            bindings[i] = schema.getDescriptor(i).getType().getBinding();
+        }
+        this.nulls = new byte[(bindings.length + 7) / 8];
+        this.builder = new SimpleFeatureBuilder(schema);
+    }
+
+    /**
+     * Writes the feature id and attributes
+     */
+    void encode(SimpleFeature feature, DataOutput out) throws IOException {
+        writeString(out, feature.getID());
+
+        Object[] values = new Object[bindings.length];
+        for (int i = 0; i < bindings.length; i++) {
+            AttributeDescriptor ad = schema.getDescriptor(i);
+            values[i] = feature.getAttribute(ad.getLocalName());
+            if (values[i] == null) {
+                nulls[i >> 3] |= 1 << (i & 7);
+            } else {
+                nulls[i >> 3] &= ~(1 << (i & 7));
+            }
+        }
+        out.write(nulls);
+        for (int i = 0; i < bindings.length; i++) {
+            if (values[i] != null) {
+                writeValue(out, bindings[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads back a feature written by {@link #encode(SimpleFeature, DataOutput)}
+     */
+    SimpleFeature decode(DataInput in) throws IOException {
+        String fid = readString(in);
+        in.readFully(nulls);
+        for (int i = 0; i < bindings.length; i++) {
+            if ((nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                builder.add(null);
+            } else {
+                builder.add(readValue(in, bindings[i]));
+            }
+        }
+        return builder.buildFeature(fid);
+    }
+
+    void writeValue(DataOutput out, Class<?> binding, Object value) throws IOException {
+        // We are not writing any type metadata in the stream for the types we can optimize
+        // (primitives, numbers, strings and the like). This means we have to be 100% sure the
+        // class we're writing is actually the one we can optimize for, and not some subclass.
+        // Thus, we are authorized to use identity comparison instead of isAssignableFrom or
+        // equality, when we read back it must be as if we did not serialize stuff at all
+        if (binding == Boolean.class) {
+            out.writeBoolean((Boolean) value);
+        } else if (binding == Byte.class || binding == byte.class) {
+            out.writeByte((Byte) value);
+        } else if (binding == Short.class || binding == short.class) {
+            out.writeShort((Short) value);
+        } else if (binding == Integer.class || binding == int.class) {
+            out.writeInt((Integer) value);
+        } else if (binding == Long.class || binding == long.class) {
+            out.writeLong((Long) value);
+        } else if (binding == Float.class || binding == float.class) {
+            out.writeFloat((Float) value);
+        } else if (binding == Double.class || binding == double.class) {
+            out.writeDouble((Double) value);
+        } else if (binding == String.class) {
+            writeString(out, (String) value);
+        } else if (binding == java.sql.Date.class || binding == java.sql.Time.class
+                || binding == java.sql.Timestamp.class || binding == java.util.Date.class) {
+            out.writeLong(((Date) value).getTime());
+        } else if (Geometry.class.isAssignableFrom(binding)) {
+            byte[] buffer = wkbWriter.write((Geometry) value);
+            out.writeInt(buffer.length);
+            out.write(buffer);
+        } else {
+            // can't optimize, in this case we use an ObjectOutputStream to write out
+            // full metadata
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.flush();
+            byte[] bytes = bos.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    Object readValue(DataInput in, Class<?> binding) throws IOException {
+        if (binding == Boolean.class) {
+            return in.readBoolean();
+        } else if (binding == Byte.class || binding == byte.class) {
+            return in.readByte();
+        } else if (binding == Short.class || binding == short.class) {
+            return in.readShort();
+        } else if (binding == Integer.class || binding == int.class) {
+            return in.readInt();
+        } else if (binding == Long.class || binding == long.class) {
+            return in.readLong();
+        } else if (binding == Float.class || binding == float.class) {
+            return in.readFloat();
+        } else if (binding == Double.class || binding == double.class) {
+            return in.readDouble();
+        } else if (binding == String.class) {
+            return readString(in);
+        } else if (binding == java.sql.Date.class) {
+            return new java.sql.Date(in.readLong());
+        } else if (binding == java.sql.Time.class) {
+            return new java.sql.Time(in.readLong());
+        } else if (binding == java.sql.Timestamp.class) {
+            return new java.sql.Timestamp(in.readLong());
+        } else if (binding == java.util.Date.class) {
+            return new java.util.Date(in.readLong());
+        } else if (Geometry.class.isAssignableFrom(binding)) {
+            byte[] buffer = new byte[in.readInt()];
+            in.readFully(buffer);
+            try {
+                return wkbReader.read(buffer);
+            } catch (ParseException e) {
+                throw new IOException("Failed to parse the geometry WKB", e);
+            }
+        } else {
+            byte[] buffer = new byte[in.readInt()];
+            in.readFully(buffer);
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buffer));
+            try {
+                return ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Could not read back object", e);
+            }
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 bytes preceded by their count, -1 for null values. Unlike
+     * {@link DataOutput#writeUTF(String)} this does not fail on strings longer than 64KB
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(CHARSET);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A block of rows made of the sort keys and the address of the feature in the
+ * {@link PayloadStore}. Once {@link #sort() sorted} the chunk is a run that can be merged with
+ * the others.
+ *
+ * @source $URL$
+ */
+class KeyChunk {
+
+    /**
+     * Below this size ranges are sorted with an insertion sort
+     */
+    static final int INSERTION_SORT_THRESHOLD = 16;
+
+    final KeyColumn[] keys;
+
+    final long[] addresses;
+
+    int size;
+
+    /**
+     * The rows in sorted order, available after {@link #sort()} has been called
+     */
+    int[] order;
+
+    KeyChunk(KeyColumn[] prototypes, int capacity) {
+        this.keys = new KeyColumn[prototypes.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = prototypes[i].newColumn(capacity);
+        }
+        this.addresses = new long[capacity];
+    }
+
+    boolean isFull() {
+        return size == addresses.length;
+    }
+
+    void add(SimpleFeature feature, long address) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i].set(size, feature);
+        }
+        addresses[size] = address;
+        size++;
+    }
+
+    /**
+     * Compares a row of this chunk with a row of another chunk built with the same prototypes
+     */
+    int compare(int row, KeyChunk other, int otherRow) {
+        for (int i = 0; i < keys.length; i++) {
+            int result = keys[i].compare(row, other.keys[i], otherRow);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sorts the rows with a stable merge sort, the keys are left in place and the sorted
+     * permutation stored in {@link #order}
+     */
+    void sort() {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        int[] temp = rows.clone();
+        mergeSort(temp, rows, 0, size);
+        order = rows;
+    }
+
+    /**
+     * Sorts dest[low, high), src holding the same contents on entry
+     */
+    void mergeSort(int[] src, int[] dest, int low, int high) {
+        int length = high - low;
+        if (length < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                for (int j = i; j > low && compare(dest[j - 1], this, dest[j]) > 0; j--) {
+                    int swap = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = swap;
+                }
+            }
+            return;
+        }
+
+        // sort the halves into src, then merge them back into dest
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid);
+        mergeSort(dest, src, mid, high);
+        if (compare(src[mid - 1], this, src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && compare(src[p], this, src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.util.Date;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * Holds the values of a sort key for the rows of a {@link KeyChunk}. Integral numbers, booleans
+ * and dates are stored as longs, floating point numbers as doubles, anything else as
+ * {@link Comparable} objects.
+ * <p>
+ * The ordering is the same as {@link PropertyComparator} and {@link FidComparator}: null values
+ * come first in ascending order, descending order is the reverse of the ascending one.
+ *
+ * @source $URL$
+ */
+abstract class KeyColumn {
+
+    /**
+     * The sorting attribute, or null if sorting on the feature id
+     */
+    final String propertyName;
+
+    final boolean ascending;
+
+    final boolean[] nulls;
+
+    KeyColumn(String propertyName, boolean ascending, int capacity) {
+        this.propertyName = propertyName;
+        this.ascending = ascending;
+        this.nulls = new boolean[capacity];
+    }
+
+    /**
+     * Creates an empty column for the specified sort directive
+     */
+    static KeyColumn create(SimpleFeatureType schema, SortBy sortBy, int capacity) {
+        if (sortBy == SortBy.NATURAL_ORDER) {
+            return new ObjectColumn(null, true, capacity);
+        } else if (sortBy == SortBy.REVERSE_ORDER) {
+            return new ObjectColumn(null, false, capacity);
+        }
+
+        String name = sortBy.getPropertyName().getPropertyName();
+        boolean ascending = sortBy.getSortOrder() == SortOrder.ASCENDING;
+        AttributeDescriptor ad = schema.getDescriptor(name);
+        Class<?> binding = ad == null ? Object.class : ad.getType().getBinding();
+        if (binding == Byte.class || binding == Short.class || binding == Integer.class
+                || binding == Long.class || binding == Boolean.class || binding == Date.class
+                || binding == java.sql.Date.class || binding == java.sql.Time.class) {
+            return new LongColumn(name, ascending, capacity, binding == Boolean.class);
+        } else if (binding == Float.class || binding == Double.class) {
+            return new DoubleColumn(name, ascending, capacity);
+        } else {
+            // timestamps end up here as well, their nanoseconds do not fit in a long
+            return new ObjectColumn(name, ascending, capacity);
+        }
+    }
+
+    /**
+     * Creates an empty column of the same kind
+     */
+    abstract KeyColumn newColumn(int capacity);
+
+    /**
+     * Extracts the key value from the feature and stores it in the specified row
+     */
+    void set(int row, SimpleFeature feature) {
+        Object value = propertyName == null ? feature.getID() : feature
+                .getAttribute(propertyName);
+        nulls[row] = value == null;
+        if (value != null) {
+            setValue(row, value);
+        }
+    }
+
+    abstract void setValue(int row, Object value);
+
+    /**
+     * Compares the two not null values, in ascending order
+     */
+    abstract int compareValues(int row, KeyColumn other, int otherRow);
+
+    /**
+     * Compares the value in the specified row with the one in the row of the other column,
+     * which must be of the same kind
+     */
+    final int compare(int row, KeyColumn other, int otherRow) {
+        int result;
+        if (nulls[row]) {
+            result = other.nulls[otherRow] ? 0 : -1;
+        } else if (other.nulls[otherRow]) {
+            result = 1;
+        } else {
+            result = compareValues(row, other, otherRow);
+        }
+        return ascending ? result : -result;
+    }
+
+    static class LongColumn extends KeyColumn {
+        final long[] values;
+
+        final boolean booleans;
+
+        LongColumn(String propertyName, boolean ascending, int capacity, boolean booleans) {
+            super(propertyName, ascending, capacity);
+            this.values = new long[capacity];
+            this.booleans = booleans;
+        }
+
+        KeyColumn newColumn(int capacity) {
+            return new LongColumn(propertyName, ascending, capacity, booleans);
+        }
+
+        void setValue(int row, Object value) {
+            if (booleans) {
+                values[row] = ((Boolean) value) ? 1 : 0;
+            } else if (value instanceof Date) {
+                values[row] = ((Date) value).getTime();
+            } else {
+                values[row] = ((Number) value).longValue();
+            }
+        }
+
+        int compareValues(int row, KeyColumn other, int otherRow) {
+            long v1 = values[row];
+            long v2 = ((LongColumn) other).values[otherRow];
+            return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        }
+    }
+
+    static class DoubleColumn extends KeyColumn {
+        final double[] values;
+
+        DoubleColumn(String propertyName, boolean ascending, int capacity) {
+            super(propertyName, ascending, capacity);
+            this.values = new double[capacity];
+        }
+
+        KeyColumn newColumn(int capacity) {
+            return new DoubleColumn(propertyName, ascending, capacity);
+        }
+
+        void setValue(int row, Object value) {
+            // floats widen to doubles without changing their relative order
+            values[row] = ((Number) value).doubleValue();
+        }
+
+        int compareValues(int row, KeyColumn other, int otherRow) {
+            return Double.compare(values[row], ((DoubleColumn) other).values[otherRow]);
+        }
+    }
+
+    static class ObjectColumn extends KeyColumn {
+        final Comparable[] values;
+
+        ObjectColumn(String propertyName, boolean ascending, int capacity) {
+            super(propertyName, ascending, capacity);
+            this.values = new Comparable[capacity];
+        }
+
+        KeyColumn newColumn(int capacity) {
+            return new ObjectColumn(propertyName, ascending, capacity);
+        }
+
+        void setValue(int row, Object value) {
+            values[row] = (Comparable) value;
+        }
+
+        @SuppressWarnings("unchecked")
+        int compareValues(int row, KeyColumn other, int otherRow) {
+            return values[row].compareTo(((ObjectColumn) other).values[otherRow]);
+        }
+    }
+}
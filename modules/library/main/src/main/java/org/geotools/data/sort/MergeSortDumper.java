@@ -16,16 +16,11 @@
  */
 package org.geotools.data.sort;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 
 import org.geotools.data.Query;
@@ -41,10 +36,20 @@ import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.io.WKBWriter;
 
+/**
+ * Sorts the contents of a feature reader, in memory if the features are less than the specified
+ * maximum, using a {@link SpillingSorter} otherwise
+ *
+ * @source $URL$
+ */
 class MergeSortDumper {
 
+    /**
+     * The number of threads used to sort the runs of the features that do not fit in memory
+     */
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+
     static final boolean canSort(SimpleFeatureType schema, SortBy[] sortBy) {
         if (sortBy == SortBy.UNSORTED) {
             return true;
@@ -104,35 +109,30 @@ class MergeSortDumper {
                             + "sorting properties are not comparable or the attributes are not serializable");
         }
 
-        int count = 0;
-        File file = null;
-        RandomAccessFile raf = null;
+        SpillingSorter sorter = null;
         List<SimpleFeature> features = new ArrayList<SimpleFeature>();
-        List<FeatureBlockReader> readers = new ArrayList<FeatureBlockReader>();
-        boolean cleanFile = true;
+        boolean disposeSorter = true;
         try {
-            // read and store into files as necessary
+            // read in memory, and switch to the spilling sorter as soon as the max is exceeded
             while (reader.hasNext()) {
                 SimpleFeature f = reader.next();
-                features.add(f);
-                count++;
-
-                if (count > maxFeatures) {
-                    Collections.sort(features, comparator);
-                    if (raf == null) {
-                        file = File.createTempFile("sorted", ".features");
-                        file.delete();
-                        raf = new RandomAccessFile(file, "rw");
+                if (sorter != null) {
+                    sorter.add(f);
+                } else {
+                    features.add(f);
+                    if (features.size() > maxFeatures) {
+                        sorter = new SpillingSorter(schema, sortBy, maxFeatures, THREADS,
+                                PayloadStore.DEFAULT_SEGMENT_SIZE);
+                        for (SimpleFeature sf : features) {
+                            sorter.add(sf);
+                        }
+                        features.clear();
                     }
-                    FeatureBlockReader fbr = storeToFile(raf, features, schema);
-                    readers.add(fbr);
-                    count = 0;
-                    features.clear();
                 }
             }
 
             // return the appropriate reader
-            if (raf == null) {
+            if (sorter == null) {
                 // simple case, we managed to keep everything in memory, sort and return a
                 // reader based on the collection contents
                 Collections.sort(features, comparator);
@@ -141,100 +141,20 @@ class MergeSortDumper {
                 return new DelegateSimpleFeatureReader(schema, fi);
             } else {
                 // go merge-sort
-                cleanFile = false;
-                return new MergeSortReader(schema, raf, file, readers, comparator);
+                MergeSortReader result = sorter.finish();
+                disposeSorter = false;
+                return result;
             }
 
         } finally {
-            if (cleanFile && raf != null) {
-                raf.close();
-                file.delete();
+            if (disposeSorter && sorter != null) {
+                sorter.dispose();
             }
 
             reader.close();
         }
     }
 
-    /**
-     * Writes the feature attributes to a binary file
-     * 
-     * @param features
-     * @return
-     * @throws IOException
-     */
-    static FeatureBlockReader storeToFile(RandomAccessFile raf, List<SimpleFeature> features,
-            SimpleFeatureType schema) throws IOException {
-        long start = raf.getFilePointer();
-
-        // write each attribute in the random access file
-        List<AttributeDescriptor> attributes = schema.getAttributeDescriptors();
-        for (SimpleFeature sf : features) {
-            // write feature id
-            raf.writeUTF(sf.getID());
-            // write the attributes
-            for (AttributeDescriptor ad : attributes) {
-                Object value = sf.getAttribute(ad.getLocalName());
-                writeAttribute(raf, ad, value);
-            }
-        }
-
-        return new FeatureBlockReader(raf, start, features.size(), schema);
-    }
-
-    static void writeAttribute(RandomAccessFile raf, AttributeDescriptor ad, Object value)
-            throws IOException {
-        if (value == null) {
-            // null marker
-            raf.writeBoolean(true);
-        } else {
-            // not null, write the contents. This one requires some explanation. We are not
-            // writing any type metadata in the stream for the types we can optimize (primitives,
-            // numbers,
-            // strings and the like). This means we have to be 100% sure the class we're writing is
-            // actually the one we can optimize for, and not some subclass. Thus, we are authorized
-            // to use identity comparison instead of isAssignableFrom or equality, when we read back
-            // it must be as if we did not serialize stuff at all
-            raf.writeBoolean(false);
-            Class<?> binding = ad.getType().getBinding();
-            if (binding == Boolean.class) {
-                raf.writeBoolean((Boolean) value);
-            } else if (binding == Byte.class || binding == byte.class) {
-                raf.writeByte((Byte) value);
-            } else if (binding == Short.class || binding == short.class) {
-                raf.writeShort((Short) value);
-            } else if (binding == Integer.class || binding == int.class) {
-                raf.writeInt((Integer) value);
-            } else if (binding == Long.class || binding == long.class) {
-                raf.writeLong((Long) value);
-            } else if (binding == Float.class || binding == float.class) {
-                raf.writeFloat((Float) value);
-            } else if (binding == Double.class || binding == double.class) {
-                raf.writeDouble((Double) value);
-            } else if (binding == String.class) {
-                raf.writeUTF((String) value);
-            } else if (binding == java.sql.Date.class || binding == java.sql.Time.class
-                    || binding == java.sql.Timestamp.class || binding == java.util.Date.class) {
-                raf.writeLong(((Date) value).getTime());
-            } else if (Geometry.class.isAssignableFrom(binding)) {
-                WKBWriter writer = new WKBWriter();
-                byte[] buffer = writer.write((Geometry) value);
-                int length = buffer.length;
-                raf.writeInt(length);
-                raf.write(buffer);
-            } else {
-                // can't optimize, in this case we use an ObjectOutputStream to write out
-                // full metadata
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(bos);
-                oos.writeObject(value);
-                oos.flush();
-                byte[] bytes = bos.toByteArray();
-                raf.writeInt(bytes.length);
-                raf.write(bytes);
-            }
-        }
-    }
-
     /**
      * Builds a comparator out of the sortBy list
      * 
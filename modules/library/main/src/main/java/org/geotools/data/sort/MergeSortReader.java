@@ -1,9 +1,9 @@
 /*
  *    GeoTools - The Open Source Java GIS Toolkit
  *    http://geotools.org
- * 
+ *
  *    (C) 2004-2008, Open Source Geospatial Foundation (OSGeo)
- *    
+ *
  *    This library is free software; you can redistribute it and/or
  *    modify it under the terms of the GNU Lesser General Public
  *    License as published by the Free Software Foundation;
@@ -16,10 +16,7 @@
  */
 package org.geotools.data.sort;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -28,31 +25,54 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 /**
- * Reads from a list of {@link FeatureBlockReader} backed by a {@link RandomAccessFile} and performs
- * the classic merge-sort algorithm
- * 
+ * Merges a list of sorted {@link KeyChunk} runs and reads back the features from the
+ * {@link PayloadStore}.
+ * <p>
+ * The runs are kept in a binary heap ordered on their current row, so that picking the next
+ * feature costs a logarithmic number of key comparisons. Ties are broken on the run index, which
+ * keeps the merge stable.
+ *
  * @author Andrea Aime - GeoSolutions
- * 
+ *
  */
 class MergeSortReader implements SimpleFeatureReader {
 
-    List<FeatureBlockReader> readers;
+    SimpleFeatureType schema;
 
-    RandomAccessFile raf;
+    KeyChunk[] runs;
 
-    File file;
+    /**
+     * The current position in each run
+     */
+    int[] positions;
 
-    SimpleFeatureType schema;
+    /**
+     * The heap of run indexes, the first one being the run holding the smallest row
+     */
+    int[] heap;
 
-    Comparator<SimpleFeature> comparator;
+    int heapSize;
 
-    public MergeSortReader(SimpleFeatureType schema, RandomAccessFile raf, File file,
-            List<FeatureBlockReader> readers, Comparator<SimpleFeature> comparator) {
+    PayloadStore store;
+
+    SortStatistics statistics;
+
+    public MergeSortReader(SimpleFeatureType schema, List<KeyChunk> runs, PayloadStore store,
+            SortStatistics statistics) {
         this.schema = schema;
-        this.comparator = comparator;
-        this.readers = readers;
-        this.raf = raf;
-        this.file = file;
+        this.runs = runs.toArray(new KeyChunk[runs.size()]);
+        this.store = store;
+        this.statistics = statistics;
+        this.positions = new int[this.runs.length];
+        this.heap = new int[this.runs.length];
+        for (int i = 0; i < this.runs.length; i++) {
+            if (this.runs[i].size > 0) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
     }
 
     public SimpleFeatureType getFeatureType() {
@@ -61,41 +81,71 @@ class MergeSortReader implements SimpleFeatureReader {
 
     public SimpleFeature next() throws IOException, IllegalArgumentException,
             NoSuchElementException {
-        if (readers.size() == 0) {
+        if (heapSize == 0) {
             throw new NoSuchElementException();
         }
 
-        // find the smallest feature
-        int selected = 0;
-        for (int i = 1; i < readers.size(); i++) {
-            SimpleFeature sf = readers.get(selected).feature();
-            SimpleFeature cf = readers.get(i).feature();
-            if (comparator.compare(sf, cf) > 0) {
-                selected = i;
-            }
+        // grab the smallest row, and move its run forward
+        int top = heap[0];
+        KeyChunk run = runs[top];
+        long address = run.addresses[run.order[positions[top]]];
+        positions[top]++;
+        if (positions[top] == run.size) {
+            // run exhausted, release its keys and shrink the heap
+            runs[top] = null;
+            heap[0] = heap[--heapSize];
+        }
+        if (heapSize > 0) {
+            siftDown(0);
         }
 
-        // move on the reader of the selected feature
-        FeatureBlockReader reader = readers.get(selected);
-        SimpleFeature sf = reader.feature();
-        if (reader.next() == null) {
-            readers.remove(selected);
+        return store.get(address);
+    }
+
+    void siftDown(int i) {
+        int run = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], run)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
         }
+        heap[i] = run;
+    }
 
-        // return the selected feature
-        return sf;
+    /**
+     * Returns true if the current row of run r1 sorts before the current row of run r2
+     */
+    boolean less(int r1, int r2) {
+        KeyChunk c1 = runs[r1];
+        KeyChunk c2 = runs[r2];
+        int result = c1.compare(c1.order[positions[r1]], c2, c2.order[positions[r2]]);
+        return result < 0 || (result == 0 && r1 < r2);
     }
 
     public boolean hasNext() throws IOException {
-        return readers.size() > 0;
+        return heapSize > 0;
+    }
+
+    /**
+     * Returns the statistics about the spill and sort of the features
+     */
+    SortStatistics getStatistics() {
+        return statistics;
     }
 
     public void close() throws IOException {
-        try {
-            raf.close();
-        } finally {
-            file.delete();
-        }
+        heapSize = 0;
+        runs = null;
+        store.dispose();
     }
 
 }
@@ -0,0 +1,200 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.resources.NIOUtilities;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Stores encoded features in a sequence of temporary files, the segments, and reads them back by
+ * address once the writes are {@link #finish() finished} and the segments memory mapped. This
+ * way the feature contents live out of the Java heap, only their addresses need to be kept
+ * around.
+ * <p>
+ * An address is made of the segment number in the upper 32 bits, and the offset of the feature
+ * in the segment in the lower ones.
+ *
+ * @source $URL$
+ */
+class PayloadStore {
+
+    static final Logger LOGGER = Logging.getLogger(PayloadStore.class);
+
+    /**
+     * The default segment size, 256MB
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    FeatureCodec codec;
+
+    int segmentSize;
+
+    List<File> files = new ArrayList<File>();
+
+    DataOutputStream out;
+
+    MappedByteBuffer[] segments;
+
+    BufferInputStream input;
+
+    DataInputStream dataInput;
+
+    long size;
+
+    PayloadStore(SimpleFeatureType schema, int segmentSize) {
+        this.codec = new FeatureCodec(schema);
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Appends a feature to the store, returning its address
+     */
+    long add(SimpleFeature feature) throws IOException {
+        if (out == null || out.size() >= segmentSize) {
+            nextSegment();
+        }
+        long address = (((long) files.size() - 1) << 32) | out.size();
+        codec.encode(feature, out);
+        return address;
+    }
+
+    void nextSegment() throws IOException {
+        closeSegment();
+        File file = File.createTempFile("sorted", ".features");
+        files.add(file);
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    }
+
+    void closeSegment() throws IOException {
+        if (out != null) {
+            size += out.size();
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Completes the writes and maps the segments in memory
+     */
+    void finish() throws IOException {
+        closeSegment();
+        segments = new MappedByteBuffer[files.size()];
+        for (int i = 0; i < segments.length; i++) {
+            RandomAccessFile raf = new RandomAccessFile(files.get(i), "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        }
+        input = new BufferInputStream();
+        dataInput = new DataInputStream(input);
+    }
+
+    /**
+     * Reads back the feature stored at the specified address
+     */
+    SimpleFeature get(long address) throws IOException {
+        ByteBuffer segment = segments[(int) (address >>> 32)];
+        segment.position((int) address);
+        input.buffer = segment;
+        return codec.decode(dataInput);
+    }
+
+    /**
+     * The number of bytes written in the segments so far
+     */
+    long size() {
+        return out == null ? size : size + out.size();
+    }
+
+    int getSegmentCount() {
+        return files.size();
+    }
+
+    /**
+     * Unmaps and removes the segments
+     */
+    void dispose() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close the feature store segment", e);
+        }
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments) {
+                NIOUtilities.clean(segment, true);
+            }
+            segments = null;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                LOGGER.fine("Could not remove temporary sort file " + file);
+            }
+        }
+        files.clear();
+    }
+
+    /**
+     * Exposes the remaining contents of a {@link ByteBuffer} as an {@link InputStream}
+     */
+    static class BufferInputStream extends InputStream {
+        ByteBuffer buffer;
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = Math.min(len, buffer.remaining());
+            if (count == 0) {
+                return -1;
+            }
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+/**
+ * Reports about a sort that did not fit in memory and had to spill the features to disk
+ *
+ * @source $URL$
+ */
+public class SortStatistics {
+
+    int featureCount;
+
+    int runCount;
+
+    int segmentCount;
+
+    long spilledBytes;
+
+    long loadTime;
+
+    long sortTime;
+
+    /**
+     * The number of features sorted
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * The number of sorted runs merged to produce the output
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * The number of temporary files the features have been spilled to
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * The size in bytes of the encoded features written to disk
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * The time, in milliseconds, spent reading, spilling and sorting the input before the first
+     * feature could be returned
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * The time, in milliseconds, spent sorting the runs, summed over all the sorting threads
+     */
+    public long getSortTime() {
+        return sortTime;
+    }
+
+    @Override
+    public String toString() {
+        return "SortStatistics [featureCount=" + featureCount + ", runCount=" + runCount
+                + ", segmentCount=" + segmentCount + ", spilledBytes=" + spilledBytes
+                + ", loadTime=" + loadTime + ", sortTime=" + sortTime + "]";
+    }
+}
@@ -30,7 +30,10 @@ import org.opengis.filter.sort.SortBy;
 /**
  * FeatureReader used to sort contents.
  * <p>
- * The implementation makes use of {@link MergeSortDumper).
+ * The implementation makes use of {@link MergeSortDumper). When the features do not fit in
+ * memory only their sort keys are kept on the heap, the features are encoded into temporary
+ * memory mapped files and read back while merging the sorted runs. Each run holds as many
+ * features as the in memory maximum, and the runs are sorted in parallel.
  * 
  * @source $URL$
  */
@@ -87,6 +90,16 @@ public class SortedFeatureReader implements SimpleFeatureReader {
         return delegate.hasNext();
     }
 
+    /**
+     * Returns statistics about the sort, or null if the features have been sorted in memory
+     */
+    public SortStatistics getStatistics() {
+        if (delegate instanceof MergeSortReader) {
+            return ((MergeSortReader) delegate).getStatistics();
+        }
+        return null;
+    }
+
     public void close() throws IOException {
         delegate.close();
     }
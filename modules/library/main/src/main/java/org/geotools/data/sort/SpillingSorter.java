@@ -0,0 +1,184 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.sort.SortBy;
+
+/**
+ * Sorts an arbitrary number of features keeping only the sort keys on the heap.
+ * <p>
+ * Each feature is encoded into the {@link PayloadStore} as it's added, while its sort keys and
+ * address are collected in {@link KeyChunk}s. Full chunks are sorted in parallel on a thread
+ * pool while the input is still being read, and the resulting runs are then merged by the
+ * {@link MergeSortReader} returned by {@link #finish()}.
+ *
+ * @source $URL$
+ */
+class SpillingSorter {
+
+    static final Logger LOGGER = Logging.getLogger(SpillingSorter.class);
+
+    SimpleFeatureType schema;
+
+    KeyColumn[] prototypes;
+
+    int chunkSize;
+
+    int threads;
+
+    PayloadStore store;
+
+    KeyChunk current;
+
+    List<KeyChunk> chunks = new ArrayList<KeyChunk>();
+
+    List<Future<?>> pending = new ArrayList<Future<?>>();
+
+    ExecutorService executor;
+
+    AtomicLong sortTime = new AtomicLong();
+
+    int count;
+
+    long start = System.currentTimeMillis();
+
+    /**
+     * Builds a new sorter
+     *
+     * @param schema The features schema
+     * @param sortBy The sorting directives
+     * @param chunkSize The number of features in each sorted run
+     * @param threads The number of threads sorting the runs, 1 to sort them in the calling thread
+     * @param segmentSize The size of the temporary files holding the encoded features
+     */
+    SpillingSorter(SimpleFeatureType schema, SortBy[] sortBy, int chunkSize, int threads,
+            int segmentSize) {
+        this.schema = schema;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.threads = threads;
+        this.prototypes = new KeyColumn[sortBy.length];
+        for (int i = 0; i < sortBy.length; i++) {
+            prototypes[i] = KeyColumn.create(schema, sortBy[i], 0);
+        }
+        this.store = new PayloadStore(schema, segmentSize);
+    }
+
+    void add(SimpleFeature feature) throws IOException {
+        if (current == null) {
+            current = new KeyChunk(prototypes, chunkSize);
+        }
+        current.add(feature, store.add(feature));
+        count++;
+        if (current.isFull()) {
+            sort(current);
+            current = null;
+        }
+    }
+
+    void sort(final KeyChunk chunk) {
+        chunks.add(chunk);
+        Runnable task = new Runnable() {
+            public void run() {
+                long start = System.nanoTime();
+                chunk.sort();
+                sortTime.addAndGet(System.nanoTime() - start);
+            }
+        };
+        if (threads <= 1) {
+            task.run();
+        } else {
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "GeoTools feature sorter");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            pending.add(executor.submit(task));
+        }
+    }
+
+    /**
+     * Waits for all the runs to be sorted and returns a reader merging them
+     */
+    MergeSortReader finish() throws IOException {
+        try {
+            if (current != null && current.size > 0) {
+                sort(current);
+                current = null;
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while sorting the features", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to sort the features", e.getCause());
+        } finally {
+            shutdown();
+        }
+        store.finish();
+
+        SortStatistics statistics = new SortStatistics();
+        statistics.featureCount = count;
+        statistics.runCount = chunks.size();
+        statistics.segmentCount = store.getSegmentCount();
+        statistics.spilledBytes = store.size();
+        statistics.sortTime = sortTime.get() / 1000000;
+        statistics.loadTime = System.currentTimeMillis() - start;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Features spilled to disk for sorting: " + statistics);
+        }
+
+        return new MergeSortReader(schema, chunks, store, statistics);
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Releases the temporary files, to be called if {@link #finish()} is not reached
+     */
+    void dispose() {
+        shutdown();
+        store.dispose();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.collection;
+
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+
+/**
+ * A feature collection that can be cheaply split in disjoint partitions, which can then be
+ * visited independently, and in parallel, by different threads.
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public interface SplittableFeatureCollection extends SimpleFeatureCollection {
+
+    /**
+     * Splits the collection in at most the specified number of partitions. Each feature of this
+     * collection is contained in exactly one partition. The partitions are views over the
+     * contents of this collection, and should not be modified.
+     *
+     * @param partitions the desired number of partitions
+     * @return the partitions, at least one, possibly less than requested
+     */
+    List<SimpleFeatureCollection> split(int partitions);
+}
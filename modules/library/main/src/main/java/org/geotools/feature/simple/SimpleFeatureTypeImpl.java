@@ -111,6 +111,11 @@ public class SimpleFeatureTypeImpl extends FeatureTypeImpl implements
     }
 
     public AttributeDescriptor getDescriptor(String name) {
+        // the local names are unique in a simple type, use the index first
+        Integer idx = name != null ? index.get(name) : null;
+        if (idx != null) {
+            return getDescriptor(idx.intValue());
+        }
         return (AttributeDescriptor) super.getDescriptor(name);
     }
 
@@ -122,6 +127,11 @@ public class SimpleFeatureTypeImpl extends FeatureTypeImpl implements
         if(name.getNamespaceURI() == null) {
             return indexOf(name.getLocalPart());
         }
+        // check the attribute with the same local name first
+        Integer idx = index.get(name.getLocalPart());
+        if (idx != null && getDescriptor(idx.intValue()).getName().equals(name)) {
+            return idx.intValue();
+        }
         // otherwise do a full scan
         int index = 0;
         for (AttributeDescriptor descriptor :  getAttributeDescriptors()) {
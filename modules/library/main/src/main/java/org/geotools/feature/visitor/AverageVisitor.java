@@ -35,7 +35,7 @@ import org.opengis.filter.expression.Expression;
  *
  * @source $URL$
  */
-public class AverageVisitor implements FeatureCalc {
+public class AverageVisitor implements MergeableFeatureCalc {
     private Expression expr;
 
     /**
@@ -151,6 +151,22 @@ public class AverageVisitor implements FeatureCalc {
         isOptimized = false;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new AverageVisitor(expr);
+    }
+
+    /**
+     * Merges the sum and count of a partial visitor, fails if either visitor had its average
+     * set directly via {@link #setValue(Object)}
+     */
+    public void merge(MergeableFeatureCalc partial) {
+        CalcResult merged = getResult().merge(partial.getResult());
+        if (merged != CalcResult.NULL_RESULT) {
+            AverageResult average = (AverageResult) merged;
+            setValue(average.getCount(), average.getSum());
+        }
+    }
+
     /**
      * Returns a CalcResult object (containing the Average)
      *
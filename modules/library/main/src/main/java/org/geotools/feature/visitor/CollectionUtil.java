@@ -16,9 +16,17 @@
  */
 package org.geotools.feature.visitor;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.collection.SplittableFeatureCollection;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -73,4 +81,74 @@ public class CollectionUtil {
 
         return calculator.getResult();
     }
+
+    /**
+     * Runs the calculation in parallel over the partitions of the collection, each partition
+     * being visited by a partial calculator on a thread of the executor. The partial results
+     * are then merged back into the provided calculator.
+     * <p>
+     * Collections that are not {@link SplittableFeatureCollection splittable} are visited
+     * sequentially on the calling thread.
+     * </p>
+     *
+     * @param collection the collection to visit
+     * @param calculator the calculator, will contain the merged results at the end
+     * @param executor the executor running the partial calculations
+     * @param partitions the number of partitions the collection should be split into
+     * @return the result of the calculation
+     * @throws IOException if visiting one of the partitions failed
+     * @since 8.0
+     */
+    public static CalcResult calc(SimpleFeatureCollection collection,
+            MergeableFeatureCalc calculator, ExecutorService executor, int partitions)
+            throws IOException {
+        if (partitions < 2 || !(collection instanceof SplittableFeatureCollection)) {
+            collection.accepts(calculator, null);
+            return calculator.getResult();
+        }
+
+        List<SimpleFeatureCollection> parts = ((SplittableFeatureCollection) collection)
+                .split(partitions);
+        List<MergeableFeatureCalc> calcs = new ArrayList<MergeableFeatureCalc>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final SimpleFeatureCollection part : parts) {
+            final MergeableFeatureCalc partial = calculator.createPartial();
+            calcs.add(partial);
+            futures.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    part.accepts(partial, null);
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            throw (IOException) new IOException("Interrupted while waiting for the calculation")
+                    .initCause(e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (IOException) new IOException("Failed to visit a partition of the collection")
+                    .initCause(cause);
+        }
+
+        for (MergeableFeatureCalc partial : calcs) {
+            calculator.merge(partial);
+        }
+        return calculator.getResult();
+    }
+
+    static void cancel(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
 }
@@ -31,7 +31,7 @@ import org.opengis.feature.simple.SimpleFeature;
  *
  * @source $URL$
  */
-public class CountVisitor implements FeatureCalc {
+public class CountVisitor implements MergeableFeatureCalc {
     Integer count = null;
 
     public void init(SimpleFeatureCollection collection) {
@@ -63,6 +63,17 @@ public class CountVisitor implements FeatureCalc {
         this.count = null;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new CountVisitor();
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        CountVisitor other = (CountVisitor) partial;
+        if (other.count != null) {
+            setValue(getCount() + other.count);
+        }
+    }
+
     public CalcResult getResult() {
     	if(count == null) {
     		return CalcResult.NULL_RESULT;
@@ -34,7 +34,7 @@ import org.opengis.filter.expression.Expression;
  *
  * @source $URL$
  */
-public class MaxVisitor implements FeatureCalc {
+public class MaxVisitor implements MergeableFeatureCalc {
     private Expression expr;
     Comparable maxvalue;
     Comparable curvalue;
@@ -145,6 +145,20 @@ public class MaxVisitor implements FeatureCalc {
         return expr;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new MaxVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        MaxVisitor other = (MaxVisitor) partial;
+        countNull += other.countNull;
+        countNaN += other.countNaN;
+        CalcResult merged = getResult().merge(other.getResult());
+        if (merged != CalcResult.NULL_RESULT) {
+            setValue(merged.getValue());
+        }
+    }
+
     public CalcResult getResult() {
         if (!visited) {
             return CalcResult.NULL_RESULT;
@@ -0,0 +1,48 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+/**
+ * A {@link FeatureCalc} whose work can be split among several partial calculators, each one
+ * visiting a different subset of the features, and then merged back.
+ * <p>
+ * This allows a calculation to run in parallel over the partitions of a collection, see
+ * {@link CollectionUtil#calc(org.geotools.data.simple.SimpleFeatureCollection, MergeableFeatureCalc, java.util.concurrent.ExecutorService, int)}
+ * </p>
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public interface MergeableFeatureCalc extends FeatureCalc {
+
+    /**
+     * Creates a new, empty calculator performing the same calculation as this one
+     *
+     * @return a calculator whose state can later be merged into this one
+     */
+    MergeableFeatureCalc createPartial();
+
+    /**
+     * Merges the state of a partial calculator, built by {@link #createPartial()}, into this
+     * one. After the merge this calculator returns the same result it would have returned
+     * had it visited the features visited by the partial calculator too.
+     *
+     * @param partial the partial calculator
+     */
+    void merge(MergeableFeatureCalc partial);
+}
@@ -34,7 +34,7 @@ import org.opengis.filter.expression.Expression;
  *
  * @source $URL$
  */
-public class MinVisitor implements FeatureCalc {
+public class MinVisitor implements MergeableFeatureCalc {
     private Expression expr;
     Comparable minvalue;
     Comparable curvalue;
@@ -113,6 +113,17 @@ public class MinVisitor implements FeatureCalc {
         this.minvalue = new Integer(0);
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new MinVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        CalcResult merged = getResult().merge(partial.getResult());
+        if (merged != CalcResult.NULL_RESULT) {
+            setValue(merged.getValue());
+        }
+    }
+
     public CalcResult getResult() {
         if (!visited) {
             return CalcResult.NULL_RESULT;
@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import org.geotools.factory.Hints;
 import org.geotools.filter.expression.PropertyAccessor;
@@ -208,6 +209,8 @@ public class AttributeExpressionImpl extends DefaultExpression
        } else {
            this.attPath = attPath;
        }
+       // the cached attribute position refers to the old path
+       lastIndex = null;
     }	
     
     /**
@@ -241,6 +244,18 @@ public class AttributeExpressionImpl extends DefaultExpression
     public Object evaluate(Object obj, Class target) {
         // NC- new method
 
+        // fast path for simple features, access the attribute by index
+        if (obj instanceof SimpleFeature) {
+            SimpleFeature feature = (SimpleFeature) obj;
+            int index = getAttributeIndex(feature.getFeatureType());
+            if (index >= 0) {
+                if (target == null) {
+                    return feature.getAttribute(index);
+                }
+                return Converters.convert(feature.getAttribute(index), target);
+            }
+        }
+
         PropertyAccessor accessor = getLastPropertyAccessor();
         AtomicReference<Object> value = new AtomicReference<Object>();
         AtomicReference<Exception> e = new AtomicReference<Exception>();
@@ -298,6 +313,51 @@ public class AttributeExpressionImpl extends DefaultExpression
     // accessor caching, scanning the registry every time is really very expensive
     private PropertyAccessor lastAccessor;
 
+    /**
+     * Same pattern used by the simple feature property accessor, with an optional prefix: paths
+     * matching it name an attribute of the feature type, the local name being the second group
+     */
+    public static final Pattern SIMPLE_PATH = Pattern.compile("(\\w+:)?(\\w+)");
+
+    /**
+     * The position of the attribute in the last simple feature type evaluated
+     */
+    private volatile AttributeIndex lastIndex;
+
+    /**
+     * Returns the position of the attribute in the specified type, or -1 if the attribute path
+     * is not a plain attribute name of the type. The position is cached, and recomputed only
+     * when a different feature type is evaluated.
+     */
+    int getAttributeIndex(SimpleFeatureType featureType) {
+        AttributeIndex cached = lastIndex;
+        if (cached == null || cached.featureType != featureType) {
+            int index = -1;
+            if (attPath != null && SIMPLE_PATH.matcher(attPath).matches()) {
+                int split = attPath.indexOf(':');
+                index = featureType.indexOf(split == -1 ? attPath : attPath.substring(split + 1));
+            }
+            cached = new AttributeIndex(featureType, index);
+            lastIndex = cached;
+        }
+        return cached.index;
+    }
+
+    /**
+     * An immutable feature type/attribute position pair, so that it can be safely shared among
+     * threads
+     */
+    static final class AttributeIndex {
+        final SimpleFeatureType featureType;
+
+        final int index;
+
+        AttributeIndex(SimpleFeatureType featureType, int index) {
+            this.featureType = featureType;
+            this.index = index;
+        }
+    }
+
     private synchronized PropertyAccessor getLastPropertyAccessor() {
         return lastAccessor;
     }
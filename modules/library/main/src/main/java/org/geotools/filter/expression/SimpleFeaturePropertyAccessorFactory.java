@@ -192,7 +192,7 @@ public class SimpleFeaturePropertyAccessorFactory implements
         	xpath = stripPrefix(xpath);
         	
         	if ( object instanceof SimpleFeature ) {
-        		return ((SimpleFeature) object).getType().getDescriptor(xpath) != null;
+        		return ((SimpleFeature) object).getFeatureType().indexOf(xpath) != -1;
         	}
         	
         	if ( object instanceof SimpleFeatureType ) {
@@ -0,0 +1,315 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.visitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.geotools.factory.Hints;
+import org.geotools.filter.AttributeExpressionImpl;
+import org.geotools.filter.FunctionFinder;
+import org.geotools.filter.MultiCompareFilterImpl;
+import org.geotools.util.ConverterFactory;
+import org.geotools.util.Converters;
+import org.opengis.feature.Attribute;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.FilterVisitor;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Function;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * Compiles a filter or an expression for repeated evaluation against the features of a given
+ * {@link SimpleFeatureType}. The returned copy:
+ * <ul>
+ * <li>resolves the attributes of the binary comparisons against a literal to attribute indexes
+ * once, instead of looking up a property accessor and the attribute name at each evaluation</li>
+ * <li>converts the literals of the binary comparisons against an attribute to the attribute
+ * binding once, instead of converting them for each feature</li>
+ * </ul>
+ * The compiled filter gives the same results as the original one, and falls back on the
+ * original behavior for any object that is not a feature of the compilation type (the check is
+ * an identity comparison with the feature type). The compiled filters are meant for evaluation
+ * only: the comparisons are wrapped in a filter that forwards the visitors to an equivalent
+ * uncompiled comparison, so they should not be inspected with <code>instanceof</code> checks.
+ * <p>
+ * The filters built by other factories than the default one are duplicated, but their
+ * comparisons are not optimized.
+ *
+ * @source $URL$
+ */
+public class CompilingFilterVisitor extends DuplicatingFilterVisitor {
+
+    final SimpleFeatureType schema;
+
+    final FunctionFinder functionFinder = new FunctionFinder(null);
+
+    /**
+     * Compiles the filter for evaluation against features of the specified type
+     */
+    public static Filter compile(Filter filter, SimpleFeatureType schema) {
+        if (filter == null || filter == Filter.INCLUDE || filter == Filter.EXCLUDE) {
+            return filter;
+        }
+        return (Filter) filter.accept(new CompilingFilterVisitor(schema), null);
+    }
+
+    /**
+     * Compiles the expression for evaluation against features of the specified type
+     */
+    public static Expression compile(Expression expression, SimpleFeatureType schema) {
+        if (expression == null) {
+            return null;
+        }
+        return (Expression) expression.accept(new CompilingFilterVisitor(schema), null);
+    }
+
+    public CompilingFilterVisitor(SimpleFeatureType schema) {
+        this.schema = schema;
+    }
+
+    public CompilingFilterVisitor(SimpleFeatureType schema, FilterFactory2 factory) {
+        super(factory);
+        this.schema = schema;
+    }
+
+    /**
+     * Returns the position of the attribute the expression points to in the compilation type, or
+     * -1 if the expression is not a property name or its path is not a plain attribute name
+     */
+    int indexOf(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return -1;
+        }
+        String path = ((PropertyName) expression).getPropertyName();
+        if (path == null) {
+            return -1;
+        }
+        Matcher matcher = AttributeExpressionImpl.SIMPLE_PATH.matcher(path);
+        return matcher.matches() ? schema.indexOf(matcher.group(2)) : -1;
+    }
+
+    @Override
+    public Object visit(Function expression, Object extraData) {
+        List<Expression> params = new ArrayList<Expression>();
+        for (Expression param : expression.getParameters()) {
+            params.add(visit(param, extraData));
+        }
+        Function copy;
+        try {
+            copy = functionFinder.findFunction(expression.getName(), params, expression
+                    .getFallbackValue());
+        } catch (RuntimeException e) {
+            copy = null;
+        }
+        // functions not registered in the function factories cannot be rebuilt
+        if (copy == null || copy.getClass() != expression.getClass()) {
+            return expression;
+        }
+        return copy;
+    }
+
+    @Override
+    public Object visit(PropertyIsEqualTo filter, Object extraData) {
+        Expression expr1 = visit(filter.getExpression1(), extraData);
+        Expression expr2 = visit(filter.getExpression2(), extraData);
+        return optimize(getFactory(extraData).equal(expr1, expr2, filter.isMatchingCase(),
+                filter.getMatchAction()), true);
+    }
+
+    @Override
+    public Object visit(PropertyIsNotEqualTo filter, Object extraData) {
+        Expression expr1 = visit(filter.getExpression1(), extraData);
+        Expression expr2 = visit(filter.getExpression2(), extraData);
+        return optimize(getFactory(extraData).notEqual(expr1, expr2, filter.isMatchingCase(),
+                filter.getMatchAction()), true);
+    }
+
+    @Override
+    public Object visit(PropertyIsGreaterThan filter, Object extraData) {
+        Expression expr1 = visit(filter.getExpression1(), extraData);
+        Expression expr2 = visit(filter.getExpression2(), extraData);
+        return optimize(getFactory(extraData).greater(expr1, expr2, filter.isMatchingCase(),
+                filter.getMatchAction()), false);
+    }
+
+    @Override
+    public Object visit(PropertyIsGreaterThanOrEqualTo filter, Object extraData) {
+        Expression expr1 = visit(filter.getExpression1(), extraData);
+        Expression expr2 = visit(filter.getExpression2(), extraData);
+        return optimize(getFactory(extraData).greaterOrEqual(expr1, expr2, filter
+                .isMatchingCase(), filter.getMatchAction()), false);
+    }
+
+    @Override
+    public Object visit(PropertyIsLessThan filter, Object extraData) {
+        Expression expr1 = visit(filter.getExpression1(), extraData);
+        Expression expr2 = visit(filter.getExpression2(), extraData);
+        return optimize(getFactory(extraData).less(expr1, expr2, filter.isMatchingCase(), filter
+                .getMatchAction()), false);
+    }
+
+    @Override
+    public Object visit(PropertyIsLessThanOrEqualTo filter, Object extraData) {
+        Expression expr1 = visit(filter.getExpression1(), extraData);
+        Expression expr2 = visit(filter.getExpression2(), extraData);
+        return optimize(getFactory(extraData).lessOrEqual(expr1, expr2, filter.isMatchingCase(),
+                filter.getMatchAction()), false);
+    }
+
+    /**
+     * Wraps a comparison between an attribute and a literal into a {@link CompiledComparison}.
+     *
+     * @param symmetric
+     *            true if the comparison converts the literal to the attribute type regardless of
+     *            the side the literal is on (equality), false if the literal is converted only
+     *            when it is the second expression (ordering)
+     */
+    Filter optimize(Filter filter, boolean symmetric) {
+        if (!(filter instanceof MultiCompareFilterImpl)) {
+            return filter;
+        }
+        MultiCompareFilterImpl comparison = (MultiCompareFilterImpl) filter;
+        Expression expr1 = comparison.getExpression1();
+        Expression expr2 = comparison.getExpression2();
+        int index;
+        Literal literal;
+        boolean propertyFirst;
+        if (expr2 instanceof Literal && (index = indexOf(expr1)) >= 0) {
+            literal = (Literal) expr2;
+            propertyFirst = true;
+        } else if (expr1 instanceof Literal && (index = indexOf(expr2)) >= 0) {
+            literal = (Literal) expr1;
+            propertyFirst = false;
+        } else {
+            return filter;
+        }
+
+        Object value = literal.getValue();
+        if (value == null || value instanceof Collection) {
+            return filter;
+        }
+        Object converted = null;
+        if (symmetric || propertyFirst) {
+            converted = convert(value, schema.getDescriptor(index).getType().getBinding());
+        }
+        return new CompiledComparison(comparison, schema, index, value, converted,
+                propertyFirst, symmetric);
+    }
+
+    /**
+     * Converts the literal value to the attribute binding, provided the conversion is safe and
+     * lossless, returns null otherwise
+     */
+    Object convert(Object value, Class<?> binding) {
+        if (binding == Object.class || Collection.class.isAssignableFrom(binding)) {
+            return null;
+        }
+        if (binding.isInstance(value)) {
+            return value;
+        }
+        Hints hints = new Hints(ConverterFactory.SAFE_CONVERSION, Boolean.TRUE);
+        Object converted = Converters.convert(value, binding, hints);
+        // the comparisons convert to the class of the actual value, skip abstract bindings
+        if (converted == null || converted.getClass() != binding) {
+            return null;
+        }
+        // make sure no information got lost in the conversion
+        Object back = Converters.convert(converted, value.getClass(), hints);
+        return value.equals(back) ? converted : null;
+    }
+
+    /**
+     * A binary comparison between an attribute and a literal, reading the attribute by index and
+     * using the literal already converted to the attribute binding when the attribute value is of
+     * the same class. Any other case is delegated to the comparison itself.
+     * <p>
+     * Equality falls back on numeric comparisons when the values are not equal, so for non
+     * numeric attributes the converted literal is used only to confirm a match.
+     */
+    static class CompiledComparison implements Filter {
+
+        final MultiCompareFilterImpl comparison;
+
+        final SimpleFeatureType featureType;
+
+        final int index;
+
+        final Object literal;
+
+        final Object converted;
+
+        final boolean propertyFirst;
+
+        final boolean equality;
+
+        CompiledComparison(MultiCompareFilterImpl comparison, SimpleFeatureType featureType,
+                int index, Object literal, Object converted, boolean propertyFirst,
+                boolean equality) {
+            this.comparison = comparison;
+            this.featureType = featureType;
+            this.index = index;
+            this.literal = literal;
+            this.converted = converted;
+            this.propertyFirst = propertyFirst;
+            this.equality = equality;
+        }
+
+        public boolean evaluate(Object object) {
+            // the index is valid only for features of the compilation type
+            if (!(object instanceof SimpleFeature)
+                    || ((SimpleFeature) object).getFeatureType() != featureType) {
+                return comparison.evaluate(object);
+            }
+            Object value = ((SimpleFeature) object).getAttribute(index);
+            if (value instanceof Collection || value instanceof Attribute) {
+                return comparison.evaluate(object);
+            }
+            Object other = literal;
+            if (converted != null && value != null && value.getClass() == converted.getClass()
+                    && (!equality || value instanceof Number || value.equals(converted))) {
+                other = converted;
+            }
+            if (propertyFirst) {
+                return comparison.evaluateInternal(value, other);
+            } else {
+                return comparison.evaluateInternal(other, value);
+            }
+        }
+
+        public Object accept(FilterVisitor visitor, Object extraData) {
+            return comparison.accept(visitor, extraData);
+        }
+
+        @Override
+        public String toString() {
+            return comparison.toString();
+        }
+    }
+}
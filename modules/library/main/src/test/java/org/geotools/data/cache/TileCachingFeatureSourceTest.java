@@ -0,0 +1,281 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Checks the {@link TileCachingFeatureSource} returns the same results as the source it wraps,
+ * and how its tiles get loaded, evicted and invalidated
+ *
+ * @source $URL$
+ */
+public class TileCachingFeatureSourceTest {
+
+    FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    MemoryDataStore store;
+
+    SimpleFeatureStore source;
+
+    TileCachingFeatureSource cached;
+
+    @Before
+    public void setup() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("points");
+        tb.setCRS(DefaultEngineeringCRS.CARTESIAN_2D);
+        tb.add("geom", Point.class);
+        tb.add("value", Integer.class);
+        tb.add("name", String.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+
+        store = new MemoryDataStore(type);
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        for (int i = 0; i < 100; i++) {
+            fb.add(gf.createPoint(new Coordinate((i % 10) * 10, (i / 10) * 10)));
+            fb.add(i);
+            fb.add("point" + (100 + i));
+            store.addFeature(fb.buildFeature("points." + i));
+        }
+        source = (SimpleFeatureStore) store.getFeatureSource("points");
+        // the memory store does not notify the auto commit changes to the auto commit stores
+        source.setTransaction(new DefaultTransaction());
+        // 4x4 tiles over a 90x90 extent
+        cached = new TileCachingFeatureSource(source, 4, Long.MAX_VALUE);
+    }
+
+    Filter fid(String id) {
+        return ff.id(Collections.singleton(ff.featureId(id)));
+    }
+
+    Filter bbox(double minx, double miny, double maxx, double maxy) {
+        return ff.bbox("geom", minx, miny, maxx, maxy, null);
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        assertSameResults(bbox(0, 0, 20, 20));
+        CacheStatistics stats = cached.getStatistics();
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getTileCount());
+        assertTrue(stats.getSize() > 0);
+
+        assertSameResults(bbox(0, 0, 20, 20));
+        assertSameResults(bbox(5, 5, 15, 15));
+        stats = cached.getStatistics();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+
+        // partially covered by the cached tile
+        assertSameResults(bbox(0, 0, 40, 40));
+        stats = cached.getStatistics();
+        assertEquals(1, stats.getPartialHits());
+        assertEquals(4, stats.getTileCount());
+        assertEquals(4, stats.getTileMisses());
+        assertEquals(3, stats.getTileHits());
+        assertEquals(3d / 7, stats.getHitRatio(), 1e-9);
+
+        // everything
+        assertSameResults(bbox(0, 0, 90, 90));
+        assertEquals(16, cached.getStatistics().getTileCount());
+    }
+
+    @Test
+    public void testNonSpatialQueries() throws Exception {
+        assertSameResults(bbox(0, 0, 90, 90));
+        assertEquals(16, cached.getStatistics().getTileCount());
+
+        // features without a geometry are never cached, the queries that could return them
+        // have to be delegated
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(source.getSchema());
+        fb.add(null);
+        fb.add(-1);
+        fb.add("nowhere");
+        store.addFeature(fb.buildFeature("points.nogeom"));
+
+        assertSameResults(Filter.INCLUDE);
+        assertSameResults(ff.equals(ff.property("name"), ff.literal("nowhere")));
+        assertSameResults(ff.or(bbox(0, 0, 20, 20), ff.less(ff.property("value"), ff
+                .literal(0))));
+        assertSameResults(ff.not(bbox(0, 0, 20, 20)));
+        assertEquals(101, cached.getCount(Query.ALL));
+        assertEquals(4, cached.getStatistics().getBypassed());
+
+        // spatial queries cannot return them
+        assertSameResults(bbox(0, 0, 90, 90));
+        assertEquals(4, cached.getStatistics().getBypassed());
+    }
+
+    @Test
+    public void testOtherGeometry() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("lines");
+        tb.setCRS(DefaultEngineeringCRS.CARTESIAN_2D);
+        tb.add("geom", Point.class);
+        tb.add("other", Point.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+        MemoryDataStore store = new MemoryDataStore(type);
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        for (int i = 0; i < 10; i++) {
+            fb.add(gf.createPoint(new Coordinate(i * 10, i * 10)));
+            fb.add(gf.createPoint(new Coordinate(90 - i * 10, i * 10)));
+            store.addFeature(fb.buildFeature("lines." + i));
+        }
+        source = (SimpleFeatureStore) store.getFeatureSource("lines");
+        cached = new TileCachingFeatureSource(source, 4, Long.MAX_VALUE);
+
+        // the tiles are loaded by the default geometry, a filter on the other one is delegated
+        Filter filter = ff.bbox("other", 80, 0, 90, 20, null);
+        assertSameResults(filter);
+        assertEquals(2, cached.getFeatures(filter).size());
+        assertEquals(2, cached.getStatistics().getBypassed());
+        assertEquals(0, cached.getStatistics().getTileCount());
+
+        // even when combined with one on the default geometry
+        assertSameResults(ff.and(bbox(0, 0, 90, 90), filter));
+        assertEquals(0, cached.getStatistics().getTileCount());
+    }
+
+    @Test
+    public void testQueryOptions() throws Exception {
+        // residual filter
+        Filter filter = ff.and(bbox(0, 0, 60, 60), ff.greater(ff.property("value"), ff
+                .literal(30)));
+        assertSameResults(filter);
+
+        // property selection and max features
+        Query query = new Query("points", bbox(0, 0, 60, 60), new String[] { "value" });
+        query.setMaxFeatures(5);
+        SimpleFeatureCollection features = cached.getFeatures(query);
+        assertEquals(1, features.getSchema().getAttributeCount());
+        assertEquals(5, features.size());
+        assertEquals(5, cached.getCount(query));
+
+        // forcing a different CRS is delegated to the source
+        query = new Query("points", bbox(0, 0, 60, 60));
+        query.setCoordinateSystem(DefaultEngineeringCRS.GENERIC_2D);
+        long bypassed = cached.getStatistics().getBypassed();
+        assertEquals(source.getFeatures(query).size(), cached.getFeatures(query).size());
+        assertEquals(bypassed + 1, cached.getStatistics().getBypassed());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        long tileSize;
+        cached.getFeatures(bbox(0, 0, 1, 1)).size();
+        tileSize = cached.getStatistics().getSize();
+
+        // room for two tiles only (the ids make the tile sizes slightly different)
+        cached = new TileCachingFeatureSource(source, 4, tileSize * 5 / 2);
+        assertSameResults(bbox(0, 0, 1, 1));
+        assertSameResults(bbox(89, 89, 90, 90));
+        assertSameResults(bbox(0, 89, 1, 90));
+        CacheStatistics stats = cached.getStatistics();
+        assertEquals(2, stats.getTileCount());
+        assertEquals(1, stats.getEvictions());
+        assertTrue(stats.getSize() <= stats.getMaxSize());
+
+        // the first tile was the least recently used one
+        assertSameResults(bbox(0, 0, 1, 1));
+        assertEquals(4, cached.getStatistics().getMisses());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        Filter all = bbox(0, 0, 90, 90);
+        assertSameResults(all);
+        assertEquals(16, cached.getStatistics().getTileCount());
+
+        // modify a single feature, only its tile should go. Use a separate store, the listeners
+        // of a store are not notified of the changes made in the same transaction
+        SimpleFeatureStore writer = (SimpleFeatureStore) store.getFeatureSource("points");
+        writer.modifyFeatures(writer.getSchema().getDescriptor("value"), -1, fid("points.0"));
+        assertEquals(15, cached.getStatistics().getTileCount());
+        assertSameResults(all);
+        assertEquals(16, cached.getStatistics().getTileCount());
+
+        // same with a transaction, the cache is updated on commit
+        Transaction t = new DefaultTransaction();
+        writer.setTransaction(t);
+        writer.modifyFeatures(writer.getSchema().getDescriptor("value"), -2, fid("points.99"));
+        assertEquals(99, valueOf("points.99"));
+        t.commit();
+        t.close();
+        assertSameResults(all);
+        assertEquals(-2, valueOf("points.99"));
+    }
+
+    int valueOf(String id) throws Exception {
+        // restricted to the grid so that the value comes from the cache
+        SimpleFeatureIterator it = cached.getFeatures(ff.and(bbox(0, 0, 90, 90), fid(id)))
+                .features();
+        try {
+            return (Integer) it.next().getAttribute("value");
+        } finally {
+            it.close();
+        }
+    }
+
+    void assertSameResults(Filter filter) throws Exception {
+        Map<String, Object> expected = collect(source.getFeatures(filter));
+        Map<String, Object> actual = collect(cached.getFeatures(filter));
+        assertEquals(expected, actual);
+    }
+
+    Map<String, Object> collect(SimpleFeatureCollection features) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        SimpleFeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                result.put(f.getID(), f.getAttributes());
+            }
+        } finally {
+            it.close();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.BoundsVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Checks {@link ColumnarFeatureCollection} returns the same contents and calculation results
+ * of a {@link ListFeatureCollection}
+ *
+ * @source $URL$
+ */
+public class ColumnarFeatureCollectionTest {
+
+    static final String[] WKT = { "POINT (1 2)", "LINESTRING (0 0, 10 10, 20 0)",
+            "LINESTRING (0 0 1, 10 10 2)", "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), "
+                    + "(2 2, 4 2, 4 4, 2 2))", "MULTIPOINT ((1 1), (2 2))",
+            "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))",
+            "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+            "GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 5 -5))", "POLYGON EMPTY" };
+
+    SimpleFeatureType type;
+
+    ListFeatureCollection list;
+
+    ColumnarFeatureCollection columnar;
+
+    FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    @Before
+    public void setup() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.setCRS(DefaultEngineeringCRS.CARTESIAN_2D);
+        tb.add("geom", Geometry.class);
+        tb.add("i", Integer.class);
+        tb.add("s", Short.class);
+        tb.add("l", Long.class);
+        tb.add("d", Double.class);
+        tb.add("f", Float.class);
+        tb.add("b", Boolean.class);
+        tb.add("name", String.class);
+        tb.add("date", Date.class);
+        type = tb.buildFeatureType();
+
+        list = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        WKTReader reader = new WKTReader();
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            boolean nulls = i % 10 == 9;
+            fb.add(nulls ? null : reader.read(WKT[i % WKT.length]));
+            fb.add(nulls ? null : random.nextInt(1000) - 500);
+            fb.add(nulls ? null : (short) random.nextInt(100));
+            fb.add(nulls ? null : random.nextLong());
+            fb.add(nulls ? null : random.nextGaussian());
+            fb.add(nulls ? null : random.nextFloat());
+            fb.add(nulls ? null : random.nextBoolean());
+            fb.add(nulls ? null : "name" + (i % 7));
+            fb.add(nulls ? null : new Date(i * 1000L));
+            String fid = i % 3 == 0 ? "test." + i : (i % 3 == 1 ? "f0" + i : "id-" + i + "x");
+            list.add(fb.buildFeature(fid));
+        }
+        columnar = new ColumnarFeatureCollection(list);
+    }
+
+    @Test
+    public void contents() {
+        assertEquals(list.size(), columnar.size());
+        SimpleFeatureIterator expected = list.features();
+        SimpleFeatureIterator actual = columnar.features();
+        try {
+            while (expected.hasNext()) {
+                assertTrue(actual.hasNext());
+                assertSameFeature(expected.next(), actual.next());
+            }
+            assertFalse(actual.hasNext());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    void assertSameFeature(SimpleFeature expected, SimpleFeature actual) {
+        assertEquals(expected.getID(), actual.getID());
+        assertEquals(expected.getBounds(), actual.getBounds());
+        for (int i = 0; i < type.getAttributeCount(); i++) {
+            Object value = expected.getAttribute(i);
+            if (value instanceof Geometry) {
+                Geometry geometry = (Geometry) actual.getAttribute(i);
+                assertTrue(((Geometry) value).equalsExact(geometry));
+                assertEquals(((Geometry) value).getCoordinate() == null ? Double.NaN
+                        : ((Geometry) value).getCoordinate().z, geometry.getCoordinate() == null
+                        ? Double.NaN : geometry.getCoordinate().z, 0d);
+            } else {
+                assertEquals(value, actual.getAttribute(i));
+            }
+        }
+        assertEquals(expected.getAttribute("name"), actual.getAttribute("name"));
+    }
+
+    @Test
+    public void bounds() {
+        ReferencedEnvelope expected = new ReferencedEnvelope(DefaultEngineeringCRS.CARTESIAN_2D);
+        SimpleFeatureIterator it = list.features();
+        while (it.hasNext()) {
+            expected.include(it.next().getBounds());
+        }
+        assertEquals(expected, columnar.getBounds());
+        assertEquals(DefaultEngineeringCRS.CARTESIAN_2D, columnar.getBounds()
+                .getCoordinateReferenceSystem());
+    }
+
+    @Test
+    public void setAttribute() {
+        SimpleFeature feature = columnar.features().next();
+        feature.setAttribute("i", "42");
+        feature.setAttribute("name", "updated");
+        feature.setDefaultGeometry(new GeometryFactory().createPoint(new Coordinate(100, 100)));
+
+        SimpleFeature reread = columnar.features().next();
+        assertEquals(42, reread.getAttribute("i"));
+        assertEquals("updated", reread.getAttribute("name"));
+        assertEquals(100, columnar.getBounds().getMaxX(), 0d);
+        assertEquals(new ReferencedEnvelope(100, 100, 100, 100,
+                DefaultEngineeringCRS.CARTESIAN_2D), reread.getBounds());
+    }
+
+    @Test
+    public void calculations() throws Exception {
+        String[] numbers = { "i", "s", "l", "d", "f" };
+        for (String name : numbers) {
+            assertSameResult(new SumVisitor(ff.property(name)), new SumVisitor(ff.property(name)));
+            assertSameResult(new AverageVisitor(ff.property(name)), new AverageVisitor(ff
+                    .property(name)));
+            assertSameResult(new MinVisitor(ff.property(name)), new MinVisitor(ff.property(name)));
+            assertSameResult(new MaxVisitor(ff.property(name)), new MaxVisitor(ff.property(name)));
+            assertSameResult(new UniqueVisitor(ff.property(name)), new UniqueVisitor(ff
+                    .property(name)));
+        }
+        assertSameResult(new UniqueVisitor(ff.property("name")), new UniqueVisitor(ff
+                .property("name")));
+        assertSameResult(new UniqueVisitor(ff.property("b")), new UniqueVisitor(ff.property("b")));
+        assertSameResult(new CountVisitor(), new CountVisitor());
+        assertSameResult(new BoundsVisitor(), new BoundsVisitor());
+    }
+
+    void assertSameResult(FeatureCalc expected, FeatureCalc actual) throws Exception {
+        if (actual instanceof CountVisitor || actual instanceof UniqueVisitor) {
+            // these handle nulls, compare over the same features
+            list.accepts(expected, null);
+            columnar.accepts(actual, null);
+            assertEquals(expected.getResult().getValue(), actual.getResult().getValue());
+            return;
+        }
+
+        // the other list visitors do not handle nulls, so only the features with values are
+        // visited, while the columnar calculations skip the null values
+        ListFeatureCollection noNulls = new ListFeatureCollection(type);
+        SimpleFeatureIterator it = list.features();
+        while (it.hasNext()) {
+            SimpleFeature f = it.next();
+            if (f.getAttribute("i") != null) {
+                noNulls.add(f);
+            }
+        }
+
+        noNulls.accepts(expected, null);
+        columnar.accepts(actual, null);
+        assertEquals(expected.getResult().getValue(), actual.getResult().getValue());
+    }
+
+    @Test
+    public void split() throws Exception {
+        List<SimpleFeatureCollection> partitions = columnar.split(3);
+        assertEquals(3, partitions.size());
+        int total = 0;
+        SumVisitor sum = new SumVisitor(ff.property("i"));
+        for (SimpleFeatureCollection partition : partitions) {
+            total += partition.size();
+            partition.accepts(sum, null);
+        }
+        assertEquals(columnar.size(), total);
+
+        SumVisitor expected = new SumVisitor(ff.property("i"));
+        columnar.accepts(expected, null);
+        assertEquals(expected.getResult().getValue(), sum.getResult().getValue());
+    }
+
+    @Test
+    public void clear() {
+        columnar.clear();
+        assertTrue(columnar.isEmpty());
+        assertTrue(columnar.getBounds().isNull());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Checks the {@link SpillingSorter} returns the same order as an in memory stable sort
+ *
+ * @source $URL$
+ */
+public class SpillingSorterTest {
+
+    SimpleFeatureType schema;
+
+    List<SimpleFeature> features;
+
+    FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    @Before
+    public void setup() {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.setCRS(DefaultGeographicCRS.WGS84);
+        tb.add("geom", Point.class);
+        tb.add("i", Integer.class);
+        tb.add("d", Double.class);
+        tb.add("b", Boolean.class);
+        tb.add("name", String.class);
+        tb.add("date", Date.class);
+        tb.add("stamp", java.sql.Timestamp.class);
+        schema = tb.buildFeatureType();
+
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        Random random = new Random(0);
+        features = new ArrayList<SimpleFeature>();
+        for (int i = 0; i < 1000; i++) {
+            boolean nulls = i % 17 == 0;
+            fb.add(nulls ? null : gf.createPoint(new Coordinate(i, -i)));
+            fb.add(nulls ? null : random.nextInt(50));
+            fb.add(nulls ? null : random.nextDouble() * 10 - 5);
+            fb.add(nulls ? null : random.nextBoolean());
+            fb.add(nulls ? null : "name" + random.nextInt(30));
+            fb.add(nulls ? null : new Date(random.nextInt(100) * 1000L));
+            fb.add(nulls ? null : new java.sql.Timestamp(random.nextInt(100) * 1000L));
+            features.add(fb.buildFeature("test." + random.nextInt(100000)));
+        }
+    }
+
+    @Test
+    public void testIntegerAscending() throws IOException {
+        assertSorted(new SortBy[] { ff.sort("i", SortOrder.ASCENDING) }, 64, 1);
+    }
+
+    @Test
+    public void testDoubleDescending() throws IOException {
+        assertSorted(new SortBy[] { ff.sort("d", SortOrder.DESCENDING) }, 64, 4);
+    }
+
+    @Test
+    public void testCompositeKeys() throws IOException {
+        assertSorted(new SortBy[] { ff.sort("b", SortOrder.ASCENDING),
+                ff.sort("name", SortOrder.DESCENDING), ff.sort("date", SortOrder.ASCENDING) },
+                100, 4);
+        assertSorted(new SortBy[] { ff.sort("stamp", SortOrder.DESCENDING),
+                SortBy.NATURAL_ORDER }, 33, 2);
+    }
+
+    @Test
+    public void testFid() throws IOException {
+        assertSorted(new SortBy[] { SortBy.REVERSE_ORDER }, 10, 3);
+    }
+
+    @Test
+    public void testSingleRun() throws IOException {
+        assertSorted(new SortBy[] { ff.sort("name", SortOrder.ASCENDING) }, 5000, 4);
+    }
+
+    @Test
+    public void testStatisticsAndCleanup() throws IOException {
+        SortBy[] sortBy = new SortBy[] { ff.sort("i", SortOrder.ASCENDING) };
+        // small segments, forcing the features to be spread over several files
+        SpillingSorter sorter = new SpillingSorter(schema, sortBy, 128, 2, 4096);
+        for (SimpleFeature f : features) {
+            sorter.add(f);
+        }
+        List<File> files = new ArrayList<File>(sorter.store.files);
+        MergeSortReader reader = sorter.finish();
+        SortStatistics statistics = reader.getStatistics();
+        assertEquals(features.size(), statistics.getFeatureCount());
+        assertEquals(8, statistics.getRunCount());
+        assertTrue(statistics.getSegmentCount() > 1);
+        assertEquals(files.size(), statistics.getSegmentCount());
+        assertTrue(statistics.getSpilledBytes() > 4096);
+
+        int count = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            count++;
+        }
+        assertEquals(features.size(), count);
+        reader.close();
+        for (File file : files) {
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test
+    public void testSortedFeatureReader() throws IOException {
+        SortBy[] sortBy = new SortBy[] { ff.sort("i", SortOrder.DESCENDING) };
+        SortedFeatureReader reader = new SortedFeatureReader(new ListReader(), sortBy, 100);
+        try {
+            assertNotNull(reader.getStatistics());
+            assertEquals(10, reader.getStatistics().getRunCount());
+            assertSameOrder(sortBy, reader);
+        } finally {
+            reader.close();
+        }
+
+        reader = new SortedFeatureReader(new ListReader(), sortBy, features.size());
+        try {
+            assertNull(reader.getStatistics());
+        } finally {
+            reader.close();
+        }
+    }
+
+    void assertSorted(SortBy[] sortBy, int chunkSize, int threads) throws IOException {
+        SpillingSorter sorter = new SpillingSorter(schema, sortBy, chunkSize, threads,
+                PayloadStore.DEFAULT_SEGMENT_SIZE);
+        for (SimpleFeature f : features) {
+            sorter.add(f);
+        }
+        MergeSortReader reader = sorter.finish();
+        try {
+            assertSameOrder(sortBy, reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    void assertSameOrder(SortBy[] sortBy, SimpleFeatureReader reader) throws IOException {
+        // Collections.sort is stable, so the order must be exactly the same
+        List<SimpleFeature> expected = new ArrayList<SimpleFeature>(features);
+        Comparator<SimpleFeature> comparator = MergeSortDumper.getComparator(sortBy);
+        Collections.sort(expected, comparator);
+
+        for (SimpleFeature e : expected) {
+            assertTrue(reader.hasNext());
+            SimpleFeature actual = reader.next();
+            assertEquals(e.getID(), actual.getID());
+            for (int i = 0; i < schema.getAttributeCount(); i++) {
+                Object value = e.getAttribute(i);
+                if (value instanceof Geometry) {
+                    assertTrue(((Geometry) value).equalsExact((Geometry) actual.getAttribute(i)));
+                } else {
+                    assertEquals(value, actual.getAttribute(i));
+                }
+            }
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    class ListReader implements SimpleFeatureReader {
+        int next;
+
+        public SimpleFeatureType getFeatureType() {
+            return schema;
+        }
+
+        public SimpleFeature next() {
+            return features.get(next++);
+        }
+
+        public boolean hasNext() {
+            return next < features.size();
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -21,10 +21,15 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.geotools.data.DataTestCase;
 import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -459,6 +464,64 @@ public class VisitorCalculationTest extends DataTestCase {
         assertEquals((double) 7.5, sumResult.toDouble(), 0);
     }
     
+    public void testParallelCalc() throws Exception {
+        ListFeatureCollection list = new ListFeatureCollection(fc3);
+        FilterFactory factory = CommonFactoryFinder.getFilterFactory(null);
+        Expression expr = factory.property(ft3.getDescriptor(0).getLocalName());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(5050, CollectionUtil.calc(list, new SumVisitor(expr), executor, 4).toInt());
+            assertEquals(100, CollectionUtil.calc(list, new CountVisitor(), executor, 4).toInt());
+            assertEquals(50.5, CollectionUtil.calc(list, new AverageVisitor(expr), executor, 4).toDouble(), 0);
+            assertEquals(1, CollectionUtil.calc(list, new MinVisitor(expr), executor, 4).toInt());
+            assertEquals(100, CollectionUtil.calc(list, new MaxVisitor(expr), executor, 4).toInt());
+            assertEquals(100, CollectionUtil.calc(list, new UniqueVisitor(expr), executor, 4).toSet().size());
+            
+            // more partitions than features
+            assertEquals(5050, CollectionUtil.calc(list, new SumVisitor(expr), executor, 1000).toInt());
+            // not splittable, visited sequentially
+            assertEquals(5050, CollectionUtil.calc(fc3, new SumVisitor(expr), executor, 4).toInt());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    public void testParallelCalcSpatialIndex() throws Exception {
+        SpatialIndexFeatureCollection index = new SpatialIndexFeatureCollection(fc);
+        BoundsVisitor expected = new BoundsVisitor();
+        fc.accepts(expected, null);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BoundsVisitor bounds = new BoundsVisitor();
+            CollectionUtil.calc(index, bounds, executor, 2);
+            assertEquals(expected.getBounds(), bounds.getBounds());
+            assertEquals(fc.size(), CollectionUtil.calc(index, new CountVisitor(), executor, 2).toInt());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    public void testSplit() throws Exception {
+        ListFeatureCollection list = new ListFeatureCollection(fc3);
+        List<SimpleFeatureCollection> parts = list.split(3);
+        assertEquals(3, parts.size());
+        Set<String> ids = new HashSet<String>();
+        for (SimpleFeatureCollection part : parts) {
+            SimpleFeatureIterator it = part.features();
+            try {
+                while(it.hasNext()) {
+                    assertTrue(ids.add(it.next().getID()));
+                }
+            } finally {
+                it.close();
+            }
+        }
+        assertEquals(100, ids.size());
+        
+        assertEquals(1, new ListFeatureCollection(ft3).split(4).size());
+    }
+    
     //try merging 2 incompatible CalcResults and check for the exception
     public void testBadMerge() throws IllegalFilterException, IOException {
     	//count + max = boom!
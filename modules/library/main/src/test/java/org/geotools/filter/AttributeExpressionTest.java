@@ -53,5 +53,87 @@ public class AttributeExpressionTest extends TestCase {
 		assertEquals( "fid", ex.evaluate( feature ) );
 	}
 	
+	public void testAttributeIndex() {
+	    SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+	    typeBuilder.setName( "test" );
+	    typeBuilder.setNamespaceURI( "http://www.geotools.org/test" );
+	    typeBuilder.add( "foo", Integer.class );
+	    typeBuilder.add( "bar", Double.class );
+	    SimpleFeatureType type = typeBuilder.buildFeatureType();
+	    
+	    // same attributes, different order
+	    typeBuilder.setName( "test" );
+	    typeBuilder.add( "bar", Double.class );
+	    typeBuilder.add( "foo", Integer.class );
+	    SimpleFeatureType reversed = typeBuilder.buildFeatureType();
+	    
+	    SimpleFeature feature = SimpleFeatureBuilder.build(type, new Object[] {1, 2.0}, "f1");
+	    SimpleFeature other = SimpleFeatureBuilder.build(reversed, new Object[] {3.0, 4}, "f2");
+	    
+	    AttributeExpressionImpl ex = new AttributeExpressionImpl( "test:foo" );
+	    assertEquals( 0, ex.getAttributeIndex(type) );
+	    assertEquals( 1, ex.evaluate( feature ) );
+	    assertEquals( 1.0, ex.evaluate( feature, Double.class ) );
+	    // the cached index is recomputed when the type changes
+	    assertEquals( 4, ex.evaluate( other ) );
+	    assertEquals( 1, ex.evaluate( feature ) );
+	    
+	    // and when the path changes
+	    ex.setPropertyName( "bar" );
+	    assertEquals( 2.0, ex.evaluate( feature ) );
+	    
+	    // not plain attribute names go through the property accessors
+	    ex.setPropertyName( "@id" );
+	    assertEquals( -1, ex.getAttributeIndex(type) );
+	    assertEquals( "f1", ex.evaluate( feature ) );
+	    ex.setPropertyName( "missing" );
+	    assertEquals( -1, ex.getAttributeIndex(type) );
+	    assertNull( ex.evaluate( feature ) );
+	}
+	
+	/**
+	 * Micro benchmark comparing the attribute access through the property accessors and through
+	 * the cached attribute index
+	 */
+	public static void main(String[] args) {
+	    SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+	    typeBuilder.setName( "test" );
+	    typeBuilder.setNamespaceURI( "http://www.geotools.org/test" );
+	    for (int i = 0; i < 20; i++) {
+	        typeBuilder.add( "att" + i, Integer.class );
+	    }
+	    SimpleFeatureType type = typeBuilder.buildFeatureType();
+	    SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+	    for (int i = 0; i < 20; i++) {
+	        builder.add( i );
+	    }
+	    SimpleFeature feature = builder.buildFeature( "fid" );
+	    
+	    final int loops = 10000000;
+	    for (int run = 0; run < 3; run++) {
+	        AttributeExpressionImpl indexed = new AttributeExpressionImpl( "att19" );
+	        // a path that cannot be indexed, but is handled by the same property accessor
+	        AttributeExpressionImpl accessor = new AttributeExpressionImpl( "att19" ) {
+	            @Override
+	            int getAttributeIndex(SimpleFeatureType featureType) {
+	                return -1;
+	            }
+	        };
+	        long start = System.nanoTime();
+	        for (int i = 0; i < loops; i++) {
+	            accessor.evaluate( feature );
+	        }
+	        long end = System.nanoTime();
+	        System.out.println("Property accessor: " + (end - start) / loops + "ns per evaluation");
+	        
+	        start = System.nanoTime();
+	        for (int i = 0; i < loops; i++) {
+	            indexed.evaluate( feature );
+	        }
+	        end = System.nanoTime();
+	        System.out.println("Attribute index: " + (end - start) / loops + "ns per evaluation");
+	    }
+	}
+	
 	
 }
@@ -0,0 +1,158 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.visitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.visitor.CompilingFilterVisitor.CompiledComparison;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.expression.Expression;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Checks the compiled filters and expressions give the same results as the original ones
+ *
+ * @source $URL$
+ */
+public class CompilingFilterVisitorTest extends TestCase {
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    SimpleFeatureType schema;
+
+    List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+
+    @Override
+    protected void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("geom", Point.class);
+        tb.add("i", Integer.class);
+        tb.add("d", Double.class);
+        tb.add("s", String.class);
+        schema = tb.buildFeatureType();
+
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        Object[][] values = new Object[][] { { 5, 5.0, "abc" }, { 10, 2.5, "ABC" },
+                { -3, -0.0, "5" }, { null, null, null } };
+        for (int i = 0; i < values.length; i++) {
+            fb.add(gf.createPoint(new Coordinate(i, i)));
+            for (Object value : values[i]) {
+                fb.add(value);
+            }
+            features.add(fb.buildFeature("test." + i));
+        }
+
+        // same attributes, different type: the compiled filters must fall back
+        tb.setName("other");
+        tb.add("i", Integer.class);
+        tb.add("s", String.class);
+        SimpleFeatureType other = tb.buildFeatureType();
+        fb = new SimpleFeatureBuilder(other);
+        fb.add(5);
+        fb.add("abc");
+        features.add(fb.buildFeature("other.0"));
+    }
+
+    public void testPropertyNames() {
+        CompilingFilterVisitor compiler = new CompilingFilterVisitor(schema);
+        assertEquals(1, compiler.indexOf(ff.property("i")));
+        assertEquals(3, compiler.indexOf(ff.property("gml:s")));
+        assertEquals(-1, compiler.indexOf(ff.property("missing")));
+        assertEquals(-1, compiler.indexOf(ff.property("@id")));
+        assertEquals(-1, compiler.indexOf(ff.literal("i")));
+
+        assertSameValues(ff.property("i"));
+        assertSameValues(ff.property("missing"));
+        assertSameValues(ff.add(ff.property("i"), ff.property("d")));
+        assertSameValues(ff.function("strToUpperCase", ff.property("s")));
+        assertEquals(5.0, CompilingFilterVisitor.compile(ff.property("i"), schema).evaluate(
+                features.get(0), Double.class));
+    }
+
+    public void testComparisons() {
+        Filter compiled = CompilingFilterVisitor.compile(
+                ff.equals(ff.property("i"), ff.literal("5")), schema);
+        assertTrue(compiled instanceof CompiledComparison);
+        assertEquals(5, ((CompiledComparison) compiled).converted);
+        // visitors see a plain comparison
+        Object copy = compiled.accept(new DuplicatingFilterVisitor(), null);
+        assertTrue(copy instanceof PropertyIsEqualTo);
+
+        Object[] literals = new Object[] { 5, "5", "5.0", 5.0, "abc", "ABC", 0, "-0", 2.5f };
+        String[] properties = new String[] { "i", "d", "s" };
+        for (String name : properties) {
+            for (Object value : literals) {
+                Expression p = ff.property(name);
+                Expression l = ff.literal(value);
+                assertSameResults(ff.equals(p, l));
+                assertSameResults(ff.equals(l, p));
+                assertSameResults(ff.equal(p, l, false));
+                assertSameResults(ff.notEqual(p, l));
+                assertSameResults(ff.notEqual(l, p));
+                assertSameResults(ff.greater(p, l));
+                assertSameResults(ff.greater(l, p));
+                assertSameResults(ff.greaterOrEqual(p, l));
+                assertSameResults(ff.less(p, l));
+                assertSameResults(ff.lessOrEqual(l, p));
+            }
+        }
+    }
+
+    public void testLogicAndFunctions() {
+        assertSameResults(ff.and(ff.greater(ff.property("i"), ff.literal(0)), ff.like(ff
+                .property("s"), "a*")));
+        assertSameResults(ff.or(ff.isNull(ff.property("i")), ff.not(ff.lessOrEqual(ff
+                .property("d"), ff.literal(3)))));
+        assertSameResults(ff.equals(ff.function("strLength", ff.property("s")), ff.literal(3)));
+        assertSameResults(ff.equals(ff.multiply(ff.property("i"), ff.literal(2)), ff
+                .literal(10)));
+        assertSameResults(ff.id(Collections.singleton(ff.featureId("test.1"))));
+        assertSame(Filter.INCLUDE, CompilingFilterVisitor.compile(Filter.INCLUDE, schema));
+    }
+
+    void assertSameResults(Filter filter) {
+        Filter compiled = CompilingFilterVisitor.compile(filter, schema);
+        for (SimpleFeature feature : features) {
+            assertEquals(filter + " on " + feature.getID(), filter.evaluate(feature), compiled
+                    .evaluate(feature));
+        }
+    }
+
+    void assertSameValues(Expression expression) {
+        Expression compiled = CompilingFilterVisitor.compile(expression, schema);
+        for (SimpleFeature feature : features) {
+            assertEquals(expression + " on " + feature.getID(), expression.evaluate(feature),
+                    compiled.evaluate(feature));
+        }
+    }
+}
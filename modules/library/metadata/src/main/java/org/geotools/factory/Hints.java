@@ -599,6 +599,24 @@ public class Hints extends RenderingHints {
      */
     public static final Key MAX_MEMORY_SORT = new Key(Integer.class);
     
+    /**
+     * Asks a datastore to split the query in the specified number of partitions
+     * and to read them in parallel, each one with its own connection. Datastores
+     * that cannot partition the query will ignore the hint and read it sequentially.
+     *
+     * @since 8.0
+     */
+    public static final Key PARALLEL_READ_PARTITIONS = new Key(Integer.class);
+    
+    /**
+     * When reading in parallel (see {@link #PARALLEL_READ_PARTITIONS}), asks the datastore
+     * to return the partitions one after the other, in order, instead of interleaving
+     * the features as soon as they are read. Defaults to false.
+     *
+     * @since 8.0
+     */
+    public static final Key PARALLEL_READ_ORDERED = new Key(Boolean.class);
+    
     /**
      * Asks a datastore having a vector pyramid (pre-generalized geometries)
      * to return the geometry version whose points have been generalized
@@ -176,23 +176,29 @@ public final class CRS {
      * A factory for CRS creation with (<var>latitude</var>, <var>longitude</var>) axis order
      * (unless otherwise specified in system property). Will be created only when first needed.
      */
-    private static CRSAuthorityFactory defaultFactory;
+    private static volatile CRSAuthorityFactory defaultFactory;
 
     /**
      * A factory for CRS creation with (<var>longitude</var>, <var>latitude</var>) axis order.
      * Will be created only when first needed.
      */
-    private static CRSAuthorityFactory xyFactory;
+    private static volatile CRSAuthorityFactory xyFactory;
 
     /**
      * A factory for default (non-lenient) operations.
      */
-    private static CoordinateOperationFactory strictFactory;
+    private static volatile CoordinateOperationFactory strictFactory;
 
     /**
      * A factory for default lenient operations.
      */
-    private static CoordinateOperationFactory lenientFactory;
+    private static volatile CoordinateOperationFactory lenientFactory;
+
+    /**
+     * The transforms found by {@link #findMathTransform}.
+     */
+    private static final MathTransformCache transformCache =
+            new MathTransformCache(MathTransformCache.DEFAULT_MAX_SIZE);
 
     /**
      * Registers a listener automatically invoked when the system-wide configuration changed.
@@ -206,6 +212,7 @@ public final class CRS {
                     strictFactory  = null;
                     lenientFactory = null;
                 }
+                transformCache.clear();
             }
         });
     }
@@ -243,22 +250,28 @@ public final class CRS {
      *
      * @since 2.3
      */
-    public static synchronized CRSAuthorityFactory getAuthorityFactory(final boolean longitudeFirst)
+    public static CRSAuthorityFactory getAuthorityFactory(final boolean longitudeFirst)
             throws FactoryRegistryException
     {
         CRSAuthorityFactory factory = (longitudeFirst) ? xyFactory : defaultFactory;
-        if (factory == null) try {
-            factory = new DefaultAuthorityFactory(longitudeFirst);
-            if (longitudeFirst) {
-                xyFactory = factory;
-            } else {
-                defaultFactory = factory;
+        if (factory != null) {
+            return factory;
+        }
+        synchronized (CRS.class) {
+            factory = (longitudeFirst) ? xyFactory : defaultFactory;
+            if (factory == null) try {
+                factory = new DefaultAuthorityFactory(longitudeFirst);
+                if (longitudeFirst) {
+                    xyFactory = factory;
+                } else {
+                    defaultFactory = factory;
+                }
+            } catch (NoSuchElementException exception) {
+                // No factory registered in FactoryFinder.
+                throw new FactoryNotFoundException(null, exception);
             }
-        } catch (NoSuchElementException exception) {
-            // No factory registered in FactoryFinder.
-            throw new FactoryNotFoundException(null, exception);
+            return factory;
         }
-        return factory;
     }
 
     /**
@@ -271,21 +284,38 @@ public final class CRS {
      *
      * @since 2.4
      */
-    public static synchronized CoordinateOperationFactory getCoordinateOperationFactory(final boolean lenient) {
+    public static CoordinateOperationFactory getCoordinateOperationFactory(final boolean lenient) {
         CoordinateOperationFactory factory = (lenient) ? lenientFactory : strictFactory;
-        if (factory == null) {
-            final Hints hints = GeoTools.getDefaultHints();
-            if (lenient) {
-                hints.put(Hints.LENIENT_DATUM_SHIFT, Boolean.TRUE);
-            }
-            factory = ReferencingFactoryFinder.getCoordinateOperationFactory(hints);
-            if (lenient) {
-                lenientFactory = factory;
-            } else {
-                strictFactory = factory;
+        if (factory != null) {
+            return factory;
+        }
+        synchronized (CRS.class) {
+            factory = (lenient) ? lenientFactory : strictFactory;
+            if (factory == null) {
+                final Hints hints = GeoTools.getDefaultHints();
+                if (lenient) {
+                    hints.put(Hints.LENIENT_DATUM_SHIFT, Boolean.TRUE);
+                }
+                factory = ReferencingFactoryFinder.getCoordinateOperationFactory(hints);
+                if (lenient) {
+                    lenientFactory = factory;
+                } else {
+                    strictFactory = factory;
+                }
             }
+            return factory;
         }
-        return factory;
+    }
+
+    /**
+     * Returns the cache of the transforms found by
+     * {@link #findMathTransform(CoordinateReferenceSystem, CoordinateReferenceSystem, boolean)
+     * findMathTransform}, mostly useful to inspect its statistics or to clear it.
+     *
+     * @since 8.0
+     */
+    public static MathTransformCache getMathTransformCache() {
+        return transformCache;
     }
 
     /**
@@ -1142,12 +1172,19 @@ search:             if (DefaultCoordinateSystemAxis.isCompassDirection(axis.getD
                                                   boolean lenient)
             throws FactoryException
     {
+        MathTransform transform = transformCache.get(sourceCRS, targetCRS, lenient);
+        if (transform != null) {
+            return transform;
+        }
         if (equalsIgnoreMetadata(sourceCRS, targetCRS)) {
             // Slight optimization in order to avoid the overhead of loading the full referencing engine.
-            return IdentityTransform.create(sourceCRS.getCoordinateSystem().getDimension());
+            transform = IdentityTransform.create(sourceCRS.getCoordinateSystem().getDimension());
+        } else {
+            CoordinateOperationFactory operationFactory = getCoordinateOperationFactory(lenient);
+            transform = operationFactory.createOperation(sourceCRS, targetCRS).getMathTransform();
         }
-        CoordinateOperationFactory operationFactory = getCoordinateOperationFactory(lenient);
-        return operationFactory.createOperation(sourceCRS, targetCRS).getMathTransform();
+        transformCache.put(sourceCRS, targetCRS, lenient, transform);
+        return transform;
     }
 
     /**
@@ -1784,6 +1821,7 @@ search:             if (DefaultCoordinateSystemAxis.isCompassDirection(axis.getD
         xyFactory = null;
         strictFactory = null;
         lenientFactory = null;
+        transformCache.clear();
     }
     
     /**
@@ -0,0 +1,193 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+/**
+ * A bounded, thread safe cache of the math transforms found by
+ * {@link CRS#findMathTransform(CoordinateReferenceSystem, CoordinateReferenceSystem, boolean)}.
+ * <p>
+ * The cache is keyed on the <em>identity</em> of the source and target CRS: comparing CRS
+ * for equality is about as expensive as looking up the operation again, while the CRS used over
+ * and over by the same code usually are the very same instances, as returned by the buffered
+ * authority factories. Lookups do not take any lock. When the cache grows past its maximum size
+ * some entries are evicted, in no particular order.
+ *
+ * @source $URL$
+ */
+public final class MathTransformCache {
+
+    /** The default maximum number of cached transforms */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final int maxSize;
+
+    private final ConcurrentHashMap<Key, MathTransform> transforms =
+            new ConcurrentHashMap<Key, MathTransform>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Builds a new cache
+     *
+     * @param maxSize The maximum number of transforms kept in the cache
+     */
+    public MathTransformCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached transform, or {@code null} if not found
+     */
+    MathTransform get(CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS,
+            boolean lenient) {
+        MathTransform transform = transforms.get(new Key(sourceCRS, targetCRS, lenient));
+        if (transform == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return transform;
+    }
+
+    /**
+     * Caches a transform, evicting some of the others if the cache is full
+     */
+    void put(CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS,
+            boolean lenient, MathTransform transform) {
+        if (maxSize == 0) {
+            return;
+        }
+        Key key = new Key(sourceCRS, targetCRS, lenient);
+        transforms.put(key, transform);
+        if (transforms.size() > maxSize) {
+            // evict enough entries to make some room, the size is just an estimate
+            // when other threads are working on the cache as well
+            int excess = transforms.size() - maxSize + maxSize / 10;
+            for (Iterator<Key> it = transforms.keySet().iterator(); it.hasNext() && excess > 0;) {
+                Key evicted = it.next();
+                if (evicted != key) {
+                    it.remove();
+                    evictions.incrementAndGet();
+                    excess--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached transforms
+     */
+    public void clear() {
+        transforms.clear();
+    }
+
+    /**
+     * The number of transforms found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of transforms looked up and not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The number of transforms removed from the cache to respect its size limit
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The number of transforms currently in the cache
+     */
+    public int size() {
+        return transforms.size();
+    }
+
+    /**
+     * The maximum number of transforms in the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "MathTransformCache [hits=" + getHits() + ", misses=" + getMisses()
+                + ", evictions=" + getEvictions() + ", size=" + size() + ", maxSize=" + maxSize
+                + "]";
+    }
+
+    /**
+     * A (source, target, lenient) key comparing the CRS by identity
+     */
+    private static final class Key {
+        private final CoordinateReferenceSystem sourceCRS;
+
+        private final CoordinateReferenceSystem targetCRS;
+
+        private final boolean lenient;
+
+        private final int hash;
+
+        Key(CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS,
+                boolean lenient) {
+            this.sourceCRS = sourceCRS;
+            this.targetCRS = targetCRS;
+            this.lenient = lenient;
+            int h = 37 * System.identityHashCode(sourceCRS) + System.identityHashCode(targetCRS);
+            this.hash = lenient ? ~h : h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (object instanceof Key) {
+                Key that = (Key) object;
+                return sourceCRS == that.sourceCRS && targetCRS == that.targetCRS
+                        && lenient == that.lenient;
+            }
+            return false;
+        }
+    }
+}
@@ -168,6 +168,31 @@ public final class CrsTest {
         assertTrue(oldEnvelope.equals  (firstEnvelope, 0.02, true));
     }
     
+    /**
+     * Tests the transforms are cached by CRS identity, and that equal CRS get the same results.
+     */
+    @Test
+    public void testMathTransformCache() throws FactoryException {
+        final CoordinateReferenceSystem mapCRS = CRS.parseWKT(WKT.UTM_10N);
+        final CoordinateReferenceSystem WGS84  = DefaultGeographicCRS.WGS84;
+        final MathTransformCache cache = CRS.getMathTransformCache();
+        final long hits = cache.getHits();
+        final MathTransform lenient = CRS.findMathTransform(WGS84, mapCRS, true);
+        assertSame(lenient, CRS.findMathTransform(WGS84, mapCRS, true));
+        assertEquals(hits + 1, cache.getHits());
+        assertTrue(cache.size() > 0);
+
+        // a different instance of the same CRS, and a strict lookup
+        final CoordinateReferenceSystem otherCRS = CRS.parseWKT(WKT.UTM_10N);
+        assertEquals(lenient, CRS.findMathTransform(WGS84, otherCRS, true));
+        assertEquals(lenient, CRS.findMathTransform(WGS84, mapCRS, false));
+        assertTrue(CRS.findMathTransform(mapCRS, otherCRS).isIdentity());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(lenient, CRS.findMathTransform(WGS84, mapCRS, true));
+    }
+
     /**
      * Tests the transformations of an envelope when the two CRS have identify
      * transforms but different datum names 
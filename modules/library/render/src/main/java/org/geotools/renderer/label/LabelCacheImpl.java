@@ -36,12 +36,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.geometry.jts.GeometryClipper;
 import org.geotools.geometry.jts.LiteShape2;
 import org.geotools.renderer.label.LabelCacheItem.GraphicResize;
+import org.geotools.renderer.label.LabelingStatistics.LabelType;
 import org.geotools.renderer.lite.LabelCache;
 import org.geotools.renderer.style.SLDStyleFactory;
 import org.geotools.renderer.style.TextStyle2D;
@@ -156,11 +160,30 @@ public final class LabelCacheImpl implements LabelCache {
 
     private boolean needsOrdering = false;
 
+    /** The statistics of the last labels painting */
+    volatile LabelingStatistics statistics;
+
+    /** The thread pool used to compute the label geometries in parallel, if any */
+    ExecutorService placementPool;
+
     public void enableLayer(String layerId) {
         needsOrdering = true;
         enabledLayers.add(layerId);
     }
 
+    /**
+     * Sets a thread pool used to compute the label candidate locations in parallel. The
+     * representative geometries of all the labels (clipped and merged lines, clipped polygons and
+     * their inner points) are computed concurrently, while the conflict resolution and the
+     * painting still happen sequentially in priority order, so the output is the same as the
+     * serial one. When null, the default, the labels are processed serially.
+     * 
+     * @param placementPool
+     */
+    public void setPlacementThreadPool(ExecutorService placementPool) {
+        this.placementPool = placementPool;
+    }
+
     public LabelRenderingMode getLabelRenderingMode() {
         return labelRenderingMode;
     }
@@ -538,6 +561,21 @@ public final class LabelCacheImpl implements LabelCache {
         }
         LabelIndex glyphs = new LabelIndex();
         glyphs.reserveArea( reserved );
+        LabelingStatistics stats = new LabelingStatistics();
+        try {
+            paintLabels(graphics, displayArea, glyphs, stats);
+        } finally {
+            stats.checks = glyphs.getChecks();
+            stats.conflicts = glyphs.getConflicts();
+            statistics = stats;
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(stats.toString());
+            }
+        }
+    }
+
+    private void paintLabels(Graphics2D graphics, Rectangle displayArea, LabelIndex glyphs,
+            LabelingStatistics stats) {
 
         // Hack: let's reduce the display area width and height by one pixel.
         // If the rendered image is 256x256, proper rendering of polygons and
@@ -559,50 +597,144 @@ public final class LabelCacheImpl implements LabelCache {
         } else {
             items = getActiveLabels();
         }
+        // compute the label geometries in parallel, if possible
+        List<Future<LabelGeometry>> futures = null;
+        ExecutorService pool = placementPool;
+        if (pool != null && items.size() > 1) {
+            futures = new ArrayList<Future<LabelGeometry>>(items.size());
+            for (final LabelCacheItem labelItem : items) {
+                final Rectangle area = displayArea;
+                futures.add(pool.submit(new Callable<LabelGeometry>() {
+                    public LabelGeometry call() throws Exception {
+                        return getLabelGeometry(labelItem, area);
+                    }
+                }));
+            }
+        }
+
         LabelPainter painter = new LabelPainter(graphics, labelRenderingMode);
-        for (LabelCacheItem labelItem : items) {
-            if (stop)
-                return;
-            
-            painter.setLabel(labelItem);
-            try {
-                // LabelCacheItem labelItem = (LabelCacheItem)
-                // labelCache.get(labelIter.next());
-
-                // DJB: simplified this. Just send off to the point,line,or
-                // polygon routine
-                // NOTE: labelItem.getGeometry() returns the FIRST geometry, so
-                // we're assuming that lines & points arent mixed
-                // If they are, then the FIRST geometry determines how its
-                // rendered (which is probably bad since it should be in
-                // area,line,point order
-                // TOD: as in NOTE above
-
-                /*
-                 * Just use identity for tempTransform because display area is
-                 * 0,0,width,height and oldTransform may have a different
-                 * origin. OldTransform will be used later for drawing. -rg & je
-                 */
-                AffineTransform tempTransform = new AffineTransform();
-
-                Geometry geom = labelItem.getGeometry();
-                if ((geom instanceof Point) || (geom instanceof MultiPoint))
-                    paintPointLabel(painter, tempTransform, displayArea, glyphs);
-                else if (((geom instanceof LineString) && !(geom instanceof LinearRing))
-                        || (geom instanceof MultiLineString))
-                    paintLineLabels(painter, tempTransform, displayArea, glyphs);
-                else if (geom instanceof Polygon || geom instanceof MultiPolygon
-                        || geom instanceof LinearRing)
-                    paintPolygonLabel(painter, tempTransform, displayArea, glyphs);
-            } catch (Exception e) {
-                System.out.println("Issues painting " + labelItem.getLabel());
-                // the decimation can cause problems - we try to minimize it
-                // do nothing
-                e.printStackTrace();
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                if (stop)
+                    return;
+                LabelCacheItem labelItem = items.get(i);
+                LabelGeometry labelGeometry;
+                try {
+                    if (futures != null) {
+                        labelGeometry = futures.get(i).get();
+                    } else {
+                        labelGeometry = getLabelGeometry(labelItem, displayArea);
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Issues computing the location of "
+                            + labelItem.getLabel(), e);
+                    continue;
+                }
+                paintLabel(painter, labelItem, labelGeometry, displayArea, glyphs, stats);
+            }
+        } finally {
+            if (futures != null) {
+                for (Future<LabelGeometry> future : futures) {
+                    future.cancel(false);
+                }
             }
         }
     }
 
+    private void paintLabel(LabelPainter painter, LabelCacheItem labelItem,
+            LabelGeometry labelGeometry, Rectangle displayArea, LabelIndex glyphs,
+            LabelingStatistics stats) {
+        if (labelGeometry == null) {
+            return;
+        } else if (labelGeometry.isEmpty()) {
+            // nothing to label inside the display area
+            stats.record(labelGeometry.type, false, 0);
+            return;
+        }
+
+        long start = System.nanoTime();
+        painter.setLabel(labelItem);
+        try {
+            // LabelCacheItem labelItem = (LabelCacheItem)
+            // labelCache.get(labelIter.next());
+
+            // DJB: simplified this. Just send off to the point,line,or
+            // polygon routine
+            // NOTE: labelItem.getGeometry() returns the FIRST geometry, so
+            // we're assuming that lines & points arent mixed
+            // If they are, then the FIRST geometry determines how its
+            // rendered (which is probably bad since it should be in
+            // area,line,point order
+            // TOD: as in NOTE above
+
+            /*
+             * Just use identity for tempTransform because display area is
+             * 0,0,width,height and oldTransform may have a different
+             * origin. OldTransform will be used later for drawing. -rg & je
+             */
+            AffineTransform tempTransform = new AffineTransform();
+
+            boolean painted = false;
+            if (labelGeometry.type == LabelType.POINT) {
+                painted = paintPointLabel(painter, tempTransform, displayArea, glyphs,
+                        labelGeometry);
+            } else if (labelGeometry.type == LabelType.LINE) {
+                painted = paintLineLabels(painter, tempTransform, displayArea, glyphs,
+                        labelGeometry);
+            } else {
+                painted = paintPolygonLabel(painter, tempTransform, displayArea, glyphs,
+                        labelGeometry);
+            }
+            stats.record(labelGeometry.type, painted, System.nanoTime() - start);
+        } catch (Exception e) {
+            System.out.println("Issues painting " + labelItem.getLabel());
+            // the decimation can cause problems - we try to minimize it
+            // do nothing
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Computes the representative geometry of the label, the part of the work that does not
+     * depend on the other labels and can thus be performed in parallel.
+     * 
+     * @return the label geometry, or null if the label geometry type is not supported
+     */
+    LabelGeometry getLabelGeometry(LabelCacheItem labelItem, Rectangle displayArea) {
+        LabelGeometry result = new LabelGeometry();
+        Geometry geom = labelItem.getGeometry();
+        if ((geom instanceof Point) || (geom instanceof MultiPoint)) {
+            result.type = LabelType.POINT;
+            result.point = getPointSetRepresentativeLocation(labelItem.getGeoms(), displayArea);
+            return result;
+        } else if (((geom instanceof LineString) && !(geom instanceof LinearRing))
+                || (geom instanceof MultiLineString)) {
+            result.type = LabelType.LINE;
+            result.lines = getLineSetRepresentativeLocation(labelItem.getGeoms(), displayArea,
+                    labelItem.removeGroupOverlaps());
+            return result;
+        } else if (geom instanceof Polygon || geom instanceof MultiPolygon
+                || geom instanceof LinearRing) {
+            result.type = LabelType.POLYGON;
+            Polygon polygon = getPolySetRepresentativeLocation(labelItem.getGeoms(), displayArea);
+            if (polygon != null) {
+                result.prepared = PreparedGeometryFactory.prepare(polygon);
+                result.point = getPolygonLabelPoint(polygon, result.prepared);
+            }
+            return result;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the statistics collected during the last labels painting, or null if no labels have
+     * been painted yet
+     */
+    public LabelingStatistics getStatistics() {
+        return statistics;
+    }
+
     private Envelope toEnvelope(Rectangle2D bounds) {
         return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
     }
@@ -684,13 +816,10 @@ public final class LabelCacheImpl implements LabelCache {
     }
 
     private boolean paintLineLabels(LabelPainter painter, AffineTransform originalTransform,
-            Rectangle displayArea, LabelIndex paintedBounds) throws Exception {
+            Rectangle displayArea, LabelIndex paintedBounds, LabelGeometry labelGeometry)
+            throws Exception {
         final LabelCacheItem labelItem = painter.getLabel();
-        List<LineString> lines = (List<LineString>) getLineSetRepresentativeLocation(labelItem
-                .getGeoms(), displayArea, labelItem.removeGroupOverlaps());
-
-        if (lines == null || lines.size() == 0)
-            return false;
+        List<LineString> lines = labelGeometry.lines;
 
         // if we just want to label the longest line, remove the others
         if (!labelItem.labelAllGroup() && lines.size() > 1) {
@@ -986,12 +1115,11 @@ public final class LabelCacheImpl implements LabelCache {
      * up until the radius of the circle becomes bigger than the max displacement
      */
     private boolean paintPointLabel(LabelPainter painter, AffineTransform tempTransform,
-            Rectangle displayArea, LabelIndex glyphs) throws Exception {
+            Rectangle displayArea, LabelIndex glyphs, LabelGeometry labelGeometry)
+            throws Exception {
         LabelCacheItem labelItem = painter.getLabel();
-        // get the point onto the shape has to be painted
-        Point point = getPointSetRepresentativeLocation(labelItem.getGeoms(), displayArea);
-        if (point == null)
-            return false;
+        // the point onto the shape has to be painted
+        Point point = labelGeometry.point;
 
         // prepare for the search loop
         TextStyle2D ts = labelItem.getTextStyle();
@@ -1122,69 +1250,11 @@ public final class LabelCacheImpl implements LabelCache {
      * the outside line and label it, but spec is unclear)
      */
     private boolean paintPolygonLabel(LabelPainter painter, AffineTransform tempTransform,
-            Rectangle displayArea, LabelIndex glyphs) throws Exception {
+            Rectangle displayArea, LabelIndex glyphs, LabelGeometry labelGeometry)
+            throws Exception {
         LabelCacheItem labelItem = painter.getLabel();
-        Polygon geom = getPolySetRepresentativeLocation(labelItem.getGeoms(), displayArea);
-        if (geom == null) {
-            return false;
-        }
-        
-        Point centroid;
-        try {
-            centroid = geom.getCentroid();
-        } catch (Exception e) {
-            // generalized polygons causes problems - this
-            // tries to hide them.
-            try {
-                centroid = geom.getExteriorRing().getCentroid();
-            } catch (Exception ee) {
-                try {
-                    centroid = geom.getFactory().createPoint(geom.getCoordinate());
-                } catch (Exception eee) {
-                    return false; // we're hooped
-                }
-            }
-        }
-        
-        // check we're inside, if not, use a different approach
-        PreparedGeometry pg = PreparedGeometryFactory.prepare(geom);
-        if(!pg.contains(centroid)) {
-            // resort to sampling, computing the intersection is slow and
-            // due invalid geometries can easily break with an exception
-            Envelope env = geom.getEnvelopeInternal();
-            double step = 5;
-            int steps = (int) Math.round((env.getMaxX() - env.getMinX()) / step);
-            Coordinate c = new Coordinate();
-            Point pp = gf.createPoint(c);
-            c.y = centroid.getY();
-            int max = -1;
-            int maxIdx = -1;
-            int containCounter = -1;
-            for (int i = 0; i < steps; i++) {
-                c.x = env.getMinX() + step * i;
-                pp.geometryChanged();
-                if(!pg.contains(pp)) {
-                    containCounter = 0;
-                } else if(i == 0) {
-                    containCounter = 1;
-                } else {
-                    containCounter++;
-                    if(containCounter > max) {
-                        max = containCounter;
-                        maxIdx = i;
-                    }
-                }
-            }
-                    
-            if(maxIdx != -1) {
-                int midIdx = max > 1 ? maxIdx - max / 2 : maxIdx;
-                c.x = env.getMinX() + step * midIdx;
-                pp.geometryChanged();
-                centroid = pp;
-            } else {
-                return false;
-            }
-        }
+        PreparedGeometry pg = labelGeometry.prepared;
+        Point centroid = labelGeometry.point;
 
         // compute the transformation used to position the label
         TextStyle2DExt textStyle = new TextStyle2DExt(labelItem);
@@ -1510,6 +1580,70 @@ public final class LabelCacheImpl implements LabelCache {
 
    
 
+    /**
+     * Returns the point used to place the polygon label, the centroid if it falls inside the
+     * polygon, otherwise the middle of the longest inner horizontal run through it
+     */
+    Point getPolygonLabelPoint(Polygon geom, PreparedGeometry pg) {
+        Point centroid;
+        try {
+            centroid = geom.getCentroid();
+        } catch (Exception e) {
+            // generalized polygons causes problems - this
+            // tries to hide them.
+            try {
+                centroid = geom.getExteriorRing().getCentroid();
+            } catch (Exception ee) {
+                try {
+                    centroid = geom.getFactory().createPoint(geom.getCoordinate());
+                } catch (Exception eee) {
+                    return null; // we're hooped
+                }
+            }
+        }
+        
+        // check we're inside, if not, use a different approach
+        if(!pg.contains(centroid)) {
+            // resort to sampling, computing the intersection is slow and
+            // due invalid geometries can easily break with an exception
+            Envelope env = geom.getEnvelopeInternal();
+            double step = 5;
+            int steps = (int) Math.round((env.getMaxX() - env.getMinX()) / step);
+            Coordinate c = new Coordinate();
+            Point pp = gf.createPoint(c);
+            c.y = centroid.getY();
+            int max = -1;
+            int maxIdx = -1;
+            int containCounter = -1;
+            for (int i = 0; i < steps; i++) {
+                c.x = env.getMinX() + step * i;
+                pp.geometryChanged();
+                if(!pg.contains(pp)) {
+                    containCounter = 0;
+                } else if(i == 0) {
+                    containCounter = 1;
+                } else {
+                    containCounter++;
+                    if(containCounter > max) {
+                        max = containCounter;
+                        maxIdx = i;
+                    }
+                }
+            }
+                    
+            if(maxIdx != -1) {
+                int midIdx = max > 1 ? maxIdx - max / 2 : maxIdx;
+                c.x = env.getMinX() + step * midIdx;
+                pp.geometryChanged();
+                centroid = pp;
+            } else {
+                return null;
+            }
+        }
+
+        return centroid;
+    }
+
     /**
      * 1. make a list of all the polygons clipped to the displayGeometry NOTE:
      * reject any points or lines 2. choose the largest of the clipped
@@ -1827,6 +1961,30 @@ public final class LabelCacheImpl implements LabelCache {
         return l1.getFactory().createLineString((Coordinate[]) clist.toArray(new Coordinate[1]));
     }
 
+    /**
+     * The representative geometry of a label, computed before the label placement
+     */
+    static class LabelGeometry {
+        LabelType type;
+
+        /** The point label location, or the polygon inner point */
+        Point point;
+
+        /** The merged lines, sorted from the longest to the shortest */
+        List<LineString> lines;
+
+        /** The polygon being labelled */
+        PreparedGeometry prepared;
+
+        boolean isEmpty() {
+            if (type == LabelType.LINE) {
+                return lines == null || lines.isEmpty();
+            } else {
+                return point == null;
+            }
+        }
+    }
+
     /**
      * sorts a list of LineStrings by length (long=1st)
      * 
@@ -1,7 +1,7 @@
 /*
  *    GeoTools - The Open Source Java GIS Toolkit
  *    http://geotools.org
- * 
+ *
  *    (C) 2004-2008, Open Source Geospatial Foundation (OSGeo)
  *
  *    This library is free software; you can redistribute it and/or
@@ -17,18 +17,20 @@
 package org.geotools.renderer.label;
 
 import java.awt.geom.Rectangle2D;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
-import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.index.quadtree.Quadtree;
-
 /**
  * Stores label items and helps in finding the interferering ones, either by
  * pure overlap or within a certain distance from the specified bounds
- * 
+ * <p>
+ * The bounds are kept in primitive arrays and indexed by a sparse grid of
+ * square screen cells, so that neither the checks nor the insertions allocate
+ * objects, besides the occasional growth of the arrays. Rectangles covering
+ * too many cells are kept apart and checked linearly.
+ *
  * @author Andrea Aime
- * 
+ *
  *
  *
  *
@@ -36,88 +38,296 @@ import com.vividsolutions.jts.index.quadtree.Quadtree;
  */
 public class LabelIndex {
 
-    Quadtree index = new Quadtree();
+    /** The default size of the grid cells, in pixels */
+    public static final int DEFAULT_CELL_SIZE = 64;
+
+    /** Rectangles spanning more cells than this are not put in the grid */
+    static final int MAX_CELLS = 256;
+
+    final double cellSize;
+
+    // the rectangles
+    double[] minXs = new double[64];
+
+    double[] minYs = new double[64];
+
+    double[] maxXs = new double[64];
+
+    double[] maxYs = new double[64];
+
+    /** The items, kept around to help in debugging, null for reserved areas */
+    LabelCacheItem[] items = new LabelCacheItem[64];
+
+    int rectangles;
+
+    // the grid cells, an open addressing hash from cell key to the first entry
+    long[] cellKeys = new long[256];
+
+    int[] cellHeads = newHeads(256);
+
+    int cells;
+
+    // the cell entries, linked lists of rectangles
+    int[] entryRectangles = new int[256];
+
+    int[] entryNexts = new int[256];
+
+    int entries;
+
+    // the rectangles too big to be put in the grid
+    int[] oversized = new int[16];
+
+    int oversizedCount;
+
+    // statistics
+    long checks;
+
+    long conflicts;
+
+    public LabelIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Builds an index whose grid cells have the specified size, in pixels
+     */
+    public LabelIndex(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("The cell size must be positive");
+        }
+        this.cellSize = cellSize;
+    }
 
     /**
      * Returns true if there is any label in the index within the specified
      * distance from the bounds. For speed reasons the bounds will be simply
      * expanded by the distance, no curved buffer will be generated
-     * 
+     *
      * @param bounds
      * @param distance
      * @return
      */
-    @SuppressWarnings("unchecked")
     public boolean labelsWithinDistance(Rectangle2D bounds, double distance) {
         if (distance < 0)
             return false;
 
-        Envelope e = toEnvelope(bounds);
-        e.expandBy(distance);
-        List<InterferenceItem> results = index.query(e);
-        if (results.size() == 0)
-            return false;
-        for (Iterator<InterferenceItem> it = results.iterator(); it.hasNext();) {
-            InterferenceItem item = it.next();
-            if (item.env.intersects(e)) {
+        checks++;
+        double minx = bounds.getMinX() - distance;
+        double miny = bounds.getMinY() - distance;
+        double maxx = bounds.getMaxX() + distance;
+        double maxy = bounds.getMaxY() + distance;
+        if (intersects(minx, miny, maxx, maxy)) {
+            conflicts++;
+            return true;
+        }
+        return false;
+    }
+
+    boolean intersects(double minx, double miny, double maxx, double maxy) {
+        for (int i = 0; i < oversizedCount; i++) {
+            if (intersects(oversized[i], minx, miny, maxx, maxy)) {
                 return true;
             }
         }
+
+        int minCol = cell(minx);
+        int maxCol = cell(maxx);
+        int minRow = cell(miny);
+        int maxRow = cell(maxy);
+        // a scan is cheaper than visiting more cells than rectangles
+        if (((double) maxCol - minCol + 1) * ((double) maxRow - minRow + 1) > rectangles) {
+            for (int i = 0; i < rectangles; i++) {
+                if (intersects(i, minx, miny, maxx, maxy)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                int slot = find(key(col, row));
+                if (slot < 0) {
+                    continue;
+                }
+                for (int e = cellHeads[slot]; e != -1; e = entryNexts[e]) {
+                    if (intersects(entryRectangles[e], minx, miny, maxx, maxy)) {
+                        return true;
+                    }
+                }
+            }
+        }
         return false;
     }
 
+    /**
+     * Same semantic as the JTS envelope intersection, touching rectangles do
+     * intersect
+     */
+    private boolean intersects(int r, double minx, double miny, double maxx, double maxy) {
+        return !(minXs[r] > maxx || maxXs[r] < minx || minYs[r] > maxy || maxYs[r] < miny);
+    }
+
     /**
      * Adds a label into the index
-     * 
+     *
      * @param item
      * @param bounds
      */
     public void addLabel(LabelCacheItem item, Rectangle2D bounds) {
-        Envelope e = toEnvelope(bounds);
-        index.insert(e, new InterferenceItem(e, item));
+        add(item, bounds);
     }
 
     /**
-     * Turns the specified Java2D rectangle into a JTS envelope
-     * 
-     * @param bounds
-     * @return
+     * Reserve the area indicated by these Geometry.
+     *
+     * @param reserved
+     */
+    public void reserveArea(List<Rectangle2D> reserved) {
+        for (Rectangle2D area : reserved) {
+            add(null, area);
+        }
+    }
+
+    /**
+     * The number of interference checks performed so far
      */
-    private Envelope toEnvelope(Rectangle2D bounds) {
-        return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
+    public long getChecks() {
+        return checks;
     }
 
     /**
-     * Simple structure stored into the quadtree (keeping the item around helps
-     * in debugging)
-     * 
-     * @author Andrea Aime
-     * 
+     * The number of interference checks that found a conflicting label or
+     * reserved area
      */
-    static class InterferenceItem {
-        Envelope env;
+    public long getConflicts() {
+        return conflicts;
+    }
 
-        LabelCacheItem item;
+    /**
+     * The number of labels and reserved areas in the index
+     */
+    public int size() {
+        return rectangles;
+    }
 
-        public InterferenceItem(Envelope env, LabelCacheItem item) {
-            super();
-            this.env = env;
-            this.item = item;
+    void add(LabelCacheItem item, Rectangle2D bounds) {
+        if (rectangles == minXs.length) {
+            int capacity = rectangles * 2;
+            minXs = grow(minXs, capacity);
+            minYs = grow(minYs, capacity);
+            maxXs = grow(maxXs, capacity);
+            maxYs = grow(maxYs, capacity);
+            LabelCacheItem[] newItems = new LabelCacheItem[capacity];
+            System.arraycopy(items, 0, newItems, 0, rectangles);
+            items = newItems;
         }
+        int r = rectangles++;
+        minXs[r] = bounds.getMinX();
+        minYs[r] = bounds.getMinY();
+        maxXs[r] = bounds.getMaxX();
+        maxYs[r] = bounds.getMaxY();
+        items[r] = item;
 
+        int minCol = cell(minXs[r]);
+        int maxCol = cell(maxXs[r]);
+        int minRow = cell(minYs[r]);
+        int maxRow = cell(maxYs[r]);
+        if (((double) maxCol - minCol + 1) * ((double) maxRow - minRow + 1) > MAX_CELLS) {
+            if (oversizedCount == oversized.length) {
+                int[] newOversized = new int[oversizedCount * 2];
+                System.arraycopy(oversized, 0, newOversized, 0, oversizedCount);
+                oversized = newOversized;
+            }
+            oversized[oversizedCount++] = r;
+            return;
+        }
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                addEntry(key(col, row), r);
+            }
+        }
+    }
+
+    private void addEntry(long key, int rectangle) {
+        if (entries == entryRectangles.length) {
+            entryRectangles = grow(entryRectangles, entries * 2);
+            entryNexts = grow(entryNexts, entries * 2);
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            if ((cells + 1) * 2 > cellKeys.length) {
+                rehash(cellKeys.length * 2);
+            }
+            // the table might have been rehashed, look for the free slot again
+            slot = -find(key) - 1;
+            cellKeys[slot] = key;
+            cells++;
+        }
+        int e = entries++;
+        entryRectangles[e] = rectangle;
+        entryNexts[e] = cellHeads[slot];
+        cellHeads[slot] = e;
     }
 
     /**
-     * Reserve the area indicated by these Geometry.
-     * 
-     * @param reserved
+     * Returns the slot holding the key, or -(insertion slot) - 1 if the key is
+     * not in the table
      */
-    public void reserveArea(List<Rectangle2D> reserved) {
-        for( Rectangle2D area : reserved ){
-            Envelope env = toEnvelope(area);
-            
-            InterferenceItem item = new InterferenceItem(env,null);            
-            index.insert( env, item );
+    private int find(long key) {
+        int mask = cellKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (cellHeads[slot] != -1) {
+            if (cellKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
         }
+        return -slot - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = cellKeys;
+        int[] oldHeads = cellHeads;
+        cellKeys = new long[capacity];
+        cellHeads = newHeads(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] != -1) {
+                int slot = -find(oldKeys[i]) - 1;
+                cellKeys[slot] = oldKeys[i];
+                cellHeads[slot] = oldHeads[i];
+            }
+        }
+    }
+
+    private int cell(double ordinate) {
+        return (int) Math.floor(ordinate / cellSize);
+    }
+
+    private static long key(int col, int row) {
+        return (((long) col) << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int[] newHeads(int capacity) {
+        int[] heads = new int[capacity];
+        Arrays.fill(heads, -1);
+        return heads;
+    }
+
+    private static double[] grow(double[] array, int capacity) {
+        double[] result = new double[capacity];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] result = new int[capacity];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
     }
 }
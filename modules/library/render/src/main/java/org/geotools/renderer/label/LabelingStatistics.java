@@ -0,0 +1,110 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+/**
+ * The activity of the {@link LabelCacheImpl} during the last label painting: how many labels
+ * have been tried, placed and rejected for each geometry type, how long it took, and how many
+ * conflicts have been found in the label index
+ *
+ * @source $URL$
+ */
+public class LabelingStatistics {
+
+    /**
+     * The kind of labels being placed
+     */
+    public enum LabelType {
+        POINT, LINE, POLYGON
+    }
+
+    long[] attempts = new long[LabelType.values().length];
+
+    long[] placed = new long[LabelType.values().length];
+
+    long[] nanos = new long[LabelType.values().length];
+
+    long checks;
+
+    long conflicts;
+
+    void record(LabelType type, boolean painted, long elapsed) {
+        int i = type.ordinal();
+        attempts[i]++;
+        if (painted) {
+            placed[i]++;
+        }
+        nanos[i] += elapsed;
+    }
+
+    /**
+     * The number of labels the cache tried to place
+     */
+    public long getAttempts(LabelType type) {
+        return attempts[type.ordinal()];
+    }
+
+    /**
+     * The number of labels that have been painted
+     */
+    public long getPlaced(LabelType type) {
+        return placed[type.ordinal()];
+    }
+
+    /**
+     * The number of labels that could not be placed, because of conflicts, lack of space or
+     * errors
+     */
+    public long getRejected(LabelType type) {
+        return attempts[type.ordinal()] - placed[type.ordinal()];
+    }
+
+    /**
+     * The time spent placing and painting the labels, in nanoseconds
+     */
+    public long getTime(LabelType type) {
+        return nanos[type.ordinal()];
+    }
+
+    /**
+     * The number of times the label index has been checked for conflicting labels
+     */
+    public long getChecks() {
+        return checks;
+    }
+
+    /**
+     * The number of label index checks that found a conflicting label or reserved area
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LabelingStatistics [");
+        for (LabelType type : LabelType.values()) {
+            sb.append(type.name().toLowerCase()).append("Attempts=").append(getAttempts(type));
+            sb.append(", ").append(type.name().toLowerCase()).append("Placed=").append(
+                    getPlaced(type));
+            sb.append(", ").append(type.name().toLowerCase()).append("Time=").append(
+                    getTime(type) / 1000000).append("ms, ");
+        }
+        sb.append("checks=").append(checks).append(", conflicts=").append(conflicts).append("]");
+        return sb.toString();
+    }
+}
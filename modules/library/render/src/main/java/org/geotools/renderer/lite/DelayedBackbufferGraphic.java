@@ -72,6 +72,8 @@ final class DelayedBackbufferGraphic extends Graphics2D {
                     screenSize.height, Transparency.TRANSLUCENT);
             delegate = image.createGraphics();
             delegate.setRenderingHints(master.getRenderingHints());
+            // the image covers just the screen area, which might not start at the origin
+            delegate.translate(-screenSize.x, -screenSize.y);
         }
     }
 
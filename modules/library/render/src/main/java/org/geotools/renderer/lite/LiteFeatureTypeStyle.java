@@ -23,8 +23,11 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.List;
 
+import org.geotools.filter.visitor.CompilingFilterVisitor;
 import org.geotools.renderer.ScreenMap;
 import org.geotools.styling.Rule;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
 import org.opengis.filter.expression.Expression;
 
 /**
@@ -69,6 +72,12 @@ public final class LiteFeatureTypeStyle {
      */
     ScreenMap screenMap;
 
+    /**
+     * The filters of {@link #ruleList} compiled against the feature type being rendered, or null
+     * if the rule filters have to be used as is
+     */
+    Filter[] ruleFilters;
+
     public LiteFeatureTypeStyle(BufferedImage image, AffineTransform at, List ruleList,
             List elseRule, RenderingHints hints, Expression transformation) {
         this.myImage = image;
@@ -98,4 +107,15 @@ public final class LiteFeatureTypeStyle {
         this.transformation = transformation;
     }
 
+    /**
+     * Compiles the rule filters for faster evaluation against the features of the specified type
+     */
+    void compileFilters(SimpleFeatureType schema) {
+        Filter[] filters = new Filter[ruleList.length];
+        for (int i = 0; i < ruleList.length; i++) {
+            filters[i] = CompilingFilterVisitor.compile(ruleList[i].getFilter(), schema);
+        }
+        this.ruleFilters = filters;
+    }
+
 }
@@ -0,0 +1,585 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapContext;
+import org.geotools.renderer.GTRenderer;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.geotools.renderer.label.LabelCacheImpl.LabelRenderingMode;
+import org.geotools.renderer.lite.StreamingRenderer.LayerLabelCache;
+import org.geotools.renderer.lite.StreamingRenderer.LayerLabelCache.Label;
+import org.geotools.styling.TextSymbolizer;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A renderer splitting a single, large map request in a grid of meta tiles that are painted
+ * in parallel, each one by its own {@link StreamingRenderer}, against the same
+ * {@link MapContent} (and thus, the same feature sources and coverage readers).
+ * <p>
+ * The tiles are painted in the screen coordinates of the whole map, so there are no seams
+ * between them as long as the rendering buffer (either the one declared in the hints, or
+ * the one estimated from the styles) covers the symbols crossing the tile borders. The labels
+ * are not painted by the tile renderers, each tile collects its own, and once all tiles are
+ * done they are handed over in tile order to a single label cache and painted on top of the
+ * whole map, which avoids cut and duplicated labels along the tile borders, and makes the
+ * label placement independent of the order the tiles complete.
+ * </p>
+ * <p>
+ * Typical usage, for a large print:
+ * <pre>
+ * MetaTilingRenderer renderer = new MetaTilingRenderer(executor);
+ * renderer.setMapContent(map);
+ * renderer.setTileSize(512);
+ * renderer.paint(graphics, new Rectangle(4096, 4096), mapArea);
+ * </pre>
+ * </p>
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public class MetaTilingRenderer implements GTRenderer {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.rendering");
+
+    /**
+     * The default tile size, in pixels
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private MapContent mapContent;
+
+    private RenderingHints java2dHints;
+
+    private Map<Object, Object> rendererHints;
+
+    private ExecutorService threadPool;
+
+    private int tileSize = DEFAULT_TILE_SIZE;
+
+    private List<RenderListener> renderListeners = new CopyOnWriteArrayList<RenderListener>();
+
+    /**
+     * The tile renderers currently at work
+     */
+    private List<StreamingRenderer> tileRenderers = new CopyOnWriteArrayList<StreamingRenderer>();
+
+    private volatile boolean renderingStopRequested;
+
+    private volatile LabelCache labelCache;
+
+    /**
+     * Builds a renderer that will create a thread pool for each paint request, sized after
+     * the number of available processors
+     */
+    public MetaTilingRenderer() {
+        this(null);
+    }
+
+    /**
+     * Builds a renderer painting the tiles with the specified thread pool
+     *
+     * @param threadPool The thread pool, or null to create one for each paint request
+     */
+    public MetaTilingRenderer(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Sets the thread pool used to paint the tiles. If null a thread pool will be created
+     * for each paint request
+     */
+    public void setThreadPool(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * The size of the tiles, in pixels
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the size of the tiles, in pixels. Smaller tiles balance better the load among
+     * the threads, but make for more queries against the data sources
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("The tile size must be positive, was: "
+                    + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    public void stopRendering() {
+        renderingStopRequested = true;
+        for (StreamingRenderer renderer : tileRenderers) {
+            renderer.stopRendering();
+        }
+        LabelCache cache = labelCache;
+        if (cache != null) {
+            cache.stop();
+        }
+    }
+
+    public void addRenderListener(RenderListener listener) {
+        renderListeners.add(listener);
+    }
+
+    public void removeRenderListener(RenderListener listener) {
+        renderListeners.remove(listener);
+    }
+
+    public void setJava2DHints(RenderingHints hints) {
+        this.java2dHints = hints;
+    }
+
+    public RenderingHints getJava2DHints() {
+        return java2dHints;
+    }
+
+    public void setRendererHints(Map<Object, Object> hints) {
+        this.rendererHints = hints;
+    }
+
+    public Map<Object, Object> getRendererHints() {
+        return rendererHints;
+    }
+
+    /**
+     * @deprecated The {@code MapContext} class is being phased out. Please use
+     *             {@link #setMapContent}.
+     */
+    public void setContext(MapContext context) {
+        mapContent = context;
+    }
+
+    public void setMapContent(MapContent mapContent) {
+        this.mapContent = mapContent;
+    }
+
+    /**
+     * @deprecated The {@code MapContext} class is being phased out. Please use
+     *             {@link #getMapContent}.
+     */
+    public MapContext getContext() {
+        if (mapContent instanceof MapContext) {
+            return (MapContext) mapContent;
+        } else {
+            MapContext context = new MapContext(mapContent);
+            return context;
+        }
+    }
+
+    public MapContent getMapContent() {
+        return mapContent;
+    }
+
+    public void paint(Graphics2D graphics, Rectangle paintArea, AffineTransform worldToScreen) {
+        try {
+            Envelope mapArea = RendererUtilities.createMapEnvelope(paintArea, worldToScreen);
+            paint(graphics, paintArea, mapArea, worldToScreen);
+        } catch (NoninvertibleTransformException e) {
+            fireErrorEvent(e);
+        }
+    }
+
+    public void paint(Graphics2D graphics, Rectangle paintArea, Envelope mapArea) {
+        paint(graphics, paintArea, mapArea,
+                RendererUtilities.worldToScreenTransform(mapArea, paintArea));
+    }
+
+    public void paint(Graphics2D graphics, Rectangle paintArea, ReferencedEnvelope mapArea) {
+        paint(graphics, paintArea, mapArea,
+                RendererUtilities.worldToScreenTransform(mapArea, paintArea));
+    }
+
+    public void paint(Graphics2D graphics, Rectangle paintArea, Envelope mapArea,
+            AffineTransform worldToScreen) {
+        paint(graphics, paintArea,
+                new ReferencedEnvelope(mapArea, mapContent.getCoordinateReferenceSystem()),
+                worldToScreen);
+    }
+
+    public void paint(Graphics2D graphics, Rectangle paintArea, ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        if (graphics == null || paintArea == null || mapArea == null) {
+            throw new NullPointerException("renderer passed null arguments");
+        }
+        if (mapContent == null) {
+            throw new IllegalStateException(
+                    "Cannot call paint, you did not set a MapContent in this renderer");
+        }
+        if (worldToScreen == null) {
+            worldToScreen = RendererUtilities.worldToScreenTransform(mapArea, paintArea);
+            if (worldToScreen == null)
+                return;
+        }
+        renderingStopRequested = false;
+        if (java2dHints != null) {
+            graphics.setRenderingHints(java2dHints);
+        }
+
+        // each tile collects its own labels, they are handed over to a single cache at the end
+        LabelCache cache = getGlobalLabelCache();
+        labelCache = cache;
+        cache.start();
+        final int layersNumber = mapContent.layers().size();
+        for (int i = 0; i < layersNumber; i++) {
+            if (mapContent.layers().get(i).isVisible()) {
+                cache.startLayer(i + "");
+            }
+        }
+        Map<Object, Object> tileHints = getTileRendererHints(paintArea, mapArea);
+        List<LayerLabelCache> tileLabels = new ArrayList<LayerLabelCache>();
+
+        ExecutorService pool = threadPool;
+        boolean localPool = false;
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            localPool = true;
+        }
+        try {
+            // submit all the tiles, the graphics itself is not thread safe, the tile tasks
+            // just get its configuration
+            GraphicsConfiguration configuration = graphics.getDeviceConfiguration();
+            RenderingHints graphicsHints = (RenderingHints) graphics.getRenderingHints().clone();
+            List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>();
+            List<Rectangle> tiles = getTiles(paintArea);
+            for (Rectangle tile : tiles) {
+                ReferencedEnvelope tileArea = new ReferencedEnvelope(RendererUtilities
+                        .createMapEnvelope(tile, worldToScreen),
+                        mapArea.getCoordinateReferenceSystem());
+                LayerLabelCache labels = new LayerLabelCache(cache);
+                tileLabels.add(labels);
+                Map<Object, Object> hints = new HashMap<Object, Object>(tileHints);
+                hints.put(StreamingRenderer.LABEL_CACHE_KEY, labels);
+                StreamingRenderer renderer = createTileRenderer(hints);
+                tileRenderers.add(renderer);
+                futures.add(pool.submit(new TileRenderingTask(renderer, configuration,
+                        graphicsHints, tile, tileArea, worldToScreen)));
+            }
+
+            // compose them as they get ready, the tiles do not overlap
+            graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
+            for (int i = 0; i < tiles.size(); i++) {
+                Rectangle tile = tiles.get(i);
+                try {
+                    BufferedImage image = futures.get(i).get();
+                    if (!renderingStopRequested) {
+                        graphics.drawImage(image, tile.x, tile.y, null);
+                    }
+                } catch (ExecutionException e) {
+                    fireErrorEvent(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            stopRendering();
+            fireErrorEvent(e);
+            return;
+        } catch (NoninvertibleTransformException e) {
+            fireErrorEvent(e);
+            return;
+        } finally {
+            tileRenderers.clear();
+            if (localPool) {
+                pool.shutdown();
+            }
+        }
+        if (renderingStopRequested) {
+            return;
+        }
+
+        // global label pass
+        replayLabels(tileLabels, cache);
+        for (int i = 0; i < layersNumber; i++) {
+            if (mapContent.layers().get(i).isVisible()) {
+                cache.endLayer(i + "", graphics, paintArea);
+            }
+        }
+        cache.end(graphics, paintArea);
+    }
+
+    /**
+     * Returns the label cache provided in the renderer hints, or a new one otherwise
+     */
+    LabelCache getGlobalLabelCache() {
+        LabelCache cache = null;
+        if (rendererHints != null) {
+            cache = (LabelCache) rendererHints.get(StreamingRenderer.LABEL_CACHE_KEY);
+        }
+        if (cache == null) {
+            cache = new LabelCacheImpl();
+        }
+        if (cache instanceof LabelCacheImpl) {
+            String mode = null;
+            if (rendererHints != null) {
+                mode = (String) rendererHints.get(StreamingRenderer.TEXT_RENDERING_KEY);
+            }
+            if (mode == null) {
+                mode = StreamingRenderer.TEXT_RENDERING_STRING;
+            }
+            ((LabelCacheImpl) cache).setLabelRenderingMode(LabelRenderingMode.valueOf(mode));
+        }
+        return cache;
+    }
+
+    /**
+     * Builds the hints shared by the tile renderers, the label cache excluded
+     */
+    Map<Object, Object> getTileRendererHints(Rectangle paintArea, ReferencedEnvelope mapArea) {
+        Map<Object, Object> hints = new HashMap<Object, Object>();
+        if (rendererHints != null) {
+            hints.putAll(rendererHints);
+        }
+        // the accurate scale depends on the position of the area, use the one of the whole map
+        // so that all tiles pick the same rules
+        if (StreamingRenderer.SCALE_ACCURATE.equals(hints
+                .get(StreamingRenderer.SCALE_COMPUTATION_METHOD_KEY))
+                && !hints.containsKey(StreamingRenderer.DECLARED_SCALE_DENOM_KEY)) {
+            try {
+                double scale = RendererUtilities.calculateScale(mapArea, paintArea.width,
+                        paintArea.height, hints);
+                hints.put(StreamingRenderer.DECLARED_SCALE_DENOM_KEY, scale);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to compute the scale of the whole map, "
+                        + "each tile will compute its own", e);
+            }
+        }
+        return hints;
+    }
+
+    /**
+     * Splits the paint area in tiles
+     */
+    List<Rectangle> getTiles(Rectangle paintArea) {
+        List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for (int y = paintArea.y; y < paintArea.y + paintArea.height; y += tileSize) {
+            for (int x = paintArea.x; x < paintArea.x + paintArea.width; x += tileSize) {
+                int width = Math.min(tileSize, paintArea.x + paintArea.width - x);
+                int height = Math.min(tileSize, paintArea.y + paintArea.height - y);
+                tiles.add(new Rectangle(x, y, width, height));
+            }
+        }
+        return tiles;
+    }
+
+    StreamingRenderer createTileRenderer(Map<Object, Object> tileHints) {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mapContent);
+        renderer.setJava2DHints(java2dHints);
+        renderer.setRendererHints(tileHints);
+        // the errors have already been logged by the tile renderer
+        renderer.addRenderListener(new RenderListener() {
+
+            public void featureRenderer(SimpleFeature feature) {
+                for (RenderListener listener : renderListeners) {
+                    listener.featureRenderer(feature);
+                }
+            }
+
+            public void errorOccurred(Exception e) {
+                for (RenderListener listener : renderListeners) {
+                    listener.errorOccurred(e);
+                }
+            }
+        });
+        return renderer;
+    }
+
+    void fireErrorEvent(Throwable t) {
+        LOGGER.log(Level.SEVERE, t.getLocalizedMessage(), t);
+        Exception e;
+        if (t instanceof Exception) {
+            e = (Exception) t;
+        } else {
+            e = new Exception(t);
+        }
+        for (RenderListener listener : renderListeners) {
+            listener.errorOccurred(e);
+        }
+    }
+
+    /**
+     * Paints a single tile in its own image. The tile renderer works in the screen coordinates
+     * of the whole map, the image graphics is translated so that the tile lands at the origin
+     */
+    static class TileRenderingTask implements Callable<BufferedImage> {
+        StreamingRenderer renderer;
+
+        GraphicsConfiguration configuration;
+
+        RenderingHints hints;
+
+        Rectangle tile;
+
+        ReferencedEnvelope tileArea;
+
+        AffineTransform worldToScreen;
+
+        TileRenderingTask(StreamingRenderer renderer, GraphicsConfiguration configuration,
+                RenderingHints hints, Rectangle tile, ReferencedEnvelope tileArea,
+                AffineTransform worldToScreen) {
+            this.renderer = renderer;
+            this.configuration = configuration;
+            this.hints = hints;
+            this.tile = tile;
+            this.tileArea = tileArea;
+            this.worldToScreen = worldToScreen;
+        }
+
+        public BufferedImage call() throws Exception {
+            BufferedImage image = configuration.createCompatibleImage(tile.width, tile.height,
+                    Transparency.TRANSLUCENT);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setRenderingHints(hints);
+            try {
+                graphics.translate(-tile.x, -tile.y);
+                renderer.paint(graphics, tile, tileArea, new AffineTransform(worldToScreen));
+            } finally {
+                graphics.dispose();
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Hands the labels and obstacles collected by the tiles over to the global cache, in tile
+     * order. A feature crossing the tile borders is read by more than one tile: its labels are
+     * merged in a single one, placed where the feature was first met, whose geometry is the
+     * union of the ones seen by the tiles
+     */
+    static void replayLabels(List<LayerLabelCache> tileLabels, LabelCache cache) {
+        List<Object> entries = new ArrayList<Object>();
+        Map<LabelKey, Integer> positions = new HashMap<LabelKey, Integer>();
+        for (LayerLabelCache labels : tileLabels) {
+            for (Object entry : labels.entries) {
+                if (entry instanceof Label) {
+                    Label label = (Label) entry;
+                    FeatureId id = label.feature.getIdentifier();
+                    if (id != null && id.getID() != null) {
+                        LabelKey key = new LabelKey(label.layerId, id.getID(), label.symbolizer);
+                        Integer position = positions.get(key);
+                        if (position != null) {
+                            entries.set(position, merge((Label) entries.get(position), label));
+                            continue;
+                        }
+                        positions.put(key, entries.size());
+                    }
+                }
+                entries.add(entry);
+            }
+            labels.entries.clear();
+        }
+
+        for (Object entry : entries) {
+            if (entry instanceof Label) {
+                Label label = (Label) entry;
+                cache.put(label.layerId, label.symbolizer, label.feature, label.shape,
+                        label.scaleRange);
+            } else {
+                cache.put((Rectangle2D) entry);
+            }
+        }
+    }
+
+    /**
+     * Merges the labels of the same feature found in two tiles, the geometries are in screen
+     * coordinates and are usually the same, unless the tiles got them clipped or generalized
+     */
+    static Label merge(Label first, Label other) {
+        Geometry g1 = first.shape.getGeometry();
+        Geometry g2 = other.shape.getGeometry();
+        if (g1 == null || g2 == null || g1.equalsExact(g2)) {
+            return first;
+        }
+        try {
+            LiteShape2 shape = new LiteShape2(g1.union(g2), null, null, false);
+            return new Label(first.layerId, first.symbolizer, first.feature, shape,
+                    first.scaleRange);
+        } catch (Exception e) {
+            // topology failure, keep the first piece, which does not depend on timing either
+            LOGGER.log(Level.FINE, "Failed to merge the label geometries of feature "
+                    + first.feature.getIdentifier(), e);
+            return first;
+        }
+    }
+
+    /**
+     * Identifies a label by layer, feature and symbolizer
+     */
+    static class LabelKey {
+        String layerId;
+
+        String featureId;
+
+        TextSymbolizer symbolizer;
+
+        LabelKey(String layerId, String featureId, TextSymbolizer symbolizer) {
+            this.layerId = layerId;
+            this.featureId = featureId;
+            this.symbolizer = symbolizer;
+        }
+
+        @Override
+        public int hashCode() {
+            return (layerId.hashCode() * 31 + featureId.hashCode()) * 31 + symbolizer.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LabelKey)) {
+                return false;
+            }
+            LabelKey other = (LabelKey) obj;
+            return layerId.equals(other.layerId) && featureId.equals(other.featureId)
+                    && symbolizer.equals(other.symbolizer);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
@@ -41,10 +42,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -200,7 +205,11 @@ public final class StreamingRenderer implements GTRenderer {
     /** The logger for the rendering module. */
     private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.rendering");
 
-    int error = 0;
+    /**
+     * The number of errors occurred during the current paint, incremented by the layer
+     * renderers too when rendering the layers in parallel
+     */
+    final AtomicInteger error = new AtomicInteger();
 
     /** Filter factory for creating bounding box filters */
     private final static FilterFactory2 filterFactory = CommonFactoryFinder.getFilterFactory2(null);
@@ -258,7 +267,7 @@ public final class StreamingRenderer implements GTRenderer {
      * This flag is set to false when starting rendering, and will be checked
      * during the rendering loop in order to make it stop forcefully
      */
-    private boolean renderingStopRequested = false;
+    private volatile boolean renderingStopRequested = false;
 
     /**
      * The ratio required to scale the features to be rendered so that they fit
@@ -340,6 +349,20 @@ public final class StreamingRenderer implements GTRenderer {
      */
     public static final String OPTIMIZE_FTS_RENDERING_KEY = "optimizeFTSRendering";
 
+    /**
+     * Boolean flag enabling the concurrent rendering of the map layers.
+     * <p>When enabled, and a thread pool has been provided with
+     * {@link #setThreadPool(ExecutorService)}, each layer is read, transformed and
+     * symbolized by a separate task running in the thread pool, painting into its own
+     * memory back buffer. The back buffers are then merged into the destination graphics
+     * following the layer order, while the labels of all layers are still collected in
+     * the label cache and painted on top of the map at the end.</p>
+     * <p>Each back buffer is as big as the image being rendered, and the back buffers of
+     * all the layers can be in memory at the same time. The render listeners will be
+     * called concurrently by the layer tasks. Disabled by default</p>
+     */
+    public static final String PARALLEL_LAYER_RENDERING_KEY = "parallelLayerRendering";
+
 
     /**
      * Enables advanced reprojection handling. Geometries will be sliced to fit into the
@@ -396,6 +419,11 @@ public final class StreamingRenderer implements GTRenderer {
      */
     private ExecutorService threadPool;
 
+    /**
+     * The renderers painting the single layers when parallel layer rendering is enabled
+     */
+    private List<StreamingRenderer> layerRenderers = new CopyOnWriteArrayList<StreamingRenderer>();
+
     /**
      * Creates a new instance of LiteRenderer without a context. Use it only to
      * gain access to utility methods of this class or if you want to render
@@ -500,6 +528,9 @@ public final class StreamingRenderer implements GTRenderer {
      */
     public void stopRendering() {
         renderingStopRequested = true;
+        for (StreamingRenderer layerRenderer : layerRenderers) {
+            layerRenderer.renderingStopRequested = true;
+        }
         labelCache.stop();
     }
 
@@ -694,7 +725,7 @@ public final class StreamingRenderer implements GTRenderer {
         mapExtent = new ReferencedEnvelope(mapArea);
         this.screenSize = paintArea;
         this.worldToScreenTransform = worldToScreen;
-        error = 0;
+        error.set(0);
         if (java2dHints != null)
             graphics.setRenderingHints(java2dHints);
         // add the anchor for graphic fills
@@ -772,43 +803,50 @@ public final class StreamingRenderer implements GTRenderer {
                 ((LabelCacheImpl) labelCache).setLabelRenderingMode(LabelRenderingMode.valueOf(getTextRenderingMethod()));
             }
             final int layersNumber = mapContent.layers().size();
-            for (int i = 0; i < layersNumber; i++) // DJB: for each layer (ie. one
-            {
-                Layer layer = mapContent.layers().get(i);
-    
-                if (!layer.isVisible()) {
-                    // Only render layer when layer is visible
-                    continue;
-                }
-    
+            if (isParallelLayerRenderingEnabled() && layersNumber > 1) {
+                processLayersParallel(graphics);
                 if (renderingStopRequested) {
                     return;
                 }
-                labelCache.startLayer(i+"");
-                
-                if (layer instanceof DirectLayer) {
-                    RenderingRequest request = new RenderDirectLayerRequest(
-                            graphics, (DirectLayer) layer);
-                    try {
-                        requests.put(request);
-                    } catch (InterruptedException e) {
-                        fireErrorEvent(e);
+            } else {
+                for (int i = 0; i < layersNumber; i++) // DJB: for each layer (ie. one
+                {
+                    Layer layer = mapContent.layers().get(i);
+    
+                    if (!layer.isVisible()) {
+                        // Only render layer when layer is visible
+                        continue;
+                    }
+    
+                    if (renderingStopRequested) {
+                        return;
                     }
+                    labelCache.startLayer(i+"");
+                
+                    if (layer instanceof DirectLayer) {
+                        RenderingRequest request = new RenderDirectLayerRequest(
+                                graphics, (DirectLayer) layer);
+                        try {
+                            requests.put(request);
+                        } catch (InterruptedException e) {
+                            fireErrorEvent(e);
+                        }
                     
-                } else {
-                    MapLayer currLayer = new MapLayer(layer);
-                    try {
-
-                        // extract the feature type stylers from the style object
-                        // and process them
-                        processStylers(graphics, currLayer, worldToScreenTransform,
-                                destinationCrs, mapExtent, screenSize, i + "");
-                    } catch (Throwable t) {
-                        fireErrorEvent(t);
+                    } else {
+                        MapLayer currLayer = new MapLayer(layer);
+                        try {
+
+                            // extract the feature type stylers from the style object
+                            // and process them
+                            processStylers(graphics, currLayer, worldToScreenTransform,
+                                    destinationCrs, mapExtent, screenSize, i + "");
+                        } catch (Throwable t) {
+                            fireErrorEvent(t);
+                        }
                     }
-                }
     
-                labelCache.endLayer(i+"", graphics, screenSize);
+                    labelCache.endLayer(i+"", graphics, screenSize);
+                }
             }
         } finally {
             try {
@@ -831,7 +869,7 @@ public final class StreamingRenderer implements GTRenderer {
                     styleFactory.getHitRatio()).append(" , hits ").append(
                             styleFactory.getHits()).append(", requests ").append(
                                     styleFactory.getRequests()).toString());
-        if (error > 0) {
+        if (error.get() > 0) {
             LOGGER
             .warning(new StringBuffer(
             "Number of Errors during paint(Graphics2D, AffineTransform) = ")
@@ -840,6 +878,181 @@ public final class StreamingRenderer implements GTRenderer {
         
     }
 
+    /**
+     * Renders the map layers concurrently, each one in its own back buffer, using the
+     * thread pool. The back buffers are merged into the destination graphics in layer order,
+     * as soon as the layer and all the ones below it are done. The labels of each layer are
+     * collected apart and handed to the label cache when the layer is merged, so that they
+     * reach it in the same order as in sequential rendering.
+     * 
+     * @param graphics The destination graphics
+     */
+    private void processLayersParallel(final Graphics2D graphics) {
+        final List<Layer> layers = new ArrayList<Layer>(mapContent.layers());
+        final LabelCache sharedLabelCache = new SynchronizedLabelCache(labelCache);
+        // the painter threads of the layer renderers, they cannot be run by the thread pool
+        // as they would wait behind the layer tasks feeding them
+        final ExecutorService painterPool = Executors.newCachedThreadPool();
+
+        // the painter thread is idle until the first merge, so it's safe to allocate the
+        // back buffers (which reads the destination graphics configuration) from here
+        List<FutureTask<Graphics2D>> tasks = new ArrayList<FutureTask<Graphics2D>>();
+        List<LayerLabelCache> layerLabels = new ArrayList<LayerLabelCache>();
+        try {
+            for (int i = 0; i < layers.size(); i++) {
+                Layer layer = layers.get(i);
+                FutureTask<Graphics2D> task = null;
+                LayerLabelCache labels = null;
+                if (layer.isVisible() && !(layer instanceof DirectLayer)) {
+                    DelayedBackbufferGraphic layerGraphics = new DelayedBackbufferGraphic(
+                            graphics, screenSize);
+                    layerGraphics.init();
+                    layerGraphics.setClip(screenSize);
+                    labels = new LayerLabelCache(sharedLabelCache);
+                    StreamingRenderer layerRenderer = createLayerRenderer(labels, painterPool);
+                    layerRenderers.add(layerRenderer);
+                    task = new FutureTask<Graphics2D>(new LayerRenderingTask(layerRenderer,
+                            layerGraphics, new MapLayer(layer), i + ""));
+                    threadPool.execute(task);
+                }
+                tasks.add(task);
+                layerLabels.add(labels);
+            }
+
+            for (int i = 0; i < layers.size(); i++) {
+                Layer layer = layers.get(i);
+                if (!layer.isVisible()) {
+                    continue;
+                }
+                if (renderingStopRequested) {
+                    break;
+                }
+
+                sharedLabelCache.startLayer(i + "");
+                try {
+                    if (layer instanceof DirectLayer) {
+                        requests.put(new RenderDirectLayerRequest(graphics, (DirectLayer) layer));
+                    } else {
+                        // if the pool did not get to the task yet run it in this thread,
+                        // this is a no-op if the task already started
+                        FutureTask<Graphics2D> task = tasks.get(i);
+                        task.run();
+                        Graphics2D layerGraphics = task.get();
+                        requests.put(new MergeLayersRequest(graphics,
+                                new Graphics2D[] { layerGraphics }));
+                        layerLabels.get(i).replay(sharedLabelCache);
+                    }
+                } catch (ExecutionException e) {
+                    fireErrorEvent(e.getCause());
+                } catch (InterruptedException e) {
+                    fireErrorEvent(e);
+                }
+
+                sharedLabelCache.endLayer(i + "", graphics, screenSize);
+            }
+        } finally {
+            // make sure no layer task is still running once we return: stop them all, run in
+            // this thread the ones the pool did not get to yet (they return at once, being
+            // stopped), and wait for the running ones
+            for (StreamingRenderer layerRenderer : layerRenderers) {
+                layerRenderer.stopRendering();
+            }
+            boolean interrupted = false;
+            for (FutureTask<Graphics2D> task : tasks) {
+                if (task == null) {
+                    continue;
+                }
+                task.run();
+                while (true) {
+                    try {
+                        task.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (Exception e) {
+                        // already reported
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            layerRenderers.clear();
+            painterPool.shutdown();
+        }
+    }
+
+    /**
+     * Builds a renderer sharing the configuration and the current rendering state of this one,
+     * used to paint a single layer in parallel with the others
+     * 
+     * @param layerLabelCache The thread safe label cache the layer renderer will use
+     * @param painterPool The thread pool running the painter thread of the layer renderer
+     */
+    private StreamingRenderer createLayerRenderer(LabelCache layerLabelCache,
+            ExecutorService painterPool) {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.threadPool = painterPool;
+        renderer.setJava2DHints(java2dHints);
+        renderer.setRendererHints(rendererHints);
+        renderer.setGeneralizationDistance(generalizationDistance);
+        renderer.labelCache = layerLabelCache;
+        renderer.painter = new StyledShapePainter(layerLabelCache);
+        renderer.mapContent = mapContent;
+        renderer.destinationCrs = destinationCrs;
+        renderer.mapExtent = mapExtent;
+        renderer.originalMapExtent = originalMapExtent;
+        renderer.screenSize = screenSize;
+        renderer.worldToScreenTransform = worldToScreenTransform;
+        renderer.scaleDenominator = scaleDenominator;
+        // the projection handler keeps the rendering envelope of the current layer
+        if (isAdvancedProjectionHandlingEnabled()) {
+            renderer.projectionHandler = ProjectionHandlerFinder.getHandler(mapExtent,
+                    isMapWrappingEnabled());
+        }
+        // forward the events to our own listeners, the errors have already been logged
+        renderer.addRenderListener(new RenderListener() {
+
+            public void featureRenderer(SimpleFeature feature) {
+                for (RenderListener listener : renderListeners) {
+                    listener.featureRenderer(feature);
+                }
+            }
+
+            public void errorOccurred(Exception e) {
+                error.incrementAndGet();
+                for (RenderListener listener : renderListeners) {
+                    listener.errorOccurred(e);
+                }
+            }
+        });
+        return renderer;
+    }
+
+    /**
+     * Paints a single layer, using a private painter thread run by the painter pool. Used by
+     * the layer renderers built by {@link #createLayerRenderer(LabelCache, ExecutorService)}
+     */
+    private void paintLayer(Graphics2D graphics, MapLayer currLayer, String layerId) {
+        requests = new ArrayBlockingQueue<RenderingRequest>(10000);
+        Future painterFuture = threadPool.submit(new PainterThread(requests));
+        try {
+            processStylers(graphics, currLayer, worldToScreenTransform, destinationCrs,
+                    mapExtent, screenSize, layerId);
+        } catch (Throwable t) {
+            fireErrorEvent(t);
+        } finally {
+            try {
+                requests.put(new EndRequest());
+                painterFuture.get();
+            } catch (Exception e) {
+                painterFuture.cancel(true);
+                fireErrorEvent(e);
+            }
+        }
+    }
+
     /**
      * Extends the provided {@link Envelope} in order to add the number of pixels
      * specified by <code>buffer</code> in every direction.
@@ -1333,6 +1546,20 @@ public final class StreamingRenderer implements GTRenderer {
         return Boolean.TRUE.equals(result);
     }
 
+    /**
+     * Checks if the layers can be rendered in parallel. See {@link #PARALLEL_LAYER_RENDERING_KEY}
+     * description for a full explanation.
+     */
+    private boolean isParallelLayerRenderingEnabled() {
+        // the layer back buffers are not aware of the transformation set on the graphics
+        if (threadPool == null || concatTransforms || rendererHints == null)
+            return false;
+        Object result = rendererHints.get(PARALLEL_LAYER_RENDERING_KEY);
+        if (result == null)
+            return false;
+        return Boolean.TRUE.equals(result);
+    }
+
     /**
      * Checks if the advanced projection handling is enabled
      * @return
@@ -2287,6 +2514,7 @@ public final class StreamingRenderer implements GTRenderer {
             FeatureCollection features, final NumberRange scaleRange, final List lfts) {
         final LiteFeatureTypeStyle[] fts_array = (LiteFeatureTypeStyle[]) lfts
         .toArray(new LiteFeatureTypeStyle[lfts.size()]);
+        compileFilters(fts_array, features);
 
         // for each lite feature type style, scan the whole collection and draw
         for (LiteFeatureTypeStyle liteFeatureTypeStyle : fts_array) {
@@ -2342,6 +2570,7 @@ public final class StreamingRenderer implements GTRenderer {
 
         final LiteFeatureTypeStyle[] fts_array = (LiteFeatureTypeStyle[]) lfts
         .toArray(new LiteFeatureTypeStyle[lfts.size()]);
+        compileFilters(fts_array, features);
 
         try {
             boolean clone = isCloningRequired(currLayer, fts_array);
@@ -2379,6 +2608,18 @@ public final class StreamingRenderer implements GTRenderer {
         } 
     }
 
+    /**
+     * Compiles the rule filters against the feature type being rendered
+     */
+    private void compileFilters(LiteFeatureTypeStyle[] fts_array, FeatureCollection features) {
+        if (features != null && features.getSchema() instanceof SimpleFeatureType) {
+            SimpleFeatureType schema = (SimpleFeatureType) features.getSchema();
+            for (LiteFeatureTypeStyle liteFeatureTypeStyle : fts_array) {
+                liteFeatureTypeStyle.compileFilters(schema);
+            }
+        }
+    }
+
     /**
      * Tells if geometry cloning is required or not
      */
@@ -2448,9 +2689,10 @@ public final class StreamingRenderer implements GTRenderer {
         Graphics2D graphics = fts.graphics;
         // applicable rules
         final int length = ruleList.length;
+        final Filter[] ruleFilters = fts.ruleFilters;
         for (int t = 0; t < length; t++) {
             r = ruleList[t];
-            filter = r.getFilter();
+            filter = ruleFilters != null ? ruleFilters[t] : r.getFilter();
 
             if (filter == null || filter.evaluate(rf.content)) {
                 doElse = false;
@@ -3184,29 +3426,42 @@ public final class StreamingRenderer implements GTRenderer {
      */
     class MergeLayersRequest extends RenderingRequest {
         Graphics2D graphics;
-        LiteFeatureTypeStyle fts_array[];
+        Graphics2D layers[];
         
         
 
         public MergeLayersRequest(Graphics2D graphics, LiteFeatureTypeStyle[] ftsArray) {
             this.graphics = graphics;
-            fts_array = ftsArray;
+            layers = new Graphics2D[ftsArray.length];
+            for (int t = 0; t < ftsArray.length; t++) {
+                layers[t] = ftsArray[t].graphics;
+            }
+        }
+
+        /**
+         * Merges the back buffers of the specified graphics, in the order they are provided
+         */
+        public MergeLayersRequest(Graphics2D graphics, Graphics2D[] layers) {
+            this.graphics = graphics;
+            this.layers = layers;
         }
 
         @Override
         void execute() {
             graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
-            for (int t = 0; t < fts_array.length; t++) {
+            for (int t = 0; t < layers.length; t++) {
                 // first fts won't have an image, it's using the user provided graphics
                 // straight, so we don't need to compose it back in.
-                final Graphics2D ftsGraphics = fts_array[t].graphics;
-                if (ftsGraphics instanceof DelayedBackbufferGraphic) {
-                    final BufferedImage image = ((DelayedBackbufferGraphic) ftsGraphics).image;
+                final Graphics2D layerGraphics = layers[t];
+                if (layerGraphics instanceof DelayedBackbufferGraphic) {
+                    final DelayedBackbufferGraphic backbuffer = (DelayedBackbufferGraphic) layerGraphics;
+                    final BufferedImage image = backbuffer.image;
                     // we may have not found anything to paint, in that case the delegate
                     // has not been initialized
                     if(image != null) {
-                        graphics.drawImage(image, 0, 0, null);
-                        ftsGraphics.dispose();
+                        graphics.drawImage(image, backbuffer.screenSize.x,
+                                backbuffer.screenSize.y, null);
+                        layerGraphics.dispose();
                     }
                 }
             }
@@ -3319,6 +3574,137 @@ public final class StreamingRenderer implements GTRenderer {
         
     }
     
+    /**
+     * Paints a single layer into its own back buffer, used for parallel layer rendering
+     */
+    class LayerRenderingTask implements Callable<Graphics2D> {
+        StreamingRenderer renderer;
+
+        Graphics2D graphics;
+
+        MapLayer layer;
+
+        String layerId;
+
+        public LayerRenderingTask(StreamingRenderer renderer, Graphics2D graphics,
+                MapLayer layer, String layerId) {
+            this.renderer = renderer;
+            this.graphics = graphics;
+            this.layer = layer;
+            this.layerId = layerId;
+        }
+
+        public Graphics2D call() throws Exception {
+            // stopped before the pool got to it
+            if (!renderer.renderingStopRequested) {
+                renderer.paintLayer(graphics, layer, layerId);
+            }
+            return graphics;
+        }
+    }
+
+    /**
+     * Collects the labels and label obstacles of a layer painted in parallel with the others,
+     * so that they can be handed to the label cache in layer order once the layer is merged.
+     * The layer life cycle is managed against the shared label cache.
+     */
+    static class LayerLabelCache implements LabelCache {
+        LabelCache delegate;
+
+        /** The labels, and the obstacles as {@link Rectangle2D}, in the order they came in */
+        List<Object> entries = new ArrayList<Object>();
+
+        LayerLabelCache(LabelCache delegate) {
+            this.delegate = delegate;
+        }
+
+        public synchronized void put(String layerId, TextSymbolizer symbolizer,
+                Feature feature, LiteShape2 shape, NumberRange<Double> scaleRange) {
+            entries.add(new Label(layerId, symbolizer, feature, shape, scaleRange));
+        }
+
+        public synchronized void put(Rectangle2D area) {
+            entries.add(area);
+        }
+
+        /**
+         * Hands the collected labels and obstacles over to the specified cache
+         */
+        synchronized void replay(LabelCache cache) {
+            for (Object entry : entries) {
+                if (entry instanceof Label) {
+                    Label label = (Label) entry;
+                    cache.put(label.layerId, label.symbolizer, label.feature, label.shape,
+                            label.scaleRange);
+                } else {
+                    cache.put((Rectangle2D) entry);
+                }
+            }
+            entries.clear();
+        }
+
+        public void start() {
+            // managed by the parent renderer
+        }
+
+        public void startLayer(String layerId) {
+            // managed by the parent renderer
+        }
+
+        public void endLayer(String layerId, Graphics2D graphics, Rectangle displayArea) {
+            // managed by the parent renderer
+        }
+
+        public void end(Graphics2D graphics, Rectangle displayArea) {
+            // managed by the parent renderer
+        }
+
+        public void stop() {
+            // managed by the parent renderer
+        }
+
+        public void clear() {
+            // managed by the parent renderer
+        }
+
+        public void clear(String layerId) {
+            // managed by the parent renderer
+        }
+
+        public void disableLayer(String layerId) {
+            delegate.disableLayer(layerId);
+        }
+
+        public void enableLayer(String layerId) {
+            delegate.enableLayer(layerId);
+        }
+
+        public List orderedLabels() {
+            return delegate.orderedLabels();
+        }
+
+        static class Label {
+            String layerId;
+
+            TextSymbolizer symbolizer;
+
+            Feature feature;
+
+            LiteShape2 shape;
+
+            NumberRange<Double> scaleRange;
+
+            Label(String layerId, TextSymbolizer symbolizer, Feature feature,
+                    LiteShape2 shape, NumberRange<Double> scaleRange) {
+                this.layerId = layerId;
+                this.symbolizer = symbolizer;
+                this.feature = feature;
+                this.shape = shape;
+                this.scaleRange = scaleRange;
+            }
+        }
+    }
+
     /**
      * Marks the end of the request flow, instructs the painting thread to exit
      * @author Andrea Aime - OpenGeo
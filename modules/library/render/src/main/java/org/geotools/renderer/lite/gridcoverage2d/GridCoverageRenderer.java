@@ -59,6 +59,7 @@ import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.builder.GridToEnvelopeMapper;
 import org.geotools.referencing.operation.matrix.XAffineTransform;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
 import org.geotools.resources.i18n.ErrorKeys;
 import org.geotools.resources.i18n.Errors;
 import org.geotools.resources.image.ImageUtilities;
@@ -195,6 +196,12 @@ public final class GridCoverageRenderer {
 
     private final Hints hints = new Hints();
 
+    /**
+     * Whether reprojected coverages are warped straight onto the screen grid. Turned off only
+     * to compare with the crop and resample path.
+     */
+    boolean directWarp = true;
+
     // FORMULAE FOR FORWARD MAP are derived as follows
     //     Nearest
     //        Minimum:
@@ -257,6 +264,12 @@ public final class GridCoverageRenderer {
     
         private static float rationalTolerance = 0.000001F;
 
+    /**
+     * Relative tolerance used to decide whether the coverage already lies within the requested
+     * area, in which case it does not need to be cropped.
+     */
+    private static final double CROP_TOLERANCE = 1E-6;
+
     /** Parameters used to control the {@link Resample} operation. */
     private final static ParameterValueGroup resampleParams;
 
@@ -375,12 +388,16 @@ public final class GridCoverageRenderer {
      * @param gc
      * @param crs
      * @param interpolation
+     * @param gridGeometry
+     *                the target grid, or <code>null</code> to keep a resolution close to
+     *                the source one
      * @return
      * @throws FactoryException
      */
     private static GridCoverage2D resample(final GridCoverage2D gc,
             CoordinateReferenceSystem crs, final Interpolation interpolation,
-            final GeneralEnvelope destinationEnvelope, final Hints hints) throws FactoryException {
+            final GeneralEnvelope destinationEnvelope, final GridGeometry2D gridGeometry,
+            final Hints hints) throws FactoryException {
         // paranoiac check
         assert CRS.equalsIgnoreMetadata(destinationEnvelope
                 .getCoordinateReferenceSystem(), crs)
@@ -395,6 +412,8 @@ public final class GridCoverageRenderer {
         param.parameter("source").setValue(gc);
         param.parameter("CoordinateReferenceSystem").setValue(crs);
         param.parameter("InterpolationType").setValue(interpolation);
+        if (gridGeometry != null)
+            param.parameter("GridGeometry").setValue(gridGeometry);
         return (GridCoverage2D) resampleFactory.doOperation(param, hints);
 
     }
@@ -431,6 +450,42 @@ public final class GridCoverageRenderer {
 
     }
 
+    /**
+     * Builds the grid geometry of the screen area covered by the reprojected coverage, so that
+     * the coverage can be warped straight onto the screen grid in a single step, instead of
+     * being cropped, resampled close to its native resolution and then scaled by a second
+     * affine warp. The warp is approximated by a grid whose error is bounded by the
+     * {@link Hints#RESAMPLE_TOLERANCE} hint.
+     * 
+     * @return the grid geometry, or <code>null</code> if the footprint of the coverage on the
+     *         screen cannot be computed or is empty
+     */
+    private GridGeometry2D getScreenGridGeometry(final GeneralEnvelope sourceEnvelope,
+            final MathTransform sourceCRSToDestinationCRSTransformation) {
+        final GeneralEnvelope footprint;
+        try {
+            footprint = CRS.transform(sourceCRSToDestinationCRSTransformation, sourceEnvelope);
+        } catch (TransformException e) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.log(Level.FINE, "Unable to compute the coverage footprint, falling back on crop and resample: "
+                        + e.getLocalizedMessage(), e);
+            return null;
+        }
+        footprint.setCoordinateReferenceSystem(destinationEnvelope.getCoordinateReferenceSystem());
+        footprint.intersect(destinationEnvelope);
+        if (footprint.isEmpty() || footprint.isNull())
+            return null;
+
+        // the screen pixels touched by the footprint, the grid to world transform stays the
+        // screen one so that the result is drawn as is
+        final Rectangle2D area = XAffineTransform.transform(finalWorldToGrid, footprint.toRectangle2D(), null);
+        final Rectangle screenArea = area.getBounds().intersection(destinationSize);
+        if (screenArea.isEmpty())
+            return null;
+        return new GridGeometry2D(new GridEnvelope2D(screenArea), PixelInCell.CELL_CORNER,
+                ProjectiveTransform.create(finalGridToWorld), destinationCRS, hints);
+    }
+
     /**
      * Write the provided {@link RenderedImage} in the debug directory with the provided file name.
      * 
@@ -620,27 +675,41 @@ public final class GridCoverageRenderer {
         //
         // CROPPING Coverage
         //
+        // When reprojecting we warp straight onto the screen grid, the warp
+        // only pulls the source tiles it needs. Otherwise the crop is skipped
+        // if the coverage already lies within the requested area, as it does
+        // when the reader was asked for the target area and resolution, in
+        // which case only the final affine transformation is left.
+        //
         // /////////////////////////////////////////////////////////////////////
+        final GridGeometry2D screenGridGeometry = doReprojection && directWarp ? getScreenGridGeometry(
+                sourceCoverageEnvelope, sourceCRSToDestinationCRSTransformation) : null;
+        final boolean skipCrop = screenGridGeometry != null
+                || (!doReprojection && intersectionEnvelope.equals(sourceCoverageEnvelope, CROP_TOLERANCE, true));
         GridCoverage2D preResample=gridCoverage;
-    	try{
-		    preResample = getCroppedCoverage(gridCoverage, intersectionEnvelope, sourceCoverageCRS,this.hints);
-		    if (preResample == null) {
-		        // nothing to render, the AOI does not overlap
-		        if (LOGGER.isLoggable(Level.FINE))
-		            LOGGER.fine("Skipping current coverage because cropped to an empty area");
-                return null;
-		    }
-    	}catch (Throwable t) {
-    		////
-    		//
-    		// If it happens that the crop fails we try to proceed since the crop does only an optimization. Things might
-    		// work out anyway.
-    		//
-    		////
-            if (LOGGER.isLoggable(Level.FINE))
-                LOGGER.log(Level.FINE,"Crop Failed for reason: "+t.getLocalizedMessage(),t);
-            preResample=gridCoverage;
-		}
+        if (!skipCrop) {
+        	try{
+    		    preResample = getCroppedCoverage(gridCoverage, intersectionEnvelope, sourceCoverageCRS,this.hints);
+    		    if (preResample == null) {
+    		        // nothing to render, the AOI does not overlap
+    		        if (LOGGER.isLoggable(Level.FINE))
+    		            LOGGER.fine("Skipping current coverage because cropped to an empty area");
+                    return null;
+    		    }
+        	}catch (Throwable t) {
+        		////
+        		//
+        		// If it happens that the crop fails we try to proceed since the crop does only an optimization. Things might
+        		// work out anyway.
+        		//
+        		////
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE,"Crop Failed for reason: "+t.getLocalizedMessage(),t);
+                preResample=gridCoverage;
+    		}
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Skipping the crop, the coverage lies within the requested area or is warped onto the screen grid");
+        }
         if (DEBUG) {
             writeRenderedImage(preResample.geophysics(false).getRenderedImage(),"preresample");
         }
@@ -653,7 +722,7 @@ public final class GridCoverageRenderer {
         // /////////////////////////////////////////////////////////////////////
         GridCoverage2D preSymbolizer;
         if (doReprojection) {
-            preSymbolizer = resample(preResample, destinationCRS,interpolation == null ? new InterpolationNearest(): interpolation, destinationEnvelope,this.hints);
+            preSymbolizer = resample(preResample, destinationCRS,interpolation == null ? new InterpolationNearest(): interpolation, destinationEnvelope, screenGridGeometry, this.hints);
             if (LOGGER.isLoggable(Level.FINE))
                 LOGGER.fine("Reprojecting to crs "+ destinationCRS.toWKT());
         } else
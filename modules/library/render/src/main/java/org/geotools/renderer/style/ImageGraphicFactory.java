@@ -23,7 +23,6 @@ import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -31,7 +30,6 @@ import javax.imageio.ImageIO;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 
-import org.geotools.util.SoftValueHashMap;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.Feature;
 import org.opengis.filter.expression.Expression;
@@ -53,13 +51,27 @@ public class ImageGraphicFactory implements ExternalGraphicFactory {
     /** The logger for the rendering module. */
     private static final Logger LOGGER = Logging.getLogger(ImageGraphicFactory.class);
 
-    /** Current way to load images */
-    static Map<URL, BufferedImage> imageCache = Collections.synchronizedMap(new SoftValueHashMap<URL, BufferedImage>());
+    /** Caches both the images loaded and their rescaled versions */
+    StyleCache imageCache;
 
     /** Holds the of graphic formats supported by the current jdk */
     static Set<String> supportedGraphicFormats = new HashSet<String>(Arrays.asList(ImageIO
             .getReaderMIMETypes()));
 
+    /**
+     * Builds a factory sharing the default {@link StyleCache}
+     */
+    public ImageGraphicFactory() {
+        this(StyleCache.getDefaultInstance());
+    }
+
+    /**
+     * Builds a factory caching images in the specified style cache
+     */
+    public ImageGraphicFactory(StyleCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
     public Icon getIcon(Feature feature, Expression url, String format, int size) throws Exception {
         // check we do support the format
         if (!supportedGraphicFormats.contains(format.toLowerCase()))
@@ -72,22 +84,34 @@ public class ImageGraphicFactory implements ExternalGraphicFactory {
                     "The provided expression cannot be evaluated to a URL");
 
         // get the image from the cache, or load it
-        BufferedImage image = imageCache.get(location);
+        String path = location.toExternalForm();
+        ImageKey key = new ImageKey(path, -1);
+        BufferedImage image = imageCache.getImage(key);
         if(image == null) {
             image = ImageIO.read(location);
-            imageCache.put(location, image);
+            if(image == null) {
+                LOGGER.fine("Could not find a reader for the image at " + path);
+                return null;
+            }
+            imageCache.putImage(key, image);
         }
         
-        // if scaling is needed, perform it
+        // if scaling is needed, perform it, the rescaled images are cached too
         if(size > 0 && image.getHeight() != size) {
-            double dsize = (double) size;
-
-            double scaleY = dsize / image.getHeight(); // >1 if you're magnifying
-            double scaleX =  scaleY; // keep aspect ratio!
-
-            AffineTransform scaleTx = AffineTransform.getScaleInstance(scaleX,scaleY);  
-            AffineTransformOp ato = new AffineTransformOp(scaleTx, AffineTransformOp.TYPE_BILINEAR);
-            image = ato.filter(image, null);
+            ImageKey scaledKey = new ImageKey(path, size);
+            BufferedImage scaled = imageCache.getImage(scaledKey);
+            if(scaled == null) {
+                double dsize = (double) size;
+    
+                double scaleY = dsize / image.getHeight(); // >1 if you're magnifying
+                double scaleX =  scaleY; // keep aspect ratio!
+    
+                AffineTransform scaleTx = AffineTransform.getScaleInstance(scaleX,scaleY);  
+                AffineTransformOp ato = new AffineTransformOp(scaleTx, AffineTransformOp.TYPE_BILINEAR);
+                scaled = ato.filter(image, null);
+                imageCache.putImage(scaledKey, scaled);
+            }
+            image = scaled;
         }
         
         return new ImageIcon(image);
@@ -102,9 +126,39 @@ public class ImageGraphicFactory implements ExternalGraphicFactory {
     }
 
     /**
-     * Images are cached by the factory, this method can be used to drop the cache 
+     * Images are cached by the factory in the default {@link StyleCache}, this method can be used
+     * to drop them
      */
     public static void resetCache() {
-        imageCache.clear();
+        StyleCache.getDefaultInstance().clearImages();
+    }
+
+    /**
+     * Identifies an image by location and height, -1 meaning the natural size. Uses the external
+     * form of the URL as {@link URL#equals(Object)} may perform host name lookups.
+     */
+    static class ImageKey {
+        final String location;
+
+        final int size;
+
+        ImageKey(String location, int size) {
+            this.location = location;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ImageKey)) {
+                return false;
+            }
+            ImageKey other = (ImageKey) obj;
+            return size == other.size && location.equals(other.location);
+        }
+
+        @Override
+        public int hashCode() {
+            return location.hashCode() * 37 + size;
+        }
     }
 }
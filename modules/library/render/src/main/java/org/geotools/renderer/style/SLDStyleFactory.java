@@ -33,6 +33,7 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -62,7 +63,7 @@ import org.geotools.styling.Symbolizer;
 import org.geotools.styling.TextSymbolizer;
 import org.geotools.styling.TextSymbolizer2;
 import org.geotools.util.Range;
-import org.geotools.util.SoftValueHashMap;
+import org.geotools.util.Utilities;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.FilterFactory;
@@ -160,11 +161,17 @@ public class SLDStyleFactory {
 		fontStyleLookup.put("bold", new Integer(java.awt.Font.BOLD));
 	}
 
-	/** Symbolizers that depend on attributes */
-	Map dynamicSymbolizers = new SoftValueHashMap();
+	/**
+	 * Caches the styles built from the symbolizers that do not depend on
+	 * attributes, and remembers the ones that do
+	 */
+	StyleCache styleCache;
 
-	/** Symbolizers that do not depend on attributes */
-	Map staticSymbolizers = new SoftValueHashMap();
+	/**
+	 * The current settings of the factory, part of the cache keys as they
+	 * change the styles being built. Reset to null when a setting changes.
+	 */
+	private Settings settings;
 
 	/**
 	 * Build a default rendering hint to avoid NPE
@@ -195,6 +202,31 @@ public class SLDStyleFactory {
 	 */
 	private double mapScaleDenominator = Double.NaN;
 
+	/**
+	 * Builds a factory sharing the default {@link StyleCache} with all the
+	 * other factories
+	 */
+	public SLDStyleFactory() {
+		this(StyleCache.getDefaultInstance());
+	}
+
+	/**
+	 * Builds a factory using the specified style cache
+	 */
+	public SLDStyleFactory(StyleCache styleCache) {
+		if (styleCache == null) {
+			throw new NullPointerException("The style cache cannot be null");
+		}
+		this.styleCache = styleCache;
+	}
+
+	/**
+	 * Returns the style cache used by this factory
+	 */
+	public StyleCache getStyleCache() {
+		return styleCache;
+	}
+
 	/**
 	 * The factory builds a fair number of buffered images to deal with external
 	 * graphics that need resizing and the like. This hints will be used in
@@ -208,6 +240,7 @@ public class SLDStyleFactory {
 		if (renderingHints == null)
 			return;
 		this.renderingHints = renderingHints;
+		this.settings = null;
 	}
 
 	/**
@@ -224,6 +257,7 @@ public class SLDStyleFactory {
 
 	public void setLineOptimizationEnabled(boolean lineOptimizationEnabled) {
 		this.lineOptimizationEnabled = lineOptimizationEnabled;
+		this.settings = null;
 	}
 
 	/**
@@ -251,6 +285,7 @@ public class SLDStyleFactory {
 	 */
 	public void setVectorRenderingEnabled(boolean vectorRenderingEnabled) {
 		this.vectorRenderingEnabled = vectorRenderingEnabled;
+		this.settings = null;
 	}
 
 	public double getHitRatio() {
@@ -274,7 +309,8 @@ public class SLDStyleFactory {
 	 * Makes use of a symbolizer cache based on identity to avoid recomputing
 	 * over and over the same style object and to reduce memory usage. The same
 	 * Style2D object will be returned by subsequent calls using the same
-	 * feature independent symbolizer with the same scaleRange.
+	 * feature independent symbolizer with the same scaleRange and factory
+	 * settings, also by other factories sharing the same {@link StyleCache}.
 	 * </p>
 	 * 
 	 * @param drawMe
@@ -291,8 +327,15 @@ public class SLDStyleFactory {
 			Range scaleRange) {
 		Style2D style = null;
 
-		SymbolizerKey key = new SymbolizerKey(symbolizer, scaleRange);
-		style = (Style2D) staticSymbolizers.get(key);
+		// whether the symbolizer depends on attributes does not depend on the
+		// factory settings, the style does
+		SymbolizerKey dynamicKey = new SymbolizerKey(symbolizer, scaleRange);
+		boolean dynamic = styleCache.isDynamic(dynamicKey);
+		SymbolizerKey key = null;
+		if (!dynamic) {
+			key = new SymbolizerKey(symbolizer, scaleRange, getSettings());
+			style = styleCache.getStyle(key);
+		}
 
 		requests++;
 
@@ -310,7 +353,7 @@ public class SLDStyleFactory {
 			}
 
 			// if known dynamic symbolizer return the style
-			if (dynamicSymbolizers.containsKey(key)) {
+			if (dynamic) {
 				return style;
 			} else {
 				// lets see if it's static or dynamic
@@ -320,9 +363,9 @@ public class SLDStyleFactory {
 				Set nameSet = sae.getAttributeNameSet();
 				boolean noAttributes = (nameSet == null) || (nameSet.size() == 0);
 				if (noAttributes && !sae.isUsingVolatileFunctions()) {
-					staticSymbolizers.put(key, style);
+					styleCache.putStyle(key, style);
 				} else {
-					dynamicSymbolizers.put(key, Boolean.TRUE);
+					styleCache.setDynamic(dynamicKey);
 				}
 			}
 		}
@@ -1398,6 +1441,51 @@ public class SLDStyleFactory {
 		this.mapScaleDenominator = mapScaleDenominator;
 	}
 
+	/**
+	 * Returns the current settings, building a new snapshot if they changed
+	 */
+	Settings getSettings() {
+		if (settings == null) {
+			settings = new Settings(lineOptimizationEnabled,
+					vectorRenderingEnabled, renderingHints);
+		}
+		return settings;
+	}
+
+	/**
+	 * An immutable snapshot of the factory settings affecting the styles
+	 */
+	static class Settings {
+		private boolean lineOptimizationEnabled;
+		private boolean vectorRenderingEnabled;
+		private Map<Object, Object> renderingHints;
+
+		Settings(boolean lineOptimizationEnabled,
+				boolean vectorRenderingEnabled, RenderingHints renderingHints) {
+			this.lineOptimizationEnabled = lineOptimizationEnabled;
+			this.vectorRenderingEnabled = vectorRenderingEnabled;
+			this.renderingHints = new HashMap<Object, Object>(renderingHints);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Settings)) {
+				return false;
+			}
+
+			Settings other = (Settings) obj;
+
+			return other.lineOptimizationEnabled == lineOptimizationEnabled
+					&& other.vectorRenderingEnabled == vectorRenderingEnabled
+					&& other.renderingHints.equals(renderingHints);
+		}
+
+		public int hashCode() {
+			return (((17 + (lineOptimizationEnabled ? 1 : 0)) * 37) + (vectorRenderingEnabled ? 1
+					: 0))
+					* 37 + renderingHints.hashCode();
+		}
+	}
+
 	/**
 	 * Simple key used to cache Style2D objects based on the originating
 	 * symbolizer and scale range. Will compare symbolizers by identity,
@@ -1409,11 +1497,17 @@ public class SLDStyleFactory {
 		private Symbolizer symbolizer;
 		private double minScale;
 		private double maxScale;
+		private Settings settings;
 
 		public SymbolizerKey(Symbolizer symbolizer, Range scaleRange) {
+			this(symbolizer, scaleRange, null);
+		}
+
+		SymbolizerKey(Symbolizer symbolizer, Range scaleRange, Settings settings) {
 			this.symbolizer = symbolizer;
 			minScale = ((Number) scaleRange.getMinValue()).doubleValue();
 			maxScale = ((Number) scaleRange.getMaxValue()).doubleValue();
+			this.settings = settings;
 		}
 
 		/**
@@ -1428,15 +1522,17 @@ public class SLDStyleFactory {
 
 			return (other.symbolizer == symbolizer)
 					&& (other.minScale == minScale)
-					&& (other.maxScale == maxScale);
+					&& (other.maxScale == maxScale)
+					&& Utilities.equals(other.settings, settings);
 		}
 
 		/**
 		 * @see java.lang.Object#hashCode()
 		 */
 		public int hashCode() {
-			return ((((17 + System.identityHashCode(symbolizer)) * 37) + doubleHash(minScale)) * 37)
-					+ doubleHash(maxScale);
+			return ((((((17 + System.identityHashCode(symbolizer)) * 37) + doubleHash(minScale)) * 37)
+					+ doubleHash(maxScale)) * 37)
+					+ (settings == null ? 0 : settings.hashCode());
 		}
 
 		private int doubleHash(double value) {
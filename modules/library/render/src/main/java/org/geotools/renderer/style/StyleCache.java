@@ -0,0 +1,229 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe, bounded cache of the rendering styles built by the {@link SLDStyleFactory}, and
+ * of the images loaded and rescaled by the graphic factories. A single instance is shared by
+ * default among all the style factories, so that concurrent renderers painting the same styles
+ * reuse each other work.
+ * <p>
+ * Both styles and images are kept in least recently used order: styles are bounded by count,
+ * images by their estimated size in bytes. The cache also remembers which symbolizers depend on
+ * the feature attributes, and thus cannot be cached, to avoid checking them over and over.
+ *
+ * @source $URL$
+ */
+public class StyleCache {
+
+    /** The default maximum number of cached styles */
+    public static final int DEFAULT_MAX_STYLES = 10000;
+
+    /** The default maximum size of the cached images, 32MB */
+    public static final long DEFAULT_MAX_IMAGE_SIZE = 32 * 1024 * 1024;
+
+    static StyleCache defaultInstance;
+
+    final int maxStyles;
+
+    final long maxImageSize;
+
+    LinkedHashMap<Object, Style2D> styles = new LinkedHashMap<Object, Style2D>(16, 0.75f, true);
+
+    LinkedHashMap<Object, Boolean> dynamic = new LinkedHashMap<Object, Boolean>(16, 0.75f, true);
+
+    LinkedHashMap<Object, BufferedImage> images = new LinkedHashMap<Object, BufferedImage>(16,
+            0.75f, true);
+
+    long imageSize;
+
+    StyleCacheStatistics counters = new StyleCacheStatistics();
+
+    /**
+     * Returns the default, system wide style cache
+     */
+    public static synchronized StyleCache getDefaultInstance() {
+        if (defaultInstance == null) {
+            defaultInstance = new StyleCache(DEFAULT_MAX_STYLES, DEFAULT_MAX_IMAGE_SIZE);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Builds a new cache
+     *
+     * @param maxStyles
+     *            the maximum number of styles kept in the cache
+     * @param maxImageSize
+     *            the maximum estimated size, in bytes, of the images kept in the cache
+     */
+    public StyleCache(int maxStyles, long maxImageSize) {
+        if (maxStyles < 0 || maxImageSize < 0) {
+            throw new IllegalArgumentException("The cache limits cannot be negative");
+        }
+        this.maxStyles = maxStyles;
+        this.maxImageSize = maxImageSize;
+    }
+
+    /**
+     * Returns the cached style, or null if not found
+     */
+    public synchronized Style2D getStyle(Object key) {
+        Style2D style = styles.get(key);
+        if (style == null) {
+            counters.styleMisses++;
+        } else {
+            counters.styleHits++;
+        }
+        return style;
+    }
+
+    /**
+     * Caches a style, evicting the least recently used ones if the cache is full
+     */
+    public synchronized void putStyle(Object key, Style2D style) {
+        if (maxStyles == 0) {
+            return;
+        }
+        styles.put(key, style);
+        counters.styleEvictions += trim(styles, maxStyles);
+    }
+
+    /**
+     * Returns true if the key has been marked as depending on the features being rendered
+     */
+    public synchronized boolean isDynamic(Object key) {
+        return dynamic.get(key) != null;
+    }
+
+    /**
+     * Marks the key as depending on the features being rendered. The cache remembers at most as
+     * many dynamic keys as styles.
+     */
+    public synchronized void setDynamic(Object key) {
+        if (maxStyles == 0) {
+            return;
+        }
+        dynamic.put(key, Boolean.TRUE);
+        trim(dynamic, maxStyles);
+    }
+
+    /**
+     * Returns the cached image, or null if not found
+     */
+    public synchronized BufferedImage getImage(Object key) {
+        BufferedImage image = images.get(key);
+        if (image == null) {
+            counters.imageMisses++;
+        } else {
+            counters.imageHits++;
+        }
+        return image;
+    }
+
+    /**
+     * Caches an image, evicting the least recently used ones if the cache is full. Images larger
+     * than the cache itself are not cached. The images are shared, callers must not modify them.
+     */
+    public synchronized void putImage(Object key, BufferedImage image) {
+        long size = sizeOf(image);
+        if (size > maxImageSize) {
+            return;
+        }
+        BufferedImage old = images.put(key, image);
+        if (old != null) {
+            imageSize -= sizeOf(old);
+        }
+        imageSize += size;
+
+        Iterator<Map.Entry<Object, BufferedImage>> it = images.entrySet().iterator();
+        while (imageSize > maxImageSize && it.hasNext()) {
+            Map.Entry<Object, BufferedImage> entry = it.next();
+            if (!entry.getKey().equals(key)) {
+                imageSize -= sizeOf(entry.getValue());
+                it.remove();
+                counters.imageEvictions++;
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached styles and images
+     */
+    public synchronized void clear() {
+        styles.clear();
+        dynamic.clear();
+        images.clear();
+        imageSize = 0;
+    }
+
+    /**
+     * Drops the cached images
+     */
+    public synchronized void clearImages() {
+        images.clear();
+        imageSize = 0;
+    }
+
+    /**
+     * Returns a snapshot of the cache activity
+     */
+    public synchronized StyleCacheStatistics getStatistics() {
+        StyleCacheStatistics result = new StyleCacheStatistics();
+        result.styleHits = counters.styleHits;
+        result.styleMisses = counters.styleMisses;
+        result.styleEvictions = counters.styleEvictions;
+        result.styleCount = styles.size();
+        result.maxStyles = maxStyles;
+        result.imageHits = counters.imageHits;
+        result.imageMisses = counters.imageMisses;
+        result.imageEvictions = counters.imageEvictions;
+        result.imageCount = images.size();
+        result.imageSize = imageSize;
+        result.maxImageSize = maxImageSize;
+        return result;
+    }
+
+    /**
+     * Removes the eldest entries until the map size is within the limit
+     *
+     * @return the number of removed entries
+     */
+    static int trim(LinkedHashMap<Object, ?> map, int max) {
+        int removed = 0;
+        Iterator<?> it = map.entrySet().iterator();
+        while (map.size() > max && it.hasNext()) {
+            it.next();
+            it.remove();
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Estimates the memory used by an image raster
+     */
+    static long sizeOf(BufferedImage image) {
+        int bits = image.getColorModel().getPixelSize();
+        return ((long) image.getWidth()) * image.getHeight() * ((bits + 7) / 8);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+/**
+ * A snapshot of the activity of a {@link StyleCache}
+ *
+ * @source $URL$
+ */
+public class StyleCacheStatistics {
+
+    long styleHits;
+
+    long styleMisses;
+
+    long styleEvictions;
+
+    int styleCount;
+
+    int maxStyles;
+
+    long imageHits;
+
+    long imageMisses;
+
+    long imageEvictions;
+
+    int imageCount;
+
+    long imageSize;
+
+    long maxImageSize;
+
+    /**
+     * The number of styles found in the cache
+     */
+    public long getStyleHits() {
+        return styleHits;
+    }
+
+    /**
+     * The number of styles looked up and not found in the cache
+     */
+    public long getStyleMisses() {
+        return styleMisses;
+    }
+
+    /**
+     * The number of styles removed from the cache to respect its size limit
+     */
+    public long getStyleEvictions() {
+        return styleEvictions;
+    }
+
+    /**
+     * The number of styles currently in the cache
+     */
+    public int getStyleCount() {
+        return styleCount;
+    }
+
+    /**
+     * The maximum number of styles in the cache
+     */
+    public int getMaxStyles() {
+        return maxStyles;
+    }
+
+    /**
+     * The number of images found in the cache
+     */
+    public long getImageHits() {
+        return imageHits;
+    }
+
+    /**
+     * The number of images looked up and not found in the cache
+     */
+    public long getImageMisses() {
+        return imageMisses;
+    }
+
+    /**
+     * The number of images removed from the cache to respect its size limit
+     */
+    public long getImageEvictions() {
+        return imageEvictions;
+    }
+
+    /**
+     * The number of images currently in the cache
+     */
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /**
+     * The estimated size in bytes of the cached images
+     */
+    public long getImageSize() {
+        return imageSize;
+    }
+
+    /**
+     * The maximum size in bytes of the cached images
+     */
+    public long getMaxImageSize() {
+        return maxImageSize;
+    }
+
+    /**
+     * The ratio of styles found in the cache over the styles looked up, or 0 if no style has been
+     * looked up yet
+     */
+    public double getStyleHitRatio() {
+        long total = styleHits + styleMisses;
+        return total == 0 ? 0 : ((double) styleHits) / total;
+    }
+
+    /**
+     * The ratio of images found in the cache over the images looked up, or 0 if no image has been
+     * looked up yet
+     */
+    public double getImageHitRatio() {
+        long total = imageHits + imageMisses;
+        return total == 0 ? 0 : ((double) imageHits) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "StyleCacheStatistics [styleHits=" + styleHits + ", styleMisses=" + styleMisses
+                + ", styleEvictions=" + styleEvictions + ", styleCount=" + styleCount
+                + ", maxStyles=" + maxStyles + ", imageHits=" + imageHits + ", imageMisses="
+                + imageMisses + ", imageEvictions=" + imageEvictions + ", imageCount="
+                + imageCount + ", imageSize=" + imageSize + ", maxImageSize=" + maxImageSize
+                + "]";
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the label index finds the same conflicts as a linear scan would
+ *
+ * @source $URL$
+ */
+public class LabelIndexTest extends TestCase {
+
+    public void testOverlapAndDistance() {
+        LabelIndex index = new LabelIndex();
+        index.addLabel(null, new Rectangle2D.Double(100, 100, 50, 10));
+
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(120, 105, 10, 10), 0));
+        // touching counts as overlapping
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(150, 100, 10, 10), 0));
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(155, 100, 10, 10), 0));
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(155, 100, 10, 10), 5));
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(155, 100, 10, 10), 4));
+        // negative distance means no conflict checks
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(120, 105, 10, 10), -1));
+        // negative coordinates work as well
+        index.addLabel(null, new Rectangle2D.Double(-100, -100, 10, 10));
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(-95, -95, 1, 1), 0));
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(-80, -95, 1, 1), 0));
+
+        assertEquals(2, index.size());
+        assertEquals(7, index.getChecks());
+        assertEquals(4, index.getConflicts());
+    }
+
+    public void testReservedAndOversized() {
+        LabelIndex index = new LabelIndex(10);
+        List<Rectangle2D> reserved = new ArrayList<Rectangle2D>();
+        reserved.add(new Rectangle2D.Double(0, 0, 10000, 5));
+        index.reserveArea(reserved);
+        assertEquals(1, index.oversizedCount);
+
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(5000, 4, 10, 10), 0));
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(5000, 6, 10, 10), 0));
+        // a query larger than the whole index
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(-1e6, -1e6, 2e6, 2e6), 0));
+
+        index.reserveArea(Collections.<Rectangle2D> emptyList());
+        assertEquals(1, index.size());
+    }
+
+    public void testAgainstLinearScan() {
+        // enough rectangles to force the growth of the arrays and of the cell table
+        LabelIndex index = new LabelIndex();
+        List<Rectangle2D> rectangles = new ArrayList<Rectangle2D>();
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            Rectangle2D r = new Rectangle2D.Double(random.nextDouble() * 4000 - 1000, random
+                    .nextDouble() * 4000 - 1000, random.nextDouble() * 200, random
+                    .nextDouble() * 30);
+            for (int j = 0; j < 5; j++) {
+                Rectangle2D query = new Rectangle2D.Double(random.nextDouble() * 4000 - 1000,
+                        random.nextDouble() * 4000 - 1000, random.nextDouble() * 100, random
+                                .nextDouble() * 20);
+                double distance = random.nextDouble() * 10;
+                assertEquals(scan(rectangles, query, distance), index.labelsWithinDistance(
+                        query, distance));
+            }
+            index.addLabel(null, r);
+            rectangles.add(r);
+        }
+        assertEquals(2000, index.size());
+    }
+
+    boolean scan(List<Rectangle2D> rectangles, Rectangle2D query, double distance) {
+        double minx = query.getMinX() - distance;
+        double miny = query.getMinY() - distance;
+        double maxx = query.getMaxX() + distance;
+        double maxy = query.getMaxY() + distance;
+        for (Rectangle2D r : rectangles) {
+            if (!(r.getMinX() > maxx || r.getMaxX() < minx || r.getMinY() > maxy || r
+                    .getMaxY() < miny)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
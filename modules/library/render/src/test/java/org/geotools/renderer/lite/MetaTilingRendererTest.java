@@ -0,0 +1,288 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+import junit.framework.TestCase;
+
+import org.geotools.TestData;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.renderer.GTRenderer;
+import org.geotools.renderer.lite.StreamingRenderer.LayerLabelCache;
+import org.geotools.renderer.lite.StreamingRenderer.LayerLabelCache.Label;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ *
+ * @source $URL$
+ */
+public class MetaTilingRendererTest extends TestCase {
+
+    StyleBuilder sb = new StyleBuilder();
+
+    ExecutorService pool;
+
+    MapContent mc;
+
+    ReferencedEnvelope bounds;
+
+    Style roads;
+
+    TextSymbolizer roadLabels;
+
+    @Override
+    protected void setUp() throws Exception {
+        pool = Executors.newFixedThreadPool(4);
+
+        mc = new MapContent();
+        addLayer("rstrct", sb.createStyle(sb.createPolygonSymbolizer(Color.LIGHT_GRAY,
+                Color.DARK_GRAY, 1)));
+        addLayer("streams", sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 2)));
+        roads = sb.createStyle(sb.createLineSymbolizer(Color.BLACK, 1));
+        roadLabels = sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 10), "CAT_DESC");
+        roads.featureTypeStyles().get(0).rules().get(0).symbolizers().add(roadLabels);
+        addLayer("roads", roads);
+        addLayer("bugsites", sb.createStyle(sb.createPointSymbolizer(sb.createGraphic(null,
+                sb.createMark("circle", Color.RED), null))));
+    }
+
+    void addLayer(String name, Style style) throws Exception {
+        ShapefileDataStore ds = new ShapefileDataStore(TestData.url("shapes/" + name + ".shp"));
+        SimpleFeatureSource fs = ds.getFeatureSource();
+        if (bounds == null) {
+            bounds = new ReferencedEnvelope(fs.getBounds());
+        } else {
+            bounds.expandToInclude(fs.getBounds());
+        }
+        mc.addLayer(new FeatureLayer(fs, style));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+        mc.dispose();
+    }
+
+    public void testTiles() {
+        MetaTilingRenderer renderer = new MetaTilingRenderer();
+        renderer.setTileSize(100);
+        List<Rectangle> tiles = renderer.getTiles(new Rectangle(10, 20, 250, 120));
+        assertEquals(6, tiles.size());
+        assertEquals(new Rectangle(10, 20, 100, 100), tiles.get(0));
+        assertEquals(new Rectangle(210, 20, 50, 100), tiles.get(2));
+        assertEquals(new Rectangle(210, 120, 50, 20), tiles.get(5));
+        long area = 0;
+        for (Rectangle tile : tiles) {
+            area += tile.width * tile.height;
+        }
+        assertEquals(250 * 120, area);
+    }
+
+    public void testInvalidTileSize() {
+        try {
+            new MetaTilingRenderer().setTileSize(0);
+            fail("Should have failed with a zero tile size");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+    }
+
+    public void testReplayLabels() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("labels");
+        tb.add("geom", LineString.class);
+        tb.add("label", String.class);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(tb.buildFeatureType());
+        GeometryFactory gf = new GeometryFactory();
+        LineString left = gf.createLineString(new Coordinate[] { new Coordinate(0, 10),
+                new Coordinate(60, 10) });
+        LineString right = gf.createLineString(new Coordinate[] { new Coordinate(40, 10),
+                new Coordinate(100, 10) });
+        fb.add(left);
+        fb.add("long");
+        SimpleFeature f1 = fb.buildFeature("labels.1");
+        fb.add(right);
+        fb.add("short");
+        SimpleFeature f2 = fb.buildFeature("labels.2");
+
+        TextSymbolizer ts = sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 10),
+                "label");
+        NumberRange<Double> scaleRange = NumberRange.create(1.0, 1.0);
+        // the second tile completes first, and sees another piece of the first feature
+        LayerLabelCache tile1 = new LayerLabelCache(null);
+        LayerLabelCache tile2 = new LayerLabelCache(null);
+        tile2.put("0", ts, f2, new LiteShape2(right, null, null, false), scaleRange);
+        tile2.put("0", ts, f1, new LiteShape2(right, null, null, false), scaleRange);
+        tile1.put("0", ts, f1, new LiteShape2(left, null, null, false), scaleRange);
+
+        final List<Label> labels = new ArrayList<Label>();
+        LayerLabelCache global = new LayerLabelCache(null) {
+            @Override
+            public synchronized void put(String layerId, TextSymbolizer symbolizer,
+                    Feature feature, LiteShape2 shape, NumberRange<Double> scaleRange) {
+                labels.add(new Label(layerId, symbolizer, feature, shape, scaleRange));
+            }
+        };
+        MetaTilingRenderer.replayLabels(Arrays.asList(tile1, tile2), global);
+
+        // one label per feature, in tile order, the first one spanning both pieces
+        assertEquals(2, labels.size());
+        assertSame(f1, labels.get(0).feature);
+        assertEquals(100.0, labels.get(0).shape.getGeometry().getLength(), 1e-9);
+        assertSame(f2, labels.get(1).feature);
+        assertEquals(60.0, labels.get(1).shape.getGeometry().getLength(), 1e-9);
+    }
+
+    public void testSameAsStreamingRenderer() throws Exception {
+        // the labels with conflict resolution depend on the order they reach the cache, which
+        // differs between tiled and plain rendering, compare the rest of the map
+        roads.featureTypeStyles().get(0).rules().get(0).symbolizers().remove(roadLabels);
+
+        StreamingRenderer reference = new StreamingRenderer();
+        reference.setMapContent(mc);
+        BufferedImage expected = render(reference, 1024);
+
+        MetaTilingRenderer tiled = new MetaTilingRenderer(pool);
+        tiled.setMapContent(mc);
+        tiled.setTileSize(200);
+        BufferedImage actual = render(tiled, 1024);
+
+        // each tile renderer clips the geometries to its own area, plus a buffer, and the
+        // vertices added by the clipping might rasterize the edge they belong to one pixel
+        // off. Any other difference, such as a seam, is an error
+        int differences = 0;
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    assertTrue("Pixel " + x + "," + y + " differs",
+                            isInNeighbourhood(actual.getRGB(x, y), expected, x, y)
+                                    && isInNeighbourhood(expected.getRGB(x, y), actual, x, y));
+                    differences++;
+                }
+            }
+        }
+        if (differences > 0) {
+            MetaTilingRenderer.LOGGER.log(Level.FINE, differences
+                    + " pixels moved by one because of the clipping at the tile borders");
+        }
+    }
+
+    public void testRepeatable() throws Exception {
+        // labels with conflict resolution, the tiles complete in a different order at each run
+        MetaTilingRenderer tiled = new MetaTilingRenderer(pool);
+        tiled.setMapContent(mc);
+        tiled.setTileSize(128);
+        BufferedImage expected = render(tiled, 1024);
+        for (int i = 0; i < 5; i++) {
+            BufferedImage actual = render(tiled, 1024);
+            for (int x = 0; x < expected.getWidth(); x++) {
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                        fail("Run " + i + ", pixel " + x + "," + y + " differs");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the image contains the specified color within one pixel from x, y
+     */
+    boolean isInNeighbourhood(int rgb, BufferedImage image, int x, int y) {
+        for (int i = Math.max(0, x - 1); i <= Math.min(image.getWidth() - 1, x + 1); i++) {
+            for (int j = Math.max(0, y - 1); j <= Math.min(image.getHeight() - 1, y + 1); j++) {
+                if (image.getRGB(i, j) == rgb) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    BufferedImage render(GTRenderer renderer, int size) {
+        renderer.setJava2DHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_OFF));
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, size, size);
+        renderer.paint(graphics, new Rectangle(size, size), bounds);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Compares the time taken to render the test map with a single thread and with meta tiling,
+     * at increasing sizes
+     */
+    public static void main(String[] args) throws Exception {
+        MetaTilingRendererTest test = new MetaTilingRendererTest();
+        test.setUp();
+        try {
+            StreamingRenderer reference = new StreamingRenderer();
+            reference.setMapContent(test.mc);
+            MetaTilingRenderer tiled = new MetaTilingRenderer(test.pool);
+            tiled.setMapContent(test.mc);
+
+            // warm up
+            test.render(reference, 512);
+            test.render(tiled, 512);
+
+            for (int size : new int[] { 1024, 2048, 4096 }) {
+                long start = System.currentTimeMillis();
+                test.render(reference, size);
+                long plainTime = System.currentTimeMillis() - start;
+
+                start = System.currentTimeMillis();
+                test.render(tiled, size);
+                long tiledTime = System.currentTimeMillis() - start;
+
+                System.out.println("Rendered " + size + "x" + size + ", single thread: "
+                        + plainTime + "ms, meta tiled: " + tiledTime + "ms");
+            }
+        } finally {
+            test.tearDown();
+        }
+    }
+}
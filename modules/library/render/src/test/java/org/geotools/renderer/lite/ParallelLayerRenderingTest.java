@@ -0,0 +1,233 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.geotools.TestData;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.renderer.RenderListener;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Checks the parallel layer rendering produces the same output as the sequential one. Run
+ * {@link #main(String[])} to compare their speed rendering the sample data shapefiles at
+ * different image sizes.
+ *
+ * @source $URL$
+ */
+public class ParallelLayerRenderingTest extends TestCase {
+
+    static final int[] SIZES = new int[] { 256, 512, 1024, 2048 };
+
+    static final int LOOPS = 5;
+
+    StyleBuilder sb = new StyleBuilder();
+
+    ExecutorService pool;
+
+    MapContent mc;
+
+    ReferencedEnvelope bounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
+
+        mc = new MapContent();
+        addLayer("rstrct", sb.createStyle(sb.createPolygonSymbolizer(Color.LIGHT_GRAY,
+                Color.DARK_GRAY, 1)));
+        addLayer("streams", sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 2)));
+        Style roads = sb.createStyle(sb.createLineSymbolizer(Color.BLACK, 1));
+        TextSymbolizer ts = sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 10),
+                "CAT_DESC");
+        roads.featureTypeStyles().get(0).rules().get(0).symbolizers().add(ts);
+        addLayer("roads", roads);
+        addLayer("bugsites", sb.createStyle(sb.createPointSymbolizer(sb.createGraphic(null,
+                sb.createMark("circle", Color.RED), null))));
+        addLayer("archsites", sb.createStyle(sb.createPointSymbolizer(sb.createGraphic(null,
+                sb.createMark("square", Color.ORANGE), null))));
+    }
+
+    void addLayer(String name, Style style) throws Exception {
+        ShapefileDataStore ds = new ShapefileDataStore(TestData.url("shapes/" + name + ".shp"));
+        SimpleFeatureSource fs = ds.getFeatureSource();
+        if (bounds == null) {
+            bounds = new ReferencedEnvelope(fs.getBounds());
+        } else {
+            bounds.expandToInclude(fs.getBounds());
+        }
+        mc.addLayer(new FeatureLayer(fs, style));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+        mc.dispose();
+    }
+
+    public void testSameOutput() throws Exception {
+        BufferedImage sequential = render(512, false);
+        BufferedImage parallel = render(512, true);
+        assertSameImage(sequential, parallel);
+    }
+
+    public void testLayerOrder() throws Exception {
+        // the same polygons twice, the last one painted must win
+        mc.dispose();
+        mc = new MapContent();
+        bounds = null;
+        addLayer("rstrct", sb.createStyle(sb.createPolygonSymbolizer(Color.RED, Color.RED, 1)));
+        addLayer("rstrct", sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE, Color.BLUE, 1)));
+
+        BufferedImage sequential = render(256, false);
+        BufferedImage parallel = render(256, true);
+        assertSameImage(sequential, parallel);
+        boolean blue = false;
+        for (int x = 0; x < parallel.getWidth(); x++) {
+            for (int y = 0; y < parallel.getHeight(); y++) {
+                assertTrue(parallel.getRGB(x, y) != Color.RED.getRGB());
+                blue |= parallel.getRGB(x, y) == Color.BLUE.getRGB();
+            }
+        }
+        assertTrue(blue);
+    }
+
+    public void testStop() throws Exception {
+        final StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        renderer.setThreadPool(pool);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.PARALLEL_LAYER_RENDERING_KEY, true);
+        renderer.setRendererHints(hints);
+        final AtomicInteger features = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        renderer.addRenderListener(new RenderListener() {
+
+            public void featureRenderer(SimpleFeature feature) {
+                if (features.incrementAndGet() == 1) {
+                    renderer.stopRendering();
+                }
+            }
+
+            public void errorOccurred(Exception e) {
+                errors.incrementAndGet();
+            }
+        });
+
+        BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        renderer.paint(graphics, new Rectangle(512, 512), bounds);
+        graphics.dispose();
+
+        // no layer renderer is left running once paint returns
+        int rendered = features.get();
+        Thread.sleep(200);
+        assertEquals(rendered, features.get());
+        assertEquals(0, errors.get());
+    }
+
+    BufferedImage render(int size, boolean parallel) {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        renderer.setThreadPool(pool);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.PARALLEL_LAYER_RENDERING_KEY, parallel);
+        renderer.setRendererHints(hints);
+        renderer.setJava2DHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_OFF));
+        // the listener is called by the layer threads too
+        final AtomicInteger errors = new AtomicInteger();
+        renderer.addRenderListener(new RenderListener() {
+
+            public void featureRenderer(SimpleFeature feature) {
+            }
+
+            public void errorOccurred(Exception e) {
+                errors.incrementAndGet();
+            }
+        });
+
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, size, size);
+        renderer.paint(graphics, new Rectangle(size, size), bounds);
+        graphics.dispose();
+        assertEquals(0, errors.get());
+        return image;
+    }
+
+    void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                assertEquals("Different pixel at " + x + "," + y, expected.getRGB(x, y),
+                        actual.getRGB(x, y));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ParallelLayerRenderingTest test = new ParallelLayerRenderingTest();
+        test.setUp();
+        try {
+            // warm up
+            test.render(256, false);
+            test.render(256, true);
+
+            for (int size : SIZES) {
+                long start = System.currentTimeMillis();
+                for (int i = 0; i < LOOPS; i++) {
+                    test.render(size, false);
+                }
+                long sequentialTime = (System.currentTimeMillis() - start) / LOOPS;
+
+                start = System.currentTimeMillis();
+                for (int i = 0; i < LOOPS; i++) {
+                    test.render(size, true);
+                }
+                long parallelTime = (System.currentTimeMillis() - start) / LOOPS;
+
+                System.out.println("Rendered " + test.mc.layers().size() + " layers at " + size
+                        + "x" + size + ", sequential: " + sequentialTime + "ms, parallel: "
+                        + parallelTime + "ms");
+            }
+        } finally {
+            test.tearDown();
+        }
+    }
+}
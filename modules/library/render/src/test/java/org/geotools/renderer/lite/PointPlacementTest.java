@@ -5,9 +5,12 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 
 import java.awt.Font;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.TestCase;
 
@@ -33,6 +36,8 @@ public class PointPlacementTest extends TestCase {
 
     SimpleFeatureSource lineFS;
 
+    SimpleFeatureSource diagLineFS;
+
     ReferencedEnvelope bounds;
 
     @Override
@@ -42,6 +47,7 @@ public class PointPlacementTest extends TestCase {
         PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
         pointFS = ds.getFeatureSource("point");
         lineFS = ds.getFeatureSource("line");
+        diagLineFS = ds.getFeatureSource("diaglines");
         bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
 
         // load font
@@ -86,4 +92,42 @@ public class PointPlacementTest extends TestCase {
         RendererBaseTest.showRender("New labeller", renderer, TIME, bounds);
     }
 
+    public void testParallelPlacement() throws Exception {
+        BufferedImage serial = renderLabels(new LabelCacheImpl());
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            LabelCacheImpl labelCache = new LabelCacheImpl();
+            labelCache.setPlacementThreadPool(pool);
+            BufferedImage parallel = renderLabels(labelCache);
+
+            // the placement must be the same, pixel by pixel
+            for (int x = 0; x < serial.getWidth(); x++) {
+                for (int y = 0; y < serial.getHeight(); y++) {
+                    assertEquals(serial.getRGB(x, y), parallel.getRGB(x, y));
+                }
+            }
+            assertNotNull(labelCache.getStatistics());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    BufferedImage renderLabels(LabelCacheImpl labelCache) throws Exception {
+        Style pStyle = RendererBaseTest.loadStyle(this, "textAnchorRotation.sld");
+        Style lStyle = RendererBaseTest.loadStyle(this, "textLineOrientation.sld");
+
+        DefaultMapContext mc = new DefaultMapContext(DefaultGeographicCRS.WGS84);
+        mc.addLayer(diagLineFS, lStyle);
+        mc.addLayer(pointFS, pStyle);
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setContext(mc);
+        Map rendererParams = new HashMap();
+        rendererParams.put(StreamingRenderer.LABEL_CACHE_KEY, labelCache);
+        renderer.setRendererHints(rendererParams);
+
+        return RendererBaseTest.renderImage(renderer, bounds, null);
+    }
+
 }
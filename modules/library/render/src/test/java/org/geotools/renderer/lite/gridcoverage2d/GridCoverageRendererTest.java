@@ -0,0 +1,168 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.Interpolation;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Checks the direct affine and reprojection paths of the {@link GridCoverageRenderer}. Run
+ * {@link #main(String[])} to get the per tile rendering latency.
+ *
+ * @source $URL$
+ */
+public class GridCoverageRendererTest {
+
+    private GridCoverage2D coverage;
+
+    private RasterSymbolizer symbolizer;
+
+    @Before
+    public void setUp() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = image.getRaster();
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                raster.setSample(x, y, 0, (x + y) % 256);
+            }
+        }
+        coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create("test", image,
+                new ReferencedEnvelope(0, 10, 40, 50, DefaultGeographicCRS.WGS84));
+        symbolizer = new StyleBuilder().createRasterSymbolizer();
+    }
+
+    @Test
+    public void testAffineOnly() throws Exception {
+        // 20 degrees over 512 pixels, the coverage is just translated
+        GridCoverageRenderer renderer = new GridCoverageRenderer(DefaultGeographicCRS.WGS84,
+                new ReferencedEnvelope(-5, 15, 35, 55, DefaultGeographicCRS.WGS84),
+                new Rectangle(0, 0, 512, 512), null);
+        RenderedImage image = renderer.renderImage(coverage, symbolizer, Interpolation
+                .getInstance(Interpolation.INTERP_NEAREST), null, 256, 256);
+        assertNotNull(image);
+        assertEquals(new Rectangle(128, 128, 256, 256), image.getData().getBounds());
+
+        Raster expected = coverage.getRenderedImage().getData();
+        Raster actual = image.getData();
+        for (int y = 0; y < 256; y += 17) {
+            for (int x = 0; x < 256; x += 17) {
+                assertEquals(expected.getSample(x, y, 0), actual.getSample(x + 128, y + 128, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testReprojection() throws Exception {
+        CoordinateReferenceSystem mercator = CRS.decode("EPSG:3857");
+        ReferencedEnvelope area = new ReferencedEnvelope(-5, 15, 35, 55,
+                DefaultGeographicCRS.WGS84).transform(mercator, true);
+        GridCoverageRenderer renderer = new GridCoverageRenderer(mercator, area, new Rectangle(0,
+                0, 256, 256), null);
+        RenderedImage image = renderer.renderImage(coverage, symbolizer, Interpolation
+                .getInstance(Interpolation.INTERP_NEAREST), null, 256, 256);
+        assertNotNull(image);
+        // warped straight onto the screen, only the area covered by the coverage is returned
+        Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(),
+                image.getHeight());
+        assertTrue(new Rectangle(0, 0, 256, 256).contains(bounds));
+        assertTrue(bounds.width < 256 && bounds.height < 256);
+
+        // same as the crop and resample path, but for the rounding of the warp grid and of
+        // the intermediate resampled grid, which can move a sample by one source pixel
+        renderer = new GridCoverageRenderer(mercator, area, new Rectangle(0, 0, 256, 256), null);
+        renderer.directWarp = false;
+        RenderedImage reference = renderer.renderImage(coverage, symbolizer, Interpolation
+                .getInstance(Interpolation.INTERP_NEAREST), null, 256, 256);
+        Rectangle compared = bounds.intersection(new Rectangle(reference.getMinX(), reference
+                .getMinY(), reference.getWidth(), reference.getHeight()));
+        assertFalse(compared.isEmpty());
+        Raster actual = image.getData(compared);
+        Raster expected = reference.getData(compared);
+        int mismatches = 0;
+        for (int y = compared.y; y < compared.y + compared.height; y++) {
+            for (int x = compared.x; x < compared.x + compared.width; x++) {
+                // the samples wrap around at 256
+                int difference = Math.abs(actual.getSample(x, y, 0) - expected.getSample(x, y, 0));
+                if (Math.min(difference, 256 - difference) > 4) {
+                    mismatches++;
+                }
+            }
+        }
+        assertTrue("Too many pixels differ: " + mismatches,
+                mismatches <= compared.width * compared.height / 100);
+    }
+
+    /**
+     * Renders the specified number of 256x256 tiles over the coverage, a 2x2 grid of tiles at
+     * increasing zoom levels
+     */
+    private void renderTiles(CoordinateReferenceSystem crs, int tiles) throws Exception {
+        for (int i = 0; i < tiles; i++) {
+            double size = 10.0 / (1 << (i % 4));
+            double minX = (i / 4) % 2 == 0 ? 0 : 10 - size;
+            double minY = (i / 8) % 2 == 0 ? 40 : 50 - size;
+            ReferencedEnvelope tile = new ReferencedEnvelope(minX, minX + size, minY, minY
+                    + size, DefaultGeographicCRS.WGS84);
+            if (crs != DefaultGeographicCRS.WGS84) {
+                tile = tile.transform(crs, true);
+            }
+            GridCoverageRenderer renderer = new GridCoverageRenderer(crs, tile, new Rectangle(0,
+                    0, 256, 256), null);
+            RenderedImage image = renderer.renderImage(coverage, symbolizer, Interpolation
+                    .getInstance(Interpolation.INTERP_NEAREST), null, 256, 256);
+            image.getData();
+        }
+    }
+
+    /**
+     * Reports the average per tile latency of 256x256 renders, with and without reprojection
+     */
+    public static void main(String[] args) throws Exception {
+        GridCoverageRendererTest test = new GridCoverageRendererTest();
+        test.setUp();
+        CoordinateReferenceSystem mercator = CRS.decode("EPSG:3857");
+        for (CoordinateReferenceSystem crs : new CoordinateReferenceSystem[] {
+                DefaultGeographicCRS.WGS84, mercator }) {
+            // warm up
+            test.renderTiles(crs, 4);
+            int tiles = 64;
+            long start = System.nanoTime();
+            test.renderTiles(crs, tiles);
+            double average = (System.nanoTime() - start) / 1e6 / tiles;
+            System.out.println("Rendered " + tiles + " tiles of 256x256 in " + CRS.toSRS(crs)
+                    + ", " + average + "ms per tile");
+        }
+    }
+}
@@ -76,4 +76,19 @@ public class ImageGraphicFactoryTest extends TestCase {
         assertNotNull(icon);
         assertEquals(22, icon.getIconHeight());
     }
+    
+    public void testCachedImages() throws Exception {
+        StyleCache cache = new StyleCache(0, 1024 * 1024);
+        image = new ImageGraphicFactory(cache);
+        URL url = StreamingRenderer.class.getResource("test-data/draw.png");
+        image.getIcon(null, ff.literal(url), "image/png", 80);
+        // the original and the rescaled image
+        assertEquals(2, cache.getStatistics().getImageCount());
+        assertEquals(0, cache.getStatistics().getImageHits());
+        
+        Icon icon = image.getIcon(null, ff.literal(url), "image/png", 80);
+        assertEquals(80, icon.getIconHeight());
+        assertEquals(2, cache.getStatistics().getImageHits());
+        assertEquals(2, cache.getStatistics().getImageCount());
+    }
 }
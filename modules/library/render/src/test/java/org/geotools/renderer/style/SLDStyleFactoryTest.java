@@ -148,6 +148,33 @@ public class SLDStyleFactoryTest extends TestCase {
         sld.createPointStyle(null, symb,range);
     }
     
+    public void testSharedStaticStyleCache() {
+        StyleCache cache = new StyleCache(2, 0);
+        SLDStyleFactory f1 = new SLDStyleFactory(cache);
+        SLDStyleFactory f2 = new SLDStyleFactory(cache);
+        PointSymbolizer symb = sf.createPointSymbolizer();
+        symb.setGraphic(sf.getDefaultGraphic());
+
+        // the second factory reuses the style built by the first one
+        Style2D style = f1.createStyle(feature, symb, range);
+        assertSame(style, f2.createStyle(feature, symb, range));
+        assertEquals(1, f2.getHits());
+
+        // unless its settings are different
+        f2.setVectorRenderingEnabled(true);
+        assertNotSame(style, f2.createStyle(feature, symb, range));
+        assertEquals(2, cache.getStatistics().getStyleCount());
+
+        // the cache is bounded, the least recently used style goes away
+        PointSymbolizer other = sf.createPointSymbolizer();
+        other.setGraphic(sf.getDefaultGraphic());
+        f1.createStyle(feature, other, range);
+        StyleCacheStatistics stats = cache.getStatistics();
+        assertEquals(2, stats.getStyleCount());
+        assertEquals(1, stats.getStyleEvictions());
+        assertNotSame(style, f1.createStyle(feature, symb, range));
+    }
+
     public void testCreateDynamicMark() throws Exception {
         PointSymbolizer symb = sf.createPointSymbolizer();
         Mark myMark = sf.createMark();
@@ -159,7 +186,7 @@ public class SLDStyleFactoryTest extends TestCase {
         assertNotNull(ms.getShape());
         // make sure the style has been recognized as dynamic
         SymbolizerKey key = new SymbolizerKey(symb, range);
-        assertTrue(sld.dynamicSymbolizers.containsKey(key));
+        assertTrue(sld.getStyleCache().isDynamic(key));
         Shape expected = new TTFMarkFactory().getShape(null, ff.literal("ttf://Serif#0xF054"), feature);
         
         // no general path equality implemented, we have to check manually
@@ -189,7 +216,7 @@ public class SLDStyleFactoryTest extends TestCase {
         GraphicStyle2D gs = (GraphicStyle2D) sld.createStyle(feature, symb, range);
         // make sure the style has been recognized as dynamic
         SymbolizerKey key = new SymbolizerKey(symb, range);
-        assertTrue(sld.dynamicSymbolizers.containsKey(key));
+        assertTrue(sld.getStyleCache().isDynamic(key));
 
         BufferedImage img = gs.getImage();
         BufferedImage expected = ImageIO.read(StreamingRenderer.class.getResource("test-data/draw.png"));
@@ -209,7 +236,7 @@ public class SLDStyleFactoryTest extends TestCase {
         GraphicStyle2D gs = (GraphicStyle2D) sld.createStyle(feature, symb, range);
         // make sure the style has been recognized as dynamic
         SymbolizerKey key = new SymbolizerKey(symb, range);
-        assertTrue(sld.dynamicSymbolizers.containsKey(key));
+        assertTrue(sld.getStyleCache().isDynamic(key));
 
         BufferedImage expected = ImageIO.read(StreamingRenderer.class.getResource("test-data/draw.png"));
         assertEquals(expected.getHeight(), gs.getImage().getHeight());
@@ -238,7 +265,7 @@ public class SLDStyleFactoryTest extends TestCase {
         GraphicStyle2D gs = (GraphicStyle2D) sld.createStyle(feature, symb, range);
         // make sure the style has been recognized as dynamic
         SymbolizerKey key = new SymbolizerKey(symb, range);
-        assertTrue(sld.dynamicSymbolizers.containsKey(key));
+        assertTrue(sld.getStyleCache().isDynamic(key));
 
         BufferedImage img = gs.getImage();
         BufferedImage expected = ImageIO.read(StreamingRenderer.class.getResource("test-data/draw.png"));
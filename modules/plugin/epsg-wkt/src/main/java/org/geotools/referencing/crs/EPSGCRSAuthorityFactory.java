@@ -77,8 +77,16 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
      * The properties object for our properties file. Keys are the EPSG
      * code for a coordinate reference system and the associated value is a 
      * WKT string for the CRS.
+     * <p>
+     * Only the definitions provided by the application are loaded here, and they take precedence
+     * over the built-in ones, which are looked up in a compact index opened on first use.
      */
     protected Properties epsg = new Properties();
+
+    /** The index of the built-in definitions, opened on first use */
+    private WKTIndex definitions;
+
+    private boolean definitionsLoaded;
     
     //object factory
     protected CRSFactory crsFactory;
@@ -127,7 +135,8 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
     
     /**
      * Loads from epsg.properties if the file exists, defaults to internal defintions
-     * exported from postgis and cubeworks.
+     * exported from postgis and cubeworks. The internal definitions are not loaded here,
+     * but indexed lazily on the first lookup.
      * 
      * @throws IOException
      */
@@ -136,12 +145,61 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
         //
         File file = new File("epsg.properties");
         if( file.exists() ){
-            epsg.load( new FileInputStream( file ));             
+            FileInputStream fis = new FileInputStream( file );
+            try {
+                epsg.load( fis );
+            } finally {
+                fis.close();
+            }
         }        
-        // Use the built-in property defintions
-        //
-        URL url = EPSGCRSAuthorityFactory.class.getResource("epsg.properties");
-        epsg.load( url.openStream() );
+    }
+
+    /**
+     * Returns the index of the built-in property definitions, opening it on first use
+     */
+    private synchronized WKTIndex getDefinitions() {
+        if (!definitionsLoaded) {
+            definitionsLoaded = true;
+            URL url = EPSGCRSAuthorityFactory.class.getResource("epsg.properties");
+            try {
+                definitions = WKTIndex.open(url);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not load the built-in epsg.properties", e);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Returns the WKT for the specified code, looking first in the definitions provided by the
+     * application, then in the built-in ones
+     */
+    private String getWKT(String code) {
+        String wkt = epsg.getProperty(code);
+        if (wkt == null) {
+            WKTIndex index = getDefinitions();
+            if (index != null) {
+                wkt = index.getWKT(code);
+            }
+        }
+        return wkt;
+    }
+
+    /**
+     * Returns all the available codes, without the authority prefix
+     */
+    private Set<String> getCodes() {
+        Set<String> codes = new java.util.TreeSet<String>();
+        for (Object code : epsg.keySet()) {
+            codes.add((String) code);
+        }
+        WKTIndex index = getDefinitions();
+        if (index != null) {
+            for (int i = 0; i < index.size(); i++) {
+                codes.add(String.valueOf(index.getCode(i)));
+            }
+        }
+        return codes;
     }
     
     /**
@@ -177,7 +235,7 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
                 return (CoordinateReferenceSystem) value;
             }            
         }
-        String wkt = epsg.getProperty( EPSG_NUMBER );
+        String wkt = getWKT( EPSG_NUMBER );
         if( wkt == null ) {
             throw new NoSuchAuthorityCodeException( "Unknown EPSG_NUMBER", AUTHORITY, code );
         }
@@ -238,17 +296,17 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
         //could cashe this info if it is time consuming to filter        
         if (clazz.getName().equalsIgnoreCase(CoordinateReferenceSystem.class.getName())) {
             Set all= new java.util.TreeSet();
-            for(java.util.Iterator i = epsg.keySet().iterator(); i.hasNext();) {
+            for(java.util.Iterator i = getCodes().iterator(); i.hasNext();) {
                 String code = (String) i.next();                
                 all.add( AUTHORITY_PREFIX+code);                
             }  
             return all;
         } else if (clazz.getName().equalsIgnoreCase(GeographicCRS.class.getName())) {
-            Set all = epsg.keySet();
+            Set all = getCodes();
             Set geoCRS = new java.util.TreeSet();
             for(java.util.Iterator i = all.iterator(); i.hasNext();) {
                 String code = (String) i.next();
-                String wkt = epsg.getProperty( code );
+                String wkt = getWKT( code );
                 if (wkt.startsWith("GEOGCS")) {
                     geoCRS.add( AUTHORITY_PREFIX+code);
                 }
@@ -256,11 +314,11 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
             return geoCRS;
             
         } else if (clazz.getName().equalsIgnoreCase(ProjectedCRS.class.getName())) {
-            Set all = epsg.keySet();
+            Set all = getCodes();
             Set projCRS = new java.util.TreeSet();
             for(java.util.Iterator i = all.iterator(); i.hasNext();) {
                 String code = (String) i.next();
-                String wkt = epsg.getProperty( code );
+                String wkt = getWKT( code );
                 if (wkt.startsWith("PROJCS")) {
                     projCRS.add( AUTHORITY_PREFIX+code);
                 }
@@ -288,7 +346,7 @@ public class EPSGCRSAuthorityFactory extends AbstractFactory implements CRSAutho
             code = code.substring(5);
         }
         code = code.trim();
-        String wkt = epsg.getProperty( code );
+        String wkt = getWKT( code );
         if( wkt == null ) {
             throw new FactoryException("Unknonwn EPSG code: '"+code+"'" );
         }
@@ -0,0 +1,301 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.crs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A compact, read only index of a property file mapping numeric EPSG codes to WKT definitions.
+ * <p>
+ * The file is kept in its raw form, memory mapped when it is a plain file and read in a single
+ * buffer when it is packed in a jar, and only the position of each definition is indexed.
+ * Opening the index costs a single scan of the bytes, each lookup a binary search and the
+ * decoding of a single line, so no parsing happens for the definitions that are never used.
+ *
+ * @source $URL$
+ */
+final class WKTIndex {
+
+    final ByteBuffer buffer;
+
+    /** The sorted codes */
+    final int[] codes;
+
+    /** The start of the definitions, in the same order as the codes */
+    final int[] starts;
+
+    /** The end of the definitions, in the same order as the codes */
+    final int[] ends;
+
+    WKTIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        int capacity = 1024;
+        int[] codes = new int[capacity];
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int count = 0;
+        boolean sorted = true;
+
+        final int limit = buffer.limit();
+        int pos = 0;
+        while (pos < limit) {
+            // skip leading white space and empty lines
+            byte b = buffer.get(pos);
+            if (b == ' ' || b == '\t' || b == '\f' || b == '\r' || b == '\n') {
+                pos++;
+                continue;
+            }
+            int lineEnd = lineEnd(pos);
+            if (b != '#' && b != '!') {
+                // parse the code, skipping the entries that are not plain numbers
+                long code = 0;
+                int p = pos;
+                while (p < lineEnd && (b = buffer.get(p)) >= '0' && b <= '9'
+                        && code <= Integer.MAX_VALUE) {
+                    code = code * 10 + (b - '0');
+                    p++;
+                }
+                // the key ends with a separator, possibly surrounded by white space
+                int keyEnd = p;
+                while (p < lineEnd && isWhitespace(buffer.get(p))) {
+                    p++;
+                }
+                if (p < lineEnd && (buffer.get(p) == '=' || buffer.get(p) == ':')) {
+                    p++;
+                }
+                boolean separated = p > keyEnd || keyEnd == lineEnd;
+                if (keyEnd > pos && code <= Integer.MAX_VALUE && separated) {
+                    if (count == capacity) {
+                        capacity *= 2;
+                        codes = grow(codes, capacity);
+                        starts = grow(starts, capacity);
+                        ends = grow(ends, capacity);
+                    }
+                    if (count > 0 && code <= codes[count - 1]) {
+                        sorted = false;
+                    }
+                    codes[count] = (int) code;
+                    starts[count] = p;
+                    ends[count] = lineEnd;
+                    count++;
+                }
+            }
+            pos = lineEnd;
+        }
+
+        if (!sorted) {
+            // sort the entries by code, the last definition of a code wins as in Properties
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = (((long) codes[i]) << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] sortedCodes = new int[count];
+            int[] sortedStarts = new int[count];
+            int[] sortedEnds = new int[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int code = (int) (keys[i] >>> 32);
+                int idx = (int) keys[i];
+                if (n > 0 && sortedCodes[n - 1] == code) {
+                    n--;
+                }
+                sortedCodes[n] = code;
+                sortedStarts[n] = starts[idx];
+                sortedEnds[n] = ends[idx];
+                n++;
+            }
+            codes = sortedCodes;
+            starts = sortedStarts;
+            ends = sortedEnds;
+            count = n;
+        }
+
+        this.codes = trim(codes, count);
+        this.starts = trim(starts, count);
+        this.ends = trim(ends, count);
+    }
+
+    /**
+     * Opens the index over the specified property file
+     */
+    static WKTIndex open(URL url) throws IOException {
+        File file = null;
+        if ("file".equals(url.getProtocol())) {
+            try {
+                file = new File(url.toURI());
+            } catch (URISyntaxException e) {
+                file = new File(url.getPath());
+            }
+        }
+        if (file != null && file.exists()) {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                FileChannel channel = fis.getChannel();
+                return new WKTIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                fis.close();
+            }
+        }
+
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256 * 1024);
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(chunk)) > 0) {
+                bos.write(chunk, 0, read);
+            }
+            return new WKTIndex(ByteBuffer.wrap(bos.toByteArray()));
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * The number of definitions in the index
+     */
+    int size() {
+        return codes.length;
+    }
+
+    /**
+     * The code at the specified position
+     */
+    int getCode(int index) {
+        return codes[index];
+    }
+
+    /**
+     * Returns the WKT for the specified code, or null if the code is not in the index
+     */
+    String getWKT(String code) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(code);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int index = Arrays.binarySearch(codes, parsed);
+        if (index < 0) {
+            return null;
+        }
+        return decode(starts[index], ends[index]);
+    }
+
+    /**
+     * Returns the position right after the end of the logical line starting at the specified
+     * position, following the line continuations
+     */
+    private int lineEnd(int pos) {
+        final int limit = buffer.limit();
+        int backslashes = 0;
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b == '\n' || b == '\r') {
+                if (backslashes % 2 == 0) {
+                    return pos;
+                }
+                // line continuation, make sure a \r\n terminator is skipped as a whole
+                if (b == '\r' && pos + 1 < limit && buffer.get(pos + 1) == '\n') {
+                    pos++;
+                }
+                backslashes = 0;
+                pos++;
+                continue;
+            }
+            backslashes = b == '\\' ? backslashes + 1 : 0;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Decodes the property value, following the {@link java.util.Properties} escapes
+     */
+    private String decode(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        int pos = start;
+        // skip the white space between the separator and the value
+        while (pos < end && isWhitespace(buffer.get(pos))) {
+            pos++;
+        }
+        while (pos < end) {
+            char c = (char) (buffer.get(pos++) & 0xFF);
+            if (c != '\\' || pos == end) {
+                sb.append(c);
+                continue;
+            }
+            c = (char) (buffer.get(pos++) & 0xFF);
+            if (c == '\r' || c == '\n') {
+                // line continuation, skip the line terminator and the leading white space
+                if (c == '\r' && pos < end && buffer.get(pos) == '\n') {
+                    pos++;
+                }
+                while (pos < end && isWhitespace(buffer.get(pos))) {
+                    pos++;
+                }
+            } else if (c == 'u' && pos + 4 <= end) {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    value = (value << 4) + Character.digit((char) buffer.get(pos++), 16);
+                }
+                sb.append((char) value);
+            } else if (c == 't') {
+                sb.append('\t');
+            } else if (c == 'n') {
+                sb.append('\n');
+            } else if (c == 'r') {
+                sb.append('\r');
+            } else if (c == 'f') {
+                sb.append('\f');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f';
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] result = new int[capacity];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static int[] trim(int[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.crs;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.geotools.referencing.CRS;
+
+/**
+ * Checks the WKT index reads the same definitions as {@link Properties}
+ *
+ * @source $URL$
+ */
+public class WKTIndexTest extends TestCase {
+
+    public void testBuiltInDefinitions() throws Exception {
+        URL url = EPSGCRSAuthorityFactory.class.getResource("epsg.properties");
+        Properties properties = new Properties();
+        properties.load(url.openStream());
+
+        WKTIndex index = WKTIndex.open(url);
+        assertEquals(properties.size(), index.size());
+        for (Object code : properties.keySet()) {
+            assertEquals(properties.getProperty((String) code), index.getWKT((String) code));
+        }
+        assertNull(index.getWKT("1"));
+        assertNull(index.getWKT("abc"));
+    }
+
+    public void testSyntax() throws Exception {
+        String contents = "# comment\n" + "! other comment\n" + "\n" + "30=last\r\n"
+                + "  10 = PROJCS[\"CM\\=-98\"]\n" + "20:one \\\n    two\\\r\n three\n"
+                + "30=\\u00e9\\t\\\\\n" + "abc=skipped\n" + "40abc=skipped\n" + "50";
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(contents.getBytes("ISO-8859-1")));
+
+        WKTIndex index = new WKTIndex(ByteBuffer.wrap(contents.getBytes("ISO-8859-1")));
+        assertEquals(4, index.size());
+        for (String code : new String[] { "10", "20", "30", "50" }) {
+            assertEquals(properties.getProperty(code), index.getWKT(code));
+        }
+        assertEquals("one twothree", index.getWKT("20"));
+        assertEquals(10, index.getCode(0));
+        assertEquals(50, index.getCode(3));
+    }
+
+    /**
+     * Measures the time to the first decode in a cold JVM
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        CRS.decode("EPSG:4326");
+        System.out.println("First decode: " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+}
@@ -79,6 +79,12 @@ import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
  * </code>
  * </pre>
  * 
+ * <p>
+ * Setting a number of overview levels makes the writer stream the image one row of tiles at a
+ * time, building power of two overviews (nearest neighbour decimation) in the same pass and
+ * storing them as reduced resolution images after the full resolution one. Overviews imply a
+ * tiled output, 512x512 unless the tiling is set explicitly.
+ * 
  * @author Simone Giannecchini
  * @since 2.3.x
  * 
@@ -89,6 +95,11 @@ import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
  */
 public class GeoTiffWriteParams extends GeoToolsWriteParams {
 
+    /** The tile size used when overviews are requested without an explicit tiling */
+    public static final int DEFAULT_OVERVIEW_TILE_SIZE = 512;
+
+    private int overviewLevels;
+
     /**
      * Default constructor.
      */
@@ -104,4 +115,23 @@ public class GeoTiffWriteParams extends GeoToolsWriteParams {
         return ((TIFFImageWriteParam) adaptee).isForceToBigTIFF();
     }
 
+    /**
+     * Sets the number of power of two overviews to be built and written along with the image.
+     * Fewer levels are written if the image fits in a single tile before the requested number
+     * of levels is reached.
+     * 
+     * @param overviewLevels the number of overview levels, 0 (the default) for none
+     */
+    public void setOverviewLevels(final int overviewLevels) {
+        if (overviewLevels < 0) {
+            throw new IllegalArgumentException("The number of overview levels cannot be negative: "
+                    + overviewLevels);
+        }
+        this.overviewLevels = overviewLevels;
+    }
+
+    public int getOverviewLevels() {
+        return overviewLevels;
+    }
+
 }
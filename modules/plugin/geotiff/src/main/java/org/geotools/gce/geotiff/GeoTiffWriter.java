@@ -16,6 +16,7 @@
  */
 package org.geotools.gce.geotiff;
 
+import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
 import it.geosolutions.imageio.plugins.tiff.TIFFImageWriteParam;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageWriterSpi;
@@ -32,6 +33,7 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
@@ -434,6 +436,20 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 		    TIFFImageWriteParam param = (TIFFImageWriteParam) params;
 		    param.setForceToBigTIFF(((GeoTiffWriteParams)gtParams).isForceToBigTIFF());
 		}
+		final int overviewLevels = gtParams instanceof GeoTiffWriteParams ? ((GeoTiffWriteParams) gtParams)
+		        .getOverviewLevels() : 0;
+		if (overviewLevels > 0) {
+		    if (params.getSourceRegion() != null || params.getSourceXSubsampling() != 1
+		            || params.getSourceYSubsampling() != 1) {
+		        throw new IllegalArgumentException(
+		                "Overviews cannot be written along with a source region or subsampling");
+		    }
+		    if (params.getTilingMode() != ImageWriteParam.MODE_EXPLICIT || !isTilingSet(params)) {
+		        params.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+		        params.setTiling(GeoTiffWriteParams.DEFAULT_OVERVIEW_TILE_SIZE,
+		                GeoTiffWriteParams.DEFAULT_OVERVIEW_TILE_SIZE, 0, 0);
+		    }
+		}
 		//
 		// GETTING READER AND METADATA
 		//
@@ -453,7 +469,11 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 			    writer.addIIOWriteProgressListener(progressAdapter);
 			    writer.addIIOWriteWarningListener(progressAdapter);
 			}
-			writer.write(writer.getDefaultStreamMetadata(params), new IIOImage(image, null, metadata), params);
+			if (overviewLevels > 0) {
+			    writeWithOverviews(writer, image, metadata, params, overviewLevels);
+			} else {
+			    writer.write(writer.getDefaultStreamMetadata(params), new IIOImage(image, null, metadata), params);
+			}
 
 
 
@@ -486,6 +506,58 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 		return true;
 	}
 
+	/**
+	 * Checks whether the explicit tile size has been set, the parameters do not expose it and
+	 * throw an {@link IllegalStateException} when asked for a tile size that was never set
+	 */
+	private static boolean isTilingSet(final ImageWriteParam params) {
+	    try {
+	        params.getTileWidth();
+	        return true;
+	    } catch (IllegalStateException e) {
+	        return false;
+	    }
+	}
+
+	/**
+	 * Writes the image one row of tiles at a time, building the power of two overviews in the
+	 * same pass, then appends the overviews as reduced resolution images. Only a row of tiles
+	 * per level is kept in memory, the overview rows are spilled to temporary files until the
+	 * full resolution image has been written.
+	 */
+	private void writeWithOverviews(final ImageWriter writer, final RenderedImage image,
+	        final IIOMetadata metadata, final ImageWriteParam params, final int overviewLevels)
+	        throws IOException {
+	    final int tileWidth = params.getTileWidth();
+	    final int tileHeight = params.getTileHeight();
+	    final OverviewBuilder overviews = new OverviewBuilder(image.getWidth(),
+	            image.getHeight(), tileWidth, tileHeight, image.getSampleModel(),
+	            image.getColorModel(), overviewLevels);
+	    try {
+	        final Object executor = hints != null ? hints.get(Hints.EXECUTOR_SERVICE) : null;
+	        final TileRowImage source = new TileRowImage(image, tileWidth, tileHeight,
+	                executor instanceof ExecutorService ? (ExecutorService) executor : null,
+	                overviews);
+	        writer.prepareWriteSequence(writer.getDefaultStreamMetadata(params));
+	        writer.writeToSequence(new IIOImage(source, null, metadata), params);
+	        source.completeOverviews();
+
+	        for (RenderedImage overview : overviews.getOverviews()) {
+	            final IIOMetadata overviewMetadata = writer.getDefaultImageMetadata(
+	                    ImageTypeSpecifier.createFromRenderedImage(overview), params);
+	            if (overviewMetadata instanceof TIFFImageMetadata) {
+	                ((TIFFImageMetadata) overviewMetadata).addShortOrLongField(
+	                        BaselineTIFFTagSet.TAG_NEW_SUBFILE_TYPE,
+	                        BaselineTIFFTagSet.NEW_SUBFILE_TYPE_REDUCED_RESOLUTION);
+	            }
+	            writer.writeToSequence(new IIOImage(overview, null, overviewMetadata), params);
+	        }
+	        writer.endWriteSequence();
+	    } finally {
+	        overviews.dispose();
+	    }
+	}
+
 	/**
 	 * Creates image metadata which complies to the GeoTIFFWritingUtilities
 	 * specification for the given image writer, image type and
@@ -0,0 +1,279 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.stream.FileImageOutputStream;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Builds power of two overviews of an image while its full resolution rows of tiles are being
+ * written out. Each overview level keeps a single row of tiles in memory, decimating the lines
+ * coming from the level above (nearest neighbour, each overview pixel is the top left pixel of
+ * the 2x2 block it covers), and spills the completed rows to a temporary file, so that they can
+ * be written after the full resolution image without keeping the overviews in memory.
+ *
+ * @source $URL$
+ */
+class OverviewBuilder {
+
+    private final static Logger LOGGER = Logging.getLogger(OverviewBuilder.class);
+
+    private final List<OverviewLevel> levels = new ArrayList<OverviewLevel>();
+
+    /**
+     * Prepares the specified number of overview levels for an image of the given size. Levels
+     * are not built past the first one fitting in a single tile.
+     */
+    OverviewBuilder(int width, int height, int tileWidth, int tileHeight,
+            SampleModel sampleModel, ColorModel colorModel, int numLevels) throws IOException {
+        OverviewLevel previous = null;
+        try {
+            for (int i = 0; i < numLevels && (width > tileWidth || height > tileHeight); i++) {
+                width = (width + 1) / 2;
+                height = (height + 1) / 2;
+                final OverviewLevel level = new OverviewLevel(width, height, tileWidth,
+                        tileHeight, sampleModel, colorModel);
+                if (previous != null) {
+                    previous.next = level;
+                }
+                levels.add(level);
+                previous = level;
+            }
+        } catch (IOException e) {
+            // the caller never gets to dispose us, remove the temporary files already created
+            dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Feeds the next row of tiles of the full resolution image, as a raster with origin in 0,0
+     * spanning the image width
+     */
+    void addRow(Raster row) throws IOException {
+        if (!levels.isEmpty()) {
+            levels.get(0).addLines(row);
+        }
+    }
+
+    /**
+     * Flushes the last, partial rows of the overviews once all the full resolution rows have
+     * been fed
+     */
+    void finish() throws IOException {
+        for (OverviewLevel level : levels) {
+            level.finish();
+        }
+    }
+
+    /**
+     * The overviews, from the largest to the smallest. Their tiles are read back from the
+     * temporary files, so they are valid only until {@link #dispose()} is called.
+     */
+    List<RenderedImage> getOverviews() {
+        return Collections.<RenderedImage> unmodifiableList(levels);
+    }
+
+    /**
+     * Closes and removes the temporary files
+     */
+    void dispose() {
+        for (OverviewLevel level : levels) {
+            level.dispose();
+        }
+    }
+
+    /**
+     * A single overview level, collects the decimated lines of the level above and stores the
+     * completed rows of tiles
+     */
+    static class OverviewLevel extends TileGridImage {
+
+        OverviewLevel next;
+
+        private final File file;
+
+        private final FileImageOutputStream storage;
+
+        /** The size in bytes of a stored row of tiles */
+        private final long rowLength;
+
+        /** The row being filled, or the last one read back */
+        private WritableRaster row;
+
+        private int rowIndex = -1;
+
+        /** The lines already decimated in the row being filled */
+        private int filledLines;
+
+        /** The number of lines of the level above received so far */
+        private int sourceLines;
+
+        private int storedRows;
+
+        OverviewLevel(int width, int height, int tileWidth, int tileHeight,
+                SampleModel sampleModel, ColorModel colorModel) throws IOException {
+            super(0, 0, width, height, tileWidth, tileHeight, sampleModel, colorModel);
+            final int rowWidth = getNumXTiles() * tileWidth;
+            this.rowLength = (long) rowWidth * tileHeight * sampleModel.getNumDataElements()
+                    * DataBuffer.getDataTypeSize(sampleModel.getTransferType()) / 8;
+            this.file = File.createTempFile("overview", ".raw");
+            try {
+                this.storage = new FileImageOutputStream(file);
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+        }
+
+        /**
+         * Decimates the lines of the level above, a raster with origin in 0,0 spanning at least
+         * twice the width of this level
+         */
+        void addLines(Raster lines) throws IOException {
+            final int numBands = sampleModel.getNumBands();
+            final int sourceWidth = Math.min(lines.getWidth(), width * 2);
+            double[] source = null;
+            double[] target = new double[width * numBands];
+            for (int y = 0; y < lines.getHeight(); y++, sourceLines++) {
+                if (sourceLines % 2 != 0) {
+                    continue;
+                }
+                if (row == null) {
+                    row = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(
+                            getNumXTiles() * tileWidth, tileHeight), null);
+                }
+                source = lines.getPixels(0, y, sourceWidth, 1, source);
+                for (int x = 0; x < width; x++) {
+                    System.arraycopy(source, x * 2 * numBands, target, x * numBands, numBands);
+                }
+                row.setPixels(0, filledLines, width, 1, target);
+                if (++filledLines == tileHeight) {
+                    flushRow();
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (filledLines > 0) {
+                flushRow();
+            }
+        }
+
+        private void flushRow() throws IOException {
+            storage.seek(storedRows * rowLength);
+            write(row.getDataElements(0, 0, row.getWidth(), row.getHeight(), null));
+            storedRows++;
+            if (next != null) {
+                next.addLines(row.createChild(0, 0, row.getWidth(), filledLines, 0, 0, null));
+            }
+            // the last row might be partial, start the next one from a clean raster
+            row = null;
+            filledLines = 0;
+        }
+
+        private void write(Object data) throws IOException {
+            if (data instanceof byte[]) {
+                storage.write((byte[]) data);
+            } else if (data instanceof short[]) {
+                final short[] array = (short[]) data;
+                storage.writeShorts(array, 0, array.length);
+            } else if (data instanceof int[]) {
+                final int[] array = (int[]) data;
+                storage.writeInts(array, 0, array.length);
+            } else if (data instanceof float[]) {
+                final float[] array = (float[]) data;
+                storage.writeFloats(array, 0, array.length);
+            } else {
+                final double[] array = (double[]) data;
+                storage.writeDoubles(array, 0, array.length);
+            }
+        }
+
+        private void read(Object data) throws IOException {
+            if (data instanceof byte[]) {
+                storage.readFully((byte[]) data);
+            } else if (data instanceof short[]) {
+                final short[] array = (short[]) data;
+                storage.readFully(array, 0, array.length);
+            } else if (data instanceof int[]) {
+                final int[] array = (int[]) data;
+                storage.readFully(array, 0, array.length);
+            } else if (data instanceof float[]) {
+                final float[] array = (float[]) data;
+                storage.readFully(array, 0, array.length);
+            } else {
+                final double[] array = (double[]) data;
+                storage.readFully(array, 0, array.length);
+            }
+        }
+
+        @Override
+        synchronized Raster computeTile(int tileX, int tileY) {
+            if (tileY >= storedRows) {
+                throw new IllegalStateException("Overview row " + tileY + " has not been built");
+            }
+            if (rowIndex != tileY) {
+                try {
+                    final WritableRaster stored = Raster.createWritableRaster(sampleModel
+                            .createCompatibleSampleModel(getNumXTiles() * tileWidth, tileHeight),
+                            null);
+                    final Object data = stored.getDataElements(0, 0, stored.getWidth(),
+                            stored.getHeight(), null);
+                    storage.seek(tileY * rowLength);
+                    read(data);
+                    stored.setDataElements(0, 0, stored.getWidth(), stored.getHeight(), data);
+                    row = stored;
+                    rowIndex = tileY;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to read back overview row " + tileY,
+                            e);
+                }
+            }
+            return row.createChild(tileX * tileWidth, 0, tileWidth, tileHeight,
+                    tileXToX(tileX), tileYToY(tileY), null);
+        }
+
+        void dispose() {
+            try {
+                storage.close();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
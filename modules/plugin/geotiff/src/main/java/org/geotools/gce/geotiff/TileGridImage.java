@@ -0,0 +1,214 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+/**
+ * Base class for the images the streaming GeoTIFF writer hands over to the TIFF writer: a
+ * regular tile grid whose tiles are computed on demand, one at a time, so that the whole image
+ * never sits in memory. Subclasses just have to implement {@link #computeTile(int, int)}.
+ *
+ * @source $URL$
+ */
+abstract class TileGridImage implements RenderedImage {
+
+    final int minX;
+
+    final int minY;
+
+    final int width;
+
+    final int height;
+
+    final int tileWidth;
+
+    final int tileHeight;
+
+    /** The sample model of a single tile */
+    final SampleModel sampleModel;
+
+    final ColorModel colorModel;
+
+    TileGridImage(int minX, int minY, int width, int height, int tileWidth, int tileHeight,
+            SampleModel sampleModel, ColorModel colorModel) {
+        this.minX = minX;
+        this.minY = minY;
+        this.width = width;
+        this.height = height;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.sampleModel = sampleModel.createCompatibleSampleModel(tileWidth, tileHeight);
+        this.colorModel = colorModel;
+    }
+
+    /**
+     * Returns the specified tile, a raster of the tile size positioned at the tile location
+     */
+    abstract Raster computeTile(int tileX, int tileY);
+
+    public Raster getTile(int tileX, int tileY) {
+        if (tileX < 0 || tileY < 0 || tileX >= getNumXTiles() || tileY >= getNumYTiles()) {
+            throw new IllegalArgumentException("Tile " + tileX + "," + tileY
+                    + " is outside of the image");
+        }
+        return computeTile(tileX, tileY);
+    }
+
+    /**
+     * Creates an empty raster covering the specified tile
+     */
+    WritableRaster createTile(int tileX, int tileY) {
+        return Raster.createWritableRaster(sampleModel, new Point(tileXToX(tileX),
+                tileYToY(tileY)));
+    }
+
+    int tileXToX(int tileX) {
+        return minX + tileX * tileWidth;
+    }
+
+    int tileYToY(int tileY) {
+        return minY + tileY * tileHeight;
+    }
+
+    public Raster getData() {
+        return getData(getBounds());
+    }
+
+    public Raster getData(Rectangle rect) {
+        final Rectangle region = rect.intersection(getBounds());
+        final int minTileX = (region.x - minX) / tileWidth;
+        final int minTileY = (region.y - minY) / tileHeight;
+        final int maxTileX = (region.x + region.width - 1 - minX) / tileWidth;
+        final int maxTileY = (region.y + region.height - 1 - minY) / tileHeight;
+        if (minTileX == maxTileX && minTileY == maxTileY) {
+            // the common case, the region sits in a single tile
+            final Raster tile = getTile(minTileX, minTileY);
+            return tile.createChild(region.x, region.y, region.width, region.height, region.x,
+                    region.y, null);
+        }
+        final WritableRaster result = Raster.createWritableRaster(sampleModel
+                .createCompatibleSampleModel(region.width, region.height), new Point(region.x,
+                region.y));
+        copyData(result);
+        return result;
+    }
+
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(width,
+                    height), new Point(minX, minY));
+        }
+        final Rectangle region = raster.getBounds().intersection(getBounds());
+        if (region.isEmpty()) {
+            return raster;
+        }
+        final int minTileX = (region.x - minX) / tileWidth;
+        final int minTileY = (region.y - minY) / tileHeight;
+        final int maxTileX = (region.x + region.width - 1 - minX) / tileWidth;
+        final int maxTileY = (region.y + region.height - 1 - minY) / tileHeight;
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                final Raster tile = getTile(tileX, tileY);
+                final Rectangle overlap = tile.getBounds().intersection(region);
+                raster.setRect(tile.createChild(overlap.x, overlap.y, overlap.width,
+                        overlap.height, overlap.x, overlap.y, null));
+            }
+        }
+        return raster;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(minX, minY, width, height);
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int getTileGridXOffset() {
+        return minX;
+    }
+
+    public int getTileGridYOffset() {
+        return minY;
+    }
+
+    public int getMinTileX() {
+        return 0;
+    }
+
+    public int getMinTileY() {
+        return 0;
+    }
+
+    public int getNumXTiles() {
+        return (width + tileWidth - 1) / tileWidth;
+    }
+
+    public int getNumYTiles() {
+        return (height + tileHeight - 1) / tileHeight;
+    }
+
+    public SampleModel getSampleModel() {
+        return sampleModel;
+    }
+
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    public String[] getPropertyNames() {
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Re-tiles a source image with the tile size of the GeoTIFF being written, pulling the source
+ * one row of tiles at a time. The tiles of a row are computed together, in parallel if an
+ * executor is available, and only the current row is kept in memory. Every row is also fed,
+ * in order, to an optional {@link OverviewBuilder}, so that the overviews are built in the same
+ * pass that writes the full resolution image.
+ *
+ * @source $URL$
+ */
+class TileRowImage extends TileGridImage {
+
+    private final RenderedImage source;
+
+    private final ExecutorService executor;
+
+    private final OverviewBuilder overviews;
+
+    private WritableRaster row;
+
+    private int rowIndex = -1;
+
+    /** The next row to be fed to the overview builder */
+    private int nextOverviewRow;
+
+    /**
+     * @param source the image to be written
+     * @param tileWidth the output tile width
+     * @param tileHeight the output tile height
+     * @param executor used to compute the tiles of a row in parallel, can be null
+     * @param overviews the overview builder, can be null
+     */
+    TileRowImage(RenderedImage source, int tileWidth, int tileHeight, ExecutorService executor,
+            OverviewBuilder overviews) {
+        super(source.getMinX(), source.getMinY(), source.getWidth(), source.getHeight(),
+                tileWidth, tileHeight, source.getSampleModel(), source.getColorModel());
+        this.source = source;
+        this.executor = executor;
+        this.overviews = overviews;
+    }
+
+    @Override
+    synchronized Raster computeTile(int tileX, int tileY) {
+        if (rowIndex != tileY) {
+            try {
+                // rows are normally requested in order, but if the writer skips ahead we still
+                // have to feed the overviews with the rows in between
+                while (overviews != null && nextOverviewRow < tileY) {
+                    computeRow(nextOverviewRow);
+                }
+                computeRow(tileY);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to build the overviews", e);
+            }
+        }
+        return row.createChild(tileXToX(tileX), tileYToY(tileY), tileWidth, tileHeight,
+                tileXToX(tileX), tileYToY(tileY), null);
+    }
+
+    /**
+     * Feeds the rows not requested by the writer, if any, to the overview builder and flushes
+     * its partial rows. To be called once the full resolution image has been written.
+     */
+    synchronized void completeOverviews() throws IOException {
+        if (overviews != null) {
+            while (nextOverviewRow < getNumYTiles()) {
+                computeRow(nextOverviewRow);
+            }
+            overviews.finish();
+        }
+        row = null;
+        rowIndex = -1;
+    }
+
+    private void computeRow(int tileY) throws IOException {
+        final int y = tileYToY(tileY);
+        final int rowHeight = Math.min(tileHeight, minY + height - y);
+        final WritableRaster raster = Raster.createWritableRaster(sampleModel
+                .createCompatibleSampleModel(getNumXTiles() * tileWidth, tileHeight),
+                new Point(minX, y));
+        final List<Rectangle> regions = new ArrayList<Rectangle>();
+        for (int tileX = 0; tileX < getNumXTiles(); tileX++) {
+            final int x = tileXToX(tileX);
+            regions.add(new Rectangle(x, y, Math.min(tileWidth, minX + width - x), rowHeight));
+        }
+        if (executor == null || regions.size() == 1) {
+            for (Rectangle region : regions) {
+                raster.setRect(source.getData(region));
+            }
+        } else {
+            final List<Future<Raster>> tiles = new ArrayList<Future<Raster>>();
+            for (final Rectangle region : regions) {
+                tiles.add(executor.submit(new Callable<Raster>() {
+                    public Raster call() throws Exception {
+                        return source.getData(region);
+                    }
+                }));
+            }
+            try {
+                for (Future<Raster> tile : tiles) {
+                    raster.setRect(tile.get());
+                }
+            } catch (InterruptedException e) {
+                cancel(tiles);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while computing row " + tileY, e);
+            } catch (ExecutionException e) {
+                cancel(tiles);
+                throw new IllegalStateException("Failed to compute row " + tileY, e.getCause());
+            }
+        }
+        row = raster;
+        rowIndex = tileY;
+
+        if (overviews != null && tileY == nextOverviewRow) {
+            overviews.addRow(raster.createChild(minX, y, width, rowHeight, 0, 0, null));
+            nextOverviewRow++;
+        }
+    }
+
+    private void cancel(List<Future<Raster>> tiles) {
+        for (Future<Raster> tile : tiles) {
+            tile.cancel(true);
+        }
+    }
+}
@@ -17,8 +17,10 @@
 package org.geotools.gce.geotiff;
 
 import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
 
 import java.awt.geom.AffineTransform;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,6 +28,9 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.logging.Logger;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.media.jai.PlanarImage;
 
 import junit.framework.Assert;
@@ -587,5 +592,78 @@ public class GeoTiffWriterTest extends Assert {
             i++;
         }
     }
-    
+
+    @Test
+    public void testWriteOverviews() throws Exception {
+        final File input = TestData.file(GeoTiffReaderTest.class, "geo.tiff");
+        GeoTiffReader reader = new GeoTiffReader(input);
+        GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
+        reader.dispose();
+        final Raster source = coverage.getRenderedImage().getData();
+
+        final File output = File.createTempFile("overviews", ".tif");
+        try {
+            GeoTiffWriter writer = new GeoTiffWriter(output);
+            GeoTiffWriteParams params = new GeoTiffWriteParams();
+            params.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+            params.setTiling(32, 32);
+            params.setOverviewLevels(4);
+            ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS.createValue();
+            value.setValue(params);
+            writer.write(coverage, new GeneralParameterValue[] { value });
+            writer.dispose();
+
+            // 120x120 pixels, the overviews stop once one fits in a single tile
+            final ImageReader tiffReader = new TIFFImageReaderSpi().createReaderInstance();
+            final ImageInputStream stream = ImageIO.createImageInputStream(output);
+            try {
+                tiffReader.setInput(stream);
+                assertEquals(3, tiffReader.getNumImages(true));
+                assertEquals(120, tiffReader.getWidth(0));
+                assertEquals(32, tiffReader.getTileWidth(0));
+                assertEquals(60, tiffReader.getWidth(1));
+                assertEquals(30, tiffReader.getHeight(2));
+
+                final Raster overview = tiffReader.read(2).getData();
+                for (int y = 0; y < 30; y++) {
+                    for (int x = 0; x < 30; x++) {
+                        assertEquals(source.getSample(source.getMinX() + x * 4, source.getMinY() + y * 4, 0),
+                                overview.getSample(x, y, 0));
+                    }
+                }
+            } finally {
+                tiffReader.dispose();
+                stream.close();
+            }
+
+            // the reader picks the internal overviews up
+            reader = new GeoTiffReader(output);
+            assertNotNull(reader.read(null));
+            reader.dispose();
+
+            // explicit tiling mode without a tile size falls back on the default one
+            writer = new GeoTiffWriter(output);
+            params = new GeoTiffWriteParams();
+            params.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+            params.setOverviewLevels(4);
+            value.setValue(params);
+            writer.write(coverage, new GeneralParameterValue[] { value });
+            writer.dispose();
+            final ImageReader defaultReader = new TIFFImageReaderSpi().createReaderInstance();
+            final ImageInputStream defaultStream = ImageIO.createImageInputStream(output);
+            try {
+                defaultReader.setInput(defaultStream);
+                assertEquals(GeoTiffWriteParams.DEFAULT_OVERVIEW_TILE_SIZE, defaultReader.getTileWidth(0));
+                // the image fits in a single tile, no overviews
+                assertEquals(1, defaultReader.getNumImages(true));
+            } finally {
+                defaultReader.dispose();
+                defaultStream.close();
+            }
+        } finally {
+            coverage.dispose(true);
+            output.delete();
+        }
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the row by row re-tiling of the source and the overviews built along the way
+ *
+ * @source $URL$
+ */
+public class OverviewBuilderTest extends Assert {
+
+    @Test
+    public void testSequential() throws Exception {
+        checkOverviews(newImage(BufferedImage.TYPE_3BYTE_BGR), null);
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            checkOverviews(newImage(BufferedImage.TYPE_USHORT_GRAY), executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRowsSkipped() throws Exception {
+        // the writer skipping rows must not leave holes in the overviews
+        BufferedImage image = newImage(BufferedImage.TYPE_INT_RGB);
+        OverviewBuilder overviews = new OverviewBuilder(image.getWidth(), image.getHeight(),
+                64, 64, image.getSampleModel(), image.getColorModel(), 2);
+        try {
+            TileRowImage tiled = new TileRowImage(image, 64, 64, null, overviews);
+            tiled.getTile(0, 2);
+            tiled.completeOverviews();
+            checkLevels(image, overviews.getOverviews(), 2);
+        } finally {
+            overviews.dispose();
+        }
+    }
+
+    private void checkOverviews(BufferedImage image, ExecutorService executor) throws Exception {
+        OverviewBuilder overviews = new OverviewBuilder(image.getWidth(), image.getHeight(),
+                64, 64, image.getSampleModel(), image.getColorModel(), 10);
+        try {
+            TileRowImage tiled = new TileRowImage(image, 64, 64, executor, overviews);
+            assertEquals(5, tiled.getNumXTiles());
+            assertEquals(4, tiled.getNumYTiles());
+            Raster expected = image.getData();
+            for (int ty = 0; ty < tiled.getNumYTiles(); ty++) {
+                for (int tx = 0; tx < tiled.getNumXTiles(); tx++) {
+                    Raster tile = tiled.getTile(tx, ty);
+                    assertEquals(64, tile.getWidth());
+                    assertEquals(tx * 64, tile.getMinX());
+                    assertEquals(ty * 64, tile.getMinY());
+                    int maxX = Math.min(tile.getMinX() + 64, image.getWidth());
+                    int maxY = Math.min(tile.getMinY() + 64, image.getHeight());
+                    for (int y = tile.getMinY(); y < maxY; y += 7) {
+                        for (int x = tile.getMinX(); x < maxX; x += 7) {
+                            assertEquals(expected.getSample(x, y, 0), tile.getSample(x, y, 0));
+                        }
+                    }
+                }
+            }
+            tiled.completeOverviews();
+
+            // 300x200 -> 150x100 -> 75x50 -> 38x25, which fits in a tile
+            checkLevels(image, overviews.getOverviews(), 3);
+        } finally {
+            overviews.dispose();
+        }
+    }
+
+    private void checkLevels(RenderedImage image, List<RenderedImage> levels, int numLevels) {
+        assertEquals(numLevels, levels.size());
+        Raster expected = image.getData();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int i = 0; i < levels.size(); i++) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            RenderedImage level = levels.get(i);
+            assertEquals(width, level.getWidth());
+            assertEquals(height, level.getHeight());
+            Raster data = level.getData();
+            int step = 1 << (i + 1);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    for (int b = 0; b < data.getNumBands(); b++) {
+                        assertEquals(expected.getSample(x * step, y * step, b),
+                                data.getSample(x, y, b));
+                    }
+                }
+            }
+        }
+    }
+
+    private BufferedImage newImage(int type) {
+        BufferedImage image = new BufferedImage(300, 200, type);
+        WritableRaster raster = image.getRaster();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int b = 0; b < raster.getNumBands(); b++) {
+                    raster.setSample(x, y, b, (x * 7 + y * 13 + b * 31) % 251);
+                }
+            }
+        }
+        return image;
+    }
+}
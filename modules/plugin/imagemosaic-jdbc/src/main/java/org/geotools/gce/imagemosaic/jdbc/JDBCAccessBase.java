@@ -22,6 +22,7 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -44,6 +45,7 @@ import javax.media.jai.PlanarImage;
 import javax.sql.DataSource;
 
 import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.io.ReadScheduler;
 import org.geotools.data.jdbc.datasource.DataSourceFinder;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.util.logging.Logging;
@@ -561,7 +563,8 @@ abstract class JDBCAccessBase implements JDBCAccess {
 		Date start = new Date();
 		Connection con = null;
 		List<ImageDecoderThread> threads = new ArrayList<ImageDecoderThread>();
-		ExecutorService pool =  getExecutorServivicePool ();
+		ReadScheduler.Request decoding = getReadScheduler().newRequest(
+				ReadScheduler.Priority.INTERACTIVE);
 		
 
 		String statementString = getGridSelectStatement(levelInfo);
@@ -592,7 +595,7 @@ abstract class JDBCAccessBase implements JDBCAccess {
 						requestEnvelope, levelInfo, tileQueue, config);
 //				thread.start();
 				threads.add(thread);
-				pool.execute(thread);
+				decoding.submit(dataSource, Executors.callable(thread));
 
 			}
 
@@ -615,6 +618,7 @@ abstract class JDBCAccessBase implements JDBCAccess {
 			} catch (SQLException e1) {
 			}
 
+			decoding.cancel();
 			LOGGER.log(Level.SEVERE, e.getMessage(), e);
 			throw new IOException(e);
 		}
@@ -626,12 +630,14 @@ abstract class JDBCAccessBase implements JDBCAccess {
 							+ " millisecs");
 
 		// wait for all threads dto finish and write end marker
-		pool.shutdown();
 		try {
-		    pool.awaitTermination(3600, TimeUnit.SECONDS); // wait for one hour 
-                  } catch (InterruptedException e) {
-                           throw new RuntimeException(e.getLocalizedMessage());
-                }
+			decoding.await(3600, TimeUnit.SECONDS); // wait for one hour
+		} catch (InterruptedException e) {
+			decoding.cancel();
+			Thread.currentThread().interrupt();
+			throw (IOException) new InterruptedIOException(
+					"Interrupted while decoding the tiles").initCause(e);
+		}
 		
 //		for (AbstractThread thread : threads) {
 //			try {
@@ -820,9 +826,21 @@ abstract class JDBCAccessBase implements JDBCAccess {
 		return result;
 	}
 	
+       /**
+        * @deprecated the tiles are decoded by the shared {@link #getReadScheduler()}, this
+        *             pool is not used anymore
+        */
        public ExecutorService getExecutorServivicePool () {
            int availableProcessors = Runtime.getRuntime().availableProcessors();
            LOGGER.info("Using "+ availableProcessors + " CPU(s)");
            return Executors.newFixedThreadPool(availableProcessors);
        }
+
+       /**
+        * The scheduler decoding the tiles, shared with the other coverage readers so that the
+        * number of concurrent decodes stays bounded no matter how many requests are running
+        */
+       protected ReadScheduler getReadScheduler() {
+           return ReadScheduler.getDefault();
+       }
 }
@@ -102,6 +102,16 @@ public abstract class JDBCAccessCustom implements JDBCAccess {
             ImageLevelInfo info, LinkedBlockingQueue<TileQueueElement> tileQueue,
             GridCoverageFactory coverageFactory) throws IOException;
 
+    /**
+     * getDataSource
+     * 
+     * @return DataSource
+     **/
+
+    protected DataSource getDataSource() {
+        return dataSource;
+    }
+
     /**
      * getConnection
      * 
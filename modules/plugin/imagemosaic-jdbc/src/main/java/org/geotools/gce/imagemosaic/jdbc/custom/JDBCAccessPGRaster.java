@@ -20,6 +20,7 @@ package org.geotools.gce.imagemosaic.jdbc.custom;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -40,6 +41,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.io.ReadScheduler;
 import org.geotools.gce.imagemosaic.jdbc.Config;
 import org.geotools.gce.imagemosaic.jdbc.ImageDecoderThread;
 import org.geotools.gce.imagemosaic.jdbc.ImageLevelInfo;
@@ -179,7 +181,8 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
         Date start = new Date();
         Connection con = null;
         List<ImageDecoderThread> threads = new ArrayList<ImageDecoderThread>();
-        ExecutorService pool = getExecutorServivicePool();
+        ReadScheduler.Request decoding = getReadScheduler().newRequest(
+                ReadScheduler.Priority.INTERACTIVE);
 
         String gridStatement = statementMap.get(levelInfo);
 
@@ -218,7 +221,7 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
                         getConfig());
                 // thread.start();
                 threads.add(thread);
-                pool.execute(thread);
+                decoding.submit(getDataSource(), Executors.callable(thread));
             }
 
             r.close();
@@ -231,6 +234,7 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
             } catch (SQLException e1) {
             }
 
+            decoding.cancel();
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
             throw new IOException(e);
         }
@@ -240,11 +244,13 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
                     + ((new Date()).getTime() - start.getTime()) + " millisecs");
 
         // wait for all threads dto finish and write end marker
-        pool.shutdown();
         try {
-            pool.awaitTermination(3600, TimeUnit.SECONDS); // wait for one hour
+            decoding.await(3600, TimeUnit.SECONDS); // wait for one hour
         } catch (InterruptedException e) {
-            throw new RuntimeException(e.getLocalizedMessage());
+            decoding.cancel();
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException(
+                    "Interrupted while decoding the tiles").initCause(e);
         }
 
         tileQueue.add(TileQueueElement.ENDELEMENT);
@@ -569,6 +575,8 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
      * creates a thread pool
      * 
      * @return
+     * @deprecated the tiles are decoded by the shared {@link #getReadScheduler()}, this pool is
+     *             not used anymore
      */
     public ExecutorService getExecutorServivicePool() {
         int availableProcessors = Runtime.getRuntime().availableProcessors();
@@ -576,6 +584,15 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
         return Executors.newFixedThreadPool(availableProcessors);
     }
 
+    /**
+     * The scheduler decoding the tiles, shared with the other coverage readers
+     * 
+     * @return
+     */
+    protected ReadScheduler getReadScheduler() {
+        return ReadScheduler.getDefault();
+    }
+
     /**
      * List the formats supported by the used gdal library
      * 
@@ -0,0 +1,558 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.Hints;
+
+/**
+ * A byte bounded cache of opened granule readers and decoded granule tiles, meant to be shared
+ * among the mosaics so that adjacent requests hitting the same granules do not have to re-open
+ * the files, re-parse their headers and decode the same tiles over and over.
+ * <p>
+ * The tiles are keyed by granule, overview level and tile index, the readers by granule.
+ * The least recently used entries are evicted when the cache grows past its maximum size,
+ * with the exception of the readers that are being used for a read, which are pinned
+ * in the cache until they are released. Readers are not thread safe, so a pinned reader
+ * is never handed out twice: a concurrent read of the same granule opens its own reader.
+ * <p>
+ * The cache is used only with the {@link ReadType#DIRECT_READ} read type, and only when
+ * provided to the mosaic reader with the {@link #GRANULE_CACHE} hint. Only tiled granules
+ * read at full resolution, that is, without subsampling, have their tiles cached.
+ * The granules are identified by URL and, when they are files, by last modification time,
+ * so a granule overwritten on disk is re-read.
+ *
+ * @source $URL$
+ */
+public final class GranuleCache {
+
+    /** Logger. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger(GranuleCache.class);
+
+    /**
+     * The hint used to provide the granule cache to the image mosaic readers
+     */
+    public static final Hints.Key GRANULE_CACHE = new Hints.Key(GranuleCache.class);
+
+    /** The default maximum size of the cache, 64MB */
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The memory accounted for each opened reader. The real figure depends on the format and on
+     * the stream caching, this is a rough estimate, meant to limit the number of open files
+     * as well
+     */
+    static final long READER_SIZE = 64 * 1024;
+
+    private final long maxSize;
+
+    /** The entries, in access order */
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(64,
+            0.75f, true);
+
+    private long size;
+
+    private long tileHits;
+
+    private long tileMisses;
+
+    private long readerHits;
+
+    private long readerMisses;
+
+    private long evictions;
+
+    /**
+     * Builds a cache with the {@link #DEFAULT_MAX_SIZE default maximum size}
+     */
+    public GranuleCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Builds a new cache
+     *
+     * @param maxSize The maximum amount of memory used by the cache, in bytes
+     */
+    public GranuleCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a reader for the specified granule, with its input already set. The reader is
+     * pinned in the cache and must be given back with
+     * {@link #releaseReader(URL, long, ImageReader, boolean)} once the read is complete
+     *
+     * @param granuleUrl the granule
+     * @param stamp the granule version, as returned by {@link #stamp(URL)}
+     * @param spi the provider used to create a new reader, if none is available
+     * @return the reader, or null if the granule could not be opened
+     * @throws IOException
+     */
+    ImageReader acquireReader(URL granuleUrl, long stamp, ImageReaderSpi spi)
+            throws IOException {
+        final ReaderKey key = new ReaderKey(granuleUrl);
+        ImageReader stale = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.stamp != stamp && entry.pins == 0) {
+                    // the granule changed since the reader has been opened
+                    remove(key, entry);
+                    stale = (ImageReader) entry.value;
+                } else if (entry.pins == 0) {
+                    entry.pins++;
+                    readerHits++;
+                    return (ImageReader) entry.value;
+                }
+            }
+            readerMisses++;
+        }
+        if (stale != null) {
+            dispose(stale);
+        }
+
+        final ImageInputStream inStream = Utils.getInputStream(granuleUrl);
+        if (inStream == null) {
+            return null;
+        }
+        final ImageReader reader;
+        try {
+            reader = spi.createReaderInstance();
+        } catch (IOException e) {
+            inStream.close();
+            throw e;
+        }
+        if (reader == null) {
+            inStream.close();
+            return null;
+        }
+        reader.setInput(inStream);
+
+        synchronized (this) {
+            if (!entries.containsKey(key) && maxSize > 0) {
+                Entry entry = new Entry(reader, READER_SIZE, stamp);
+                entry.pins = 1;
+                entries.put(key, entry);
+                size += READER_SIZE;
+                evict();
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Gives back a reader obtained with {@link #acquireReader(URL, long, ImageReaderSpi)}. Readers
+     * that are not in the cache are kept if there is no other reader for the same granule,
+     * disposed otherwise.
+     *
+     * @param granuleUrl the granule
+     * @param stamp the granule version, as returned by {@link #stamp(URL)}
+     * @param reader the reader
+     * @param failed true if the read failed, in which case the reader is disposed as its state
+     *        cannot be trusted anymore
+     */
+    void releaseReader(URL granuleUrl, long stamp, ImageReader reader, boolean failed) {
+        final ReaderKey key = new ReaderKey(granuleUrl);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.value == reader) {
+                entry.pins--;
+                if (!failed) {
+                    evict();
+                    return;
+                }
+                remove(key, entry);
+            } else if (entry == null && !failed && maxSize > 0) {
+                entries.put(key, new Entry(reader, READER_SIZE, stamp));
+                size += READER_SIZE;
+                evict();
+                return;
+            }
+        }
+        dispose(reader);
+    }
+
+    /**
+     * Reads the source region of the granule by composing its cached tiles, decoding only the
+     * missing ones.
+     *
+     * @return the image, or null if the read cannot be satisfied tile by tile and should be
+     *         performed as usual
+     * @throws IOException
+     */
+    RenderedImage read(URL granuleUrl, long stamp, ImageReader reader, int imageIndex,
+            ImageReadParam readParameters) throws IOException {
+        if (maxSize == 0 || !isTileable(readParameters) || !reader.isImageTiled(imageIndex)) {
+            return null;
+        }
+        final Rectangle sourceRegion = readParameters.getSourceRegion();
+        if (sourceRegion == null || sourceRegion.isEmpty()) {
+            return null;
+        }
+        final int tileWidth = reader.getTileWidth(imageIndex);
+        final int tileHeight = reader.getTileHeight(imageIndex);
+        final int offsetX = reader.getTileGridXOffset(imageIndex);
+        final int offsetY = reader.getTileGridYOffset(imageIndex);
+        final int minTileX = floorDiv(sourceRegion.x - offsetX, tileWidth);
+        final int maxTileX = floorDiv(sourceRegion.x + sourceRegion.width - 1 - offsetX, tileWidth);
+        final int minTileY = floorDiv(sourceRegion.y - offsetY, tileHeight);
+        final int maxTileY = floorDiv(sourceRegion.y + sourceRegion.height - 1 - offsetY,
+                tileHeight);
+        // each pixel takes at least one byte
+        final long regionPixels = (long) tileWidth * tileHeight * (maxTileX - minTileX + 1)
+                * (maxTileY - minTileY + 1);
+        if (regionPixels > maxSize) {
+            // no point in filling the cache with tiles that would evict each other
+            return null;
+        }
+
+        final String granule = granuleUrl.toExternalForm();
+        BufferedImage first = null;
+        WritableRaster target = null;
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                final TileKey key = new TileKey(granule, stamp, imageIndex, tileX, tileY);
+                BufferedImage tile = getTile(key);
+                if (tile == null) {
+                    tile = reader.readTile(imageIndex, tileX, tileY);
+                    putTile(key, tile);
+                }
+                if (first == null) {
+                    first = tile;
+                    target = tile.getRaster().createCompatibleWritableRaster(
+                            sourceRegion.width, sourceRegion.height);
+                }
+                // the tile raster starts at 0,0, move it to its place in the source region
+                final Raster raster = tile.getRaster().createTranslatedChild(
+                        offsetX + tileX * tileWidth - sourceRegion.x,
+                        offsetY + tileY * tileHeight - sourceRegion.y);
+                target.setRect(raster);
+            }
+        }
+        return new BufferedImage(first.getColorModel(), target, first.isAlphaPremultiplied(),
+                null);
+    }
+
+    /**
+     * Returns the cached tile, or null if not found
+     */
+    synchronized BufferedImage getTile(TileKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            tileMisses++;
+            return null;
+        }
+        tileHits++;
+        return (BufferedImage) entry.value;
+    }
+
+    /**
+     * Caches a decoded tile, evicting the least recently used entries if the cache is full
+     */
+    synchronized void putTile(TileKey key, BufferedImage tile) {
+        final long tileSize = getSize(tile.getRaster());
+        if (tileSize > maxSize) {
+            return;
+        }
+        Entry old = entries.put(key, new Entry(tile, tileSize, 0));
+        if (old != null) {
+            size -= old.size;
+        }
+        size += tileSize;
+        evict();
+    }
+
+    /**
+     * Drops all the cached tiles and readers, besides the ones currently in use
+     */
+    public void clear() {
+        final List<Entry> removed = new ArrayList<Entry>();
+        synchronized (this) {
+            for (Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator(); it
+                    .hasNext();) {
+                Map.Entry<Object, Entry> e = it.next();
+                if (e.getValue().pins == 0) {
+                    it.remove();
+                    size -= e.getValue().size;
+                    removed.add(e.getValue());
+                }
+            }
+        }
+        disposeReaders(removed);
+    }
+
+    /**
+     * The number of tiles found in the cache
+     */
+    public synchronized long getTileHits() {
+        return tileHits;
+    }
+
+    /**
+     * The number of tiles looked up and not found in the cache, that had to be decoded
+     */
+    public synchronized long getTileMisses() {
+        return tileMisses;
+    }
+
+    /**
+     * The number of times an opened reader has been reused
+     */
+    public synchronized long getReaderHits() {
+        return readerHits;
+    }
+
+    /**
+     * The number of times a granule had to be opened
+     */
+    public synchronized long getReaderMisses() {
+        return readerMisses;
+    }
+
+    /**
+     * The number of tiles and readers removed from the cache to respect its size limit
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The memory currently used by the cache, in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * The maximum amount of memory used by the cache, in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "GranuleCache [tileHits=" + getTileHits() + ", tileMisses=" + getTileMisses()
+                + ", readerHits=" + getReaderHits() + ", readerMisses=" + getReaderMisses()
+                + ", evictions=" + getEvictions() + ", size=" + getSize() + ", maxSize="
+                + maxSize + "]";
+    }
+
+    /**
+     * Returns the version of the granule, its last modification time if it is a file, 0 otherwise
+     */
+    static long stamp(URL granuleUrl) {
+        if ("file".equals(granuleUrl.getProtocol())) {
+            File file = DataUtilities.urlToFile(granuleUrl);
+            if (file != null) {
+                return file.lastModified();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Removes the least recently used entries that are not pinned until the cache fits its
+     * maximum size. Must be called while holding the cache lock, the evicted readers are
+     * disposed right away, which is cheap.
+     */
+    private void evict() {
+        if (size <= maxSize) {
+            return;
+        }
+        for (Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator(); it
+                .hasNext()
+                && size > maxSize;) {
+            Map.Entry<Object, Entry> e = it.next();
+            Entry entry = e.getValue();
+            if (entry.pins == 0) {
+                it.remove();
+                size -= entry.size;
+                evictions++;
+                if (entry.value instanceof ImageReader) {
+                    dispose((ImageReader) entry.value);
+                }
+            }
+        }
+    }
+
+    private void remove(Object key, Entry entry) {
+        entries.remove(key);
+        size -= entry.size;
+    }
+
+    private void disposeReaders(List<Entry> removed) {
+        for (Entry entry : removed) {
+            if (entry.value instanceof ImageReader) {
+                dispose((ImageReader) entry.value);
+            }
+        }
+    }
+
+    private static void dispose(ImageReader reader) {
+        final Object input = reader.getInput();
+        try {
+            reader.dispose();
+        } catch (Throwable t) {
+            // swallow the exception, we are just trying to close as much stuff as possible
+        }
+        if (input instanceof ImageInputStream) {
+            try {
+                ((ImageInputStream) input).close();
+            } catch (Throwable t) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Failed to close the granule stream", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tiles can be composed only if the reader would just crop the image
+     */
+    private static boolean isTileable(ImageReadParam params) {
+        return params.getSourceXSubsampling() == 1 && params.getSourceYSubsampling() == 1
+                && params.getSubsamplingXOffset() == 0 && params.getSubsamplingYOffset() == 0
+                && params.getSourceBands() == null && params.getDestinationBands() == null
+                && params.getDestination() == null && params.getDestinationType() == null
+                && params.getDestinationOffset().x == 0 && params.getDestinationOffset().y == 0;
+    }
+
+    private static long getSize(Raster raster) {
+        final DataBuffer buffer = raster.getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static int floorDiv(int value, int divisor) {
+        return (int) Math.floor(value / (double) divisor);
+    }
+
+    /**
+     * A cached value along with its size and pin count
+     */
+    private static final class Entry {
+        final Object value;
+
+        final long size;
+
+        final long stamp;
+
+        int pins;
+
+        Entry(Object value, long size, long stamp) {
+            this.value = value;
+            this.size = size;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * The key of an opened reader
+     */
+    private static final class ReaderKey {
+        final String granule;
+
+        ReaderKey(URL granuleUrl) {
+            this.granule = granuleUrl.toExternalForm();
+        }
+
+        @Override
+        public int hashCode() {
+            return granule.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ReaderKey && ((ReaderKey) obj).granule.equals(granule);
+        }
+    }
+
+    /**
+     * The key of a decoded tile: granule, granule version, overview level and tile index
+     */
+    static final class TileKey {
+        final String granule;
+
+        final long stamp;
+
+        final int imageIndex;
+
+        final int tileX;
+
+        final int tileY;
+
+        TileKey(String granule, long stamp, int imageIndex, int tileX, int tileY) {
+            this.granule = granule;
+            this.stamp = stamp;
+            this.imageIndex = imageIndex;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = granule.hashCode();
+            result = 31 * result + (int) (stamp ^ (stamp >>> 32));
+            result = 31 * result + imageIndex;
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return stamp == other.stamp && imageIndex == other.imageIndex
+                    && tileX == other.tileX && tileY == other.tileY
+                    && granule.equals(other.granule);
+        }
+    }
+}
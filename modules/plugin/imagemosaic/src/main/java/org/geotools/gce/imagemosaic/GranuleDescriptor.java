@@ -590,33 +590,49 @@ public class GranuleDescriptor {
 
 		ImageInputStream inStream=null;
 		ImageReader reader=null;
+		// the shared granule cache, if any, works only with direct reads as the image read
+		// operation keeps on using the reader after the granule has been loaded
+		final GranuleCache granuleCache = request.getReadType() == ReadType.DIRECT_READ
+		        && hints != null && hints.get(GranuleCache.GRANULE_CACHE) instanceof GranuleCache ?
+		        (GranuleCache) hints.get(GranuleCache.GRANULE_CACHE) : null;
+		final boolean cachedReader = granuleCache != null && cachedReaderSPI != null;
+		final long stamp = cachedReader ? GranuleCache.stamp(granuleUrl) : 0;
+		boolean readFailed = false;
 		try {
 			//
 			//get info about the raster we have to read
 			//
 			
-			// get a stream
-			inStream = Utils.getInputStream(granuleUrl);
-			if(inStream==null)
-				return null;
-	
-			// get a reader and try to cache the relevant SPI
-			if(cachedReaderSPI==null){
-				reader = ImageIOExt.getImageioReader(inStream);
-				if(reader!=null)
-					cachedReaderSPI=reader.getOriginatingProvider();
-			}
-			else
-				reader=cachedReaderSPI.createReaderInstance();
-			if(reader==null) {
-				if (LOGGER.isLoggable(java.util.logging.Level.WARNING)){
-					LOGGER.warning(new StringBuilder("Unable to get s reader for granuleDescriptor ").append(this.toString())
-					        .append(" with request ").append(request.toString()).append(" Resulting in no granule loaded: Empty result").toString());
+			if (cachedReader) {
+				// get an opened reader, possibly one that already parsed the granule header
+				reader = granuleCache.acquireReader(granuleUrl, stamp, cachedReaderSPI);
+				if (reader == null)
+					return null;
+				inStream = (ImageInputStream) reader.getInput();
+			} else {
+				// get a stream
+				inStream = Utils.getInputStream(granuleUrl);
+				if(inStream==null)
+					return null;
+		
+				// get a reader and try to cache the relevant SPI
+				if(cachedReaderSPI==null){
+					reader = ImageIOExt.getImageioReader(inStream);
+					if(reader!=null)
+						cachedReaderSPI=reader.getOriginatingProvider();
 				}
-				return null;
+				else
+					reader=cachedReaderSPI.createReaderInstance();
+				if(reader==null) {
+					if (LOGGER.isLoggable(java.util.logging.Level.WARNING)){
+						LOGGER.warning(new StringBuilder("Unable to get s reader for granuleDescriptor ").append(this.toString())
+						        .append(" with request ").append(request.toString()).append(" Resulting in no granule loaded: Empty result").toString());
+					}
+					return null;
+				}
+				// set input
+				reader.setInput(inStream);
 			}
-			// set input
-			reader.setInput(inStream);
 			
 			// Checking for heterogeneous granules
 			if (request.isHeterogeneousGranules()){
@@ -690,12 +706,17 @@ public class GranuleDescriptor {
 			
 			// set the source region
 			readParameters.setSourceRegion(sourceArea);
-			final RenderedImage raster;
+			RenderedImage raster = null;
 			try {
-				// read
-				raster= request.getReadType().read(readParameters,imageIndex, granuleUrl, selectedlevel.rasterDimensions,reader, hints,false);
+				// read, composing the cached tiles if possible
+				if (granuleCache != null && cachedReader
+				        && !CoverageUtilities.checkEmptySourceRegion(readParameters, selectedlevel.rasterDimensions))
+				        raster = granuleCache.read(granuleUrl, stamp, reader, imageIndex, readParameters);
+				if (raster == null)
+				        raster= request.getReadType().read(readParameters,imageIndex, granuleUrl, selectedlevel.rasterDimensions,reader, hints,false);
 				
 			} catch (Throwable e) {
+				readFailed = true;
 				if (LOGGER.isLoggable(java.util.logging.Level.FINE)){
 					LOGGER.log(java.util.logging.Level.FINE,
 					        "Unable to load raster for granuleDescriptor "
@@ -868,6 +889,7 @@ public class GranuleDescriptor {
 			}
 		
 		} catch (IllegalStateException e) {
+			readFailed = true;
 			if (LOGGER.isLoggable(java.util.logging.Level.WARNING)) {
 				LOGGER.log(java.util.logging.Level.WARNING, new StringBuilder("Unable to load raster for granuleDescriptor ")
 				.append(this.toString()).append(" with request ").append(request.toString()).append(" Resulting in no granule loaded: Empty result").toString(), e);
@@ -887,13 +909,20 @@ public class GranuleDescriptor {
 			return null;
 
                 } finally {
-                    try {
-                        if (inStream != null) {
-                            inStream.close();
+                    if (cachedReader) {
+                        // the stream stays open along with the reader
+                        if (reader != null) {
+                            granuleCache.releaseReader(granuleUrl, stamp, reader, readFailed);
                         }
-                    } finally {
-                        if (request.getReadType() != ReadType.JAI_IMAGEREAD && reader != null) {
-                            reader.dispose();
+                    } else {
+                        try {
+                            if (inStream != null) {
+                                inStream.close();
+                            }
+                        } finally {
+                            if (request.getReadType() != ReadType.JAI_IMAGEREAD && reader != null) {
+                                reader.dispose();
+                            }
                         }
                     }
                 }
@@ -49,6 +49,7 @@ import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.ReadScheduler;
 import org.geotools.data.DataSourceException;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.Query;
@@ -125,6 +126,14 @@ public final class ImageMosaicReader extends AbstractGridCoverage2DReader implem
 	
 	ExecutorService multiThreadedLoader = null;
 
+	/** The scheduler for the granule loading, takes precedence over the multithreaded loader */
+	ReadScheduler readScheduler;
+
+	ReadScheduler.Priority readPriority = ReadScheduler.Priority.INTERACTIVE;
+
+	/** The resource the granule reads are accounted against in the scheduler */
+	Object readResource;
+
 	String locationAttributeName="location";
 
 	RasterManager rasterManager;
@@ -181,6 +190,12 @@ public final class ImageMosaicReader extends AbstractGridCoverage2DReader implem
 	    }
 		if(this.hints.containsKey(Hints.MAX_ALLOWED_TILES))
 			this.maxAllowedTiles= ((Integer)this.hints.get(Hints.MAX_ALLOWED_TILES));		
+		if (this.hints.get(ReadScheduler.READ_SCHEDULER) instanceof ReadScheduler) {
+		    readScheduler = (ReadScheduler) this.hints.get(ReadScheduler.READ_SCHEDULER);
+		    if (this.hints.get(ReadScheduler.READ_PRIORITY) instanceof ReadScheduler.Priority)
+		        readPriority = (ReadScheduler.Priority) this.hints.get(ReadScheduler.READ_PRIORITY);
+		    readResource = this.hints.get(ReadScheduler.READ_RESOURCE);
+		}
 
 
 		// /////////////////////////////////////////////////////////////////////
@@ -193,6 +208,9 @@ public final class ImageMosaicReader extends AbstractGridCoverage2DReader implem
 		} else {
 		    initReaderFromURL(source, uHints);
 		}
+		// by default the granules of a mosaic are assumed to share the same disk
+		if (readScheduler != null && readResource == null && sourceURL != null)
+		    readResource = sourceURL.toExternalForm();
 	}
 	
 	/**
@@ -32,6 +32,7 @@ import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.util.ArrayList;
@@ -69,6 +70,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.coverage.grid.io.ReadScheduler;
 import org.geotools.data.DataSourceException;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.Query;
@@ -333,10 +335,20 @@ class RasterLayerResponse{
 		public MosaicBuilder(final RasterLayerRequest request) {
 		    this.request=request;
 		    maxNumberOfGranules=request.getMaximumNumberOfGranules();
+		    final ImageMosaicReader parent = rasterManager.parent;
+		    if (multithreadingAllowed && parent.readScheduler != null)
+		        scheduledRequest = parent.readScheduler.newRequest(parent.readPriority);
+		    else
+		        scheduledRequest = null;
+		    loadInThisThread = scheduledRequest == null && (!multithreadingAllowed || parent.multiThreadedLoader == null);
 		}
 		
 
 		private final List<Future<GranuleLoadingResult>> tasks= new ArrayList<Future<GranuleLoadingResult>>();
+		/** The scheduled granule loads, if the reader has been given a read scheduler */
+		private final ReadScheduler.Request scheduledRequest;
+		/** Whether the granules are loaded by the thread producing the mosaic */
+		private final boolean loadInThisThread;
 		private int   granulesNumber;
 		private List<ROI> rois = new ArrayList<ROI>();
 		private Color inputTransparentColor;
@@ -376,7 +388,9 @@ class RasterLayerResponse{
                     && inclusionGeometry.intersects(bb)) {
                 final GranuleLoader loader = new GranuleLoader(baseReadParameters, imageChoice,
                         mosaicBBox, finalWorldToGridCorner, granuleDescriptor, request, hints);
-                if (multithreadingAllowed && rasterManager.parent.multiThreadedLoader != null)
+                if (scheduledRequest != null)
+                    tasks.add(scheduledRequest.submit(rasterManager.parent.readResource, loader));
+                else if (!loadInThisThread)
                     tasks.add(rasterManager.parent.multiThreadedLoader.submit(loader));
                 else
                     tasks.add(new FutureTask<GranuleLoadingResult>(loader));
@@ -386,7 +400,7 @@ class RasterLayerResponse{
         }
 		
 		
-		public void produce(){
+		public void produce() throws IOException {
 			
 			// reusable parameters
 			alphaChannels = new PlanarImage[granulesNumber];
@@ -404,7 +418,7 @@ class RasterLayerResponse{
 				final GranuleLoadingResult result;
 				boolean doFiltering;
 				try {
-					if(!multithreadingAllowed || rasterManager.parent.multiThreadedLoader == null)
+					if(loadInThisThread)
 					{
 						//run the loading in this thread
 					    final FutureTask<GranuleLoadingResult> task=(FutureTask<GranuleLoadingResult>) future;
@@ -455,9 +469,16 @@ class RasterLayerResponse{
 					}					
 					
 				} catch (InterruptedException e) {
-					if(LOGGER.isLoggable(Level.SEVERE))
-						LOGGER.log(Level.SEVERE,"Unable to load the raster for granuleDescriptor " +granuleIndex,e);
-					continue;
+					// the request has been abandoned, drop the granules still queued rather
+					// than returning a partial mosaic
+					if (scheduledRequest != null)
+						scheduledRequest.cancel();
+					else
+						for (Future<GranuleLoadingResult> task : tasks)
+							task.cancel(true);
+					Thread.currentThread().interrupt();
+					throw (IOException) new InterruptedIOException(
+							"Interrupted while loading granule " + granuleIndex).initCause(e);
 				} catch (ExecutionException e) {
 					if(LOGGER.isLoggable(Level.SEVERE))
 						LOGGER.log(Level.SEVERE,"Unable to load the raster for granuleDescriptor " +granuleIndex,e);
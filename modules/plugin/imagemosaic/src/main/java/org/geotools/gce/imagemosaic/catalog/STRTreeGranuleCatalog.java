@@ -19,15 +19,13 @@ package org.geotools.gce.imagemosaic.catalog;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.Serializable;
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,7 +50,6 @@ import org.opengis.geometry.BoundingBox;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.index.ItemVisitor;
-import com.vividsolutions.jts.index.SpatialIndex;
 import com.vividsolutions.jts.index.strtree.STRtree;
 
 /**
@@ -122,7 +119,7 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 
 	}
 
-	private GranuleCatalog wrappedCatalogue;
+	private volatile GranuleCatalog wrappedCatalogue;
 	
 	public STRTreeGranuleCatalog(final Map<String,Serializable> params, DataStoreFactorySpi spi) {
 		Utilities.ensureNonNull("params",params);
@@ -160,53 +157,151 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
         this.wrappedCatalogue = catalogue;
     }
 
-    /** The {@link STRtree} index. */
-	private SoftReference<STRtree> index= new SoftReference<STRtree>(null);
+    /**
+     * The {@link STRtree} index. It is built once, kept in memory and never modified after being
+     * published, so that lookups can run concurrently without locking. Auto commit updates bump
+     * the catalogue version and rebuild the index before returning, so that the updating thread
+     * sees its own changes, while the concurrent lookups keep on using the previous index until
+     * the new one is published. Updates in a transaction mark the index as stale on commit.
+     */
+	private volatile STRtree index;
+
+	/** The version of the catalogue the index has been built from */
+	private volatile long indexVersion;
+
+	/** The version of the catalogue, incremented by each update */
+	private final AtomicLong version = new AtomicLong();
+
+	private final ReentrantLock buildLock = new ReentrantLock();
 
-	private final ReadWriteLock rwLock= new ReentrantReadWriteLock(true);
+	// statistics
+	private final AtomicLong lookups = new AtomicLong();
+
+	private final AtomicLong lookupTime = new AtomicLong();
+
+	private final AtomicLong maxLookupTime = new AtomicLong();
+
+	private final AtomicLong indexBuilds = new AtomicLong();
 
 	/**
-	 * Constructs a {@link STRTreeGranuleCatalog} out of a {@link FeatureCollection}.
-	 * @param readLock 
+	 * Returns the current index, building it if missing. Only the very first lookups wait for
+	 * the index to be built. An index older than the catalogue, which can only happen while an
+	 * update is rebuilding it, is returned as is if another thread is already building it.
 	 * 
-	 * @param features
 	 * @throws IOException
 	 */
-	private SpatialIndex getIndex(Lock readLock) throws IOException {
-		final Lock writeLock=rwLock.writeLock();
-		try{
-			// upgrade the read lock to write lock
-			readLock.unlock();
-			writeLock.lock();
-					
-			// check if the index has been cleared
-			checkStore();
-			
-			// do your thing
-			STRtree tree = index.get();
-			if (tree == null) {
-				if (LOGGER.isLoggable(Level.FINE))
-					LOGGER.fine("No index exits and we create a new one.");
-				createIndex();
-				tree = index.get();
-			} else if (LOGGER.isLoggable(Level.FINE))
-				LOGGER.fine("Index does not need to be created...");
-			
+	private STRtree getIndex() throws IOException {
+		STRtree tree = index;
+		if (tree != null && (indexVersion == version.get() || !buildLock.tryLock())) {
 			return tree;
-		}finally{
-			// get read lock again
-			readLock.lock();
-			// leave write lock
-			writeLock.unlock();
-			
 		}
+		if (tree == null) {
+			buildLock.lock();
+		}
+		try {
+			return buildIndex();
+		} finally {
+			buildLock.unlock();
+		}
+	}
 
+	/**
+	 * Builds the index if missing or older than the catalogue, to be called with the build lock
+	 * held. The index is marked as current only once built, so a failed build is retried by the
+	 * next lookup.
+	 */
+	private STRtree buildIndex() {
+		// check if the index has been cleared or built by another thread in the meantime
+		final GranuleCatalog catalogue = checkStore();
+		final long current = version.get();
+		if (index == null || indexVersion != current) {
+			if (LOGGER.isLoggable(Level.FINE))
+				LOGGER.fine("No index exits or it is stale, we create a new one.");
+			index = createIndex(catalogue);
+			indexVersion = current;
+		} else if (LOGGER.isLoggable(Level.FINE))
+			LOGGER.fine("Index does not need to be created...");
+		return index;
 	}
 
 	/**
-	 * This method shall only be called when the <code>indexLocation</code> is of protocol <code>file:</code>
+	 * Marks the index as stale after an update of the catalogue, and rebuilds it if it was
+	 * already in use. The update already happened, so a failure is just logged, the next lookup
+	 * will try again.
 	 */
-	private void createIndex() {
+	private void updated() {
+		stale();
+		buildLock.lock();
+		try {
+			if (index != null) {
+				buildIndex();
+			}
+		} catch (RuntimeException e) {
+			if (LOGGER.isLoggable(Level.WARNING))
+				LOGGER.log(Level.WARNING, "Failed to rebuild the index after an update", e);
+		} finally {
+			buildLock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the index as stale, the next lookup will rebuild it
+	 */
+	private void stale() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Marks the index as stale or rebuilds it after the granules have been added in the
+	 * provided transaction. The changes of a transaction other than
+	 * {@link Transaction#AUTO_COMMIT} are not visible before the commit, so the index is only
+	 * marked as stale once the transaction commits, the next lookup will rebuild it. The index
+	 * is not rebuilt right away, as the wrapped catalogue may commit its own changes after it.
+	 */
+	private void updated(final Transaction transaction) {
+		if (transaction == null || transaction == Transaction.AUTO_COMMIT) {
+			updated();
+		} else {
+			IndexState state = (IndexState) transaction.getState(this);
+			if (state == null) {
+				state = new IndexState();
+				transaction.putState(this, state);
+			}
+			state.changed = true;
+		}
+	}
+
+	/**
+	 * Marks the index as stale when the transaction adding granules commits
+	 */
+	private class IndexState implements Transaction.State {
+
+		/** Whether granules have been added since the last commit or rollback */
+		private volatile boolean changed;
+
+		public void setTransaction(Transaction transaction) {
+		}
+
+		public void addAuthorization(String AuthID) {
+		}
+
+		public void commit() {
+			if (changed) {
+				changed = false;
+				stale();
+			}
+		}
+
+		public void rollback() {
+			// the index has been left untouched
+			changed = false;
+		}
+	}
+
+	/**
+	 * Builds the index out of the granules of the wrapped catalogue
+	 */
+	private STRtree createIndex(GranuleCatalog catalogue) {
 		
 		Iterator<GranuleDescriptor> it=null;
 		Collection<GranuleDescriptor> features=null;
@@ -215,8 +310,8 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		// reused
 		//
 		try{
-
-			features = wrappedCatalogue.getGranules();
+			final long start = System.nanoTime();
+			features = catalogue.getGranules();
 			if (features == null) 
 				throw new NullPointerException(
 						"The provided SimpleFeatureCollection is null, it's impossible to create an index!");
@@ -224,11 +319,9 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 			if (LOGGER.isLoggable(Level.FINE))
 				LOGGER.fine("Index Loaded");
 			
-			//load the feature from the shapefile and create JTS index
+			//load the feature from the shapefile and create JTS index, an empty catalogue
+			// results in an empty index
 			it = features.iterator();
-			if (!it.hasNext()) 
-				throw new IllegalArgumentException(
-						"The provided SimpleFeatureCollection  or empty, it's impossible to create an index!");
 			
 			// now build the index
 			// TODO make it configurable as far the index is involved
@@ -242,11 +335,14 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 			}
 			
 			// force index construction --> STRTrees are build on first call to
-			// query
+			// query, we want the published tree to be read only
 			tree.build();
 			
-			// save the soft reference
-			index= new SoftReference<STRtree>(tree);
+			indexBuilds.incrementAndGet();
+			if (LOGGER.isLoggable(Level.FINE))
+				LOGGER.fine("Index with " + tree.size() + " granules built in "
+						+ (System.nanoTime() - start) / 1000000 + "ms");
+			return tree;
 		}
 		catch (Throwable e) {
 			throw new  IllegalArgumentException(e);
@@ -254,21 +350,47 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		
 	}
 
+	/**
+	 * Queries the index, keeping track of the lookup time
+	 */
+	@SuppressWarnings("unchecked")
+	private List<GranuleDescriptor> query(Envelope envelope) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			return getIndex().query(envelope);
+		} finally {
+			recordLookup(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Queries the index with a visitor, keeping track of the lookup time
+	 */
+	private void query(Envelope envelope, ItemVisitor visitor) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			getIndex().query(envelope, visitor);
+		} finally {
+			recordLookup(System.nanoTime() - start);
+		}
+	}
+
+	private void recordLookup(long elapsed) {
+		lookups.incrementAndGet();
+		lookupTime.addAndGet(elapsed);
+		long max = maxLookupTime.get();
+		while (elapsed > max && !maxLookupTime.compareAndSet(max, elapsed)) {
+			max = maxLookupTime.get();
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.geotools.gce.imagemosaic.FeatureIndex#findFeatures(com.vividsolutions.jts.geom.Envelope)
 	 */
-	@SuppressWarnings("unchecked")
 	public List<GranuleDescriptor> getGranules(final BoundingBox envelope) throws IOException {
 		Utilities.ensureNonNull("envelope",envelope);
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			
-			return getIndex(lock).query(ReferencedEnvelope.reference(envelope));
-		}finally{
-			lock.unlock();
-		}			
+		checkStore();
+		return query(ReferencedEnvelope.reference(envelope));
 	}
 	
 	/* (non-Javadoc)
@@ -277,32 +399,13 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 	public void getGranules(final BoundingBox envelope, final GranuleCatalogVisitor visitor) throws IOException {
 		Utilities.ensureNonNull("envelope",envelope);
 		Utilities.ensureNonNull("visitor",visitor);
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			
-			getIndex(lock).query(ReferencedEnvelope.reference(envelope), new JTSIndexVisitorAdapter(visitor));
-		}finally{
-			lock.unlock();
-		}				
-		
-
+		checkStore();
+		query(ReferencedEnvelope.reference(envelope), new JTSIndexVisitorAdapter(visitor));
 	}
 
 	public void dispose() {
-		final Lock l=rwLock.writeLock();
+		buildLock.lock();
 		try{
-			l.lock();
-			if(index!=null)
-                            try {
-                                index.clear();
-                            } catch (Exception e) {
-                                if (LOGGER.isLoggable(Level.FINE))
-                                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
-                            }
-	        
-			 
 			// original index
 			if(wrappedCatalogue!=null)
 			    try{
@@ -316,51 +419,88 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		}finally{
 			wrappedCatalogue=null;
 			index= null;
-			l.unlock();
-		
+			buildLock.unlock();
 		}
 		
 		
 	}
 
-	@SuppressWarnings("unchecked")
+	public void addGranule(final SimpleFeature granule, final Transaction transaction) throws IOException {
+		checkStore().addGranule(granule, transaction);
+		updated(transaction);
+	}
+
+	public void addGranules(final Collection<SimpleFeature> granules, final Transaction transaction) throws IOException {
+		checkStore().addGranules(granules, transaction);
+		updated(transaction);
+	}
+
+	public int removeGranules(final Query query) {
+		final int removed = checkStore().removeGranules(query);
+		updated();
+		return removed;
+	}
+
+	/**
+	 * The number of index lookups performed so far
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	/**
+	 * The total time spent in index lookups, in nanoseconds, including the time to build the
+	 * index when needed
+	 */
+	public long getLookupTime() {
+		return lookupTime.get();
+	}
+
+	/**
+	 * The longest index lookup, in nanoseconds
+	 */
+	public long getMaxLookupTime() {
+		return maxLookupTime.get();
+	}
+
+	/**
+	 * The number of times the index has been built
+	 */
+	public long getIndexBuilds() {
+		return indexBuilds.get();
+	}
+
 	public List<GranuleDescriptor> getGranules(Query q) throws IOException {
 		Utilities.ensureNonNull("q",q);
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			
-			// get filter and check bbox
-			final Filter filter= q.getFilter();	
-			// try to combine the index bbox with the one that may come from the query.
-			ReferencedEnvelope requestedBBox=extractAndCombineBBox(filter);
-			
-			// load what we need to load
-			final List<GranuleDescriptor> features= getIndex(lock).query(requestedBBox);
-			if(q.equals(Query.ALL))
-				return features;
-			
-			final List<GranuleDescriptor> retVal= new ArrayList<GranuleDescriptor>();
-			final int maxGranules= q.getMaxFeatures();
-			int numGranules=0;
-			for (Iterator<GranuleDescriptor> it = features.iterator();it.hasNext();)
-			{       
-			        // check how many tiles we are returning
-			        if(maxGranules>0&&numGranules>=maxGranules)
-			            break;
-				GranuleDescriptor g= it.next();
-				final SimpleFeature originator = g.getOriginator();
-				if(originator!=null&&filter.evaluate(originator))
-					retVal.add(g);
-			}
-			return retVal;
-		}finally{
-			lock.unlock();
-		}	
+		final GranuleCatalog catalogue = checkStore();
+
+		// get filter and check bbox
+		final Filter filter= q.getFilter();	
+		// try to combine the index bbox with the one that may come from the query.
+		ReferencedEnvelope requestedBBox=extractAndCombineBBox(filter, catalogue);
+		
+		// load what we need to load
+		final List<GranuleDescriptor> features= query(requestedBBox);
+		if(q.equals(Query.ALL))
+			return features;
+		
+		final List<GranuleDescriptor> retVal= new ArrayList<GranuleDescriptor>();
+		final int maxGranules= q.getMaxFeatures();
+		int numGranules=0;
+		for (Iterator<GranuleDescriptor> it = features.iterator();it.hasNext();)
+		{       
+		        // check how many tiles we are returning
+		        if(maxGranules>0&&numGranules>=maxGranules)
+		            break;
+			GranuleDescriptor g= it.next();
+			final SimpleFeature originator = g.getOriginator();
+			if(originator!=null&&filter.evaluate(originator))
+				retVal.add(g);
+		}
+		return retVal;
 	}
 
-	private ReferencedEnvelope extractAndCombineBBox(Filter filter) {
+	private ReferencedEnvelope extractAndCombineBBox(Filter filter, GranuleCatalog catalogue) {
 		// TODO extract eventual bbox from query here
 		final BBOXFilterExtractor bboxExtractor = new GTDataStoreGranuleCatalog.BBOXFilterExtractor();
 		filter.accept(bboxExtractor, null);
@@ -369,13 +509,13 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		// add eventual bbox from the underlying index to constrain search
 		if(requestedBBox!=null){
 			// intersection
-			final Envelope intersection = requestedBBox.intersection(ReferencedEnvelope.reference(wrappedCatalogue.getBounds()));
+			final Envelope intersection = requestedBBox.intersection(ReferencedEnvelope.reference(catalogue.getBounds()));
 			
 			// create intersection
-			final ReferencedEnvelope referencedEnvelope= new ReferencedEnvelope(intersection,wrappedCatalogue.getBounds().getCoordinateReferenceSystem());
+			final ReferencedEnvelope referencedEnvelope= new ReferencedEnvelope(intersection,catalogue.getBounds().getCoordinateReferenceSystem());
 		}
 		else
-			return ReferencedEnvelope.reference(wrappedCatalogue.getBounds());
+			return ReferencedEnvelope.reference(catalogue.getBounds());
 		return requestedBBox;
 	}
 
@@ -386,77 +526,41 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 	public void getGranules(Query q, GranuleCatalogVisitor visitor)
 			throws IOException {
 		Utilities.ensureNonNull("q",q);
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			
-			// get filter and check bbox
-			final Filter filter= q.getFilter();			
-			ReferencedEnvelope requestedBBox=extractAndCombineBBox(filter);
-			
-			// get filter and check bbox
-			getIndex(lock).query(requestedBBox,new JTSIndexVisitorAdapter(visitor,q));
-			
-		}finally{
-			lock.unlock();
-		}	
+		final GranuleCatalog catalogue = checkStore();
+
+		// get filter and check bbox
+		final Filter filter= q.getFilter();			
+		ReferencedEnvelope requestedBBox=extractAndCombineBBox(filter, catalogue);
+		
+		// get filter and check bbox
+		query(requestedBBox,new JTSIndexVisitorAdapter(visitor,q));
 	}
 
 	public BoundingBox getBounds() {
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			
-			return wrappedCatalogue.getBounds();
-			
-		}finally{
-			lock.unlock();
-		}			
+		return checkStore().getBounds();
 	}
 
 	/**
-	 * @throws IllegalStateException
+	 * Returns the wrapped catalogue
+	 * 
+	 * @throws IllegalStateException if the catalogue has already been disposed
 	 */
-	private void checkStore() throws IllegalStateException {
-		if(wrappedCatalogue==null)
+	private GranuleCatalog checkStore() throws IllegalStateException {
+		final GranuleCatalog catalogue = wrappedCatalogue;
+		if(catalogue==null)
 			throw new IllegalStateException("The underlying store has already been disposed!");
+		return catalogue;
 	}
 
 	public SimpleFeatureType getType() throws IOException {
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			return this.wrappedCatalogue.getType();
-		}finally{
-			lock.unlock();
-		}
+		return checkStore().getType();
 	}
 
 	public void computeAggregateFunction(Query query, FeatureCalc function) throws IOException {
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			wrappedCatalogue.computeAggregateFunction(query, function);
-		}finally{
-			lock.unlock();
-		}		
-		
+		checkStore().computeAggregateFunction(query, function);
 	}
+
 	public QueryCapabilities getQueryCapabilities() {
-		final Lock lock=rwLock.readLock();
-		try{
-			lock.lock();
-			checkStore();
-			
-			return wrappedCatalogue.getQueryCapabilities();
-		
-		}finally{
-			lock.unlock();
-		}	
+		return checkStore().getQueryCapabilities();
 	}
 }
-
@@ -0,0 +1,129 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageReaderSpi;
+
+import org.geotools.gce.imagemosaic.GranuleCache.TileKey;
+import org.geotools.test.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the eviction, pinning and statistics of the {@link GranuleCache}
+ *
+ * @source $URL$
+ */
+public class GranuleCacheTest extends Assert {
+
+    @Test
+    public void testTileEviction() {
+        // a tile of 32x32 bytes, room for three of them
+        GranuleCache cache = new GranuleCache(3 * 1024);
+        for (int i = 0; i < 3; i++) {
+            cache.putTile(new TileKey("granule", 0, 0, i, 0), newTile());
+        }
+        assertEquals(3 * 1024, cache.getSize());
+
+        // touch the first tile, the second one becomes the least recently used
+        assertNotNull(cache.getTile(new TileKey("granule", 0, 0, 0, 0)));
+        cache.putTile(new TileKey("granule", 0, 0, 3, 0), newTile());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.getTile(new TileKey("granule", 0, 0, 1, 0)));
+        assertNotNull(cache.getTile(new TileKey("granule", 0, 0, 0, 0)));
+
+        // same tile in a newer version of the granule, or in another level, is a miss
+        assertNull(cache.getTile(new TileKey("granule", 1, 0, 0, 0)));
+        assertNull(cache.getTile(new TileKey("granule", 0, 1, 0, 0)));
+
+        assertEquals(2, cache.getTileHits());
+        assertEquals(3, cache.getTileMisses());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testReaderPinning() throws IOException {
+        URL granule = TestData.url(this, "/rgb/global_mosaic_0.png");
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("png");
+        ImageReaderSpi spi = readers.next().getOriginatingProvider();
+        long stamp = GranuleCache.stamp(granule);
+
+        GranuleCache cache = new GranuleCache(GranuleCache.READER_SIZE);
+        ImageReader first = cache.acquireReader(granule, stamp, spi);
+        assertNotNull(first.getInput());
+        // the first reader is in use, a concurrent read gets its own
+        ImageReader second = cache.acquireReader(granule, stamp, spi);
+        assertNotSame(first, second);
+        // a pinned reader is not evicted to make room for tiles, the tile goes instead
+        cache.putTile(new TileKey("granule", 0, 0, 0, 0), newTile());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(GranuleCache.READER_SIZE, cache.getSize());
+
+        // the second reader is dropped, as the cache already holds one for the granule
+        cache.releaseReader(granule, stamp, second, false);
+        cache.releaseReader(granule, stamp, first, false);
+        assertNotNull(first.getInput());
+        assertEquals(0, cache.getReaderHits());
+        assertEquals(2, cache.getReaderMisses());
+
+        // the opened reader is reused
+        assertSame(first, cache.acquireReader(granule, stamp, spi));
+        assertEquals(1, cache.getReaderHits());
+        // a failed read disposes the reader
+        cache.releaseReader(granule, stamp, first, true);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testStaleReader() throws IOException {
+        URL granule = TestData.url(this, "/rgb/global_mosaic_0.png");
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("png");
+        ImageReaderSpi spi = readers.next().getOriginatingProvider();
+        long stamp = GranuleCache.stamp(granule);
+
+        GranuleCache cache = new GranuleCache(GranuleCache.READER_SIZE);
+        ImageReader first = cache.acquireReader(granule, stamp, spi);
+        cache.releaseReader(granule, stamp, first, false);
+
+        // the granule has been modified, the cached reader must not be handed out
+        ImageReader second = cache.acquireReader(granule, stamp + 1, spi);
+        assertNotSame(first, second);
+        assertEquals(0, cache.getReaderHits());
+        assertEquals(2, cache.getReaderMisses());
+        assertEquals(GranuleCache.READER_SIZE, cache.getSize());
+
+        // while the new one is
+        cache.releaseReader(granule, stamp + 1, second, false);
+        assertSame(second, cache.acquireReader(granule, stamp + 1, spi));
+        assertEquals(1, cache.getReaderHits());
+        cache.releaseReader(granule, stamp + 1, second, true);
+        assertEquals(0, cache.getSize());
+    }
+
+    private BufferedImage newTile() {
+        return new BufferedImage(32, 32, BufferedImage.TYPE_BYTE_GRAY);
+    }
+}
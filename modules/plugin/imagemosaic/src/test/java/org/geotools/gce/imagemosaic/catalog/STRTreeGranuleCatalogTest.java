@@ -0,0 +1,308 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+import javax.imageio.spi.ImageReaderSpi;
+
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.gce.imagemosaic.PathType;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.test.TestData;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.geometry.BoundingBox;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Checks the {@link STRTreeGranuleCatalog} index follows the updates of the catalogue it wraps,
+ * also while being queried concurrently
+ *
+ * @source $URL$
+ */
+public class STRTreeGranuleCatalogTest extends Assert {
+
+    static final ReferencedEnvelope WORLD = new ReferencedEnvelope(-180, 180, -90, 90,
+            DefaultGeographicCRS.WGS84);
+
+    FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    SimpleFeatureType type;
+
+    ImageReaderSpi spi;
+
+    File granule;
+
+    MemoryGranuleCatalog memory;
+
+    STRTreeGranuleCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("granules");
+        tb.setCRS(DefaultGeographicCRS.WGS84);
+        tb.add("the_geom", Polygon.class);
+        tb.add("location", String.class);
+        type = tb.buildFeatureType();
+        spi = ImageIO.getImageReadersByFormatName("png").next().getOriginatingProvider();
+        granule = TestData.file(GranuleDescriptor.class, "rgb/global_mosaic_0.png");
+
+        memory = new MemoryGranuleCatalog();
+        catalog = new STRTreeGranuleCatalog(memory);
+    }
+
+    /**
+     * A granule covering the 1x1 degree cell starting at i,0
+     */
+    SimpleFeature granule(int i) {
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        fb.add(JTS.toGeometry(new Envelope(i, i + 1, 0, 1)));
+        fb.add(granule.getAbsolutePath());
+        return fb.buildFeature("granules." + i);
+    }
+
+    List<SimpleFeature> granules(int from, int to) {
+        List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+        for (int i = from; i < to; i++) {
+            result.add(granule(i));
+        }
+        return result;
+    }
+
+    int count() throws IOException {
+        return catalog.getGranules(WORLD).size();
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        // an empty catalogue is an empty index, not an error
+        assertEquals(0, count());
+        assertEquals(1, catalog.getIndexBuilds());
+
+        // the updating thread sees its own changes right away
+        catalog.addGranule(granule(0), Transaction.AUTO_COMMIT);
+        assertEquals(1, count());
+        catalog.addGranules(granules(1, 4), Transaction.AUTO_COMMIT);
+        assertEquals(4, count());
+        assertEquals(1, catalog.getGranules(new ReferencedEnvelope(2.2, 2.8, 0.2, 0.8,
+                DefaultGeographicCRS.WGS84)).size());
+
+        Query query = new Query("granules", ff.id(Collections.singleton(ff
+                .featureId("granules.2"))));
+        assertEquals(1, catalog.removeGranules(query));
+        assertEquals(3, count());
+        assertEquals(0, catalog.getGranules(new ReferencedEnvelope(2.2, 2.8, 0.2, 0.8,
+                DefaultGeographicCRS.WGS84)).size());
+
+        assertEquals(3, catalog.removeGranules(Query.ALL));
+        assertEquals(0, count());
+        assertEquals(5, catalog.getIndexBuilds());
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        assertEquals(0, count());
+
+        Transaction transaction = new DefaultTransaction();
+        try {
+            // the index follows the commits, not the writes
+            catalog.addGranule(granule(0), transaction);
+            catalog.addGranules(granules(1, 4), transaction);
+            assertEquals(0, count());
+            transaction.rollback();
+            assertEquals(0, count());
+
+            catalog.addGranules(granules(0, 4), transaction);
+            assertEquals(0, count());
+            transaction.commit();
+            assertEquals(4, count());
+
+            // no rebuild without changes
+            long builds = catalog.getIndexBuilds();
+            transaction.commit();
+            assertEquals(4, count());
+            assertEquals(builds, catalog.getIndexBuilds());
+        } finally {
+            transaction.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        catalog.addGranules(granules(0, 8), Transaction.AUTO_COMMIT);
+        assertEquals(8, count());
+
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        int lookups = 0;
+                        while (!done.get()) {
+                            // each lookup sees either the old or the new index, never a mix
+                            int count = count();
+                            assertTrue("Unexpected granule count " + count, count == 8
+                                    || count == 9);
+                            lookups++;
+                        }
+                        return lookups;
+                    }
+                }));
+            }
+            Query query = new Query("granules", ff.id(Collections.singleton(ff
+                    .featureId("granules.8"))));
+            for (int i = 0; i < 50; i++) {
+                catalog.addGranule(granule(8), Transaction.AUTO_COMMIT);
+                assertEquals(9, count());
+                assertEquals(1, catalog.removeGranules(query));
+                assertEquals(8, count());
+            }
+            done.set(true);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() > 0);
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A catalogue keeping its granules in memory
+     */
+    class MemoryGranuleCatalog extends AbstractGranuleCatalog {
+
+        final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+
+        public synchronized void addGranule(SimpleFeature granule, Transaction transaction) {
+            GranuleDescriptor descriptor = new GranuleDescriptor(granule, spi,
+                    PathType.ABSOLUTE, "location", null);
+            if (transaction == Transaction.AUTO_COMMIT) {
+                granules.add(descriptor);
+                return;
+            }
+            PendingGranules pending = (PendingGranules) transaction.getState(this);
+            if (pending == null) {
+                pending = new PendingGranules();
+                transaction.putState(this, pending);
+            }
+            pending.granules.add(descriptor);
+        }
+
+        public void addGranules(Collection<SimpleFeature> granules, Transaction transaction) {
+            for (SimpleFeature granule : granules) {
+                addGranule(granule, transaction);
+            }
+        }
+
+        public synchronized int removeGranules(Query query) {
+            int removed = 0;
+            for (Iterator<GranuleDescriptor> it = granules.iterator(); it.hasNext();) {
+                if (query.getFilter().evaluate(it.next().getOriginator())) {
+                    it.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return WORLD;
+        }
+
+        @Override
+        public synchronized Collection<GranuleDescriptor> getGranules() {
+            return new ArrayList<GranuleDescriptor>(granules);
+        }
+
+        @Override
+        public Collection<GranuleDescriptor> getGranules(BoundingBox envelope) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<GranuleDescriptor> getGranules(Query q) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getGranules(BoundingBox envelope, GranuleCatalogVisitor visitor) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getGranules(Query q, GranuleCatalogVisitor visitor) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * The granules added in a transaction, published on commit
+         */
+        class PendingGranules implements Transaction.State {
+
+            final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+
+            public void setTransaction(Transaction transaction) {
+            }
+
+            public void addAuthorization(String AuthID) {
+            }
+
+            public void commit() {
+                synchronized (MemoryGranuleCatalog.this) {
+                    MemoryGranuleCatalog.this.granules.addAll(granules);
+                }
+                granules.clear();
+            }
+
+            public void rollback() {
+                granules.clear();
+            }
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.coverage.grid.io.OverviewPolicy;
+import org.geotools.coverage.grid.io.ReadScheduler;
 import org.geotools.data.DataSourceException;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.PrjFileReader;
@@ -181,6 +182,11 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 		if(sourceURL == null) {
 		    throw new IllegalArgumentException("This plugin accepts only File, URL and String pointing to a file");
 		} 
+		// the levels of the pyramid share the same disk, have the scheduler limit them as a whole
+		if (this.hints.containsKey(ReadScheduler.READ_SCHEDULER)
+		        && !this.hints.containsKey(ReadScheduler.READ_RESOURCE)) {
+		    this.hints.put(ReadScheduler.READ_RESOURCE, sourceURL.toExternalForm());
+		}
 		
 		// //
 		// //
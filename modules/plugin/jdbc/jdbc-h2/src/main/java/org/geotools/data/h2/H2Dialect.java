@@ -35,6 +35,7 @@ import java.util.logging.Level;
 import org.geotools.geometry.jts.Geometries;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.SQLDialect;
+import org.geotools.jdbc.WKBGeometryCodec;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
@@ -53,8 +54,6 @@ import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.io.ParseException;
-import com.vividsolutions.jts.io.WKBReader;
 import com.vividsolutions.jts.io.WKTWriter;
 
 /**
@@ -360,17 +359,7 @@ public class H2Dialect extends SQLDialect {
 
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs, String column,
         GeometryFactory factory, Connection cx ) throws IOException, SQLException {
-        byte[] bytes = rs.getBytes(column);
-
-        if (bytes == null) {
-            return null;
-        }
-
-        try {
-            return new WKBReader(factory).read(bytes);
-        } catch (ParseException e) {
-            throw (IOException) new IOException().initCause(e);
-        }
+        return WKBGeometryCodec.get(factory).read(rs, column, WKBGeometryCodec.Encoding.BINARY);
 
         //return JTS.geometryFromBytes( bytes );
     }
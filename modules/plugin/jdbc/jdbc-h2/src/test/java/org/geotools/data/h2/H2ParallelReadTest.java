@@ -0,0 +1,162 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.h2;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.BitSet;
+
+import junit.textui.TestRunner;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.factory.Hints;
+import org.geotools.jdbc.JDBCParallelFeatureReader;
+import org.geotools.jdbc.JDBCTestSetup;
+import org.geotools.jdbc.JDBCTestSupport;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Checks the parallel read of a table split in primary key ranges. Run {@link #main(String[])}
+ * to compare the sequential and parallel read times.
+ *
+ * @source $URL$
+ */
+public class H2ParallelReadTest extends JDBCTestSupport {
+
+    int features = 1000;
+
+    static final int PARTITIONS = 4;
+
+    @Override
+    protected JDBCTestSetup createTestSetup() {
+        return new H2TestSetup();
+    }
+
+    @Override
+    protected void connect() throws Exception {
+        super.connect();
+
+        Connection cx = dataStore.getDataSource().getConnection();
+        Statement st = cx.createStatement();
+        try {
+            st.execute("DROP TABLE IF EXISTS \"geotools\".\"bench\"");
+            st.execute("CREATE TABLE \"geotools\".\"bench\" (\"id\" int PRIMARY KEY, "
+                    + "\"geometry\" POLYGON, \"intProperty\" int)");
+            st.execute("CALL AddGeometryColumn('geotools', 'bench', 'geometry', 4326, 'POLYGON', 2)");
+            st.execute("INSERT INTO \"geotools\".\"bench\" SELECT X, ST_GeomFromText("
+                    + "'POLYGON((' || X || ' 0, ' || (X + 1) || ' 0, ' || (X + 1) || ' 1, ' "
+                    + "|| X || ' 1, ' || X || ' 0))', 4326), MOD(X, 10) "
+                    + "FROM SYSTEM_RANGE(1, " + features + ")");
+        } finally {
+            dataStore.closeSafe(st);
+            dataStore.closeSafe(cx);
+        }
+    }
+
+    @Override
+    protected void disconnect() throws Exception {
+        Connection cx = dataStore.getDataSource().getConnection();
+        Statement st = cx.createStatement();
+        try {
+            st.execute("DROP TABLE \"geotools\".\"bench\"");
+            st.execute("DELETE FROM geometry_columns WHERE f_table_name = 'bench'");
+        } finally {
+            dataStore.closeSafe(st);
+            dataStore.closeSafe(cx);
+        }
+        super.disconnect();
+    }
+
+    public void testParallelRead() throws Exception {
+        ContentFeatureSource fs = dataStore.getFeatureSource(tname("bench"));
+        Query query = new Query(tname("bench"));
+        query.setHints(new Hints(Hints.PARALLEL_READ_PARTITIONS, PARTITIONS));
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = fs.getReader(query);
+        try {
+            // the key range is split in as many partitions as requested
+            assertTrue(reader instanceof JDBCParallelFeatureReader);
+            assertEquals(PARTITIONS, ((JDBCParallelFeatureReader) reader).getPartitions());
+
+            // each feature is read exactly once
+            BitSet ids = new BitSet();
+            while (reader.hasNext()) {
+                SimpleFeature f = reader.next();
+                assertNotNull(f.getDefaultGeometry());
+                int id = Integer.parseInt(f.getID().substring(f.getID().lastIndexOf('.') + 1));
+                assertFalse(ids.get(id));
+                ids.set(id);
+            }
+            assertEquals(features, ids.cardinality());
+        } finally {
+            reader.close();
+        }
+    }
+
+    int read(ContentFeatureSource fs, Query query) throws Exception {
+        int count = 0;
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = fs.getReader(query);
+        try {
+            while (reader.hasNext()) {
+                reader.next().getDefaultGeometry();
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Compares the sequential and parallel read times, run through {@link #main(String[])}
+     */
+    public void benchmark() throws Exception {
+        ContentFeatureSource fs = dataStore.getFeatureSource(tname("bench"));
+        Query sequential = new Query(tname("bench"));
+        Query parallel = new Query(tname("bench"));
+        parallel.setHints(new Hints(Hints.PARALLEL_READ_PARTITIONS, PARTITIONS));
+
+        // warm up
+        read(fs, sequential);
+        read(fs, parallel);
+
+        long start = System.currentTimeMillis();
+        read(fs, sequential);
+        long sequentialTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        read(fs, parallel);
+        long parallelTime = System.currentTimeMillis() - start;
+
+        System.out.println("Read " + features + " features, sequential: " + sequentialTime
+                + "ms, parallel (" + PARTITIONS + " partitions): " + parallelTime + "ms");
+    }
+
+    /**
+     * Runs the benchmark over a table large enough for the geometry decoding to dominate the
+     * read time. The number of features can be set with the first argument.
+     */
+    public static void main(String[] args) throws Exception {
+        H2ParallelReadTest test = new H2ParallelReadTest();
+        test.setName("benchmark");
+        test.features = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        TestRunner.run(test);
+    }
+}
@@ -29,6 +29,7 @@ import java.util.logging.Level;
 import org.geotools.geometry.jts.Geometries;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.SQLDialect;
+import org.geotools.jdbc.WKBGeometryCodec;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
@@ -254,16 +255,7 @@ public class MySQLDialect extends SQLDialect {
 
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs, String name,
         GeometryFactory factory, Connection cx ) throws IOException, SQLException {
-        byte[] bytes = rs.getBytes(name);
-        if ( bytes == null ) {
-            return null;
-        }
-        try {
-            return new WKBReader(factory).read(bytes);
-        } catch (ParseException e) {
-            String msg = "Error decoding wkb";
-            throw (IOException) new IOException(msg).initCause(e);
-        }
+        return WKBGeometryCodec.get(factory).read(rs, name, WKBGeometryCodec.Encoding.BINARY);
     }
 
     public void registerClassToSqlMappings(Map<Class<?>, Integer> mappings) {
@@ -26,6 +26,7 @@ import java.util.Map;
 
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.PreparedStatementSQLDialect;
+import org.geotools.jdbc.WKBGeometryCodec;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
@@ -33,7 +34,6 @@ import org.opengis.feature.type.GeometryDescriptor;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.io.WKBWriter;
 
 /**
  * MySQL database dialect based on prepared statements.
@@ -194,7 +194,7 @@ public class MySQLDialectPrepared extends PreparedStatementSQLDialect {
     public void setGeometryValue(Geometry g, int srid, Class binding,
             PreparedStatement ps, int column) throws SQLException {
         if ( g != null ) {
-            ps.setBytes( column, new WKBWriter().write( g ) );
+            ps.setBytes( column, WKBGeometryCodec.get().encode( g, 2 ) );
             //ps.setString( column, g.toText() );
         }
         else {
@@ -0,0 +1,457 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.Transaction;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
+import org.geotools.data.jdbc.datasource.UnWrapper;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PrimaryKeyColumn;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Bulk loads features into a PostGIS table using the PostgreSQL COPY protocol, bypassing
+ * the per feature INSERT statements issued by the feature writers.
+ * <p>
+ * Features are encoded in the COPY text format, with geometries as hex encoded EWKB, in
+ * chunks of {@link #getChunkSize()} rows. Encoding happens on the calling thread while a
+ * worker thread transmits the previously encoded chunk to the server.
+ * </p>
+ * <p>
+ * The primary key columns are not part of the copied data, the table must be able to
+ * generate them on its own (e.g. serial columns or columns defaulting to a sequence).
+ * Features loaded this way are not reported to the feature listeners.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class PostGISCopyLoader {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(PostGISCopyLoader.class);
+
+    /**
+     * Marks the end of the chunk stream
+     */
+    static final byte[] END = new byte[0];
+
+    static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Seconds to wait for the transmitter to stop before cancelling the copy operation
+     */
+    static final long STOP_TIMEOUT = 30;
+
+    JDBCDataStore dataStore;
+
+    SimpleFeatureType featureType;
+
+    String copySQL;
+
+    /**
+     * The attributes making up a row, in copy order
+     */
+    List<AttributeDescriptor> attributes = new ArrayList<AttributeDescriptor>();
+
+    int chunkSize = 1000;
+
+    WKBWriter writer2D = new WKBWriter(2, true);
+
+    WKBWriter writer3D = new WKBWriter(3, true);
+
+    /**
+     * Creates a loader for the specified table of a PostGIS data store
+     * @param dataStore
+     * @param typeName
+     * @throws IOException
+     */
+    public PostGISCopyLoader(JDBCDataStore dataStore, String typeName) throws IOException {
+        if(!(dataStore.getSQLDialect() instanceof PostGISDialect
+                || dataStore.getSQLDialect() instanceof PostGISPSDialect)) {
+            throw new IllegalArgumentException("The data store is not a PostGIS one");
+        }
+        if(dataStore.getVirtualTables().containsKey(typeName)) {
+            throw new IllegalArgumentException("Cannot load data into virtual table " + typeName);
+        }
+
+        this.dataStore = dataStore;
+
+        Set<String> keyColumns = new HashSet<String>();
+        for (PrimaryKeyColumn col : dataStore.getAbsoluteFeatureSource(typeName).getPrimaryKey().getColumns()) {
+            keyColumns.add(col.getName());
+        }
+        init(dataStore.getSchema(typeName), keyColumns);
+    }
+
+    /**
+     * Creates a loader that is not bound to a data store, used for testing
+     */
+    PostGISCopyLoader(SimpleFeatureType featureType, Collection<String> keyColumns) {
+        init(featureType, keyColumns);
+    }
+
+    void init(SimpleFeatureType featureType, Collection<String> keyColumns) {
+        this.featureType = featureType;
+
+        StringBuffer sql = new StringBuffer("COPY ");
+        if(dataStore != null) {
+            if(dataStore.getDatabaseSchema() != null) {
+                dataStore.getSQLDialect().encodeSchemaName(dataStore.getDatabaseSchema(), sql);
+                sql.append(".");
+            }
+            dataStore.getSQLDialect().encodeTableName(featureType.getTypeName(), sql);
+        } else {
+            sql.append("\"").append(featureType.getTypeName()).append("\"");
+        }
+        sql.append(" (");
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            // the primary key values are generated by the database
+            if(keyColumns.contains(att.getLocalName())) {
+                continue;
+            }
+            attributes.add(att);
+            if(dataStore != null) {
+                dataStore.getSQLDialect().encodeColumnName(att.getLocalName(), sql);
+            } else {
+                sql.append("\"").append(att.getLocalName()).append("\"");
+            }
+            sql.append(",");
+        }
+        sql.setLength(sql.length() - 1);
+        sql.append(") FROM STDIN");
+
+        this.copySQL = sql.toString();
+    }
+
+    /**
+     * The number of rows encoded and transmitted in a single chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of rows encoded and transmitted in a single chunk
+     * @param chunkSize
+     */
+    public void setChunkSize(int chunkSize) {
+        if(chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * The COPY statement used to load the data
+     */
+    public String getCopySQL() {
+        return copySQL;
+    }
+
+    /**
+     * Loads the features into the table. If the transaction is not
+     * {@link Transaction#AUTO_COMMIT} the data will be visible only after the transaction
+     * is committed.
+     *
+     * @param features
+     * @param transaction
+     * @return The number of loaded rows
+     * @throws IOException
+     */
+    public long load(SimpleFeatureCollection features, Transaction transaction) throws IOException {
+        if(dataStore == null) {
+            throw new IllegalStateException("This loader is not bound to a data store");
+        }
+
+        Connection cx = dataStore.getConnection(transaction);
+        try {
+            CopyIn copy = unwrapConnection(cx).getCopyAPI().copyIn(copySQL);
+            SimpleFeatureIterator fi = features.features();
+            try {
+                return load(fi, copy);
+            } finally {
+                fi.close();
+            }
+        } catch(SQLException e) {
+            throw (IOException) new IOException("Failed to bulk load features").initCause(e);
+        } finally {
+            if(transaction == Transaction.AUTO_COMMIT) {
+                dataStore.closeSafe(cx);
+            }
+        }
+    }
+
+    /**
+     * Encodes the features in chunks and hands them over to a worker thread that writes
+     * them into the copy operation
+     */
+    long load(SimpleFeatureIterator features, final CopyIn copy) throws IOException, SQLException {
+        final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(2);
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PostGISCopyLoader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        Future<Long> transmitter = null;
+        try {
+            transmitter = executor.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    byte[] chunk;
+                    while((chunk = chunks.take()) != END) {
+                        copy.writeToCopy(chunk, 0, chunk.length);
+                    }
+                    return copy.endCopy();
+                }
+            });
+
+            StringBuilder sb = new StringBuilder();
+            int rows = 0;
+            while(features.hasNext()) {
+                encode(features.next(), sb);
+                if(++rows == chunkSize) {
+                    put(chunks, toBytes(sb), transmitter);
+                    sb.setLength(0);
+                    rows = 0;
+                }
+            }
+            if(rows > 0) {
+                put(chunks, toBytes(sb), transmitter);
+            }
+            put(chunks, END, transmitter);
+
+            long count = transmitter.get();
+            if(LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Copied " + count + " rows into " + featureType.getTypeName());
+            }
+            return count;
+        } catch(InterruptedException e) {
+            stop(transmitter, executor);
+            cancel(copy);
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted while loading features").initCause(e);
+        } catch(ExecutionException e) {
+            cancel(copy);
+            Throwable cause = e.getCause();
+            if(cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw (IOException) new IOException("Failed to bulk load features").initCause(cause);
+        } catch(RuntimeException e) {
+            stop(transmitter, executor);
+            cancel(copy);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a chunk, checking the transmitter is still alive while waiting
+     */
+    void put(BlockingQueue<byte[]> chunks, byte[] chunk, Future<Long> transmitter)
+        throws InterruptedException, ExecutionException {
+        while(!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+            if(transmitter.isDone()) {
+                // this will throw the transmitter exception, if any
+                transmitter.get();
+                throw new IllegalStateException("The copy operation ended unexpectedly");
+            }
+        }
+    }
+
+    /**
+     * Stops the transmitter and waits for it to exit, the copy operation cannot be cancelled
+     * while another thread is still writing into it
+     */
+    void stop(Future<Long> transmitter, ExecutorService executor) {
+        if(transmitter != null) {
+            // interrupts the wait for the next chunk, a chunk being written is completed first
+            transmitter.cancel(true);
+        }
+        executor.shutdown();
+        try {
+            if(!executor.awaitTermination(STOP_TIMEOUT, TimeUnit.SECONDS)) {
+                LOGGER.warning("The copy transmitter did not stop in " + STOP_TIMEOUT + " seconds");
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void cancel(CopyIn copy) {
+        try {
+            if(copy.isActive()) {
+                copy.cancelCopy();
+            }
+        } catch(SQLException e) {
+            LOGGER.log(Level.FINE, "Failed to cancel the copy operation", e);
+        }
+    }
+
+    byte[] toBytes(StringBuilder sb) {
+        try {
+            return sb.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // cannot happen, UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encodes a feature as a row in the COPY text format
+     */
+    void encode(SimpleFeature feature, StringBuilder sb) {
+        for (int i = 0; i < attributes.size(); i++) {
+            if(i > 0) {
+                sb.append('\t');
+            }
+
+            AttributeDescriptor att = attributes.get(i);
+            Object value = feature.getAttribute(att.getLocalName());
+            if(value == null) {
+                sb.append("\\N");
+            } else if(value instanceof Geometry) {
+                encodeGeometry((Geometry) value, (GeometryDescriptor) att, sb);
+            } else if(value instanceof Boolean) {
+                sb.append(((Boolean) value).booleanValue() ? 't' : 'f');
+            } else if(value instanceof byte[]) {
+                // bytea escape format, the backslash gets doubled by the copy escaping
+                for (byte b : (byte[]) value) {
+                    String octal = Integer.toOctalString(b & 0xFF);
+                    sb.append("\\\\");
+                    for(int j = octal.length(); j < 3; j++) {
+                        sb.append('0');
+                    }
+                    sb.append(octal);
+                }
+            } else if(value instanceof Date && !(value instanceof java.sql.Date
+                    || value instanceof java.sql.Time || value instanceof Timestamp)) {
+                sb.append(new Timestamp(((Date) value).getTime()).toString());
+            } else {
+                escape(value.toString(), sb);
+            }
+        }
+        sb.append('\n');
+    }
+
+    void encodeGeometry(Geometry g, GeometryDescriptor descriptor, StringBuilder sb) {
+        if (g instanceof LinearRing) {
+            //postgis does not handle linear rings, convert to just a line string
+            g = g.getFactory().createLineString(((LinearRing) g).getCoordinateSequence());
+        }
+
+        int srid = g.getSRID();
+        if(srid <= 0) {
+            Integer nativeSrid = (Integer) descriptor.getUserData().get(JDBCDataStore.JDBC_NATIVE_SRID);
+            if(nativeSrid != null && nativeSrid > 0) {
+                // do not alter the user geometry, copy it before setting the srid
+                g = (Geometry) g.clone();
+                g.setSRID(nativeSrid);
+            }
+        }
+
+        Coordinate c = g.getCoordinate();
+        WKBWriter writer = c != null && !Double.isNaN(c.z) ? writer3D : writer2D;
+        byte[] wkb = writer.write(g);
+        for (byte b : wkb) {
+            sb.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+    }
+
+    /**
+     * Escapes the characters that have a special meaning in the COPY text format
+     */
+    void escape(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    PGConnection unwrapConnection(Connection cx) throws SQLException {
+        if(cx instanceof PGConnection) {
+            return (PGConnection) cx;
+        }
+
+        try {
+            UnWrapper uw = DataSourceFinder.getUnWrapper(cx);
+            if(uw != null) {
+                Connection uwcx = uw.unwrap(cx);
+                if(uwcx instanceof PGConnection) {
+                    return (PGConnection) uwcx;
+                }
+            }
+        } catch(IOException e) {
+            throw (SQLException) new SQLException(
+                    "Could not obtain native PostgreSQL connection.").initCause(e);
+        }
+
+        throw new SQLException("Could not obtain native PostgreSQL connection for " + cx.getClass());
+    }
+}
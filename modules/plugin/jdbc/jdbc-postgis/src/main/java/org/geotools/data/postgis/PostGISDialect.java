@@ -29,14 +29,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
 import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.ColumnMetadata;
 import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.WKBGeometryCodec;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Version;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -157,49 +160,52 @@ public class PostGISDialect extends BasicSQLDialect {
         return true;
     }
 
-    ThreadLocal<WKBAttributeIO> wkbReader = new ThreadLocal<WKBAttributeIO>();
-
     @Override
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor,
             ResultSet rs, String column, GeometryFactory factory, Connection cx)
             throws IOException, SQLException {
-        WKBAttributeIO reader = getWKBReader(factory);
-        
-        return (Geometry) reader.read(rs, column);
+        return WKBGeometryCodec.get(factory).read(rs, column, WKBGeometryCodec.Encoding.BASE64);
     }
     
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor,
             ResultSet rs, int column, GeometryFactory factory, Connection cx)
             throws IOException, SQLException {
-        WKBAttributeIO reader = getWKBReader(factory);
-        
-        return (Geometry) reader.read(rs, column);
+        return WKBGeometryCodec.get(factory).read(rs, column, WKBGeometryCodec.Encoding.BASE64);
     }
 
-    private WKBAttributeIO getWKBReader(GeometryFactory factory) {
-        WKBAttributeIO reader = wkbReader.get();
-        if(reader == null) {
-            reader = new WKBAttributeIO(factory);
-            wkbReader.set(reader);
-        }  else {
-            reader.setGeometryFactory(factory);
-        }
-        return reader;
+    @Override
+    protected void addSupportedHints(Set<Hints.Key> hints) {
+        // simplifying on the server side reduces the amount of WKB moved over the wire
+        hints.add(Hints.GEOMETRY_SIMPLIFICATION);
     }
 
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, String prefix, int srid,
             StringBuffer sql) {
+        encodeGeometryColumnSimplified(gatt, prefix, srid, sql, null);
+    }
+
+    @Override
+    public void encodeGeometryColumnSimplified(GeometryDescriptor gatt, String prefix, int srid,
+            StringBuffer sql, Double distance) {
         
         boolean geography = "geography".equals(gatt.getUserData().get(JDBCDataStore.JDBC_NATIVE_TYPENAME));
+        // geography has no simplification function
+        boolean simplify = distance != null && !geography;
         
         sql.append("encode(");
         sql.append("ST_AsBinary(");
         if (!geography) {
             sql.append("ST_Force_2D(");
         }
+        if (simplify) {
+            sql.append("ST_SimplifyPreserveTopology(");
+        }
         
         encodeColumnName(prefix, gatt.getLocalName(), sql);
+        if (simplify) {
+            sql.append(", ").append(distance).append(")");
+        }
         if (!geography) {
             sql.append(")");
         }
@@ -42,7 +42,10 @@ import com.vividsolutions.jts.io.WKBWriter;
  *
  * @source $URL$
  * @since 2.4.1
+ * @deprecated the dialect decodes the geometries with {@link org.geotools.jdbc.WKBGeometryCodec},
+ *             this class is no longer used and will be removed
  */
+@Deprecated
 public class WKBAttributeIO {
     WKBReader wkbr;
     ByteArrayInStream inStream = new ByteArrayInStream(new byte[0]);
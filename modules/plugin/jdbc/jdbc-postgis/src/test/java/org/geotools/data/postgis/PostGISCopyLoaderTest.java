@@ -0,0 +1,227 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollections;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.postgresql.copy.CopyIn;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKBReader;
+
+/**
+ * Checks the COPY encoding against a stub copy operation, no database needed
+ *
+ * @source $URL$
+ */
+public class PostGISCopyLoaderTest extends TestCase {
+
+    SimpleFeatureType featureType;
+
+    protected void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("roads");
+        tb.add("fid", Integer.class);
+        tb.add("geom", Point.class);
+        tb.add("name", String.class);
+        tb.add("lanes", Integer.class);
+        featureType = tb.buildFeatureType();
+        featureType.getDescriptor("geom").getUserData().put(JDBCDataStore.JDBC_NATIVE_SRID, 4326);
+    }
+
+    public void testCopySQL() {
+        PostGISCopyLoader loader = new PostGISCopyLoader(featureType, Collections.singleton("fid"));
+        assertEquals("COPY \"roads\" (\"geom\",\"name\",\"lanes\") FROM STDIN", loader.getCopySQL());
+    }
+
+    public void testLoad() throws Exception {
+        SimpleFeatureCollection features = FeatureCollections.newCollection();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(featureType);
+        GeometryFactory gf = new GeometryFactory();
+        for (int i = 0; i < 5; i++) {
+            fb.add(i);
+            fb.add(gf.createPoint(new Coordinate(i, i)));
+            fb.add(i == 2 ? null : "road\t" + i);
+            fb.add(i);
+            features.add(fb.buildFeature(null));
+        }
+
+        PostGISCopyLoader loader = new PostGISCopyLoader(featureType, Collections.singleton("fid"));
+        loader.setChunkSize(2);
+        StubCopyIn copy = new StubCopyIn();
+        assertEquals(5, loader.load(features.features(), copy));
+        assertEquals(3, copy.writes);
+
+        String[] rows = copy.out.toString("UTF-8").split("\n");
+        assertEquals(5, rows.length);
+        for (String row : rows) {
+            String[] values = row.split("\t");
+            assertEquals(3, values.length);
+            int i = Integer.parseInt(values[2]);
+            Point p = (Point) new WKBReader().read(WKBReader.hexToBytes(values[0]));
+            assertEquals(4326, p.getSRID());
+            assertEquals(new Coordinate(i, i), p.getCoordinate());
+            assertEquals(i == 2 ? "\\N" : "road\\t" + i, values[1]);
+        }
+    }
+
+    public void testFailingCopy() throws Exception {
+        SimpleFeatureCollection features = FeatureCollections.newCollection();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(featureType);
+        for (int i = 0; i < 10; i++) {
+            features.add(fb.buildFeature(null));
+        }
+
+        PostGISCopyLoader loader = new PostGISCopyLoader(featureType, Collections.singleton("fid"));
+        loader.setChunkSize(1);
+        StubCopyIn copy = new StubCopyIn() {
+            public void writeToCopy(byte[] buf, int off, int siz) throws SQLException {
+                throw new SQLException("Connection lost");
+            }
+        };
+        try {
+            loader.load(features.features(), copy);
+            fail("Should have failed");
+        } catch (SQLException e) {
+            assertEquals("Connection lost", e.getMessage());
+        }
+        assertTrue(copy.cancelled);
+    }
+
+    public void testFailingFeatures() throws Exception {
+        final SimpleFeatureCollection features = FeatureCollections.newCollection();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(featureType);
+        for (int i = 0; i < 10; i++) {
+            features.add(fb.buildFeature(null));
+        }
+        SimpleFeatureIterator fi = new SimpleFeatureIterator() {
+            SimpleFeatureIterator delegate = features.features();
+
+            int read;
+
+            public boolean hasNext() {
+                return delegate.hasNext();
+            }
+
+            public SimpleFeature next() {
+                if (++read == 5) {
+                    throw new IllegalStateException("Broken feature");
+                }
+                return delegate.next();
+            }
+
+            public void close() {
+                delegate.close();
+            }
+        };
+
+        PostGISCopyLoader loader = new PostGISCopyLoader(featureType, Collections.singleton("fid"));
+        loader.setChunkSize(1);
+        // a slow write, still in progress when the features fail
+        final AtomicBoolean writing = new AtomicBoolean();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        StubCopyIn copy = new StubCopyIn() {
+            public void writeToCopy(byte[] buf, int off, int siz) throws SQLException {
+                writing.set(true);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // not interruptible, as a socket write, but keeps the interrupt flag
+                    Thread.currentThread().interrupt();
+                }
+                super.writeToCopy(buf, off, siz);
+                writing.set(false);
+            }
+
+            public void cancelCopy() throws SQLException {
+                overlapped.set(writing.get());
+                super.cancelCopy();
+            }
+        };
+        try {
+            loader.load(fi, copy);
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("Broken feature", e.getMessage());
+        }
+        assertTrue(copy.cancelled);
+        assertFalse("Copy cancelled while being written", overlapped.get());
+    }
+
+    static class StubCopyIn implements CopyIn {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int writes;
+
+        boolean active = true;
+
+        boolean cancelled;
+
+        public void writeToCopy(byte[] buf, int off, int siz) throws SQLException {
+            out.write(buf, off, siz);
+            writes++;
+        }
+
+        public void flushCopy() throws SQLException {
+        }
+
+        public long endCopy() throws SQLException {
+            active = false;
+            return out.toString().split("\n").length;
+        }
+
+        public int getFieldCount() {
+            return 0;
+        }
+
+        public int getFormat() {
+            return 0;
+        }
+
+        public int getFieldFormat(int field) {
+            return 0;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void cancelCopy() throws SQLException {
+            active = false;
+            cancelled = true;
+        }
+
+        public long getHandledRowCount() {
+            return 0;
+        }
+    }
+}
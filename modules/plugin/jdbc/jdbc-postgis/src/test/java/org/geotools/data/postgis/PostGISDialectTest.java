@@ -0,0 +1,68 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import junit.framework.TestCase;
+
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Checks the SQL generated to fetch the geometries, no database needed
+ *
+ * @source $URL$
+ */
+public class PostGISDialectTest extends TestCase {
+
+    PostGISDialect dialect;
+
+    GeometryDescriptor geometry;
+
+    protected void setUp() throws Exception {
+        dialect = new PostGISDialect(null);
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("roads");
+        tb.add("geom", LineString.class);
+        SimpleFeatureType featureType = tb.buildFeatureType();
+        geometry = featureType.getGeometryDescriptor();
+    }
+
+    public void testGeometryColumn() {
+        StringBuffer sql = new StringBuffer();
+        dialect.encodeGeometryColumn(geometry, null, 4326, sql);
+        assertEquals("encode(ST_AsBinary(ST_Force_2D(\"geom\")),'base64')", sql.toString());
+    }
+
+    public void testGeometryColumnSimplified() {
+        StringBuffer sql = new StringBuffer();
+        dialect.encodeGeometryColumnSimplified(geometry, "a", 4326, sql, 0.5);
+        assertEquals("encode(ST_AsBinary(ST_Force_2D(ST_SimplifyPreserveTopology("
+                + "\"a\".\"geom\", 0.5))),'base64')", sql.toString());
+    }
+
+    public void testGeographyNotSimplified() {
+        geometry.getUserData().put(JDBCDataStore.JDBC_NATIVE_TYPENAME, "geography");
+        StringBuffer sql = new StringBuffer();
+        dialect.encodeGeometryColumnSimplified(geometry, null, 4326, sql, 0.5);
+        assertEquals("encode(ST_AsBinary(\"geom\"),'base64')", sql.toString());
+    }
+}
@@ -36,6 +36,7 @@ import org.geotools.data.jdbc.FilterToSQL;
 import org.geotools.geometry.jts.Geometries;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.WKBGeometryCodec;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
@@ -200,28 +201,15 @@ public class SpatiaLiteDialect extends BasicSQLDialect {
     
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, String prefix, int srid, StringBuffer sql) {
-        sql.append( "AsText(");
+        sql.append( "AsBinary(");
         encodeColumnName( prefix, gatt.getLocalName(), sql);
-        sql.append( ")||';").append(srid).append("'");
+        sql.append( ")");
     }
     
     @Override
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs, int column,
             GeometryFactory factory, Connection cx) throws IOException, SQLException {
-        String string = rs.getString( column );
-        if ( string == null || "".equals( string.trim() ) ) {
-            return null;
-        }
-        
-        String[] split = string.split( ";" );
-        String wkt = split[0];
-        try {
-            return new WKTReader(factory).read( wkt );
-        }
-        catch( ParseException e ) {
-            throw (IOException) new IOException().initCause( e );
-        }
-        
+        return WKBGeometryCodec.get(factory).read(rs, column, WKBGeometryCodec.Encoding.BINARY);
     }
     
     @Override
@@ -233,7 +221,7 @@ public class SpatiaLiteDialect extends BasicSQLDialect {
     @Override
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs, String column,
             GeometryFactory factory, Connection cx) throws IOException, SQLException {
-        return null;
+        return WKBGeometryCodec.get(factory).read(rs, column, WKBGeometryCodec.Encoding.BINARY);
     }
     
     @Override
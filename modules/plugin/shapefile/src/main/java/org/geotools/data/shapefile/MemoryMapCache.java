@@ -18,115 +18,429 @@ package org.geotools.data.shapefile;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.geotools.data.DataUtilities;
 import org.geotools.resources.NIOUtilities;
-import org.geotools.util.SoftValueHashMap;
-import org.geotools.util.SoftValueHashMap.ValueCleaner;
 import org.geotools.util.logging.Logging;
 
 /**
  * A cache for memory mapped buffers, used to avoid generating over and over
- * read only memory mapped buffers. Mapping a file is a synchronized operation,
- * plus by generating light copies the same buffer can be shared by various threads
+ * read only memory mapped buffers. Mapping a file is an expensive operation,
+ * plus by generating light copies the same buffer can be shared by various threads.
+ * <p>
+ * The cache is shared by all the shapefiles and holds at most {@link #getMaxSize()} bytes of
+ * mappings, evicting the least recently used ones when the budget is exceeded. The budget
+ * defaults to 512MB and can be changed with the {@link #MAX_SIZE_KEY} system property, or at
+ * runtime via JMX.
+ * <p>
+ * Mappings are unmapped as soon as they are removed from the cache, unless some of the buffers
+ * handed out are still reachable, in which case the unmapping is deferred until they are
+ * garbage collected: unmapping a buffer still in use would crash the JVM.
+ *
  * @author Andrea Aime - OpenGeo
  *
+ * @source $URL$
  */
-class MemoryMapCache {
-	
-	static final Logger LOGGER = Logging.getLogger(MemoryMapCache.class);
-
-    SoftValueHashMap<MappingKey, MappedByteBuffer> buffers = new SoftValueHashMap<MappingKey, MappedByteBuffer>(0, new BufferCleaner());
-    
-	MappedByteBuffer map(FileChannel wrapped, URL url, MapMode mode, long position, long size) throws IOException {
-		if(mode != MapMode.READ_ONLY) {
-			return wrapped.map(mode, position, size);
-		}
-		
-		File file = DataUtilities.urlToFile(url).getCanonicalFile();
-		MappingKey mk = new MappingKey(file, position, size);
-		MappedByteBuffer buffer = buffers.get(mk);
-		if(buffer == null) {
-			synchronized (this) {
-				buffer = buffers.get(mk);
-				if(buffer == null) {
-					buffer = wrapped.map(mode, position, size);
-					buffers.put(mk, buffer);
-					if(LOGGER.isLoggable(Level.FINE)) {
-						LOGGER.log(Level.FINE, "Mapping and caching " + file.getAbsolutePath());
-					}
-				}
-			}
-		} else {
-			if(LOGGER.isLoggable(Level.FINE)) {
-				LOGGER.log(Level.FINE, "Using cached map for " + file.getAbsolutePath());
-			}
-		}
-		
-		return (MappedByteBuffer) buffer.duplicate();
-	}
-	
-	/**
-	 * Cleans up all memory mapped regions for a specified file. It is necessary to call this
-	 * method before any attempt to open a file for writing on Windows
-	 * @param file
-	 */
-	void cleanFileCache(URL url) {
-	    try {
-    	    final File rawFile = DataUtilities.urlToFile(url);
-    	    if(rawFile == null) {
-    	        // not a local file
-    	        return;
-    	    }
+class MemoryMapCache implements MemoryMapCacheMBean {
+
+    static final Logger LOGGER = Logging.getLogger(MemoryMapCache.class);
+
+    /**
+     * The system property used to set the max size, in bytes, of the shared cache
+     */
+    static final String MAX_SIZE_KEY = "org.geotools.shapefile.memoryMapCacheSize";
+
+    static final long DEFAULT_MAX_SIZE = 512 * 1024 * 1024l;
+
+    static final int LOCK_STRIPES = 16;
+
+    static final MemoryMapCache INSTANCE = new MemoryMapCache(Long.getLong(MAX_SIZE_KEY,
+            DEFAULT_MAX_SIZE));
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.geotools.data.shapefile:type=MemoryMapCache");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (Throwable t) {
+            LOGGER.log(Level.FINE, "Could not register the memory map cache in JMX", t);
+        }
+    }
+
+    /**
+     * Returns the cache shared by all the shapefiles
+     */
+    static MemoryMapCache getInstance() {
+        return INSTANCE;
+    }
+
+    final ConcurrentHashMap<MappingKey, Entry> entries = new ConcurrentHashMap<MappingKey, Entry>();
+
+    /**
+     * The mappings are created holding one of these locks, so that different files can be
+     * mapped in parallel, while the same region is never mapped twice
+     */
+    final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * The mappings removed from the cache but still in use
+     */
+    final List<Entry> pending = new ArrayList<Entry>();
+
+    final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<ByteBuffer>();
+
+    final Object evictionLock = new Object();
+
+    final AtomicLong clock = new AtomicLong();
+
+    final AtomicLong size = new AtomicLong();
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong evictions = new AtomicLong();
+
+    volatile long maxSize;
+
+    MemoryMapCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The max size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns a light copy of the read only mapping of the specified file region, mapping it if
+     * not already cached. Other mapping modes are not cached.
+     *
+     * @param owner the object the returned buffer is handed to, see
+     *        {@link #cleanFileCache(URL, Object)}
+     */
+    MappedByteBuffer map(FileChannel wrapped, URL url, MapMode mode, long position, long size,
+            Object owner) throws IOException {
+        if (mode != MapMode.READ_ONLY) {
+            return wrapped.map(mode, position, size);
+        }
+        File rawFile = DataUtilities.urlToFile(url);
+        if (rawFile == null) {
+            return wrapped.map(mode, position, size);
+        }
+
+        purge();
+        File file = rawFile.getCanonicalFile();
+        MappingKey mk = new MappingKey(file, position, size);
+        while (true) {
+            boolean created = false;
+            Entry entry = entries.get(mk);
+            if (entry == null) {
+                synchronized (locks[(mk.hashCode() & 0x7FFFFFFF) % locks.length]) {
+                    entry = entries.get(mk);
+                    if (entry == null) {
+                        entry = new Entry(mk, wrapped.map(mode, position, size));
+                        entries.put(mk, entry);
+                        this.size.addAndGet(size);
+                        created = true;
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.log(Level.FINE, "Mapping and caching " + file.getAbsolutePath());
+                        }
+                    }
+                }
+            }
+
+            // the entry might have been evicted and unmapped in the meantime, in that case
+            // just try again
+            MappedByteBuffer duplicate = entry.duplicate(owner);
+            if (duplicate != null) {
+                if (created) {
+                    misses.incrementAndGet();
+                    // done after the duplication, a mapping larger than the whole budget
+                    // will be released as soon as the caller is done with it
+                    evict();
+                } else {
+                    hits.incrementAndGet();
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.log(Level.FINE, "Using cached map for " + file.getAbsolutePath());
+                    }
+                }
+                return duplicate;
+            }
+        }
+    }
+
+    /**
+     * Cleans up all memory mapped regions for a specified file. It is necessary to call this
+     * method before any attempt to open a file for writing on Windows
+     *
+     * @param url the file
+     * @param owner the buffers handed out to this owner are assumed not to be in use anymore,
+     *        and won't prevent the regions from being unmapped
+     */
+    void cleanFileCache(URL url, Object owner) {
+        try {
+            final File rawFile = DataUtilities.urlToFile(url);
+            if (rawFile == null) {
+                // not a local file
+                return;
+            }
+            purge();
             File file = rawFile.getCanonicalFile();
-    	    List<MappingKey> keys = new ArrayList<MappingKey>(buffers.keySet());
-    	    for (MappingKey key : keys) {
-                if(key.file.equals(file)) {
-                    MappedByteBuffer buffer = buffers.remove(key);
-                    NIOUtilities.clean(buffer, true);
-                    if(LOGGER.isLoggable(Level.FINE)) {
-        				LOGGER.log(Level.FINE, "Removed mapping for " + file.getAbsolutePath());
+            for (Entry entry : entries.values()) {
+                if (entry.key.file.equals(file)) {
+                    remove(entry, owner);
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.log(Level.FINE, "Removed mapping for " + file.getAbsolutePath());
                     }
                 }
             }
-	    } catch(Throwable t) {
-	        LOGGER.log(Level.WARNING, "An error occurred while trying to clean the memory map cache", t);
-	    }
-	}
-	
-	void clean() {
-		List<MappingKey> keys = new ArrayList<MappingKey>(buffers.keySet());
-	    for (MappingKey key : keys) {
-            MappedByteBuffer buffer = buffers.remove(key);
-            NIOUtilities.clean(buffer, true);
-            if(LOGGER.isLoggable(Level.FINE)) {
-				LOGGER.log(Level.FINE, "Removed mapping for " + key.file.getAbsolutePath());
+            synchronized (pending) {
+                for (Iterator<Entry> it = pending.iterator(); it.hasNext();) {
+                    Entry entry = it.next();
+                    if (entry.key.file.equals(file) && entry.unmap(owner)) {
+                        it.remove();
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING,
+                    "An error occurred while trying to clean the memory map cache", t);
+        }
+    }
+
+    public void clean() {
+        purge();
+        for (Entry entry : entries.values()) {
+            remove(entry, null);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Removed mapping for " + entry.key.file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the cache, unmapping it if not in use by anybody but the owner
+     *
+     * @return true if the entry was found in the cache
+     */
+    boolean remove(Entry entry, Object owner) {
+        if (!entries.remove(entry.key, entry)) {
+            return false;
+        }
+        size.addAndGet(-entry.key.size);
+        if (!entry.unmap(owner)) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Deferring the unmapping of "
+                        + entry.key.file.getAbsolutePath() + ", still in use");
+            }
+            synchronized (pending) {
+                pending.add(entry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits into the size budget
+     */
+    void evict() {
+        if (size.get() <= maxSize) {
+            return;
+        }
+        synchronized (evictionLock) {
+            while (size.get() > maxSize) {
+                Entry lru = null;
+                for (Entry entry : entries.values()) {
+                    if (lru == null || entry.lastAccess < lru.lastAccess) {
+                        lru = entry;
+                    }
+                }
+                if (lru == null) {
+                    break;
+                }
+                if (remove(lru, null)) {
+                    evictions.incrementAndGet();
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.log(Level.FINE, "Evicted mapping for "
+                                + lru.key.file.getAbsolutePath());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets about the buffers that have been garbage collected, and unmaps the pending entries
+     * that are not in use anymore
+     */
+    void purge() {
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = queue.poll()) != null) {
+            BufferReference br = (BufferReference) ref;
+            br.entry.release(br);
+        }
+        synchronized (pending) {
+            for (Iterator<Entry> it = pending.iterator(); it.hasNext();) {
+                if (it.next().unmap(null)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int getCount() {
+        return entries.size();
+    }
+
+    public int getPendingCount() {
+        purge();
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The max size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * A cached mapping, along with the references to the light copies handed out
+     */
+    final class Entry {
+        final MappingKey key;
+
+        final MappedByteBuffer buffer;
+
+        final List<BufferReference> references = new ArrayList<BufferReference>();
+
+        volatile long lastAccess;
+
+        boolean unmapped;
+
+        Entry(MappingKey key, MappedByteBuffer buffer) {
+            this.key = key;
+            this.buffer = buffer;
+            this.lastAccess = clock.incrementAndGet();
+        }
+
+        /**
+         * Returns a light copy of the buffer, or null if the buffer has already been unmapped
+         */
+        synchronized MappedByteBuffer duplicate(Object owner) {
+            if (unmapped) {
+                return null;
             }
+            lastAccess = clock.incrementAndGet();
+            MappedByteBuffer duplicate = (MappedByteBuffer) buffer.duplicate();
+            references.add(new BufferReference(duplicate, owner, this, queue));
+            return duplicate;
+        }
+
+        synchronized void release(BufferReference reference) {
+            references.remove(reference);
+        }
+
+        /**
+         * Unmaps the buffer, unless some copy not handed out to the specified owner is still
+         * reachable
+         *
+         * @return true if the buffer has been unmapped
+         */
+        synchronized boolean unmap(Object owner) {
+            if (unmapped) {
+                return true;
+            }
+            for (BufferReference reference : references) {
+                if (reference.get() != null && (owner == null || reference.owner.get() != owner)) {
+                    return false;
+                }
+            }
+            unmapped = true;
+            references.clear();
+            NIOUtilities.clean(buffer, true);
+            return true;
+        }
+    }
+
+    /**
+     * Tracks a light copy handed out to a reader
+     */
+    static class BufferReference extends WeakReference<ByteBuffer> {
+        final WeakReference<Object> owner;
+
+        final Entry entry;
+
+        BufferReference(ByteBuffer buffer, Object owner, Entry entry,
+                ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.owner = new WeakReference<Object>(owner);
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Tracks a memory mapped region of a certain file
+     */
+    static class MappingKey {
+        File file;
+
+        long position;
+
+        long size;
+
+        public MappingKey(File file, long position, long size) {
+            super();
+            this.file = file;
+            this.position = position;
+            this.size = size;
         }
-	}
-	
-	/**
-	 * Tracks a memory mapped region of a certain file
-	 */
-	static class MappingKey {
-		File file;
-		long position;
-		long size;
-		
-		public MappingKey(File file, long position, long size) {
-			super();
-			this.file = file;
-			this.position = position;
-			this.size = size;
-		}
 
         @Override
         public int hashCode() {
@@ -158,23 +472,6 @@ class MemoryMapCache {
                 return false;
             return true;
         }
-	}
-	
-	/**
-	 * Cleans up the buffers before the soft reference gets deallocated
-	 * @author Andrea Aime
- *
- *
- * @source $URL$
-	 */
-	public class BufferCleaner implements ValueCleaner {
-
-        public void clean(Object key, Object object) {
-            MappedByteBuffer buffer = (MappedByteBuffer) object;
-            NIOUtilities.clean(buffer, true);
-        }
-
     }
 
-
 }
@@ -0,0 +1,75 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+/**
+ * The JMX management interface of the shared memory map cache, registered in the platform MBean
+ * server as <code>org.geotools.data.shapefile:type=MemoryMapCache</code>
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public interface MemoryMapCacheMBean {
+
+    /**
+     * The number of map requests served with an already mapped buffer
+     */
+    long getHitCount();
+
+    /**
+     * The number of map requests that required a new mapping
+     */
+    long getMissCount();
+
+    /**
+     * The number of mappings removed from the cache to respect the size budget
+     */
+    long getEvictionCount();
+
+    /**
+     * The number of mappings currently in the cache
+     */
+    int getCount();
+
+    /**
+     * The number of mappings removed from the cache that are still in use, and will be unmapped as
+     * soon as the buffers handed out to the readers are garbage collected
+     */
+    int getPendingCount();
+
+    /**
+     * The total size, in bytes, of the mappings currently in the cache
+     */
+    long getSize();
+
+    /**
+     * The maximum size, in bytes, of the mappings kept in the cache
+     */
+    long getMaxSize();
+
+    /**
+     * Sets the maximum size, in bytes, of the mappings kept in the cache, evicting the least
+     * recently used ones if necessary
+     */
+    void setMaxSize(long maxSize);
+
+    /**
+     * Removes all the mappings from the cache
+     */
+    void clean();
+}
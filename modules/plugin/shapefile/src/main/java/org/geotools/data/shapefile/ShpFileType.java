@@ -50,6 +50,11 @@ public enum ShpFileType {
      * format the mapservers shptree tool generates
      */
     QIX("qix"),
+    /**
+     * the .pqx file, a packed spatial index of the shapefile that can be memory mapped
+     * and searched without loading the tree in memory
+     */
+    PQX("pqx"),
     /**
      * the .fix file, it contains all the Feature IDs for constant time lookup
      * by fid also so that the fids stay consistent across deletes and adds
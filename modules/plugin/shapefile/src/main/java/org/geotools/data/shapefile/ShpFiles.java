@@ -92,9 +92,9 @@ public class ShpFiles {
     private final Map<Thread, Collection<ShpFilesLocker>> lockers = new ConcurrentHashMap<Thread, Collection<ShpFilesLocker>>();
 
     /**
-     * A cache for read only memory mapped buffers
+     * A cache for read only memory mapped buffers, shared by all the shapefiles
      */
-    private final MemoryMapCache mapCache = new MemoryMapCache();
+    private final MemoryMapCache mapCache = MemoryMapCache.getInstance();
     
     private boolean memoryMapCacheEnabled;
     
@@ -233,7 +233,18 @@ public class ShpFiles {
             logCurrentLockers(Level.SEVERE);
             lockers.clear(); // so as not to get this log again.
         }
-        mapCache.clean();
+        if (memoryMapCacheEnabled) {
+            cleanMapCache();
+        }
+    }
+
+    /**
+     * Removes the mappings of the files of this shapefile from the shared memory map cache
+     */
+    private void cleanMapCache() {
+        for (URL url : urls.values()) {
+            mapCache.cleanFileCache(url, this);
+        }
     }
 
     /**
@@ -520,7 +531,7 @@ public class ShpFiles {
         relinquishReadLocks(threadLockers);
         readWriteLock.writeLock().lock();
         threadLockers.add(new ShpFilesLocker(url, requestor));
-        mapCache.cleanFileCache(url);        
+        mapCache.cleanFileCache(url, this);
         return url;
     }
     
@@ -974,7 +985,7 @@ public class ShpFiles {
      */
 	MappedByteBuffer map(FileChannel wrapped, URL url, MapMode mode, long position, long size) throws IOException {
 		if(memoryMapCacheEnabled) {
-			return mapCache.map(wrapped, url, mode, position, size);
+			return mapCache.map(wrapped, url, mode, position, size, this);
 		} else {
 			return wrapped.map(mode, position, size);
 		}
@@ -995,9 +1006,10 @@ public class ShpFiles {
 	 * @param memoryMapCacheEnabled
 	 */
 	public void setMemoryMapCacheEnabled(boolean memoryMapCacheEnabled) {
+		boolean wasEnabled = this.memoryMapCacheEnabled;
 		this.memoryMapCacheEnabled = memoryMapCacheEnabled;
-		if(!memoryMapCacheEnabled) {
-			mapCache.clean();
+		if(wasEnabled && !memoryMapCacheEnabled) {
+			cleanMapCache();
 		}
 	}
 
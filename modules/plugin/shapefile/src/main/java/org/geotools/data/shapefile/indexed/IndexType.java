@@ -34,7 +34,12 @@ public enum IndexType {
     /**
      * The same index as mapserver. Its the most reliable and is the default
      */
-    QIX(ShpFileType.QIX);
+    QIX(ShpFileType.QIX),
+    /**
+     * A quad tree packed in a flat file, faster to search than the QIX one, but only
+     * understood by GeoTools
+     */
+    PQX(ShpFileType.PQX);
 
     public final ShpFileType shpFileType;
 
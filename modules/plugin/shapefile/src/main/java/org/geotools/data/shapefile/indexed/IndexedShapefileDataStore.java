@@ -20,9 +20,11 @@ import static org.geotools.data.shapefile.ShpFileType.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -34,6 +36,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 
 import org.geotools.data.DataSourceException;
@@ -70,6 +73,7 @@ import org.geotools.index.Data;
 import org.geotools.index.DataDefinition;
 import org.geotools.index.LockTimeoutException;
 import org.geotools.index.TreeException;
+import org.geotools.index.packed.PackedIndex;
 import org.geotools.index.quadtree.QuadTree;
 import org.geotools.index.quadtree.StoreException;
 import org.geotools.index.quadtree.fs.FileSystemIndexStore;
@@ -115,6 +119,21 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
     
     CachedQuadTree cachedTree;
 
+    /**
+     * The packed index, opened on the first query and shared by all the following ones. The
+     * lock protects it from being closed while searched.
+     */
+    PackedIndex packedIndex;
+
+    FileChannel packedIndexChannel;
+
+    /** The last modification time and length of the .pqx file the packed index was opened on */
+    long packedIndexModified;
+
+    long packedIndexLength;
+
+    final ReentrantReadWriteLock packedIndexLock = new ReentrantReadWriteLock();
+
 	int maxQixCacheSize = DEFAULT_MAX_QIX_CACHE_SIZE;
 	
 	static final int DEFAULT_MAX_QIX_CACHE_SIZE;
@@ -792,6 +811,10 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
         // check if the spatial index needs recreating
         createSpatialIndex(false);
         
+        if (treeType == IndexType.PQX) {
+            return queryPackedIndex(bbox);
+        }
+        
         if(cachedTree == null) {
             boolean canCache = false;
             URL treeURL = shpFiles.acquireRead(QIX, this);
@@ -838,6 +861,118 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
         return tmp;
     }
 
+    /**
+     * Packed index query. The index is opened once and shared by the queries, it's reopened if
+     * the .pqx file changes, and closed when the store is disposed.
+     * 
+     * @param bbox
+     * @return the matching records, or null if the index cannot help filtering out records
+     * @throws IOException
+     */
+    protected CloseableIterator<Data> queryPackedIndex(Envelope bbox) throws IOException {
+        if (!isLocal()) {
+            return null;
+        }
+        if (!shpFiles.exists(PQX)) {
+            treeType = IndexType.NONE;
+            closePackedIndex();
+            return null;
+        }
+
+        packedIndexLock.readLock().lock();
+        try {
+            if (packedIndex == null || packedIndexChanged()) {
+                // cannot upgrade a read lock, give it up and check again with the write one
+                packedIndexLock.readLock().unlock();
+                packedIndexLock.writeLock().lock();
+                try {
+                    if (packedIndex == null || packedIndexChanged()) {
+                        openPackedIndex();
+                    }
+                } finally {
+                    packedIndexLock.readLock().lock();
+                    packedIndexLock.writeLock().unlock();
+                }
+            }
+            if (bbox.contains(packedIndex.getBounds())) {
+                return null;
+            }
+            // the search is eager, the index is not used past this point
+            return packedIndex.search(bbox);
+        } finally {
+            packedIndexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the .pqx file has been modified since the packed index was opened
+     */
+    boolean packedIndexChanged() {
+        URL url = shpFiles.acquireRead(PQX, this);
+        try {
+            File file = DataUtilities.urlToFile(url);
+            return file.lastModified() != packedIndexModified
+                    || file.length() != packedIndexLength;
+        } finally {
+            shpFiles.unlockRead(url, this);
+        }
+    }
+
+    /**
+     * (Re)opens the packed index, to be called with the write lock held. The file is opened
+     * directly, holding a shapefile read lock for the whole life of the index would prevent
+     * writers from ever updating the shapefile.
+     */
+    void openPackedIndex() throws IOException {
+        closePackedIndexInternal();
+        URL url = shpFiles.acquireRead(PQX, this);
+        try {
+            File file = DataUtilities.urlToFile(url);
+            long modified = file.lastModified();
+            long length = file.length();
+            FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+            try {
+                packedIndex = new PackedIndex(channel, useMemoryMappedBuffer);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            packedIndexChannel = channel;
+            packedIndexModified = modified;
+            packedIndexLength = length;
+        } finally {
+            shpFiles.unlockRead(url, this);
+        }
+    }
+
+    /**
+     * Closes the shared packed index, if open. Called before the .pqx file gets rewritten or
+     * removed, and when the store is disposed.
+     */
+    void closePackedIndex() {
+        packedIndexLock.writeLock().lock();
+        try {
+            closePackedIndexInternal();
+        } finally {
+            packedIndexLock.writeLock().unlock();
+        }
+    }
+
+    private void closePackedIndexInternal() {
+        if (packedIndex != null) {
+            packedIndex.close();
+            packedIndex = null;
+        }
+        if (packedIndexChannel != null) {
+            try {
+                packedIndexChannel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close the packed index file", e);
+            }
+            packedIndexChannel = null;
+        }
+    }
+
     /**
      * Convenience method for opening a DbaseFileReader.
      * 
@@ -1184,16 +1319,20 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
     // }
 
     /**
-     * Builds the QuadTree index. Usually not necessary since reading features
-     * will index when required
+     * Builds the spatial index, QIX or PQX depending on the tree type. Usually not
+     * necessary since reading features will index when required
      * @throws TreeException
      */
     public void buildQuadTree() throws TreeException {
         if (isLocal()) {
             LOGGER.fine("Creating spatial index for " + shpFiles.get(SHP));
+            closePackedIndex();
 
             ShapeFileIndexer indexer = new ShapeFileIndexer();
             indexer.setShapeFileName(shpFiles);
+            if (treeType == IndexType.PQX) {
+                indexer.setIndexType(IndexType.PQX);
+            }
             
             try {
                 indexer.index(false, new NullProgressListener());
@@ -1211,6 +1350,12 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
         }
     }
 
+    @Override
+    public void dispose() {
+        closePackedIndex();
+        super.dispose();
+    }
+
     public boolean isMemoryMapped() {
         return useMemoryMappedBuffer;
     }
@@ -116,8 +116,11 @@ class IndexedShapefileFeatureWriter extends ShapefileFeatureWriter implements
                 }
 
                 deleteFile(ShpFileType.QIX);
+                indexedShapefileDataStore.closePackedIndex();
+                deleteFile(ShpFileType.PQX);
 
-                if (indexedShapefileDataStore.treeType == IndexType.QIX) {
+                if (indexedShapefileDataStore.treeType == IndexType.QIX
+                        || indexedShapefileDataStore.treeType == IndexType.PQX) {
                     indexedShapefileDataStore.buildQuadTree();
                 }
             }
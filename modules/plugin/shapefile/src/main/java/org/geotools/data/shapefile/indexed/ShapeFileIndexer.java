@@ -19,14 +19,25 @@ package org.geotools.data.shapefile.indexed;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geotools.data.DataUtilities;
 import org.geotools.data.shapefile.FileWriter;
 import org.geotools.data.shapefile.ShpFileType;
 import org.geotools.data.shapefile.ShpFiles;
@@ -37,6 +48,8 @@ import org.geotools.data.shapefile.shp.ShapefileReader;
 import org.geotools.data.shapefile.shp.ShapefileReader.Record;
 import org.geotools.index.LockTimeoutException;
 import org.geotools.index.TreeException;
+import org.geotools.index.packed.PackedIndexBuilder;
+import org.geotools.index.packed.PackedIndexWriter;
 import org.geotools.index.quadtree.Node;
 import org.geotools.index.quadtree.QuadTree;
 import org.geotools.index.quadtree.StoreException;
@@ -64,8 +77,11 @@ public class ShapeFileIndexer implements FileWriter {
     private int leafSize = 16;
 
 	private String byteOrder;
+    private IndexType indexType = IndexType.QIX;
     private boolean interactive = false;
     private ShpFiles shpFiles;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = 64 * 1024 * 1024;
 
     public static void main(String[] args) throws IOException {
         if ((args.length < 1) || (((args.length - 1) % 2) != 0)) {
@@ -76,18 +92,25 @@ public class ShapeFileIndexer implements FileWriter {
 
         ShapeFileIndexer idx = new ShapeFileIndexer();
         idx.interactive = true;
+        boolean convert = false;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-t")) {
-                // idx.setIdxType(IndexType.valueOf(args[++i]));
-                // just skip it for backwards compatibility
-                i++;
+                String type = args[++i];
+                if (type.equalsIgnoreCase("PQX")) {
+                    idx.setIndexType(IndexType.PQX);
+                }
+                // other values are just skipped for backwards compatibility
+            } else if (args[i].equals("-c")) {
+                convert = Boolean.valueOf(args[++i]);
             } else if (args[i].equals("-M")) {
                 idx.setMax(Integer.parseInt(args[++i]));
             } else if (args[i].equals("-s")) {
                 idx.setLeafSize(Integer.parseInt(args[++i]));
             } else if (args[i].equals("-b")) {
                 idx.setByteOrder(args[++i]);
+            } else if (args[i].equals("-p")) {
+                idx.setThreads(Integer.parseInt(args[++i]));
             } else {
                 if (!args[i].toLowerCase().endsWith(".shp")) {
                     System.out.println("File extension must be '.shp'");
@@ -99,9 +122,14 @@ public class ShapeFileIndexer implements FileWriter {
         }
 
         try {
-            System.out.print("Indexing ");
-
-            int cnt = idx.index(true, new NullProgressListener());
+            int cnt;
+            if (convert) {
+                System.out.print("Converting ");
+                cnt = idx.convert();
+            } else {
+                System.out.print("Indexing ");
+                cnt = idx.index(true, new NullProgressListener());
+            }
             System.out.println();
             System.out.print(cnt + " features indexed ");
             System.out.println("in " + (System.currentTimeMillis() - start)
@@ -115,15 +143,20 @@ public class ShapeFileIndexer implements FileWriter {
     }
 
     private static void usage() {
-        System.out.println("Usage: ShapeFileIndexer " + "-t <QIX> "
+        System.out.println("Usage: ShapeFileIndexer " + "-t <QIX | PQX> "
                 + "[-M <max tree depth>] "
                 + "[-b <byte order NL | NM>] " + "<shape file>"
-                + "[-s <max number of items in a leaf>]");
+                + "[-s <max number of items in a leaf>]"
+                + "[-p <number of threads>]"
+                + "[-c true]");
 
         System.out.println();
 
         System.out.println("Options:");
-        System.out.println("\t-t Index type: RTREE or QUADTREE");
+        System.out.println("\t-t Index type: QIX (default) or PQX");
+        System.out.println("\t-c converts the existing QIX index into a PQX one");
+        System.out.println("\t-p number of threads scanning the shapefile when building a PQX "
+                + "index (defaults to the number of processors)");
         System.out.println();
         System.out.println("Following options apllies only to QUADTREE:");
         System.out.println("\t-b byte order to use: NL = LSB; "
@@ -165,9 +198,15 @@ public class ShapeFileIndexer implements FileWriter {
         ShapefileReader reader = null;
 
         // Temporary file for building...
-        StorageFile storage = shpFiles.getStorageFile(ShpFileType.QIX);
+        StorageFile storage = shpFiles.getStorageFile(indexType.shpFileType);
         File treeFile = storage.getFile();
 
+        if (indexType == IndexType.PQX && shpFiles.isLocal()) {
+            cnt = buildPackedIndex(treeFile, verbose);
+            storage.replaceOriginal();
+            return cnt;
+        }
+
         try {
             reader = new ShapefileReader(shpFiles, true, false, new GeometryFactory());
             
@@ -204,7 +243,7 @@ public class ShapeFileIndexer implements FileWriter {
 
     private int buildQuadTree(ShapefileReader reader, File file, boolean verbose)
             throws IOException, StoreException {
-        LOGGER.fine("Building quadtree spatial index with depth " +  max + " for file " + file.getAbsolutePath());
+        LOGGER.fine("Building " + indexType + " spatial index with depth " +  max + " for file " + file.getAbsolutePath());
         
         byte order = 0;
 
@@ -257,13 +296,198 @@ public class ShapeFileIndexer implements FileWriter {
             if(LOGGER.isLoggable(Level.FINE)) {
                 printStats(tree);
             }
-            store.store(tree);
+            if (indexType == IndexType.PQX) {
+                tree.trim();
+                new PackedIndexWriter(file).write(tree);
+            } else {
+                store.store(tree);
+            }
         } finally {
             tree.close();
         }
         return cnt;
     }
     
+    /**
+     * Builds a packed R-tree index, scanning the .shx and .shp files with {@link #getThreads()}
+     * threads, and sorting the records on disk once {@link #getMemoryBudget()} is exhausted
+     */
+    private int buildPackedIndex(File file, boolean verbose) throws IOException {
+        FileChannel shx = null;
+        FileChannel shp = null;
+        ExecutorService executor = null;
+        PackedIndexBuilder builder = null;
+        try {
+            shx = (FileChannel) shpFiles.getReadChannel(ShpFileType.SHX, this);
+            shp = (FileChannel) shpFiles.getReadChannel(ShpFileType.SHP, this);
+
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            readFully(shp, buffer, 0);
+            buffer.flip();
+            ShapefileHeader header = new ShapefileHeader();
+            header.read(buffer, true);
+            Envelope bounds = new Envelope(header.minX(), header.maxX(), header.minY(), header
+                    .maxY());
+            int numRecs = (int) ((shx.size() - 100) / 8);
+
+            int partitions = Math.max(1, Math.min(threads, numRecs / 1000));
+            LOGGER.fine("Building " + indexType + " spatial index with " + partitions
+                    + " threads for file " + file.getAbsolutePath());
+            builder = new PackedIndexBuilder(file, bounds, partitions);
+            builder.setNodeCapacity(leafSize > 1 ? leafSize : 16);
+            builder.setMemoryBudget(memoryBudget);
+            builder.setTempDirectory(file.getParentFile());
+
+            executor = Executors.newFixedThreadPool(partitions);
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            int slice = (numRecs + partitions - 1) / partitions;
+            for (int i = 0; i < partitions; i++) {
+                int start = i * slice;
+                int end = Math.min(numRecs, start + slice);
+                futures.add(executor.submit(new RecordScanner(shx, shp, start, end, builder
+                        .partition())));
+            }
+            for (Future<Integer> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while building the spatial index");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw (IOException) new IOException("Failed to build the spatial index")
+                            .initCause(cause);
+                }
+            }
+            if (verbose) {
+                System.out.println("done");
+            }
+
+            builder.write(numRecs);
+            return numRecs;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (builder != null) {
+                // removes the sorted chunks spilled to disk if the index was not written
+                builder.dispose();
+            }
+            if (shx != null) {
+                shx.close();
+            }
+            if (shp != null) {
+                shp.close();
+            }
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Scans a range of records, reading their offsets from the .shx file and their bounds
+     * straight from the .shp record headers, and feeds them to a packed index partition. The
+     * channels are shared among scanners, they are accessed only with positional reads.
+     */
+    static class RecordScanner implements Callable<Integer> {
+        static final int SHX_BLOCK = 8 * 8192;
+
+        static final int SHP_BLOCK = 1024 * 1024;
+
+        /**
+         * The size of the record header plus the shape type and bounds
+         */
+        static final int RECORD_HEAD = 8 + 4 + 32;
+
+        FileChannel shx;
+
+        FileChannel shp;
+
+        int start;
+
+        int end;
+
+        PackedIndexBuilder.Partition partition;
+
+        RecordScanner(FileChannel shx, FileChannel shp, int start, int end,
+                PackedIndexBuilder.Partition partition) {
+            this.shx = shx;
+            this.shp = shp;
+            this.start = start;
+            this.end = end;
+            this.partition = partition;
+        }
+
+        public Integer call() throws Exception {
+            ByteBuffer index = ByteBuffer.allocate(SHX_BLOCK);
+            index.order(ByteOrder.BIG_ENDIAN);
+            ByteBuffer records = ByteBuffer.allocate(SHP_BLOCK);
+            records.order(ByteOrder.LITTLE_ENDIAN);
+            records.limit(0);
+            long recordsStart = 0;
+            int count = 0;
+
+            for (int block = start; block < end; block += SHX_BLOCK / 8) {
+                int blockSize = Math.min(SHX_BLOCK / 8, end - block);
+                index.clear();
+                index.limit(blockSize * 8);
+                readFully(shx, index, 100 + ((long) block) * 8);
+                index.flip();
+                for (int i = 0; i < blockSize; i++) {
+                    int offset = index.getInt() * 2;
+                    index.getInt();
+
+                    // the records are sorted by offset, refill the buffer when we go past it
+                    if (offset < recordsStart
+                            || offset + RECORD_HEAD > recordsStart + records.limit()) {
+                        records.clear();
+                        readFully(shp, records, offset);
+                        records.flip();
+                        recordsStart = offset;
+                    }
+                    int position = (int) (offset - recordsStart);
+                    if (position + 12 > records.limit()) {
+                        continue;
+                    }
+                    int type = records.getInt(position + 8);
+                    if (type == 0) {
+                        // null shape
+                        continue;
+                    } else if (type == 1 || type == 11 || type == 21) {
+                        if (position + 28 > records.limit()) {
+                            continue;
+                        }
+                        double x = records.getDouble(position + 12);
+                        double y = records.getDouble(position + 20);
+                        partition.add(block + i, offset, x, y, x, y);
+                    } else {
+                        if (position + RECORD_HEAD > records.limit()) {
+                            continue;
+                        }
+                        partition.add(block + i, offset, records.getDouble(position + 12),
+                                records.getDouble(position + 20), records
+                                        .getDouble(position + 28), records
+                                        .getDouble(position + 36));
+                    }
+                    count++;
+                }
+            }
+            partition.close();
+            return count;
+        }
+    }
+
     private Node optimizeTree(QuadTree tree, Node node, int level, ShapefileReader reader, IndexFile index) throws StoreException, IOException {
         // recurse, with a check to avoid too deep recursion due to odd data that has a
         if(node.getNumShapeIds() > leafSize && node.getNumSubNodes() == 0 && level < max * 2) {
@@ -366,6 +590,41 @@ public class ShapeFileIndexer implements FileWriter {
         return node;
     }
 
+    /**
+     * Converts the existing .qix index of the shapefile into a packed .pqx one, without
+     * reading the shapefile contents
+     * 
+     * @return The number of records in the shapefile
+     */
+    public int convert() throws IOException, StoreException {
+        if (this.shpFiles == null) {
+            throw new IOException("You have to set a shape file name!");
+        }
+
+        StorageFile storage = shpFiles.getStorageFile(ShpFileType.PQX);
+        URL qixURL = shpFiles.acquireRead(ShpFileType.QIX, this);
+        int cnt;
+        try {
+            File qixFile = DataUtilities.urlToFile(qixURL);
+            if (!qixFile.exists()) {
+                throw new IOException("Cannot convert " + qixFile + ", it does not exist");
+            }
+            QuadTree tree = new FileSystemIndexStore(qixFile).load(new IndexFile(shpFiles,
+                    false), false);
+            try {
+                new PackedIndexWriter(storage.getFile()).write(tree);
+                cnt = tree.getNumShapes();
+            } finally {
+                tree.close();
+            }
+        } finally {
+            shpFiles.unlockRead(qixURL, this);
+        }
+        storage.replaceOriginal();
+
+        return cnt;
+    }
+
     private void printStats(QuadTree tree) throws StoreException {
        Map<Integer, Integer> stats = new HashMap<Integer, Integer>();
        gatherStats(tree.getRoot(), stats);
@@ -432,4 +691,45 @@ public class ShapeFileIndexer implements FileWriter {
 	public void setLeafSize(int leafSize) {
 		this.leafSize = leafSize;
 	}
+
+    /**
+     * The type of index to build, QIX or PQX. Defaults to QIX
+     */
+    public IndexType getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * The number of threads scanning the shapefile when building a PQX index. Defaults to the
+     * number of available processors
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * The amount of memory, in bytes, used to sort the records when building a PQX index, once
+     * exhausted the sorted records are spilled to temporary files. Defaults to 64MB
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public void setIndexType(IndexType indexType) {
+        if (indexType == null || indexType == IndexType.NONE) {
+            throw new IllegalArgumentException("Cannot build an index of type " + indexType);
+        }
+        this.indexType = indexType;
+    }
 }
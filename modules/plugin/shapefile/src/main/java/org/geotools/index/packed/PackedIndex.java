@@ -0,0 +1,289 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.index.packed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.geotools.index.CloseableIterator;
+import org.geotools.index.Data;
+import org.geotools.index.DataDefinition;
+import org.geotools.index.TreeException;
+import org.geotools.resources.NIOUtilities;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A read only spatial index stored in a packed, flat file (the .pqx file). The tree nodes are
+ * stored in breadth first order as fixed size records, so that the children of each node are
+ * contiguous, followed by the record numbers and offsets of the shapes contained in each node.
+ * <p>
+ * The file layout, all values being little endian, is:
+ * <ul>
+ * <li>a 64 bytes header: the "PQX" signature, the version, the number of shapes in the
+ * shapefile, the number of nodes, the number of entries and the bounds of the index as four
+ * doubles</li>
+ * <li>the nodes, 32 bytes each: the bounds as four floats (minx, miny, maxx, maxy, rounded
+ * outwards), the index of the first child, the number of children, the index of the first
+ * entry, the number of entries</li>
+ * <li>the entries, 8 bytes each: the record number (zero based) and the offset of the record in
+ * the .shp file, in bytes</li>
+ * </ul>
+ * The nodes and entries are read straight from the file contents, either memory mapped or
+ * accessed via positional reads, without building any in memory tree. Searches are performed with
+ * a {@link PackedIndexCursor}, which does not allocate objects while scanning. A single index can
+ * be searched by multiple threads, as long as each one uses its own cursor.
+ *
+ * @see PackedIndexWriter
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public class PackedIndex {
+
+    static final byte[] SIGNATURE = new byte[] { 'P', 'Q', 'X' };
+
+    static final byte VERSION = 1;
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int NODE_SIZE = 32;
+
+    static final int ENTRY_SIZE = 8;
+
+    static final DataDefinition DATA_DEFINITION = new DataDefinition("US-ASCII");
+    static {
+        DATA_DEFINITION.addField(Integer.class);
+        DATA_DEFINITION.addField(Long.class);
+    }
+
+    FileChannel channel;
+
+    boolean useMemoryMapping;
+
+    /**
+     * The buffer holding the nodes, and the entries as well if memory mapped
+     */
+    ByteBuffer buffer;
+
+    int numShapes;
+
+    int numNodes;
+
+    int numEntries;
+
+    Envelope bounds;
+
+    /**
+     * Position of the first node in {@link #buffer}
+     */
+    int nodesStart;
+
+    /**
+     * Position of the first entry in the file
+     */
+    long entriesStart;
+
+    /**
+     * Opens the index contained in the specified channel. The channel is not closed by
+     * {@link #close()}.
+     *
+     * @param channel the channel to read from
+     * @param useMemoryMapping if true the file will be memory mapped, otherwise the nodes will be
+     *        loaded in memory and the entries read from the file on demand
+     */
+    public PackedIndex(FileChannel channel, boolean useMemoryMapping) throws IOException {
+        this.channel = channel;
+        this.useMemoryMapping = useMemoryMapping;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.order(ORDER);
+        readFully(header, 0);
+        header.flip();
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (header.get() != SIGNATURE[i]) {
+                throw new IOException("Not a packed spatial index file");
+            }
+        }
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported packed spatial index version " + version);
+        }
+        numShapes = header.getInt();
+        numNodes = header.getInt();
+        numEntries = header.getInt();
+        double minx = header.getDouble();
+        double miny = header.getDouble();
+        double maxx = header.getDouble();
+        double maxy = header.getDouble();
+        bounds = new Envelope(minx, maxx, miny, maxy);
+        entriesStart = HEADER_SIZE + ((long) numNodes) * NODE_SIZE;
+
+        if (useMemoryMapping) {
+            long size = entriesStart + ((long) numEntries) * ENTRY_SIZE;
+            buffer = channel.map(MapMode.READ_ONLY, 0, size);
+            nodesStart = HEADER_SIZE;
+        } else {
+            buffer = ByteBuffer.allocate(numNodes * NODE_SIZE);
+            readFully(buffer, HEADER_SIZE);
+            nodesStart = 0;
+        }
+        buffer.order(ORDER);
+    }
+
+    /**
+     * Fills the buffer reading from the specified file position
+     */
+    void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of the packed spatial index file");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Returns a cursor over the entries whose node intersects the specified bounds. The cursor can
+     * be reused for other searches, see {@link PackedIndexCursor#reset(Envelope)}
+     */
+    public PackedIndexCursor cursor(Envelope bounds) {
+        PackedIndexCursor cursor = new PackedIndexCursor(this);
+        cursor.reset(bounds);
+        return cursor;
+    }
+
+    /**
+     * Returns the records whose node intersects the specified bounds, sorted by offset in the
+     * .shp file. The search is performed eagerly, so the index can be closed as soon as this
+     * method returns.
+     *
+     * @return the matching records, each as a {@link Data} with the record number (one based)
+     *         and the offset in bytes
+     */
+    public CloseableIterator<Data> search(Envelope bounds) throws IOException {
+        // pack offset and record number in a long, so that sorting sorts by offset
+        long[] records = new long[64];
+        int size = 0;
+        PackedIndexCursor cursor = cursor(bounds);
+        while (cursor.next()) {
+            if (size == records.length) {
+                long[] grown = new long[records.length * 2];
+                System.arraycopy(records, 0, grown, 0, size);
+                records = grown;
+            }
+            records[size++] = (((long) cursor.getOffset()) << 32) | cursor.getRecordNumber();
+        }
+        Arrays.sort(records, 0, size);
+        return new RecordIterator(records, size);
+    }
+
+    /**
+     * The number of records in the indexed shapefile
+     */
+    public int getNumShapes() {
+        return numShapes;
+    }
+
+    /**
+     * The number of nodes in the tree
+     */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    /**
+     * The number of entries in the tree
+     */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * The bounds of the indexed shapefile
+     */
+    public Envelope getBounds() {
+        return new Envelope(bounds);
+    }
+
+    /**
+     * Releases the buffers used to access the file contents. The cursors cannot be used anymore
+     * after this call.
+     */
+    public void close() {
+        if (buffer != null) {
+            NIOUtilities.clean(buffer, useMemoryMapping);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Iterates over the packed offsets and record numbers collected by
+     * {@link PackedIndex#search(Envelope)}
+     */
+    static class RecordIterator implements CloseableIterator<Data> {
+        long[] records;
+
+        int size;
+
+        int idx;
+
+        Data data = new Data(DATA_DEFINITION);
+
+        RecordIterator(long[] records, int size) {
+            this.records = records;
+            this.size = size;
+        }
+
+        public boolean hasNext() {
+            return idx < size;
+        }
+
+        public Data next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long record = records[idx++];
+            try {
+                data.clear();
+                data.addValue(((int) record) + 1);
+                data.addValue(record >>> 32);
+            } catch (TreeException e) {
+                throw new RuntimeException(e);
+            }
+            return data;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() throws IOException {
+            records = null;
+            size = 0;
+        }
+    }
+}
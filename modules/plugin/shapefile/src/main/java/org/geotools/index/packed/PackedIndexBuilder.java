@@ -0,0 +1,693 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.index.packed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Builds a {@link PackedIndex} file as a packed R-tree, with bounded memory usage, no matter how
+ * many records are indexed.
+ * <p>
+ * The records are collected by one or more {@link Partition}, each of which can be fed by a
+ * different thread. The partitions sort the records along a Hilbert curve in chunks, spilling
+ * the sorted chunks to disk once the memory budget is used. {@link #write(int)} then merges the
+ * chunks and writes the leaves, grouping the records {@link #getNodeCapacity()} at a time, and
+ * then builds the upper levels of the tree bottom up, reading back the level below from the
+ * file being written.
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public class PackedIndexBuilder {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.index");
+
+    /**
+     * The size, in bytes, of a record while being sorted: sort key, record number, offset, four
+     * floats bounds
+     */
+    static final int RECORD_SIZE = 8 + 4 + 4 + 16;
+
+    /**
+     * The size, in bytes, of a record in a spilled chunk
+     */
+    static final int RUN_RECORD_SIZE = 4 + 4 + 4 + 16;
+
+    /**
+     * The number of cells per side of the Hilbert curve grid, the keys fit in 30 bits
+     */
+    static final int HILBERT_SIZE = 1 << 15;
+
+    static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    File file;
+
+    Envelope bounds;
+
+    int nodeCapacity = 16;
+
+    long memoryBudget = 64 * 1024 * 1024;
+
+    File tempDirectory;
+
+    /**
+     * The sorted chunks, in memory or spilled to disk
+     */
+    List<Run> runs = new ArrayList<Run>();
+
+    /**
+     * Set once the builder has been disposed, runs completed afterwards are dropped right away
+     */
+    boolean disposed;
+
+    /**
+     * The number of partitions that will be created, used to split the memory budget
+     */
+    int partitions;
+
+    /**
+     * Creates a new builder
+     *
+     * @param file the index file to be written
+     * @param bounds the area containing all the records, used to compute the Hilbert keys
+     * @param partitions the number of partitions that will feed the builder
+     */
+    public PackedIndexBuilder(File file, Envelope bounds, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("There must be at least one partition");
+        }
+        this.file = file;
+        this.bounds = bounds;
+        this.partitions = partitions;
+    }
+
+    /**
+     * The max number of children, or records, in each node
+     */
+    public int getNodeCapacity() {
+        return nodeCapacity;
+    }
+
+    public void setNodeCapacity(int nodeCapacity) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("The node capacity must be at least 2");
+        }
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    /**
+     * The amount of memory, in bytes, the partitions can use to sort the records before spilling
+     * them to disk. Defaults to 64MB
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * The directory where the sorted chunks are spilled. Defaults to the system temporary
+     * directory
+     */
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Creates a new partition. Each partition must be used by a single thread, and closed once
+     * all its records have been added.
+     */
+    public Partition partition() {
+        long chunk = memoryBudget / partitions / RECORD_SIZE;
+        return new Partition((int) Math.max(1024, Math.min(chunk, Integer.MAX_VALUE / 8)));
+    }
+
+    synchronized void addRun(Run run) {
+        if (disposed) {
+            run.dispose();
+        } else {
+            runs.add(run);
+        }
+    }
+
+    /**
+     * Removes the chunks spilled to disk. Called by {@link #write(int)}, and to be called if
+     * the index is not going to be written, e.g., because the scan of the records failed.
+     * The runs completed by the partitions after this call are dropped right away.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        for (Run run : runs) {
+            run.dispose();
+        }
+        runs.clear();
+    }
+
+    /**
+     * Merges the sorted records and writes down the index
+     *
+     * @param numShapes the number of records in the shapefile, including the ones that have not
+     *        been indexed (e.g., null geometries)
+     */
+    public void write(int numShapes) throws IOException {
+        int numEntries = 0;
+        for (Run run : runs) {
+            numEntries += run.size;
+        }
+
+        // compute the number of nodes of each level, from the leaves to the root
+        List<Integer> levels = new ArrayList<Integer>();
+        int count = numEntries;
+        if (count > 0) {
+            do {
+                count = (count + nodeCapacity - 1) / nodeCapacity;
+                levels.add(count);
+            } while (count > 1);
+        }
+        int numNodes = 0;
+        for (Integer size : levels) {
+            numNodes += size;
+        }
+        // the file contains the levels from the root down, compute where each one starts
+        int[] levelStart = new int[levels.size()];
+        int start = 0;
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            levelStart[i] = start;
+            start += levels.get(i);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        try {
+            channel.truncate(0);
+            Envelope envelope = new Envelope();
+            long entriesStart = PackedIndex.HEADER_SIZE + ((long) numNodes)
+                    * PackedIndex.NODE_SIZE;
+            if (numEntries > 0) {
+                envelope = writeLeaves(channel, nodePosition(levelStart[0]), entriesStart);
+                for (int level = 1; level < levels.size(); level++) {
+                    writeLevel(channel, levelStart[level - 1], levels.get(level - 1),
+                            levelStart[level]);
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(PackedIndex.HEADER_SIZE);
+            header.order(PackedIndex.ORDER);
+            header.put(PackedIndex.SIGNATURE);
+            header.put(PackedIndex.VERSION);
+            header.putInt(numShapes);
+            header.putInt(numNodes);
+            header.putInt(numEntries);
+            header.putDouble(envelope.getMinX());
+            header.putDouble(envelope.getMinY());
+            header.putDouble(envelope.getMaxX());
+            header.putDouble(envelope.getMaxY());
+            header.position(0);
+            writeFully(channel, header, 0);
+        } finally {
+            channel.close();
+            raf.close();
+            dispose();
+        }
+    }
+
+    static long nodePosition(int node) {
+        return PackedIndex.HEADER_SIZE + ((long) node) * PackedIndex.NODE_SIZE;
+    }
+
+    /**
+     * Merges the runs and writes the leaves and the entries
+     *
+     * @return the bounds of all the entries
+     */
+    Envelope writeLeaves(FileChannel channel, long nodesStart, long entriesStart)
+            throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        for (Run run : runs) {
+            run.open();
+            if (run.next()) {
+                queue.add(run);
+            }
+        }
+
+        Output nodes = new Output(channel, nodesStart);
+        Output entries = new Output(channel, entriesStart);
+        Envelope envelope = new Envelope();
+        int entry = 0;
+        int leafEntries = 0;
+        float minx = 0, miny = 0, maxx = 0, maxy = 0;
+        while (!queue.isEmpty()) {
+            Run run = queue.poll();
+            entries.putInt(run.recordNumber);
+            entries.putInt(run.offset);
+            if (leafEntries == 0) {
+                minx = run.minx;
+                miny = run.miny;
+                maxx = run.maxx;
+                maxy = run.maxy;
+            } else {
+                minx = Math.min(minx, run.minx);
+                miny = Math.min(miny, run.miny);
+                maxx = Math.max(maxx, run.maxx);
+                maxy = Math.max(maxy, run.maxy);
+            }
+            leafEntries++;
+            entry++;
+            if (leafEntries == nodeCapacity) {
+                putNode(nodes, minx, miny, maxx, maxy, 0, 0, entry - leafEntries, leafEntries);
+                envelope.expandToInclude(minx, miny);
+                envelope.expandToInclude(maxx, maxy);
+                leafEntries = 0;
+            }
+            if (run.next()) {
+                queue.add(run);
+            }
+        }
+        if (leafEntries > 0) {
+            putNode(nodes, minx, miny, maxx, maxy, 0, 0, entry - leafEntries, leafEntries);
+            envelope.expandToInclude(minx, miny);
+            envelope.expandToInclude(maxx, maxy);
+        }
+        nodes.flush();
+        entries.flush();
+
+        return envelope;
+    }
+
+    /**
+     * Writes a level of the tree, grouping the nodes of the level below
+     */
+    void writeLevel(FileChannel channel, int childStart, int numChildren, int levelStart)
+            throws IOException {
+        Output nodes = new Output(channel, nodePosition(levelStart));
+        ByteBuffer input = ByteBuffer.allocate(IO_BUFFER_SIZE - IO_BUFFER_SIZE
+                % PackedIndex.NODE_SIZE);
+        input.order(PackedIndex.ORDER);
+        input.limit(0);
+        long position = nodePosition(childStart);
+        long end = nodePosition(childStart + numChildren);
+
+        float minx = 0, miny = 0, maxx = 0, maxy = 0;
+        int children = 0;
+        for (int child = 0; child < numChildren; child++) {
+            if (!input.hasRemaining()) {
+                input.clear();
+                input.limit((int) Math.min(input.capacity(), end - position));
+                readFully(channel, input, position);
+                position += input.limit();
+                input.flip();
+            }
+            float cminx = input.getFloat();
+            float cminy = input.getFloat();
+            float cmaxx = input.getFloat();
+            float cmaxy = input.getFloat();
+            input.position(input.position() + 16);
+            if (children == 0) {
+                minx = cminx;
+                miny = cminy;
+                maxx = cmaxx;
+                maxy = cmaxy;
+            } else {
+                minx = Math.min(minx, cminx);
+                miny = Math.min(miny, cminy);
+                maxx = Math.max(maxx, cmaxx);
+                maxy = Math.max(maxy, cmaxy);
+            }
+            children++;
+            if (children == nodeCapacity || child == numChildren - 1) {
+                putNode(nodes, minx, miny, maxx, maxy, childStart + child - children + 1,
+                        children, 0, 0);
+                children = 0;
+            }
+        }
+        nodes.flush();
+    }
+
+    static void putNode(Output out, float minx, float miny, float maxx, float maxy,
+            int firstChild, int numChildren, int firstEntry, int numEntries) throws IOException {
+        out.putFloat(minx);
+        out.putFloat(miny);
+        out.putFloat(maxx);
+        out.putFloat(maxy);
+        out.putInt(firstChild);
+        out.putInt(numChildren);
+        out.putInt(firstEntry);
+        out.putInt(numEntries);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Returns the position of the point along a Hilbert curve covering a
+     * {@link #HILBERT_SIZE} square grid
+     */
+    static int hilbert(int x, int y) {
+        int d = 0;
+        for (int s = HILBERT_SIZE / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIZE - 1 - x;
+                    y = HILBERT_SIZE - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Collects and sorts records on behalf of a single thread
+     */
+    public class Partition {
+
+        /**
+         * The sort keys, each one holding the Hilbert key in the upper half, and the position
+         * of the record in the arrays in the lower one
+         */
+        long[] keys;
+
+        int[] recordNumbers;
+
+        int[] offsets;
+
+        float[] envelopes;
+
+        int size;
+
+        double minx, miny, scalex, scaley;
+
+        Partition(int capacity) {
+            keys = new long[capacity];
+            recordNumbers = new int[capacity];
+            offsets = new int[capacity];
+            envelopes = new float[capacity * 4];
+            minx = bounds.getMinX();
+            miny = bounds.getMinY();
+            scalex = bounds.getWidth() > 0 ? (HILBERT_SIZE - 1) / bounds.getWidth() : 0;
+            scaley = bounds.getHeight() > 0 ? (HILBERT_SIZE - 1) / bounds.getHeight() : 0;
+        }
+
+        /**
+         * Adds a record to the index
+         *
+         * @param recordNumber the zero based record number
+         * @param offset the offset of the record in the .shp file, in bytes
+         */
+        public void add(int recordNumber, int offset, double minx, double miny, double maxx,
+                double maxy) throws IOException {
+            if (size == keys.length) {
+                spill();
+            }
+            int x = cell((minx + maxx) / 2 - this.minx, scalex);
+            int y = cell((miny + maxy) / 2 - this.miny, scaley);
+            keys[size] = (((long) hilbert(x, y)) << 32) | size;
+            recordNumbers[size] = recordNumber;
+            offsets[size] = offset;
+            envelopes[size * 4] = PackedIndexWriter.floor(minx);
+            envelopes[size * 4 + 1] = PackedIndexWriter.floor(miny);
+            envelopes[size * 4 + 2] = PackedIndexWriter.ceil(maxx);
+            envelopes[size * 4 + 3] = PackedIndexWriter.ceil(maxy);
+            size++;
+        }
+
+        int cell(double delta, double scale) {
+            int cell = (int) (delta * scale);
+            if (cell < 0) {
+                return 0;
+            } else if (cell >= HILBERT_SIZE) {
+                return HILBERT_SIZE - 1;
+            }
+            return cell;
+        }
+
+        /**
+         * Writes the current chunk to disk
+         */
+        void spill() throws IOException {
+            Arrays.sort(keys, 0, size);
+            File runFile = File.createTempFile("pqx", ".run", tempDirectory);
+            boolean written = false;
+            DataOutputStream dos = null;
+            try {
+                dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                        runFile), IO_BUFFER_SIZE));
+                for (int i = 0; i < size; i++) {
+                    int idx = (int) keys[i];
+                    dos.writeInt((int) (keys[i] >>> 32));
+                    dos.writeInt(recordNumbers[idx]);
+                    dos.writeInt(offsets[idx]);
+                    dos.writeFloat(envelopes[idx * 4]);
+                    dos.writeFloat(envelopes[idx * 4 + 1]);
+                    dos.writeFloat(envelopes[idx * 4 + 2]);
+                    dos.writeFloat(envelopes[idx * 4 + 3]);
+                }
+                dos.close();
+                written = true;
+            } finally {
+                if (!written) {
+                    if (dos != null) {
+                        try {
+                            dos.close();
+                        } catch (IOException e) {
+                            LOGGER.log(Level.FINE, "Failed to close " + runFile, e);
+                        }
+                    }
+                    runFile.delete();
+                }
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Spilled " + size + " sorted records to " + runFile);
+            }
+            addRun(new FileRun(runFile, size));
+            size = 0;
+        }
+
+        /**
+         * Completes the partition. The last chunk is kept in memory
+         */
+        public void close() {
+            Arrays.sort(keys, 0, size);
+            addRun(new MemoryRun(this));
+        }
+    }
+
+    /**
+     * A sorted sequence of records
+     */
+    static abstract class Run implements Comparable<Run> {
+        int size;
+
+        int read;
+
+        int key;
+
+        int recordNumber;
+
+        int offset;
+
+        float minx, miny, maxx, maxy;
+
+        Run(int size) {
+            this.size = size;
+        }
+
+        abstract void open() throws IOException;
+
+        /**
+         * Moves to the next record
+         */
+        abstract boolean next() throws IOException;
+
+        boolean hasMore() {
+            return read < size;
+        }
+
+        void dispose() {
+        }
+
+        public int compareTo(Run other) {
+            if (key != other.key) {
+                return key < other.key ? -1 : 1;
+            }
+            return recordNumber < other.recordNumber ? -1
+                    : (recordNumber == other.recordNumber ? 0 : 1);
+        }
+    }
+
+    static class MemoryRun extends Run {
+        Partition partition;
+
+        MemoryRun(Partition partition) {
+            super(partition.size);
+            this.partition = partition;
+        }
+
+        void open() {
+        }
+
+        boolean next() {
+            if (read >= size) {
+                return false;
+            }
+            long k = partition.keys[read++];
+            int idx = (int) k;
+            key = (int) (k >>> 32);
+            recordNumber = partition.recordNumbers[idx];
+            offset = partition.offsets[idx];
+            minx = partition.envelopes[idx * 4];
+            miny = partition.envelopes[idx * 4 + 1];
+            maxx = partition.envelopes[idx * 4 + 2];
+            maxy = partition.envelopes[idx * 4 + 3];
+            return true;
+        }
+
+        void dispose() {
+            partition = null;
+        }
+    }
+
+    static class FileRun extends Run {
+        File file;
+
+        DataInputStream input;
+
+        FileRun(File file, int size) {
+            super(size);
+            this.file = file;
+        }
+
+        void open() throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                    IO_BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            if (read >= size) {
+                return false;
+            }
+            read++;
+            key = input.readInt();
+            recordNumber = input.readInt();
+            offset = input.readInt();
+            minx = input.readFloat();
+            miny = input.readFloat();
+            maxx = input.readFloat();
+            maxy = input.readFloat();
+            return true;
+        }
+
+        void dispose() {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close " + file, e);
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * A buffered output writing at increasing positions of a file
+     */
+    static class Output {
+        FileChannel channel;
+
+        long position;
+
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+
+        Output(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+            buffer.order(PackedIndex.ORDER);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putFloat(value);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            int size = buffer.remaining();
+            writeFully(channel, buffer, position);
+            position += size;
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.index.packed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Scans the entries of a {@link PackedIndex} whose node intersects a search area, depth first.
+ * The cursor reads the nodes and entries straight from the index buffers and does not allocate
+ * any object during the scan, besides the occasional growth of its internal stack. Usage:
+ *
+ * <pre>
+ * PackedIndexCursor cursor = index.cursor(bounds);
+ * while (cursor.next()) {
+ *     int offset = cursor.getOffset();
+ *     ...
+ * }
+ * </pre>
+ *
+ * A cursor is not thread safe, but it can be reused for multiple searches on the same index.
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public class PackedIndexCursor {
+
+    static final int MINX = 0;
+
+    static final int MINY = 4;
+
+    static final int MAXX = 8;
+
+    static final int MAXY = 12;
+
+    static final int FIRST_CHILD = 16;
+
+    static final int NUM_CHILDREN = 20;
+
+    static final int FIRST_ENTRY = 24;
+
+    static final int NUM_ENTRIES = 28;
+
+    final PackedIndex index;
+
+    double minx, miny, maxx, maxy;
+
+    /**
+     * The nodes still to be visited
+     */
+    int[] stack = new int[64];
+
+    int stackSize;
+
+    /**
+     * The next entry to be returned, and the end of the current node entries
+     */
+    int entry;
+
+    int entryEnd;
+
+    /**
+     * When not memory mapped, holds the entries of the current node, starting with the one at
+     * blockStart
+     */
+    ByteBuffer block;
+
+    int blockStart;
+
+    int recordNumber;
+
+    int offset;
+
+    PackedIndexCursor(PackedIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Restarts the scan with a new search area
+     */
+    public void reset(Envelope bounds) {
+        stackSize = 0;
+        entry = 0;
+        entryEnd = 0;
+        if (bounds == null || bounds.isNull() || index.numNodes == 0) {
+            return;
+        }
+        minx = bounds.getMinX();
+        miny = bounds.getMinY();
+        maxx = bounds.getMaxX();
+        maxy = bounds.getMaxY();
+        stack[stackSize++] = 0;
+    }
+
+    /**
+     * Moves to the next entry, returning false if there are no more entries to be scanned
+     */
+    public boolean next() throws IOException {
+        final ByteBuffer nodes = index.buffer;
+        while (entry >= entryEnd) {
+            if (stackSize == 0) {
+                return false;
+            }
+            int base = index.nodesStart + stack[--stackSize] * PackedIndex.NODE_SIZE;
+            if (nodes.getFloat(base + MINX) > maxx || nodes.getFloat(base + MAXX) < minx
+                    || nodes.getFloat(base + MINY) > maxy || nodes.getFloat(base + MAXY) < miny) {
+                continue;
+            }
+
+            // push the children in reverse order, so that they are visited in file order
+            int firstChild = nodes.getInt(base + FIRST_CHILD);
+            int numChildren = nodes.getInt(base + NUM_CHILDREN);
+            if (stackSize + numChildren > stack.length) {
+                int[] grown = new int[Math.max(stack.length * 2, stackSize + numChildren)];
+                System.arraycopy(stack, 0, grown, 0, stackSize);
+                stack = grown;
+            }
+            for (int i = firstChild + numChildren - 1; i >= firstChild; i--) {
+                stack[stackSize++] = i;
+            }
+
+            entry = nodes.getInt(base + FIRST_ENTRY);
+            entryEnd = entry + nodes.getInt(base + NUM_ENTRIES);
+            if (!index.useMemoryMapping && entryEnd > entry) {
+                loadBlock();
+            }
+        }
+
+        if (index.useMemoryMapping) {
+            int position = (int) (index.entriesStart + ((long) entry) * PackedIndex.ENTRY_SIZE);
+            recordNumber = nodes.getInt(position);
+            offset = nodes.getInt(position + 4);
+        } else {
+            int position = (entry - blockStart) * PackedIndex.ENTRY_SIZE;
+            recordNumber = block.getInt(position);
+            offset = block.getInt(position + 4);
+        }
+        entry++;
+        return true;
+    }
+
+    /**
+     * Reads the entries of the current node from the file
+     */
+    void loadBlock() throws IOException {
+        int size = (entryEnd - entry) * PackedIndex.ENTRY_SIZE;
+        if (block == null || block.capacity() < size) {
+            int capacity = block == null ? 4096 : block.capacity();
+            while (capacity < size) {
+                capacity *= 2;
+            }
+            block = ByteBuffer.allocate(capacity);
+            block.order(PackedIndex.ORDER);
+        }
+        block.clear();
+        block.limit(size);
+        index.readFully(block, index.entriesStart + ((long) entry) * PackedIndex.ENTRY_SIZE);
+        blockStart = entry;
+    }
+
+    /**
+     * The zero based number of the current record
+     */
+    public int getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * The offset, in bytes, of the current record in the .shp file
+     */
+    public int getOffset() {
+        return offset;
+    }
+}
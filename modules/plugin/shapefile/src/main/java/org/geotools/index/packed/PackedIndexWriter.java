@@ -0,0 +1,202 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.index.packed;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.index.quadtree.Node;
+import org.geotools.index.quadtree.QuadTree;
+import org.geotools.index.quadtree.StoreException;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Writes a {@link PackedIndex} file. The tree can be either built in memory, or loaded from an
+ * existing .qix file, in which case the writer acts as a converter between the two formats.
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public class PackedIndexWriter {
+
+    File file;
+
+    FileOutputStream fos;
+
+    FileChannel channel;
+
+    ByteBuffer buffer;
+
+    public PackedIndexWriter(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes the tree in packed format. The record offsets are looked up in the tree index file.
+     */
+    public void write(QuadTree tree) throws IOException, StoreException {
+        // breadth first visit, the children of each node end up being contiguous
+        List<Node> nodes = new ArrayList<Node>();
+        if (tree.getRoot() != null) {
+            nodes.add(tree.getRoot());
+        }
+        int numEntries = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            numEntries += node.getNumShapeIds();
+            for (int j = 0; j < node.getNumSubNodes(); j++) {
+                nodes.add(node.getSubNode(j));
+            }
+        }
+
+        open();
+        try {
+            Envelope bounds = nodes.isEmpty() ? new Envelope() : nodes.get(0).getBounds();
+            writeHeader(tree.getNumShapes(), nodes.size(), numEntries, bounds);
+
+            int nextChild = 1;
+            int nextEntry = 0;
+            for (Node node : nodes) {
+                writeNode(node.getBounds(), nextChild, node.getNumSubNodes(), nextEntry, node
+                        .getNumShapeIds());
+                nextChild += node.getNumSubNodes();
+                nextEntry += node.getNumShapeIds();
+            }
+
+            // the entries of each node are sorted by record number, thus by offset
+            IndexFile indexFile = tree.getIndexfile();
+            for (Node node : nodes) {
+                int[] ids = new int[node.getNumShapeIds()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = node.getShapeId(i);
+                }
+                Arrays.sort(ids);
+                for (int i = 0; i < ids.length; i++) {
+                    writeEntry(ids[i], indexFile.getOffsetInBytes(ids[i]));
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    void open() throws IOException {
+        fos = new FileOutputStream(file);
+        channel = fos.getChannel();
+        buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.order(PackedIndex.ORDER);
+    }
+
+    void writeHeader(int numShapes, int numNodes, int numEntries, Envelope bounds)
+            throws IOException {
+        ensureRemaining(PackedIndex.HEADER_SIZE);
+        int start = buffer.position();
+        buffer.put(PackedIndex.SIGNATURE);
+        buffer.put(PackedIndex.VERSION);
+        buffer.putInt(numShapes);
+        buffer.putInt(numNodes);
+        buffer.putInt(numEntries);
+        buffer.putDouble(bounds.getMinX());
+        buffer.putDouble(bounds.getMinY());
+        buffer.putDouble(bounds.getMaxX());
+        buffer.putDouble(bounds.getMaxY());
+        // reserved
+        while (buffer.position() < start + PackedIndex.HEADER_SIZE) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    void writeNode(Envelope bounds, int firstChild, int numChildren, int firstEntry,
+            int numEntries) throws IOException {
+        ensureRemaining(PackedIndex.NODE_SIZE);
+        buffer.putFloat(floor(bounds.getMinX()));
+        buffer.putFloat(floor(bounds.getMinY()));
+        buffer.putFloat(ceil(bounds.getMaxX()));
+        buffer.putFloat(ceil(bounds.getMaxY()));
+        buffer.putInt(numChildren > 0 ? firstChild : 0);
+        buffer.putInt(numChildren);
+        buffer.putInt(numEntries > 0 ? firstEntry : 0);
+        buffer.putInt(numEntries);
+    }
+
+    void writeEntry(int recordNumber, int offset) throws IOException {
+        ensureRemaining(PackedIndex.ENTRY_SIZE);
+        buffer.putInt(recordNumber);
+        buffer.putInt(offset);
+    }
+
+    void ensureRemaining(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    void close() throws IOException {
+        try {
+            if (channel != null) {
+                flush();
+                channel.close();
+            }
+        } finally {
+            if (fos != null) {
+                fos.close();
+            }
+            channel = null;
+            fos = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Returns the largest float lower or equal to the value
+     */
+    static float floor(double value) {
+        float f = (float) value;
+        if (f > value) {
+            f = Math.nextAfter(f, Double.NEGATIVE_INFINITY);
+        }
+        return f;
+    }
+
+    /**
+     * Returns the smallest float greater or equal to the value
+     */
+    static float ceil(double value) {
+        float f = (float) value;
+        if (f < value) {
+            f = Math.nextAfter(f, Double.POSITIVE_INFINITY);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class MemoryMapCacheTest extends TestCase {
+
+    static final int FILE_SIZE = 1000;
+
+    MemoryMapCache cache;
+
+    List<RandomAccessFile> files = new ArrayList<RandomAccessFile>();
+
+    URL a, b, c;
+
+    @Override
+    protected void setUp() throws Exception {
+        cache = new MemoryMapCache(2500);
+        a = createFile("a", 1);
+        b = createFile("b", 2);
+        c = createFile("c", 3);
+    }
+
+    URL createFile(String name, int content) throws Exception {
+        File file = File.createTempFile("mmap-" + name, ".bin");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            byte[] bytes = new byte[FILE_SIZE];
+            bytes[0] = (byte) content;
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+        return DataUtilities.fileToURL(file);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.clean();
+        for (RandomAccessFile raf : files) {
+            raf.close();
+        }
+    }
+
+    ByteBuffer map(URL url, Object owner) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(DataUtilities.urlToFile(url), "r");
+        files.add(raf);
+        FileChannel channel = raf.getChannel();
+        return cache.map(channel, url, MapMode.READ_ONLY, 0, FILE_SIZE, owner);
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        ByteBuffer b1 = map(a, this);
+        ByteBuffer b2 = map(a, this);
+        assertNotSame(b1, b2);
+        assertEquals(1, b1.get(0));
+        assertEquals(1, b2.get(0));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getCount());
+        assertEquals(FILE_SIZE, cache.getSize());
+    }
+
+    public void testLRUEviction() throws Exception {
+        ByteBuffer ba = map(a, this);
+        ByteBuffer bb = map(b, this);
+        // touch a so that b becomes the least recently used
+        map(a, this);
+        ByteBuffer bc = map(c, this);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getCount());
+        assertEquals(2 * FILE_SIZE, cache.getSize());
+        // b is still in use, it's not unmapped yet
+        assertEquals(1, cache.getPendingCount());
+        assertEquals(2, bb.get(0));
+        assertEquals(1, ba.get(0));
+        assertEquals(3, bc.get(0));
+
+        // b has to be mapped again
+        map(b, this);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    public void testDeferredUnmapping() throws Exception {
+        cache.setMaxSize(0);
+        ByteBuffer buffer = map(a, this);
+        assertEquals(1, buffer.get(0));
+        assertEquals(0, cache.getCount());
+        assertEquals(1, cache.getPendingCount());
+
+        // once the buffer is garbage collected the mapping gets released
+        buffer = null;
+        for (int i = 0; i < 20 && cache.getPendingCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(0, cache.getPendingCount());
+    }
+
+    public void testCleanFileCache() throws Exception {
+        Object otherOwner = new Object();
+        map(a, this);
+        map(b, this);
+        ByteBuffer other = map(b, otherOwner);
+
+        // the buffers handed to the owner are not considered in use
+        cache.cleanFileCache(a, this);
+        assertEquals(1, cache.getCount());
+        assertEquals(0, cache.getPendingCount());
+
+        // but the ones handed out to others are
+        cache.cleanFileCache(b, this);
+        assertEquals(0, cache.getCount());
+        assertEquals(1, cache.getPendingCount());
+        assertEquals(2, other.get(0));
+    }
+
+    public void testNotReadOnly() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(DataUtilities.urlToFile(a), "rw");
+        files.add(raf);
+        cache.map(raf.getChannel(), a, MapMode.READ_WRITE, 0, FILE_SIZE, this);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getMissCount());
+    }
+}
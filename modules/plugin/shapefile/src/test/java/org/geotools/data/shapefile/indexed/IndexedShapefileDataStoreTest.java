@@ -57,6 +57,7 @@ import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.IllegalFilterException;
+import org.geotools.index.packed.PackedIndex;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.Feature;
 import org.opengis.feature.FeatureVisitor;
@@ -333,6 +334,39 @@ public class IndexedShapefileDataStoreTest extends TestCaseSupport {
         ds2.dispose();
     }
 
+    public void testPackedIndexShared() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        IndexedShapefileDataStore ds = new IndexedShapefileDataStore(shpFile.toURI().toURL(),
+                null, true, true, IndexType.PQX);
+        try {
+            Envelope bounds = ds.getFeatureSource().getBounds();
+            Envelope area = new Envelope(bounds.getMinX(), bounds.centre().x, bounds.getMinY(),
+                    bounds.centre().y);
+            ds.queryQuadTree(area).close();
+            PackedIndex index = ds.packedIndex;
+            assertNotNull(index);
+            ds.queryQuadTree(area).close();
+            assertSame(index, ds.packedIndex);
+
+            // reopened when the file changes
+            File pqxFile = sibling(shpFile, ShpFileType.PQX.extension);
+            assertTrue(pqxFile.setLastModified(pqxFile.lastModified() + 1000));
+            ds.queryQuadTree(area).close();
+            assertNotSame(index, ds.packedIndex);
+
+            // and when rebuilt
+            index = ds.packedIndex;
+            ds.buildQuadTree();
+            assertNull(ds.packedIndex);
+            ds.queryQuadTree(area).close();
+            assertNotSame(index, ds.packedIndex);
+            assertNotNull(ds.packedIndex);
+        } finally {
+            ds.dispose();
+        }
+        assertNull(ds.packedIndex);
+    }
+
     public void testSelectionQuery() throws Exception {
         File shpFile = copyShapefiles(STATE_POP);
         URL url = shpFile.toURI().toURL();
@@ -0,0 +1,405 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.index.packed;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.FileReader;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShpFileType;
+import org.geotools.data.shapefile.ShpFiles;
+import org.geotools.data.shapefile.indexed.IndexType;
+import org.geotools.data.shapefile.indexed.IndexedShapefileDataStore;
+import org.geotools.data.shapefile.indexed.ShapeFileIndexer;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.index.CloseableIterator;
+import org.geotools.index.Data;
+import org.geotools.index.quadtree.QuadTree;
+import org.geotools.index.quadtree.fs.FileSystemIndexStore;
+import org.geotools.util.NullProgressListener;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Checks the packed index returns the same records as the QIX one. Run {@link #main(String[])}
+ * to compare their build and search speed. The number of points in the test shapefile can be
+ * raised with the <code>org.geotools.index.packed.points</code> system property, e.g., to
+ * 10000000 for a realistic benchmark.
+ *
+ * @source $URL$
+ */
+public class PackedIndexTest extends TestCase implements FileReader {
+
+    static final int POINTS = Integer.getInteger("org.geotools.index.packed.points", 20000);
+
+    static final int QUERIES = 200;
+
+    File directory;
+
+    File shpFile;
+
+    ShpFiles shpFiles;
+
+    Coordinate[] points;
+
+    Random random = new Random(0);
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("packed", "index");
+        directory.delete();
+        directory.mkdir();
+        shpFile = new File(directory, "points.shp");
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("points");
+        tb.add("geom", Point.class);
+        tb.add("id", Integer.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+        ShapefileDataStore ds = new ShapefileDataStore(DataUtilities.fileToURL(shpFile));
+        ds.createSchema(type);
+        GeometryFactory gf = new GeometryFactory();
+        points = new Coordinate[POINTS];
+        FeatureWriter<SimpleFeatureType, SimpleFeature> fw = ds.getFeatureWriterAppend(
+                Transaction.AUTO_COMMIT);
+        try {
+            for (int i = 0; i < POINTS; i++) {
+                points[i] = new Coordinate(random.nextDouble() * 360 - 180,
+                        random.nextDouble() * 180 - 90);
+                SimpleFeature f = fw.next();
+                f.setAttribute("geom", gf.createPoint(points[i]));
+                f.setAttribute("id", i);
+                fw.write();
+            }
+        } finally {
+            fw.close();
+            ds.dispose();
+        }
+
+        shpFiles = new ShpFiles(shpFile);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        shpFiles.dispose();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public String id() {
+        return getClass().getName();
+    }
+
+    void buildIndex(IndexType type) throws Exception {
+        ShapeFileIndexer indexer = new ShapeFileIndexer();
+        indexer.setShapeFileName(shpFiles);
+        indexer.setIndexType(type);
+        indexer.index(false, new NullProgressListener());
+    }
+
+    void buildPacked(int threads, long memoryBudget) throws Exception {
+        ShapeFileIndexer indexer = new ShapeFileIndexer();
+        indexer.setShapeFileName(shpFiles);
+        indexer.setIndexType(IndexType.PQX);
+        indexer.setThreads(threads);
+        indexer.setMemoryBudget(memoryBudget);
+        assertEquals(POINTS, indexer.index(false, new NullProgressListener()));
+    }
+
+    PackedIndex openPacked(boolean useMemoryMapping) throws Exception {
+        File file = DataUtilities.urlToFile(shpFiles.acquireRead(ShpFileType.PQX, this));
+        shpFiles.unlockRead(DataUtilities.fileToURL(file), this);
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        return new PackedIndex(channel, useMemoryMapping);
+    }
+
+    QuadTree openQuadTree() throws Exception {
+        File file = DataUtilities.urlToFile(shpFiles.acquireRead(ShpFileType.QIX, this));
+        shpFiles.unlockRead(DataUtilities.fileToURL(file), this);
+        return new FileSystemIndexStore(file).load(new IndexFile(shpFiles, false), true);
+    }
+
+    Envelope randomArea(double size) {
+        double x = random.nextDouble() * (360 - size) - 180;
+        double y = random.nextDouble() * (180 - size) - 90;
+        return new Envelope(x, x + size, y, y + size);
+    }
+
+    Set<Integer> collect(CloseableIterator<Data> it) throws Exception {
+        Set<Integer> records = new HashSet<Integer>();
+        try {
+            while (it.hasNext()) {
+                records.add((Integer) it.next().getValue(0));
+            }
+        } finally {
+            it.close();
+        }
+        return records;
+    }
+
+    public void testConvertQix() throws Exception {
+        buildIndex(IndexType.QIX);
+        ShapeFileIndexer indexer = new ShapeFileIndexer();
+        indexer.setShapeFileName(shpFiles);
+        assertEquals(POINTS, indexer.convert());
+
+        PackedIndex mapped = openPacked(true);
+        PackedIndex read = openPacked(false);
+        try {
+            assertEquals(POINTS, mapped.getNumShapes());
+            assertEquals(POINTS, mapped.getNumEntries());
+            for (int i = 0; i < 50; i++) {
+                Envelope area = randomArea(10);
+                QuadTree tree = openQuadTree();
+                Set<Integer> expected = collect(tree.search(area));
+                // the packed node bounds are rounded outwards to floats, so a few more
+                // records might be returned
+                assertTrue(collect(mapped.search(area)).containsAll(expected));
+                assertEquals(collect(mapped.search(area)), collect(read.search(area)));
+            }
+        } finally {
+            mapped.close();
+            read.close();
+            mapped.channel.close();
+            read.channel.close();
+        }
+    }
+
+    public void testBuildPacked() throws Exception {
+        buildIndex(IndexType.PQX);
+        PackedIndex index = openPacked(true);
+        try {
+            PackedIndexCursor cursor = index.cursor(null);
+            for (int i = 0; i < 50; i++) {
+                Envelope area = randomArea(10);
+                Set<Integer> found = new HashSet<Integer>();
+                cursor.reset(area);
+                while (cursor.next()) {
+                    found.add(cursor.getRecordNumber());
+                }
+                // the index can return more records than needed, but not less
+                for (int j = 0; j < points.length; j++) {
+                    if (area.contains(points[j])) {
+                        assertTrue(found.contains(j));
+                    }
+                }
+            }
+
+            // nothing outside of the data area
+            cursor.reset(new Envelope(200, 210, 0, 10));
+            assertFalse(cursor.next());
+        } finally {
+            index.close();
+            index.channel.close();
+        }
+    }
+
+    public void testParallelBuild() throws Exception {
+        // a tiny memory budget forces the sorted records to be spilled on disk
+        buildPacked(4, 1024);
+        PackedIndex index = openPacked(false);
+        try {
+            assertEquals(POINTS, index.getNumShapes());
+            assertEquals(POINTS, index.getNumEntries());
+
+            // every record must be indexed exactly once
+            Set<Integer> all = new HashSet<Integer>();
+            PackedIndexCursor cursor = index.cursor(index.getBounds());
+            while (cursor.next()) {
+                assertTrue(all.add(cursor.getRecordNumber()));
+            }
+            assertEquals(POINTS, all.size());
+
+            for (int i = 0; i < 50; i++) {
+                Envelope area = randomArea(10);
+                Set<Integer> found = new HashSet<Integer>();
+                cursor.reset(area);
+                while (cursor.next()) {
+                    found.add(cursor.getRecordNumber());
+                }
+                for (int j = 0; j < points.length; j++) {
+                    if (area.contains(points[j])) {
+                        assertTrue(found.contains(j));
+                    }
+                }
+            }
+        } finally {
+            index.close();
+            index.channel.close();
+        }
+        // no temporary file left behind
+        for (File file : directory.listFiles()) {
+            assertFalse(file.getName(), file.getName().endsWith(".run"));
+        }
+    }
+
+    public void testDispose() throws Exception {
+        File file = new File(directory, "disposed.pqx");
+        PackedIndexBuilder builder = new PackedIndexBuilder(file, new Envelope(-180, 180, -90,
+                90), 2);
+        builder.setTempDirectory(directory);
+        // the smallest chunk holds 1024 records
+        builder.setMemoryBudget(1);
+        PackedIndexBuilder.Partition first = builder.partition();
+        PackedIndexBuilder.Partition second = builder.partition();
+        for (int i = 0; i < 3000; i++) {
+            first.add(i, 100 + i * 28, points[i].x, points[i].y, points[i].x, points[i].y);
+        }
+        assertEquals(2, countRuns());
+
+        // the scan failed, the index is not going to be written
+        builder.dispose();
+        assertEquals(0, countRuns());
+        // the partitions still running are cleaned up as they complete
+        for (int i = 3000; i < 5000; i++) {
+            second.add(i, 100 + i * 28, points[i].x, points[i].y, points[i].x, points[i].y);
+        }
+        second.close();
+        first.close();
+        assertEquals(0, countRuns());
+        assertFalse(file.exists());
+    }
+
+    int countRuns() {
+        int count = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".run")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    void benchmarkBuild() throws Exception {
+        for (int loop = 0; loop < 2; loop++) {
+            long start = System.currentTimeMillis();
+            buildIndex(IndexType.QIX);
+            long qixTime = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            buildPacked(1, 64 * 1024 * 1024);
+            long singleTime = System.currentTimeMillis() - start;
+
+            int threads = Runtime.getRuntime().availableProcessors();
+            start = System.currentTimeMillis();
+            buildPacked(threads, 64 * 1024 * 1024);
+            long parallelTime = System.currentTimeMillis() - start;
+
+            System.out.println("Indexing " + POINTS + " points, qix: " + qixTime
+                    + "ms, pqx: " + singleTime + "ms, pqx with " + threads + " threads: "
+                    + parallelTime + "ms");
+        }
+    }
+
+    public void testDataStore() throws Exception {
+        IndexedShapefileDataStore ds = new IndexedShapefileDataStore(DataUtilities
+                .fileToURL(shpFile), null, true, true, IndexType.PQX);
+        try {
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            Envelope area = new Envelope(0, 20, 0, 20);
+            int expected = 0;
+            for (Coordinate point : points) {
+                if (area.contains(point)) {
+                    expected++;
+                }
+            }
+            Query q = new Query("points", ff.bbox("the_geom", 0, 0, 20, 20, null));
+            assertEquals(expected, ds.getFeatureSource().getFeatures(q).size());
+            assertTrue(shpFiles.exists(ShpFileType.PQX));
+        } finally {
+            ds.dispose();
+        }
+    }
+
+    void benchmarkSearch() throws Exception {
+        buildIndex(IndexType.QIX);
+        ShapeFileIndexer indexer = new ShapeFileIndexer();
+        indexer.setShapeFileName(shpFiles);
+        indexer.convert();
+
+        Envelope[] areas = new Envelope[QUERIES];
+        for (int i = 0; i < areas.length; i++) {
+            areas[i] = randomArea(random.nextDouble() * 5);
+        }
+
+        // warm up and check
+        for (int loop = 0; loop < 2; loop++) {
+            long start = System.currentTimeMillis();
+            long qixCount = 0;
+            for (Envelope area : areas) {
+                QuadTree tree = openQuadTree();
+                CloseableIterator<Data> it = tree.search(area);
+                while (it.hasNext()) {
+                    it.next();
+                    qixCount++;
+                }
+                it.close();
+            }
+            long qixTime = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            long pqxCount = 0;
+            PackedIndex index = openPacked(true);
+            PackedIndexCursor cursor = index.cursor(null);
+            for (Envelope area : areas) {
+                cursor.reset(area);
+                while (cursor.next()) {
+                    pqxCount++;
+                }
+            }
+            index.close();
+            index.channel.close();
+            long pqxTime = System.currentTimeMillis() - start;
+
+            assertTrue(pqxCount >= qixCount);
+            System.out.println(QUERIES + " queries on " + POINTS + " points, qix: " + qixTime
+                    + "ms, pqx: " + pqxTime + "ms");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        PackedIndexTest test = new PackedIndexTest();
+        test.setUp();
+        try {
+            test.benchmarkBuild();
+            test.benchmarkSearch();
+        } finally {
+            test.tearDown();
+        }
+    }
+}